@@ -1,33 +1,72 @@
 package com.miners.shop.config;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Конфигурация кэширования для приложения
- * Использует встроенный ConcurrentMapCacheManager для кэширования данных
+ *
+ * Кэши Caffeine с ограничением размера и временем жизни, заданными для каждого кэша отдельно
+ * (app.cache.specs.<имя>: спецификация Caffeine, например maximumSize=100,expireAfterWrite=30m).
+ * Кэши, не перечисленные в app.cache.specs, создаются по spring.cache.caffeine.spec.
+ * У всех кэшей включена статистика (GET /private/cache/stats); запись и удаление ключей
+ * выполняются после коммита текущей транзакции.
  */
 @Configuration
 @EnableCaching
 @Slf4j
 public class CacheConfig {
-    
+
+    public static final String MINER_DETAILS = "minerDetails";
+
+    private static final String DEFAULT_SPEC = "maximumSize=1000,expireAfterWrite=5m";
+
     /**
      * Настройка менеджера кэша
-     * Использует ConcurrentMapCacheManager для кэширования данных
-     * Кэш хранится в памяти и очищается при перезапуске приложения
+     * Спецификация проверяется при старте: ошибка в application.yml не дает приложению запуститься
      */
     @Bean
-    public CacheManager cacheManager() {
-        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager("cryptoData", "minerDetails");
+    public CacheManager cacheManager(Environment environment) {
+        Binder binder = Binder.get(environment);
+        String defaultSpec = binder.bind("spring.cache.caffeine.spec", String.class).orElse(DEFAULT_SPEC);
+        Map<String, String> specs = new TreeMap<>(binder.bind("app.cache.specs", Bindable.mapOf(String.class, String.class))
+                .orElseGet(Map::of));
+        specs.putIfAbsent(MINER_DETAILS, defaultSpec);
+
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
         cacheManager.setAllowNullValues(false);
-        
-        log.info("Кэширование настроено: ConcurrentMapCacheManager для cryptoData и minerDetails");
-        return cacheManager;
+        cacheManager.setCaffeine(caffeine(defaultSpec));
+        specs.forEach((name, spec) -> {
+            cacheManager.registerCustomCache(name, caffeine(spec).build());
+            log.info("Кэш {}: {}", name, spec);
+        });
+
+        log.info("✅ Кэширование настроено: Caffeine, кэшей {}", specs.size());
+        return new TransactionAwareCacheManagerProxy(cacheManager);
     }
-}
 
+    /**
+     * Построитель кэша по спецификации со статистикой
+     * refreshAfterWrite требует загрузчика, которого у кэшей @Cacheable нет, поэтому не поддерживается
+     */
+    private static Caffeine<Object, Object> caffeine(String spec) {
+        CaffeineSpec parsed = CaffeineSpec.parse(spec);
+        if (spec.contains("refreshAfterWrite")) {
+            throw new IllegalStateException("refreshAfterWrite не поддерживается для кэшей @Cacheable: " + spec);
+        }
+        return Caffeine.from(parsed).recordStats();
+    }
+}
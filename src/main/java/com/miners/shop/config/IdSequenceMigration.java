@@ -0,0 +1,103 @@
+package com.miners.shop.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Перевод первичных ключей "горячих" таблиц с IDENTITY на sequence (allocationSize = 50, оптимизатор pooled-lo)
+ * IDENTITY отключает JDBC batching для INSERT в Hibernate, sequence с пулом значений - нет.
+ *
+ * Выполняется после создания EntityManagerFactory (ddl-auto уже создал недостающие sequence),
+ * но до старта веб-сервера и фоновых задач, поэтому ни одной вставки до выравнивания не происходит.
+ * Для каждой таблицы (идемпотентно):
+ * 1. снимается IDENTITY с колонки id (существующие ID не меняются);
+ * 2. DEFAULT колонки id переключается на nextval(sequence) - для нативных INSERT без id;
+ * 3. sequence сдвигается за MAX(id), если отстает.
+ */
+@Component
+@Slf4j
+public class IdSequenceMigration {
+
+    /**
+     * Таблица -> sequence (должно совпадать с @SequenceGenerator в сущностях)
+     */
+    static final Map<String, String> SEQUENCES = new LinkedHashMap<>();
+    static {
+        SEQUENCES.put("offers", "offers_seq");
+        SEQUENCES.put("products", "products_seq");
+        SEQUENCES.put("sellers", "sellers_seq");
+        SEQUENCES.put("whatsapp_messages", "whatsapp_messages_seq");
+        SEQUENCES.put("miner_details", "miner_details_seq");
+        SEQUENCES.put("webhook_ingestion_queue", "webhook_ingestion_queue_seq");
+    }
+
+    private static final int ALLOCATION_SIZE = 50;
+
+    private final DataSource dataSource;
+
+    /**
+     * EntityManagerFactory нужен только для порядка инициализации: схема уже обновлена Hibernate
+     */
+    public IdSequenceMigration(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        this.dataSource = dataSource;
+    }
+
+    @PostConstruct
+    void migrate() {
+        for (Map.Entry<String, String> entry : SEQUENCES.entrySet()) {
+            try {
+                migrateTable(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                // Не прерываем запуск: без выравнивания возможен конфликт ID, поэтому ошибка логируется громко
+                log.error("❌ Не удалось перевести {}.id на sequence {}: {}", entry.getKey(), entry.getValue(), e.getMessage(), e);
+            }
+        }
+    }
+
+    private void migrateTable(String table, String sequence) throws Exception {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            conn.setAutoCommit(true);
+
+            if (queryLong(stmt, "SELECT COUNT(*) FROM information_schema.tables WHERE table_name = '" + table + "'") == 0) {
+                log.warn("⚠️  Таблица {} не найдена, перевод на sequence пропущен", table);
+                return;
+            }
+
+            stmt.execute("CREATE SEQUENCE IF NOT EXISTS " + sequence + " START WITH 1 INCREMENT BY " + ALLOCATION_SIZE);
+
+            long identity = queryLong(stmt, """
+                    SELECT COUNT(*) FROM information_schema.columns
+                    WHERE table_name = '%s' AND column_name = 'id' AND is_identity = 'YES'
+                    """.formatted(table));
+            if (identity > 0) {
+                stmt.execute("ALTER TABLE " + table + " ALTER COLUMN id DROP IDENTITY IF EXISTS");
+                log.info("🔧 {}.id: IDENTITY снят, существующие ID сохранены", table);
+            }
+            stmt.execute("ALTER TABLE " + table + " ALTER COLUMN id SET DEFAULT nextval('" + sequence + "')");
+
+            // pooled-lo: значение sequence - начало следующего блока, поэтому достаточно last_value >= MAX(id)
+            long maxId = queryLong(stmt, "SELECT COALESCE(MAX(id), 0) FROM " + table);
+            long lastValue = queryLong(stmt, "SELECT last_value FROM " + sequence);
+            if (lastValue < maxId) {
+                stmt.execute("SELECT setval('" + sequence + "', " + maxId + ", true)");
+                log.info("🔧 Sequence {} сдвинута с {} на {} (MAX(id) таблицы {})", sequence, lastValue, maxId, table);
+            }
+        }
+    }
+
+    private long queryLong(Statement stmt, String sql) throws Exception {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
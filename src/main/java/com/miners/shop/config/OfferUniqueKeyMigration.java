@@ -0,0 +1,95 @@
+package com.miners.shop.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Уникальный ключ offers (product_id, seller_id, operation_type) для upsert предложений
+ * (INSERT ... ON CONFLICT в ProductService.upsertOffers)
+ *
+ * Выполняется до старта веб-сервера (как и IdSequenceMigration): без индекса ON CONFLICT не работает.
+ * Если индекса еще нет, существующие дубликаты сворачиваются в самое свежее предложение
+ * (ссылки из requests переносятся на него), после чего создается уникальный индекс.
+ */
+@Component
+@Slf4j
+public class OfferUniqueKeyMigration {
+
+    static final String INDEX_NAME = "uk_offers_product_seller_operation";
+
+    private final DataSource dataSource;
+
+    /**
+     * EntityManagerFactory нужен только для порядка инициализации: таблицы уже созданы Hibernate
+     */
+    public OfferUniqueKeyMigration(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        this.dataSource = dataSource;
+    }
+
+    @PostConstruct
+    void migrate() {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            if (count(stmt, "SELECT COUNT(*) FROM pg_indexes WHERE indexname = '" + INDEX_NAME + "'") > 0) {
+                return;
+            }
+            if (count(stmt, "SELECT COUNT(*) FROM information_schema.tables WHERE table_name = 'offers'") == 0) {
+                log.warn("⚠️  Таблица offers не найдена, уникальный ключ предложений не создан");
+                return;
+            }
+
+            log.info("🔧 Создание уникального ключа offers (product_id, seller_id, operation_type)...");
+            conn.setAutoCommit(false);
+            try {
+                String duplicates = """
+                        WITH ranked AS (
+                            SELECT id, FIRST_VALUE(id) OVER (
+                                PARTITION BY product_id, seller_id, operation_type
+                                ORDER BY updated_at DESC, id DESC) AS keep_id
+                            FROM offers
+                            WHERE seller_id IS NOT NULL
+                        )
+                        """;
+                if (count(stmt, "SELECT COUNT(*) FROM information_schema.tables WHERE table_name = 'requests'") > 0) {
+                    int moved = stmt.executeUpdate(duplicates + """
+                            UPDATE requests r SET offer_id = ranked.keep_id
+                            FROM ranked
+                            WHERE r.offer_id = ranked.id AND ranked.id <> ranked.keep_id
+                            """);
+                    if (moved > 0) {
+                        log.info("🔧 Заявок перенесено на актуальные предложения: {}", moved);
+                    }
+                }
+                int deleted = stmt.executeUpdate(duplicates + """
+                        DELETE FROM offers o
+                        USING ranked
+                        WHERE o.id = ranked.id AND ranked.id <> ranked.keep_id
+                        """);
+                stmt.execute("CREATE UNIQUE INDEX " + INDEX_NAME + " ON offers (product_id, seller_id, operation_type)");
+                conn.commit();
+                log.info("✅ Уникальный ключ {} создан, удалено устаревших дубликатов предложений: {}", INDEX_NAME, deleted);
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (Exception e) {
+            // Не прерываем запуск: upsert предложений будет падать до ручного создания индекса
+            log.error("❌ Не удалось создать уникальный ключ {}: {}", INDEX_NAME, e.getMessage(), e);
+        }
+    }
+
+    private long count(Statement stmt, String sql) throws Exception {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -44,6 +44,9 @@ public class SecurityConfig {
                     // Страница входа и ошибок (без авторизации)
                     .requestMatchers("/login", "/error", "/logout").permitAll()
                     
+                    // Файлы для поисковых роботов (без авторизации)
+                    .requestMatchers("/robots.txt", "/sitemap*.xml", "/sitemap*.xml.gz").permitAll()
+                    
                     // Редиректы старых путей (требуют авторизации, так как ведут на /private/messages)
                     .requestMatchers("/messages", "/messages/**").authenticated()
                     
@@ -1,5 +1,6 @@
 package com.miners.shop.config;
 
+import com.miners.shop.controller.CatalogConditionalGetInterceptor;
 import com.miners.shop.controller.RedirectInterceptor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -23,12 +24,14 @@ import java.nio.file.Paths;
 public class WebConfig implements WebMvcConfigurer {
     
     private final RedirectInterceptor redirectInterceptor;
+    private final CatalogConditionalGetInterceptor catalogConditionalGetInterceptor;
     
     @Value("${app.upload.dir:uploads/img/miner-details}")
     private String uploadDir;
     
-    public WebConfig(RedirectInterceptor redirectInterceptor) {
+    public WebConfig(RedirectInterceptor redirectInterceptor, CatalogConditionalGetInterceptor catalogConditionalGetInterceptor) {
         this.redirectInterceptor = redirectInterceptor;
+        this.catalogConditionalGetInterceptor = catalogConditionalGetInterceptor;
     }
     
     @Override
@@ -37,6 +40,9 @@ public class WebConfig implements WebMvcConfigurer {
         // чтобы он обрабатывал запросы до других обработчиков
         registry.addInterceptor(redirectInterceptor)
                 .order(Ordered.HIGHEST_PRECEDENCE);
+        // Условные GET каталога - после редиректов, но до контроллеров (304 без обращения к БД)
+        registry.addInterceptor(catalogConditionalGetInterceptor)
+                .addPathPatterns("/products", "/products/*", "/api/products", "/api/products/*/offers");
     }
     
     @Override
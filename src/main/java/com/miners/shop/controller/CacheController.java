@@ -0,0 +1,84 @@
+package com.miners.shop.controller;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Мониторинг кэшей Spring Cache (Caffeine, см. CacheConfig)
+ * Доступен только для администраторов
+ */
+@RestController
+@RequestMapping("/private/cache")
+@RequiredArgsConstructor
+@Slf4j
+@PreAuthorize("hasRole('ADMIN')")
+public class CacheController {
+
+    private final CacheManager cacheManager;
+
+    /**
+     * Размер, попадания, вытеснения и время загрузки по каждому кэшу
+     * GET /private/cache/stats
+     */
+    @GetMapping(value = "/stats", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> stats() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        for (String name : new TreeSet<>(cacheManager.getCacheNames())) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null && cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeine) {
+                response.put(name, toMap(caffeine.estimatedSize(), caffeine.stats()));
+            }
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Очистка одного кэша
+     * POST /private/cache/{name}/clear
+     */
+    @PostMapping(value = "/{name}/clear", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> clear(@PathVariable String name) {
+        Map<String, Object> response = new HashMap<>();
+        Cache cache = cacheManager.getCacheNames().contains(name) ? cacheManager.getCache(name) : null;
+        if (cache == null) {
+            response.put("success", false);
+            response.put("error", "Кэш не найден: " + name);
+            return ResponseEntity.status(404).body(response);
+        }
+        cache.clear();
+        log.info("🧹 Кэш {} очищен администратором", name);
+        response.put("success", true);
+        response.put("message", "Кэш " + name + " очищен");
+        return ResponseEntity.ok(response);
+    }
+
+    private static Map<String, Object> toMap(long size, CacheStats stats) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", size);
+        result.put("requests", stats.requestCount());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", Math.round(stats.hitRate() * 1000) / 1000.0);
+        result.put("evictions", stats.evictionCount());
+        result.put("loads", stats.loadCount());
+        result.put("loadFailures", stats.loadFailureCount());
+        result.put("averageLoadMs", Math.round(stats.averageLoadPenalty() / 1_000) / 1000.0);
+        result.put("totalLoadMs", stats.totalLoadTime() / 1_000_000);
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+package com.miners.shop.controller;
+
+import com.miners.shop.service.CatalogSnapshot;
+import com.miners.shop.service.CatalogSnapshotService;
+import com.miners.shop.service.CatalogVersionService;
+import com.miners.shop.service.MinerDetailSlugIndex;
+import com.miners.shop.service.MinerSearchService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.ZoneId;
+import java.util.Map;
+
+/**
+ * Условные GET-запросы каталога (ETag / Last-Modified + 304)
+ *
+ * Проверка выполняется до контроллера (и до открытия транзакции), только по данным в памяти:
+ * - /products, /api/products - версия снимка каталога (CatalogSnapshotService), при поиске - и поколение поискового индекса;
+ * - /products/{idOrSlug}, /api/products/{id}/offers - штамп MinerDetail (CatalogVersionService), slug - по MinerDetailSlugIndex.
+ * Запросы с dateFilter не кэшируются: окно "сегодня/3 дня/неделя" сдвигается со временем без записи в БД.
+ * Cache-Control: no-cache - браузер хранит ответ, но каждый раз перепроверяет его по ETag.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CatalogConditionalGetInterceptor implements HandlerInterceptor {
+
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final CatalogVersionService catalogVersionService;
+    private final MinerSearchService minerSearchService;
+    private final MinerDetailSlugIndex minerDetailSlugIndex;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return true;
+        }
+        String pattern = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        Validator validator = pattern != null ? validator(pattern, request) : null;
+        if (validator == null) {
+            return true;
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (new ServletWebRequest(request, response).checkNotModified(validator.etag(), validator.lastModified())) {
+            catalogVersionService.recordNotModified();
+            log.debug("304 Not Modified: {}", request.getRequestURI());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Валидатор ответа (null - ответ условным запросам не подлежит)
+     */
+    private Validator validator(String pattern, HttpServletRequest request) {
+        return switch (pattern) {
+            case "/products", "/api/products" -> catalogValidator(request.getParameter("search"));
+            case "/products/{idOrSlug}" -> request.getParameter("dateFilter") != null
+                    ? null
+                    : minerDetailValidator(resolveMinerDetailId(pathVariable(request, "idOrSlug")));
+            case "/api/products/{id}/offers" -> request.getParameter("dateFilter") != null
+                    ? null
+                    : minerDetailValidator(parseId(pathVariable(request, "id")));
+            default -> null;
+        };
+    }
+
+    private Validator catalogValidator(String search) {
+        CatalogSnapshot snapshot = catalogSnapshotService.get();
+        String etag = "\"c-" + catalogVersionService.getInstanceId() + "-" + snapshot.getVersion()
+                + (search != null && !search.isBlank() ? "-s" + minerSearchService.getGeneration() : "") + "\"";
+        return new Validator(etag, snapshot.getBuiltAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    private Validator minerDetailValidator(Long minerDetailId) {
+        if (minerDetailId == null) {
+            return null;
+        }
+        CatalogVersionService.Stamp stamp = catalogVersionService.getStamp(minerDetailId);
+        String etag = "\"md-" + catalogVersionService.getInstanceId() + "-" + minerDetailId + "-" + stamp.revision() + "\"";
+        return new Validator(etag, stamp.modifiedAt());
+    }
+
+    /**
+     * Текущий slug или числовой ID (MinerDetailSlugIndex, как в ProductsController.productDetails);
+     * неизвестный и прежний slug (404 и 301) обрабатываются контроллером без условного ответа
+     */
+    private Long resolveMinerDetailId(String idOrSlug) {
+        MinerDetailSlugIndex.Resolution resolution = minerDetailSlugIndex.resolve(idOrSlug);
+        return resolution != null && resolution.movedToSlug() == null ? resolution.minerDetailId() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String pathVariable(HttpServletRequest request, String name) {
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        return variables != null ? variables.get(name) : null;
+    }
+
+    private static Long parseId(String value) {
+        try {
+            return value != null ? Long.parseLong(value) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private record Validator(String etag, long lastModified) {
+    }
+}
@@ -0,0 +1,113 @@
+package com.miners.shop.controller;
+
+import com.miners.shop.service.CatalogSnapshot;
+import com.miners.shop.service.CatalogSnapshotService;
+import com.miners.shop.service.CatalogVersionService;
+import com.miners.shop.service.MinerDetailSlugIndex;
+import com.miners.shop.service.PublicPageCache;
+import com.miners.shop.service.SitemapService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Обслуживание снимка публичного каталога (CatalogSnapshotService)
+ * Доступно только для администраторов
+ */
+@RestController
+@RequestMapping("/private/catalog/snapshot")
+@RequiredArgsConstructor
+@Slf4j
+@PreAuthorize("hasRole('ADMIN')")
+public class CatalogSnapshotController {
+
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final CatalogVersionService catalogVersionService;
+    private final PublicPageCache publicPageCache;
+    private final MinerDetailSlugIndex minerDetailSlugIndex;
+    private final SitemapService sitemapService;
+
+    /**
+     * Состояние снимка, условных GET-запросов (conditionalGet), кэша отрисованных страниц (pageCache)
+     * индекса slug страниц товаров (slugIndex) и файлов sitemap (sitemap)
+     * GET /private/catalog/snapshot
+     */
+    @GetMapping(produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> stats() {
+        Map<String, Object> response = new HashMap<>(catalogSnapshotService.getStats());
+        response.put("conditionalGet", catalogVersionService.getStats());
+        response.put("pageCache", publicPageCache.getStats());
+        response.put("slugIndex", minerDetailSlugIndex.getStats());
+        response.put("sitemap", sitemapService.getStats());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Очистка кэша отрисованных страниц (после правки шаблонов или статических страниц)
+     * POST /private/catalog/snapshot/page-cache/clear
+     */
+    @PostMapping(value = "/page-cache/clear", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> clearPageCache() {
+        publicPageCache.evictAll();
+        log.info("🗑️ Кэш публичных страниц очищен администратором");
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Кэш страниц очищен");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Немедленная генерация файлов sitemap (без ожидания изменений каталога и min-interval-ms)
+     * POST /private/catalog/snapshot/sitemap/generate
+     */
+    @PostMapping(value = "/sitemap/generate", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> generateSitemap() {
+        try {
+            sitemapService.generate();
+            log.info("🗺️ Sitemap сгенерирован администратором");
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Sitemap сгенерирован");
+            response.put("sitemap", sitemapService.getStats());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("❌ Ошибка генерации sitemap: {}", e.getMessage(), e);
+            Map<String, Object> error = new HashMap<>();
+            error.put("success", false);
+            error.put("message", "Ошибка генерации sitemap: " + e.getMessage());
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    /**
+     * Немедленная пересборка снимка (без ожидания паузы в изменениях)
+     * POST /private/catalog/snapshot/rebuild
+     */
+    @PostMapping(value = "/rebuild", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> rebuild() {
+        try {
+            CatalogSnapshot snapshot = catalogSnapshotService.rebuild();
+            log.info("🔄 Снимок каталога пересобран администратором: v{}", snapshot.getVersion());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("version", snapshot.getVersion());
+            response.put("cards", snapshot.getCardCount());
+            response.put("message", "Снимок каталога пересобран");
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("❌ Ошибка пересборки снимка каталога: {}", e.getMessage(), e);
+            Map<String, Object> error = new HashMap<>();
+            error.put("success", false);
+            error.put("message", "Ошибка пересборки: " + e.getMessage());
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+}
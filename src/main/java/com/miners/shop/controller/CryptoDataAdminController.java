@@ -0,0 +1,52 @@
+package com.miners.shop.controller;
+
+import com.miners.shop.service.CryptoDataService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Обслуживание данных калькулятора доходности (CryptoDataService)
+ * Доступно только для администраторов
+ */
+@RestController
+@RequestMapping("/private/crypto")
+@RequiredArgsConstructor
+@Slf4j
+@PreAuthorize("hasRole('ADMIN')")
+public class CryptoDataAdminController {
+
+    private final CryptoDataService cryptoDataService;
+
+    /**
+     * Источник, время обновления по монетам, состояние предохранителей
+     * GET /private/crypto/stats
+     */
+    @GetMapping(value = "/stats", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> stats() {
+        return ResponseEntity.ok(cryptoDataService.getStats());
+    }
+
+    /**
+     * Немедленное обновление (в потоке запроса, не дольше app.crypto.refresh-timeout-ms)
+     * POST /private/crypto/refresh
+     */
+    @PostMapping(value = "/refresh", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> refresh() {
+        cryptoDataService.refresh();
+        log.info("🔄 Данные калькулятора обновлены администратором");
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Обновление выполнено");
+        response.put("stats", cryptoDataService.getStats());
+        return ResponseEntity.ok(response);
+    }
+}
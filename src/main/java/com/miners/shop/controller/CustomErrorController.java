@@ -1,16 +1,15 @@
 package com.miners.shop.controller;
 
 import com.miners.shop.entity.MinerDetail;
-import com.miners.shop.entity.NotFoundError;
 import com.miners.shop.entity.Offer;
 import com.miners.shop.entity.OperationType;
 import com.miners.shop.entity.Product;
-import com.miners.shop.entity.Redirect;
 import com.miners.shop.repository.MinerDetailRepository;
-import com.miners.shop.repository.NotFoundErrorRepository;
 import com.miners.shop.repository.OfferRepository;
 import com.miners.shop.repository.ProductRepository;
-import com.miners.shop.repository.RedirectRepository;
+import com.miners.shop.service.NotFoundTracker;
+import com.miners.shop.service.RedirectRuleService;
+import com.miners.shop.service.RedirectTable;
 import com.miners.shop.util.ImageUrlResolver;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.http.HttpServletRequest;
@@ -24,6 +23,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.ui.Model;
+import org.springframework.web.servlet.View;
 import org.springframework.web.bind.annotation.RequestMapping;
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -40,8 +40,8 @@ import java.util.stream.Collectors;
 @Slf4j
 public class CustomErrorController implements ErrorController {
     
-    private final RedirectRepository redirectRepository;
-    private final NotFoundErrorRepository notFoundErrorRepository;
+    private final RedirectRuleService redirectRuleService;
+    private final NotFoundTracker notFoundTracker;
     private final OfferRepository offerRepository;
     private final MinerDetailRepository minerDetailRepository;
     private final ProductRepository productRepository;
@@ -64,17 +64,17 @@ public class CustomErrorController implements ErrorController {
         // Если статус не установлен, но это не /error, считаем это 404
         if (status == null && !"/error".equals(url)) {
             log.warn("404 Not Found (no status code): {}", fullUrl);
-            logNotFoundError(request, fullUrl);
+            notFoundTracker.record(request, fullUrl);
             
             // Устанавливаем HTTP статус 404
             response.setStatus(HttpStatus.NOT_FOUND.value());
             
-            // Проверяем, есть ли редирект для этого URL
-            Optional<Redirect> redirectOpt = redirectRepository.findByFromUrlAndActiveTrue(fullUrl);
-            if (redirectOpt.isPresent()) {
-                Redirect redirect = redirectOpt.get();
-                log.info("Найден редирект для URL {} -> {}", fullUrl, redirect.getToUrl());
-                return "redirect:" + redirect.getToUrl();
+            // Проверяем, есть ли редирект для этого URL (таблица в памяти)
+            RedirectTable.Match redirect = redirectRuleService.find(url, queryString);
+            if (redirect != null) {
+                log.info("Найден редирект для URL {} -> {}", fullUrl, redirect.location());
+                request.setAttribute(View.RESPONSE_STATUS_ATTRIBUTE, HttpStatus.valueOf(redirect.statusCode()));
+                return "redirect:" + redirect.location();
             }
             
             // Если редиректа нет, показываем кастомную страницу 404
@@ -94,17 +94,17 @@ public class CustomErrorController implements ErrorController {
             if (statusCode == HttpStatus.NOT_FOUND.value()) {
                 // Логируем 404 ошибку
                 log.warn("404 Not Found: {}", fullUrl);
-                logNotFoundError(request, fullUrl);
+                notFoundTracker.record(request, fullUrl);
                 
                 // Устанавливаем HTTP статус 404
                 response.setStatus(HttpStatus.NOT_FOUND.value());
                 
-                // Проверяем, есть ли редирект для этого URL
-                Optional<Redirect> redirectOpt = redirectRepository.findByFromUrlAndActiveTrue(fullUrl);
-                if (redirectOpt.isPresent()) {
-                    Redirect redirect = redirectOpt.get();
-                    log.info("Найден редирект для URL {} -> {}", fullUrl, redirect.getToUrl());
-                    return "redirect:" + redirect.getToUrl();
+                // Проверяем, есть ли редирект для этого URL (таблица в памяти)
+                RedirectTable.Match redirect = redirectRuleService.find(url, queryString);
+                if (redirect != null) {
+                    log.info("Найден редирект для URL {} -> {}", fullUrl, redirect.location());
+                    request.setAttribute(View.RESPONSE_STATUS_ATTRIBUTE, HttpStatus.valueOf(redirect.statusCode()));
+                    return "redirect:" + redirect.location();
                 }
                 
                 // Если редиректа нет, показываем кастомную страницу 404
@@ -245,52 +245,6 @@ public class CustomErrorController implements ErrorController {
         }
         imageUrls.put(minerDetail.getId(), imageUrl);
     }
-    
-    /**
-     * Логирование 404 ошибки в базу данных
-     */
-    private void logNotFoundError(HttpServletRequest request, String url) {
-        try {
-            // Проверяем, есть ли уже запись для этого URL
-            Optional<NotFoundError> existingError = notFoundErrorRepository.findByUrl(url);
-            
-            if (existingError.isPresent()) {
-                // Увеличиваем счетчик
-                NotFoundError error = existingError.get();
-                error.setCount(error.getCount() + 1);
-                error.setLastOccurred(LocalDateTime.now());
-                notFoundErrorRepository.save(error);
-                log.debug("Обновлена запись 404 ошибки для URL: {}, счетчик: {}", url, error.getCount());
-            } else {
-                // Создаем новую запись
-                NotFoundError error = new NotFoundError();
-                error.setUrl(url);
-                error.setHttpMethod(request.getMethod());
-                error.setUserAgent(request.getHeader("User-Agent"));
-                error.setIpAddress(getClientIpAddress(request));
-                error.setReferer(request.getHeader("Referer"));
-                error.setCount(1);
-                notFoundErrorRepository.save(error);
-                log.info("Создана новая запись 404 ошибки для URL: {}", url);
-            }
-        } catch (Exception e) {
-            log.error("Ошибка при логировании 404 ошибки: {}", e.getMessage(), e);
-        }
-    }
-    
-    /**
-     * Получение IP адреса клиента
-     */
-    private String getClientIpAddress(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            return xForwardedFor.split(",")[0].trim();
-        }
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
-        }
-        return request.getRemoteAddr();
-    }
+        
 }
 
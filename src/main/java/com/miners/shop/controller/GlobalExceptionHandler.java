@@ -1,16 +1,15 @@
 package com.miners.shop.controller;
 
 import com.miners.shop.entity.MinerDetail;
-import com.miners.shop.entity.NotFoundError;
 import com.miners.shop.entity.Offer;
 import com.miners.shop.entity.OperationType;
 import com.miners.shop.entity.Product;
-import com.miners.shop.entity.Redirect;
 import com.miners.shop.repository.MinerDetailRepository;
-import com.miners.shop.repository.NotFoundErrorRepository;
 import com.miners.shop.repository.OfferRepository;
 import com.miners.shop.repository.ProductRepository;
-import com.miners.shop.repository.RedirectRepository;
+import com.miners.shop.service.NotFoundTracker;
+import com.miners.shop.service.RedirectRuleService;
+import com.miners.shop.service.RedirectTable;
 import com.miners.shop.util.ImageUrlResolver;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
@@ -20,6 +19,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.ui.Model;
+import org.springframework.web.servlet.View;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -42,8 +42,8 @@ import java.util.stream.Collectors;
 @Slf4j
 public class GlobalExceptionHandler {
 
-    private final RedirectRepository redirectRepository;
-    private final NotFoundErrorRepository notFoundErrorRepository;
+    private final RedirectRuleService redirectRuleService;
+    private final NotFoundTracker notFoundTracker;
     private final OfferRepository offerRepository;
     private final MinerDetailRepository minerDetailRepository;
     private final ProductRepository productRepository;
@@ -67,14 +67,14 @@ public class GlobalExceptionHandler {
         response.setStatus(HttpStatus.NOT_FOUND.value());
         
         // Логируем 404 ошибку
-        logNotFoundError(request, fullUrl);
+        notFoundTracker.record(request, fullUrl);
         
-        // Проверяем, есть ли редирект для этого URL
-        Optional<Redirect> redirectOpt = redirectRepository.findByFromUrlAndActiveTrue(fullUrl);
-        if (redirectOpt.isPresent()) {
-            Redirect redirect = redirectOpt.get();
-            log.info("Найден редирект для URL {} -> {}", fullUrl, redirect.getToUrl());
-            return "redirect:" + redirect.getToUrl();
+        // Проверяем, есть ли редирект для этого URL (таблица в памяти)
+        RedirectTable.Match redirect = redirectRuleService.find(url, queryString);
+        if (redirect != null) {
+            log.info("Найден редирект для URL {} -> {}", fullUrl, redirect.location());
+            request.setAttribute(View.RESPONSE_STATUS_ATTRIBUTE, HttpStatus.valueOf(redirect.statusCode()));
+            return "redirect:" + redirect.location();
         }
         
         // Если редиректа нет, показываем кастомную страницу 404
@@ -101,14 +101,14 @@ public class GlobalExceptionHandler {
         response.setStatus(HttpStatus.NOT_FOUND.value());
         
         // Логируем 404 ошибку
-        logNotFoundError(request, fullUrl);
+        notFoundTracker.record(request, fullUrl);
         
-        // Проверяем, есть ли редирект для этого URL
-        Optional<Redirect> redirectOpt = redirectRepository.findByFromUrlAndActiveTrue(fullUrl);
-        if (redirectOpt.isPresent()) {
-            Redirect redirect = redirectOpt.get();
-            log.info("Найден редирект для URL {} -> {}", fullUrl, redirect.getToUrl());
-            return "redirect:" + redirect.getToUrl();
+        // Проверяем, есть ли редирект для этого URL (таблица в памяти)
+        RedirectTable.Match redirect = redirectRuleService.find(url, queryString);
+        if (redirect != null) {
+            log.info("Найден редирект для URL {} -> {}", fullUrl, redirect.location());
+            request.setAttribute(View.RESPONSE_STATUS_ATTRIBUTE, HttpStatus.valueOf(redirect.statusCode()));
+            return "redirect:" + redirect.location();
         }
         
         // Если редиректа нет, показываем кастомную страницу 404
@@ -122,38 +122,6 @@ public class GlobalExceptionHandler {
         return "error/404";
     }
 
-    /**
-     * Логирование 404 ошибки в базу данных
-     */
-    private void logNotFoundError(HttpServletRequest request, String url) {
-        try {
-            // Проверяем, есть ли уже запись для этого URL
-            Optional<NotFoundError> existingError = notFoundErrorRepository.findByUrl(url);
-            
-            if (existingError.isPresent()) {
-                // Увеличиваем счетчик
-                NotFoundError error = existingError.get();
-                error.setCount(error.getCount() + 1);
-                error.setLastOccurred(LocalDateTime.now());
-                notFoundErrorRepository.save(error);
-                log.debug("Обновлена запись 404 ошибки для URL: {}, счетчик: {}", url, error.getCount());
-            } else {
-                // Создаем новую запись
-                NotFoundError error = new NotFoundError();
-                error.setUrl(url);
-                error.setHttpMethod(request.getMethod());
-                error.setUserAgent(request.getHeader("User-Agent"));
-                error.setIpAddress(getClientIpAddress(request));
-                error.setReferer(request.getHeader("Referer"));
-                error.setCount(1);
-                notFoundErrorRepository.save(error);
-                log.info("Создана новая запись 404 ошибки для URL: {}", url);
-            }
-        } catch (Exception e) {
-            log.error("Ошибка при логировании 404 ошибки: {}", e.getMessage(), e);
-        }
-    }
-
     /**
      * Обработка ResponseStatusException (404, 500 и т.д.)
      * Выбрасывается когда контроллер явно указывает статус ошибки
@@ -173,14 +141,14 @@ public class GlobalExceptionHandler {
             // Устанавливаем HTTP статус 404
             response.setStatus(HttpStatus.NOT_FOUND.value());
             
-            logNotFoundError(request, fullUrl);
+            notFoundTracker.record(request, fullUrl);
             
-            // Проверяем, есть ли редирект для этого URL
-            Optional<Redirect> redirectOpt = redirectRepository.findByFromUrlAndActiveTrue(fullUrl);
-            if (redirectOpt.isPresent()) {
-                Redirect redirect = redirectOpt.get();
-                log.info("Найден редирект для URL {} -> {}", fullUrl, redirect.getToUrl());
-                return "redirect:" + redirect.getToUrl();
+            // Проверяем, есть ли редирект для этого URL (таблица в памяти)
+            RedirectTable.Match redirect = redirectRuleService.find(url, queryString);
+            if (redirect != null) {
+                log.info("Найден редирект для URL {} -> {}", fullUrl, redirect.location());
+                request.setAttribute(View.RESPONSE_STATUS_ATTRIBUTE, HttpStatus.valueOf(redirect.statusCode()));
+                return "redirect:" + redirect.location();
             }
             
             // Если редиректа нет, показываем кастомную страницу 404
@@ -322,19 +290,5 @@ public class GlobalExceptionHandler {
         imageUrls.put(minerDetail.getId(), imageUrl);
     }
 
-    /**
-     * Получение IP адреса клиента
-     */
-    private String getClientIpAddress(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            return xForwardedFor.split(",")[0].trim();
-        }
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
-        }
-        return request.getRemoteAddr();
-    }
 }
 
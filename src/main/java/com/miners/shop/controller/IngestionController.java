@@ -0,0 +1,124 @@
+package com.miners.shop.controller;
+
+import com.miners.shop.entity.WebhookIngestion;
+import com.miners.shop.service.MessageDeliveryFilter;
+import com.miners.shop.service.WebhookIngestionService;
+import com.miners.shop.service.WebhookIngestionWorker;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Мониторинг и управление очередью приема webhook-сообщений
+ * Доступен только для администраторов
+ */
+@RestController
+@RequestMapping("/private/ingestion")
+@RequiredArgsConstructor
+@Slf4j
+@PreAuthorize("hasRole('ADMIN')")
+public class IngestionController {
+
+    private final WebhookIngestionService ingestionService;
+    private final WebhookIngestionWorker ingestionWorker;
+    private final MessageDeliveryFilter deliveryFilter;
+
+    /**
+     * Метрики очереди: глубина, задержка обработки, загрузка воркеров
+     * GET /private/ingestion/stats
+     */
+    @GetMapping(value = "/stats", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> stats() {
+        return ResponseEntity.ok(ingestionWorker.getStats());
+    }
+
+    /**
+     * Список записей в DEAD_LETTER
+     */
+    @GetMapping(value = "/dead-letter", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> deadLetters(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        Page<WebhookIngestion> deadLetters = ingestionService.getDeadLetters(PageRequest.of(page, size));
+
+        List<Map<String, Object>> content = deadLetters.getContent().stream()
+                .map(ingestion -> {
+                    Map<String, Object> item = new HashMap<>();
+                    item.put("id", ingestion.getId());
+                    item.put("source", ingestion.getSource());
+                    item.put("messageId", ingestion.getMessageId());
+                    item.put("attempts", ingestion.getAttempts());
+                    item.put("lastError", ingestion.getLastError());
+                    item.put("receivedAt", ingestion.getReceivedAt() != null ? ingestion.getReceivedAt().toString() : null);
+                    return item;
+                })
+                .toList();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("content", content);
+        response.put("totalElements", deadLetters.getTotalElements());
+        response.put("totalPages", deadLetters.getTotalPages());
+        response.put("currentPage", deadLetters.getNumber());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Повторная постановка записи из DEAD_LETTER в очередь
+     */
+    @PostMapping(value = "/dead-letter/{id}/retry", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> retry(@PathVariable Long id) {
+        Map<String, Object> response = new HashMap<>();
+        if (ingestionService.requeue(id)) {
+            response.put("success", true);
+            response.put("message", "Запись поставлена в очередь повторно");
+            return ResponseEntity.ok(response);
+        }
+        response.put("success", false);
+        response.put("message", "Запись не найдена или не находится в DEAD_LETTER");
+        return ResponseEntity.status(404).body(response);
+    }
+
+    /**
+     * Статистика фильтра повторных доставок: сколько дубликатов отброшено
+     * GET /private/ingestion/dedup/stats
+     */
+    @GetMapping(value = "/dedup/stats", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> dedupStats() {
+        return ResponseEntity.ok(deliveryFilter.getStats());
+    }
+
+    /**
+     * Разрешает однократную повторную обработку сообщения при следующей доставке
+     * (альтернатива параметру force=true у webhook)
+     */
+    @PostMapping(value = "/dedup/allow", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> allowRedelivery(@RequestParam String messageId) {
+        deliveryFilter.allowOnce(messageId);
+        log.info("🔁 Разрешена повторная обработка сообщения {}", messageId);
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Следующая доставка сообщения будет обработана");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Очистка кэша недавних сообщений и перестроение фильтра Блума по whatsapp_messages
+     */
+    @PostMapping(value = "/dedup/rebuild", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> rebuildDedup() {
+        deliveryFilter.clearRecent();
+        deliveryFilter.rebuild();
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Фильтр повторных доставок перестроен");
+        return ResponseEntity.ok(response);
+    }
+}
@@ -1,19 +1,33 @@
 package com.miners.shop.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miners.shop.dto.MessageSummaryDTO;
 import com.miners.shop.entity.WhatsAppMessage;
+import com.miners.shop.service.MediaMigrationJob;
+import com.miners.shop.service.MediaStorageService;
 import com.miners.shop.service.WhatsAppMessageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -28,6 +42,8 @@ import java.util.Optional;
 public class MessagesController {
     
     private final WhatsAppMessageService messageService;
+    private final MediaStorageService mediaStorageService;
+    private final MediaMigrationJob mediaMigrationJob;
     private final ObjectMapper objectMapper = new ObjectMapper();
     
     /**
@@ -40,7 +56,7 @@ public class MessagesController {
             Model model) {
         
         Pageable pageable = PageRequest.of(page, size);
-        Page<WhatsAppMessage> messages = messageService.getAllMessages(pageable);
+        Page<MessageSummaryDTO> messages = messageService.getMessageSummaries(null, pageable);
         
         model.addAttribute("messages", messages);
         model.addAttribute("currentPage", page);
@@ -138,6 +154,11 @@ public class MessagesController {
         response.put("content", message.getContent());
         response.put("timestamp", message.getTimestamp() != null ? message.getTimestamp().toString() : null);
         response.put("hasMedia", message.getHasMedia());
+        if (message.getMediaHash() != null) {
+            response.put("mediaUrl", "/private/messages/" + message.getId() + "/media");
+            response.put("mediaMimetype", message.getMediaMimetype());
+            response.put("mediaSize", message.getMediaSize());
+        }
         response.put("messageType", message.getMessageType());
         response.put("isForwarded", message.getIsForwarded());
         response.put("isUpdate", message.getIsUpdate());
@@ -159,4 +180,78 @@ public class MessagesController {
                 .contentType(MediaType.APPLICATION_JSON)
                 .body(response);
     }
+
+    /**
+     * Медиафайл сообщения из файлового хранилища
+     * Отдается через sendfile Tomcat (zero-copy), если коннектор его поддерживает, иначе через FileChannel.transferTo.
+     * Файлы адресуются по содержимому и не меняются, поэтому ETag - это хеш, а кэширование бессрочное.
+     */
+    @GetMapping("/{id}/media")
+    public void getMessageMedia(@PathVariable Long id, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<WhatsAppMessage> messageOpt = messageService.getMessageById(id);
+        if (messageOpt.isEmpty() || messageOpt.get().getMediaHash() == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        WhatsAppMessage message = messageOpt.get();
+        Path file = mediaStorageService.resolve(message.getMediaHash());
+        if (!Files.isRegularFile(file)) {
+            log.warn("⚠️  Медиафайл {} сообщения {} отсутствует в хранилище", message.getMediaHash(), id);
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        
+        String etag = "\"" + message.getMediaHash() + "\"";
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", "private, max-age=31536000, immutable");
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        
+        long size = Files.size(file);
+        response.setContentType(message.getMediaMimetype() != null ? message.getMediaMimetype() : MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setContentLengthLong(size);
+        if (message.getMediaFilename() != null && !message.getMediaFilename().isBlank()) {
+            response.setHeader("Content-Disposition", ContentDisposition.inline()
+                    .filename(message.getMediaFilename(), StandardCharsets.UTF_8).build().toString());
+        }
+        
+        if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+            request.setAttribute("org.apache.tomcat.sendfile.filename", file.toString());
+            request.setAttribute("org.apache.tomcat.sendfile.start", 0L);
+            request.setAttribute("org.apache.tomcat.sendfile.end", size);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, out);
+            }
+        }
+    }
+    
+    /**
+     * Статистика переноса старых base64-медиа в файловое хранилище
+     */
+    @GetMapping(value = "/media/migration", produces = MediaType.APPLICATION_JSON_VALUE + ";charset=UTF-8")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> getMediaMigrationStats() {
+        return ResponseEntity.ok(mediaMigrationJob.getStats());
+    }
+    
+    /**
+     * Внеочередной запуск переноса (с начала таблицы - в том числе для ранее пропущенных строк)
+     */
+    @PostMapping(value = "/media/migration/run", produces = MediaType.APPLICATION_JSON_VALUE + ";charset=UTF-8")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> runMediaMigration(@RequestParam(defaultValue = "25") int batches) {
+        mediaMigrationJob.restart();
+        int moved = mediaMigrationJob.migrateBatches(Math.max(1, batches));
+        Map<String, Object> response = new HashMap<>(mediaMigrationJob.getStats());
+        response.put("success", true);
+        response.put("message", "Перенесено медиа: " + moved);
+        return ResponseEntity.ok(response);
+    }
 }
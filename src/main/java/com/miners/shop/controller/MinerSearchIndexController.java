@@ -0,0 +1,64 @@
+package com.miners.shop.controller;
+
+import com.miners.shop.service.MinerSearchService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Мониторинг поискового индекса MinerDetail (MinerSearchService)
+ * Доступен только для администраторов
+ */
+@RestController
+@RequestMapping("/private/products/search-index")
+@RequiredArgsConstructor
+@Slf4j
+@PreAuthorize("hasRole('ADMIN')")
+public class MinerSearchIndexController {
+
+    private final MinerSearchService minerSearchService;
+
+    /**
+     * Размер индекса и средняя задержка поиска
+     * GET /private/products/search-index/stats
+     */
+    @GetMapping(value = "/stats", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> stats() {
+        return ResponseEntity.ok(minerSearchService.getStats());
+    }
+
+    /**
+     * Результаты поиска с оценками (отладка ранжирования)
+     * GET /private/products/search-index/query?q=s21 hyd
+     */
+    @GetMapping(value = "/query", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> query(@RequestParam String q,
+                                                     @RequestParam(defaultValue = "20") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("query", q);
+        response.put("hits", minerSearchService.search(q, limit));
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Полная перезагрузка индекса из БД (после ручных правок или массовых запросов, минующих JPA-события)
+     */
+    @PostMapping(value = "/reload", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> reload() {
+        minerSearchService.reload();
+        log.info("🔄 Поисковый индекс MinerDetail перезагружен администратором");
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Поисковый индекс перезагружен");
+        return ResponseEntity.ok(response);
+    }
+}
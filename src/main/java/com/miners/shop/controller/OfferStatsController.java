@@ -0,0 +1,73 @@
+package com.miners.shop.controller;
+
+import com.miners.shop.service.MinerDetailOfferStatsService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Обслуживание статистики предложений каталога (miner_detail_offer_stats)
+ * Доступно только для администраторов
+ */
+@RestController
+@RequestMapping("/private/products/offer-stats")
+@RequiredArgsConstructor
+@Slf4j
+@PreAuthorize("hasRole('ADMIN')")
+public class OfferStatsController {
+
+    private final MinerDetailOfferStatsService offerStatsService;
+
+    /**
+     * GET /private/products/offer-stats/stats
+     */
+    @GetMapping(value = "/stats", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> stats() {
+        return ResponseEntity.ok(offerStatsService.getServiceStats());
+    }
+
+    /**
+     * Пересчет статистики одной MinerDetail
+     * POST /private/products/offer-stats/refresh?minerDetailId=15
+     */
+    @PostMapping(value = "/refresh", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> refresh(@RequestParam Long minerDetailId) {
+        offerStatsService.markDirty(List.of(minerDetailId));
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Статистика MinerDetail ID=" + minerDetailId + " пересчитана");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Полная пересборка таблицы из предложений (восстановление после ручных правок БД)
+     */
+    @PostMapping(value = "/rebuild", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> rebuild() {
+        try {
+            int rows = offerStatsService.rebuildAll();
+            log.info("🔄 Статистика предложений пересобрана администратором: {} строк", rows);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("rows", rows);
+            response.put("message", "Статистика предложений пересобрана");
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("❌ Ошибка пересборки статистики предложений: {}", e.getMessage(), e);
+            Map<String, Object> error = new HashMap<>();
+            error.put("success", false);
+            error.put("message", "Ошибка пересборки: " + e.getMessage());
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+}
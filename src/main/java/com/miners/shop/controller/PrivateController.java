@@ -6,6 +6,7 @@ import com.miners.shop.entity.Product;
 import com.miners.shop.entity.WhatsAppMessage;
 import com.miners.shop.repository.OfferRepository;
 import com.miners.shop.repository.WhatsAppMessageRepository;
+import com.miners.shop.service.MinerDetailOfferStatsService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -47,6 +48,7 @@ public class PrivateController {
     
     private final OfferRepository offerRepository;
     private final WhatsAppMessageRepository messageRepository;
+    private final MinerDetailOfferStatsService offerStatsService;
     
     /**
      * Приватная страница с навигацией по основным разделам
@@ -696,6 +698,9 @@ public class PrivateController {
             
             log.info("Удаление предложений: {}", offerIds);
             
+            // Статистика каталога пересчитывается перед коммитом удаления
+            offerStatsService.markDirty(offerRepository.findMinerDetailIdsByOfferIds(offerIds));
+            
             int deletedCount = 0;
             for (Long offerId : offerIds) {
                 try {
@@ -0,0 +1,68 @@
+package com.miners.shop.controller;
+
+import com.miners.shop.service.ProductModelIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Мониторинг индекса моделей товаров (нормализованная модель -> товар)
+ * Доступен только для администраторов
+ */
+@RestController
+@RequestMapping("/private/products/model-index")
+@RequiredArgsConstructor
+@Slf4j
+@PreAuthorize("hasRole('ADMIN')")
+public class ProductModelIndexController {
+
+    private final ProductModelIndex productModelIndex;
+
+    /**
+     * Размер индекса и статистика сопоставлений
+     * GET /private/products/model-index/stats
+     */
+    @GetMapping(value = "/stats", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> stats() {
+        return ResponseEntity.ok(productModelIndex.getStats());
+    }
+
+    /**
+     * Проверка сопоставления модели без создания товара
+     * GET /private/products/model-index/resolve?model=Antminer S19 Pro 110T
+     */
+    @GetMapping(value = "/resolve", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> resolve(@RequestParam String model) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("model", model);
+        response.put("key", productModelIndex.normalize(model));
+        productModelIndex.resolve(model).ifPresent(match -> {
+            response.put("productId", match.productId());
+            response.put("productModel", match.model());
+            response.put("matchType", match.type());
+        });
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Полная перезагрузка индекса из БД
+     */
+    @PostMapping(value = "/reload", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> reload() {
+        productModelIndex.reload();
+        log.info("🔄 Индекс моделей товаров перезагружен администратором");
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Индекс моделей товаров перезагружен");
+        return ResponseEntity.ok(response);
+    }
+}
@@ -2,15 +2,19 @@ package com.miners.shop.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.miners.shop.dto.OfferDTO;
-import com.miners.shop.dto.CompanyMinerDTO;
-import com.miners.shop.entity.CompanyMiner;
 import com.miners.shop.entity.MinerDetail;
 import com.miners.shop.entity.OperationType;
 import com.miners.shop.entity.Offer;
 import com.miners.shop.entity.Product;
-import com.miners.shop.repository.CompanyMinerRepository;
-import com.miners.shop.service.CompanyMinerService;
+import com.miners.shop.service.CatalogSnapshot;
+import com.miners.shop.service.CatalogSnapshotService;
+import com.miners.shop.service.MinerDetailOfferStatsService;
+import com.miners.shop.service.MinerDetailPageService;
+import com.miners.shop.service.MinerDetailService;
+import com.miners.shop.service.MinerDetailSlugIndex;
+import com.miners.shop.service.MinerSearchService;
 import com.miners.shop.service.ProductService;
+import com.miners.shop.service.PublicPageCache;
 import com.miners.shop.util.SchemaOrgUtil;
 import com.miners.shop.util.SeoUtil;
 import jakarta.servlet.http.HttpServletRequest;
@@ -27,6 +31,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.ui.Model;
+import org.springframework.web.servlet.View;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -55,10 +60,13 @@ public class ProductsController {
     private final com.miners.shop.repository.OfferRepository offerRepository;
     private final com.miners.shop.repository.MinerDetailRepository minerDetailRepository;
     private final com.miners.shop.service.MinerDetailService minerDetailService;
+    private final MinerDetailOfferStatsService offerStatsService;
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final MinerSearchService minerSearchService;
     private final com.miners.shop.util.ImageUrlResolver imageUrlResolver;
     private final ObjectMapper objectMapper;
-    private final CompanyMinerRepository companyMinerRepository;
-    private final CompanyMinerService companyMinerService;
+    private final MinerDetailPageService minerDetailPageService;
+    private final MinerDetailSlugIndex minerDetailSlugIndex;
     
     /**
      * Страница с таблицей всех продуктов
@@ -189,369 +197,44 @@ public class ProductsController {
      * Главная страница товаров (майнеров с предложениями)
      * Показывает только товары, у которых есть предложения
      * По умолчанию сортирует по последнему обновлению предложений (самые свежие первыми)
+     * Данные - из снимка каталога в памяти (CatalogSnapshotService)
      */
     @GetMapping("/products")
-    @Transactional(readOnly = true)
     public String products(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "12") int size,  // Увеличено до 12 для карточек
             @RequestParam(required = false, defaultValue = "latestOffer") String sortBy, // latestOffer, name, manufacturer
             @RequestParam(required = false) List<String> manufacturer, // Фильтр по производителям
             @RequestParam(required = false) List<String> series, // Фильтр по сериям
+            @RequestParam(required = false) List<String> algorithm, // Фильтр по алгоритмам
+            @RequestParam(required = false) List<String> operationType, // Фильтр по типу операции (SELL, BUY)
             @RequestParam(required = false) String search, // Поиск по названию, производителю или серии
             HttpServletRequest request,
             Model model) {
         try {
-            Page<MinerDetail> minerDetailsPage = new org.springframework.data.domain.PageImpl<>(List.of());
+            // Каталог читается из снимка в памяти: фильтры, поиск, порядок и страница - без обращений к БД
+            CatalogSnapshot snapshot = catalogSnapshotService.get();
+            PublicPageCache.tag(request, PublicPageCache.TAG_CATALOG);
             Pageable pageable = PageRequest.of(page, size);
+            List<Long> searchHits = searchHits(search);
+            Map<String, List<String>> filters = CatalogSnapshot.filters(manufacturer, series, algorithm, operationType);
+            CatalogSnapshot.Page catalogPage = snapshot.page(catalogSort(sortBy, searchHits), filters, searchHits,
+                    null, pageable.getOffset(), size);
+            String nextCursor = catalogPage.next() != null ? catalogPage.next().encode() : null;
             
-            // Выбираем метод сортировки в зависимости от параметра
-            // ВАЖНО: Все типы сортировки должны учитывать фильтры по manufacturer и series
-            
-            // Получаем все MinerDetail с фильтрами (если есть)
-            List<MinerDetail> filteredMinerDetails;
-            
-            // Если есть поисковый запрос, сначала фильтруем по нему
-            if (search != null && !search.trim().isEmpty()) {
-                filteredMinerDetails = minerDetailRepository.findAllWithOffersBySearch(search.trim());
-                
-                // Применяем дополнительные фильтры по производителю (если есть)
-                if (manufacturer != null && !manufacturer.isEmpty()) {
-                    filteredMinerDetails = filteredMinerDetails.stream()
-                            .filter(md -> md.getManufacturer() != null && manufacturer.contains(md.getManufacturer()))
-                            .collect(java.util.stream.Collectors.toList());
-                }
-                
-                // Применяем дополнительные фильтры по серии (если есть)
-                if (series != null && !series.isEmpty()) {
-                    filteredMinerDetails = filteredMinerDetails.stream()
-                            .filter(md -> md.getSeries() != null && series.contains(md.getSeries()))
-                            .collect(java.util.stream.Collectors.toList());
-                }
-            } else if ((manufacturer == null || manufacturer.isEmpty()) && (series == null || series.isEmpty())) {
-                // Без фильтров - получаем все
-                filteredMinerDetails = minerDetailRepository.findAllWithOffers();
-            } else {
-                // С фильтрами - используем методы фильтрации
-                if (manufacturer != null && !manufacturer.isEmpty() && series != null && !series.isEmpty()) {
-                    // Оба фильтра
-                    filteredMinerDetails = minerDetailRepository.findAllWithOffersByManufacturersAndSeries(manufacturer, series);
-                } else if (manufacturer != null && !manufacturer.isEmpty()) {
-                    // Только производитель
-                    filteredMinerDetails = minerDetailRepository.findAllWithOffersByManufacturers(manufacturer);
-                } else {
-                    // Только серия
-                    filteredMinerDetails = minerDetailRepository.findAllWithOffersBySeries(series);
-                }
-            }
-            
-            // Применяем сортировку в зависимости от параметра
-            switch (sortBy) {
-                case "name":
-                    // Сортировка по алфавиту (по названию)
-                    filteredMinerDetails.sort((md1, md2) -> {
-                        String name1 = md1.getStandardName() != null ? md1.getStandardName() : "";
-                        String name2 = md2.getStandardName() != null ? md2.getStandardName() : "";
-                        return name1.compareToIgnoreCase(name2);
-                    });
-                    break;
-                case "manufacturer":
-                    // Сортировка по производителю, затем по названию
-                    filteredMinerDetails.sort((md1, md2) -> {
-                        String man1 = md1.getManufacturer() != null ? md1.getManufacturer() : "";
-                        String man2 = md2.getManufacturer() != null ? md2.getManufacturer() : "";
-                        int cmp = man1.compareToIgnoreCase(man2);
-                        if (cmp == 0) {
-                            String name1 = md1.getStandardName() != null ? md1.getStandardName() : "";
-                            String name2 = md2.getStandardName() != null ? md2.getStandardName() : "";
-                            return name1.compareToIgnoreCase(name2);
-                        }
-                        return cmp;
-                    });
-                    break;
-                case "latestOffer":
-                default:
-                    // Сортировка по последнему обновлению предложений (по умолчанию)
-                    // Если есть поиск или другие фильтры, используем filteredMinerDetails и сортируем вручную
-                    if (search != null && !search.trim().isEmpty() || 
-                        (manufacturer != null && !manufacturer.isEmpty()) || 
-                        (series != null && !series.isEmpty())) {
-                        // Используем метод сервиса для сортировки по последнему обновлению предложений
-                        // Но сначала фильтруем результаты
-                        filteredMinerDetails = minerDetailService.sortByLatestOfferUpdate(filteredMinerDetails);
-                        // Применяем пагинацию вручную
-                        int start = (int) pageable.getOffset();
-                        int end = Math.min(start + pageable.getPageSize(), filteredMinerDetails.size());
-                        
-                        if (start >= filteredMinerDetails.size()) {
-                            minerDetailsPage = new org.springframework.data.domain.PageImpl<>(List.of(), pageable, filteredMinerDetails.size());
-                        } else {
-                            if (start < 0) start = 0;
-                            if (end <= start) end = Math.min(start + pageable.getPageSize(), filteredMinerDetails.size());
-                            if (end > filteredMinerDetails.size()) end = filteredMinerDetails.size();
-                            
-                            try {
-                                if (start >= 0 && start < filteredMinerDetails.size() && end > start && end <= filteredMinerDetails.size()) {
-                                    List<MinerDetail> pageContent = filteredMinerDetails.subList(start, end);
-                                    minerDetailsPage = new org.springframework.data.domain.PageImpl<>(pageContent, pageable, filteredMinerDetails.size());
-                                } else {
-                                    minerDetailsPage = new org.springframework.data.domain.PageImpl<>(filteredMinerDetails, pageable, filteredMinerDetails.size());
-                                }
-                            } catch (IndexOutOfBoundsException e) {
-                                log.error("Ошибка IndexOutOfBoundsException при сортировке по latestOffer: start={}, end={}, size={}", 
-                                        start, end, filteredMinerDetails.size(), e);
-                                minerDetailsPage = new org.springframework.data.domain.PageImpl<>(filteredMinerDetails, pageable, filteredMinerDetails.size());
-                            }
-                        }
-                    } else {
-                        // Без фильтров - используем метод сервиса напрямую
-                        minerDetailsPage = minerDetailService.findAllSortedByLatestOfferUpdate(pageable, manufacturer, series);
-                    }
-                    // Переходим к обработке результатов
-                    filteredMinerDetails = new java.util.ArrayList<>(); // Пустой список для избежания null
-                    break;
-            }
-            
-            // Для сортировок "name" и "manufacturer" применяем пагинацию вручную
-            if (!"latestOffer".equals(sortBy)) {
-                if (filteredMinerDetails != null && !filteredMinerDetails.isEmpty()) {
-                    // Применяем пагинацию
-                    int start = (int) pageable.getOffset();
-                    int end = Math.min(start + pageable.getPageSize(), filteredMinerDetails.size());
-                    
-                    // Проверяем, что start не больше размера списка
-                    if (start >= filteredMinerDetails.size()) {
-                        minerDetailsPage = new org.springframework.data.domain.PageImpl<>(List.of(), pageable, filteredMinerDetails.size());
-                    } else {
-                        // Убеждаемся, что start не отрицательный
-                        if (start < 0) {
-                            start = 0;
-                        }
-                        // Убеждаемся, что end не меньше start и не больше размера списка
-                        if (end <= start) {
-                            end = Math.min(start + pageable.getPageSize(), filteredMinerDetails.size());
-                        }
-                        if (end > filteredMinerDetails.size()) {
-                            end = filteredMinerDetails.size();
-                        }
-                        
-                        // Дополнительная защита от IndexOutOfBoundsException при малом количестве товаров
-                        try {
-                            if (start >= 0 && start < filteredMinerDetails.size() && end > start && end <= filteredMinerDetails.size()) {
-                                List<MinerDetail> pageContent = filteredMinerDetails.subList(start, end);
-                                minerDetailsPage = new org.springframework.data.domain.PageImpl<>(pageContent, pageable, filteredMinerDetails.size());
-                            } else {
-                                // Если границы невалидны, возвращаем все товары или пустую страницу
-                                log.warn("Некорректные границы пагинации: start={}, end={}, size={}. Возвращаем все товары.", 
-                                        start, end, filteredMinerDetails.size());
-                                minerDetailsPage = new org.springframework.data.domain.PageImpl<>(filteredMinerDetails, pageable, filteredMinerDetails.size());
-                            }
-                        } catch (IndexOutOfBoundsException e) {
-                            // Обработка исключения IndexOutOfBoundsException
-                            log.error("Ошибка IndexOutOfBoundsException при создании подсписка: start={}, end={}, size={}", 
-                                    start, end, filteredMinerDetails.size(), e);
-                            // Возвращаем все товары вместо пустой страницы
-                            minerDetailsPage = new org.springframework.data.domain.PageImpl<>(filteredMinerDetails, pageable, filteredMinerDetails.size());
-                        }
-                    }
-                } else {
-                    // Если filteredMinerDetails пуст или null, создаем пустую страницу
-                    minerDetailsPage = new org.springframework.data.domain.PageImpl<>(List.of(), pageable, 0);
-                }
-            }
-            
-            List<MinerDetail> minerDetails = minerDetailsPage.getContent();
-            
-            // ОПТИМИЗАЦИЯ: Загружаем все данные одним запросом вместо N+1
-            Map<Long, List<Offer>> allOffersByMinerDetailId = new HashMap<>();
             Map<Long, ProductOperationInfo> minerDetailOperationInfo = new HashMap<>();
             Map<Long, String> productSlugs = new HashMap<>();
-            
-            // Собираем все ID MinerDetail
-            List<Long> minerDetailIds = minerDetails.stream()
-                    .map(MinerDetail::getId)
-                    .toList();
-            
-            // Загружаем все Product для всех MinerDetail одним запросом
-            List<Product> allProducts = minerDetailIds.isEmpty() 
-                    ? List.of() 
-                    : productRepository.findByMinerDetailIdIn(minerDetailIds);
-            
-            // Собираем все ID Product
-            List<Long> allProductIds = allProducts.stream()
-                    .map(Product::getId)
-                    .toList();
-            
-            // Загружаем все offers для всех Product одним запросом
-            List<Offer> allOffers = allProductIds.isEmpty() 
-                    ? List.of() 
-                    : offerRepository.findByProductIdIn(allProductIds);
-            
-            // Инициализируем продавцов
-            allOffers.forEach(offer -> {
-                if (offer.getSeller() != null) {
-                    offer.getSeller().getName();
-                }
-            });
-            
-            // Группируем offers по productId, затем по minerDetailId
-            Map<Long, List<Offer>> offersByProductId = allOffers.stream()
-                    .collect(java.util.stream.Collectors.groupingBy(
-                            o -> o.getProduct() != null ? o.getProduct().getId() : null,
-                            java.util.stream.Collectors.toList()
-                    ));
-            
-            // Группируем offers по minerDetailId
-            for (Product product : allProducts) {
-                if (product.getMinerDetail() != null) {
-                    Long minerDetailId = product.getMinerDetail().getId();
-                    List<Offer> productOffers = offersByProductId.getOrDefault(product.getId(), List.of());
-                    allOffersByMinerDetailId.computeIfAbsent(minerDetailId, k -> new java.util.ArrayList<>())
-                            .addAll(productOffers);
-                }
-            }
-            
-            // Вычисляем productSlug для каждого MinerDetail
-            for (MinerDetail minerDetail : minerDetails) {
-                String productSlug = (minerDetail.getSlug() != null && !minerDetail.getSlug().isEmpty()) 
-                    ? minerDetail.getSlug() 
-                    : String.valueOf(minerDetail.getId());
-                productSlugs.put(minerDetail.getId(), productSlug);
-            }
-            
-            // Обрабатываем каждый MinerDetail для вычисления статистики
-            for (MinerDetail minerDetail : minerDetails) {
-                List<Offer> allMinerDetailOffers = allOffersByMinerDetailId.getOrDefault(minerDetail.getId(), List.of());
-                
-                // Вычисляем статистику для MinerDetail (суммируем offers со всех связанных Product)
-                if (!allMinerDetailOffers.isEmpty()) {
-                    long sellCount = allMinerDetailOffers.stream()
-                            .filter(o -> o.getOperationType() != null && o.getOperationType() == OperationType.SELL)
-                            .count();
-                    long buyCount = allMinerDetailOffers.stream()
-                            .filter(o -> o.getOperationType() != null && o.getOperationType() == OperationType.BUY)
-                            .count();
-                    
-                    int totalQuantity = allMinerDetailOffers.stream()
-                            .filter(o -> o.getQuantity() != null)
-                            .mapToInt(Offer::getQuantity)
-                            .sum();
-                    
-                    // Вычисляем минимальную цену: сначала за последние 24 часа, потом за все время
-                    // Исключаем цены равные 0
-                    java.util.Optional<java.math.BigDecimal> minPrice = java.util.Optional.empty();
-                    String currency = null;
-                    
-                    // Фильтруем только предложения на продажу (SELL)
-                    List<Offer> sellOffers = allMinerDetailOffers.stream()
-                            .filter(o -> o.getOperationType() != null && o.getOperationType() == OperationType.SELL)
-                            .filter(o -> o.getPrice() != null && o.getPrice().compareTo(java.math.BigDecimal.ZERO) > 0)
-                            .collect(java.util.stream.Collectors.toList());
-                    
-                    if (!sellOffers.isEmpty()) {
-                        // Сначала ищем предложения за последние 24 часа
-                        LocalDateTime oneDayAgo = LocalDateTime.now().minusDays(1);
-                        List<Offer> recentOffers = sellOffers.stream()
-                                .filter(o -> o.getUpdatedAt() != null && o.getUpdatedAt().isAfter(oneDayAgo))
-                                .collect(java.util.stream.Collectors.toList());
-                        
-                        if (!recentOffers.isEmpty()) {
-                            // Находим минимальную цену за последние 24 часа
-                            minPrice = recentOffers.stream()
-                                    .map(Offer::getPrice)
-                                    .min(java.util.Comparator.naturalOrder());
-                            
-                            if (minPrice.isPresent()) {
-                                final java.math.BigDecimal finalMinPrice = minPrice.get();
-                                currency = recentOffers.stream()
-                                        .filter(o -> o.getPrice() != null && o.getPrice().equals(finalMinPrice))
-                                        .map(Offer::getCurrency)
-                                        .findFirst()
-                                        .orElse("RUB");
-                            } else {
-                                minPrice = java.util.Optional.empty();
-                            }
-                        } else {
-                            // Если за сутки нет предложений, ищем во всех предложениях
-                            minPrice = sellOffers.stream()
-                                    .map(Offer::getPrice)
-                                    .min(java.util.Comparator.naturalOrder());
-                            
-                            if (minPrice.isPresent()) {
-                                final java.math.BigDecimal finalMinPrice = minPrice.get();
-                                currency = sellOffers.stream()
-                                        .filter(o -> o.getPrice() != null && o.getPrice().equals(finalMinPrice))
-                                        .map(Offer::getCurrency)
-                                        .findFirst()
-                                        .orElse("RUB");
-                            }
-                        }
-                    }
-                    
-                    ProductOperationInfo info = new ProductOperationInfo();
-                    info.setHasSellOffers(sellCount > 0);
-                    info.setHasBuyOffers(buyCount > 0);
-                    info.setSellCount(sellCount);
-                    info.setBuyCount(buyCount);
-                    info.setTotalQuantity(totalQuantity);
-                    // Сохраняем цену только если она не null и не 0
-                    if (minPrice.isPresent() && minPrice.get().compareTo(java.math.BigDecimal.ZERO) > 0) {
-                        info.setMinPrice(minPrice.get());
-                    } else {
-                        info.setMinPrice(null);
-                    }
-                    info.setCurrency(currency);
-                    info.setManufacturer(minerDetail.getManufacturer());
-                    
-                    // Определяем основной тип операции
-                    if (sellCount > 0 && buyCount == 0) {
-                        info.setPrimaryOperationType(OperationType.SELL);
-                    } else if (buyCount > 0 && sellCount == 0) {
-                        info.setPrimaryOperationType(OperationType.BUY);
-                    } else if (sellCount > 0 && buyCount > 0) {
-                        info.setPrimaryOperationType(OperationType.SELL);
-                    }
-                    
-                    minerDetailOperationInfo.put(minerDetail.getId(), info);
-                }
-            }
-            
-            // Статистика
-            long totalMinerDetails = minerDetailRepository.count();
-            long totalProducts = productService.getTotalProducts();
-            long totalOffers = productService.getTotalOffers();
-            
-            // Получаем списки производителей и серий для фильтров
-            List<String> allManufacturers = minerDetailService.getDistinctManufacturers();
-            List<String> allSeries = minerDetailService.getDistinctSeries();
-            
-            // Получаем маппинг серий к производителям для фильтрации чекбоксов
-            Map<String, java.util.Set<String>> seriesToManufacturers = new HashMap<>();
-            List<Object[]> seriesManufacturerMapping = minerDetailRepository.findSeriesManufacturerMapping();
-            for (Object[] row : seriesManufacturerMapping) {
-                String seriesValue = (String) row[0];
-                String manufacturerValue = (String) row[1];
-                if (seriesValue != null && manufacturerValue != null) {
-                    seriesToManufacturers.computeIfAbsent(seriesValue, k -> new java.util.HashSet<>()).add(manufacturerValue);
-                }
+            Map<Long, String> imageUrls = new HashMap<>();
+            for (CatalogSnapshot.Card card : catalogPage.content()) {
+                productSlugs.put(card.id(), card.slug());
+                imageUrls.put(card.id(), card.imageUrl());
+                minerDetailOperationInfo.put(card.id(), ProductOperationInfo.fromCard(card));
             }
-            
-            // Создаем DTO для передачи в шаблон
-            List<com.miners.shop.dto.MinerDetailDTO> minerDetailDTOs = minerDetails.stream()
-                    .map(com.miners.shop.dto.MinerDetailDTO::fromEntity)
+            List<com.miners.shop.dto.MinerDetailDTO> minerDetailDTOs = catalogPage.content().stream()
+                    .map(CatalogSnapshot.Card::minerDetail)
                     .toList();
-            
-            // Для каждой MinerDetail добавляем URL изображения: сначала проверяем imageUrl из DTO, если нет - используем ImageUrlResolver
-            Map<Long, String> imageUrls = new HashMap<>();
-            minerDetailDTOs.forEach(dto -> {
-                String imageUrl = null;
-                if (dto.getImageUrl() != null && !dto.getImageUrl().trim().isEmpty()) {
-                    imageUrl = dto.getImageUrl();
-                } else {
-                    imageUrl = imageUrlResolver.resolveImageUrl(dto.getStandardName());
-                }
-                imageUrls.put(dto.getId(), imageUrl);
-            });
+            Page<com.miners.shop.dto.MinerDetailDTO> minerDetailsPage = new org.springframework.data.domain.PageImpl<>(
+                    minerDetailDTOs, pageable, catalogPage.totalElements());
             
             model.addAttribute("minerDetails", minerDetailDTOs);
             model.addAttribute("imageUrls", imageUrls);
@@ -560,25 +243,30 @@ public class ProductsController {
             model.addAttribute("currentPage", page);
             model.addAttribute("currentSortBy", sortBy);
             model.addAttribute("search", search != null ? search : ""); // Параметр поиска для отображения в форме
-            model.addAttribute("totalMinerDetails", totalMinerDetails);
-            model.addAttribute("totalProducts", totalProducts);
-            model.addAttribute("totalOffers", totalOffers);
+            model.addAttribute("totalMinerDetails", snapshot.getTotalMinerDetails());
+            model.addAttribute("totalProducts", snapshot.getTotalProducts());
+            model.addAttribute("totalOffers", snapshot.getTotalOffers());
             model.addAttribute("minerDetailOperationInfo", minerDetailOperationInfo);
+            model.addAttribute("nextCursor", nextCursor);
+            model.addAttribute("catalogVersion", snapshot.getVersion());
+            model.addAttribute("catalogBuiltAt", snapshot.getBuiltAt());
             
             // Данные для фильтров
-            model.addAttribute("allManufacturers", allManufacturers);
-            model.addAttribute("allSeries", allSeries);
-            model.addAttribute("seriesToManufacturers", seriesToManufacturers); // Маппинг для фильтрации серий
+            model.addAttribute("allManufacturers", snapshot.getManufacturers());
+            model.addAttribute("allSeries", snapshot.getSeries());
+            model.addAttribute("seriesToManufacturers", snapshot.getSeriesToManufacturers()); // Маппинг для фильтрации серий
             model.addAttribute("selectedManufacturers", manufacturer != null ? manufacturer : java.util.Collections.emptyList());
             model.addAttribute("selectedSeries", series != null ? series : java.util.Collections.emptyList());
+            model.addAttribute("selectedAlgorithms", algorithm != null ? algorithm : java.util.Collections.emptyList());
+            model.addAttribute("selectedOperationTypes", operationType != null ? operationType : java.util.Collections.emptyList());
             
-            // Преобразуем маппинг в JSON строку для использования в JavaScript
+            // Счетчики фильтров для текущего выбора в JSON для JavaScript (дальше страница обновляет их через /api/products/facets)
             try {
-                String seriesToManufacturersJson = objectMapper.writeValueAsString(seriesToManufacturers);
-                model.addAttribute("seriesToManufacturersJson", seriesToManufacturersJson);
+                String facetsJson = objectMapper.writeValueAsString(snapshot.facets(filters, searchHits).facets());
+                model.addAttribute("facetsJson", facetsJson);
             } catch (Exception e) {
-                log.error("Ошибка при сериализации seriesToManufacturers в JSON: {}", e.getMessage(), e);
-                model.addAttribute("seriesToManufacturersJson", "{}");
+                log.error("Ошибка при сериализации счетчиков фильтров в JSON: {}", e.getMessage(), e);
+                model.addAttribute("facetsJson", "{}");
             }
             
             // SEO мета-теги
@@ -625,40 +313,13 @@ public class ProductsController {
             HttpServletResponse response,
             Model model) {
         try {
-            // Пытаемся определить, это ID или slug
-            Optional<MinerDetail> minerDetailOpt = Optional.empty();
-            
-            // Сначала пытаемся найти по slug
-            minerDetailOpt = minerDetailRepository.findBySlug(idOrSlug);
-            
-            // Если не найден по slug, пытаемся найти по ID
-            if (minerDetailOpt.isEmpty()) {
-                try {
-                    Long id = Long.parseLong(idOrSlug);
-                    minerDetailOpt = minerDetailRepository.findById(id);
-                } catch (NumberFormatException e) {
-                    // Не является числом, значит это slug, но не найден
-                }
-            }
-            
-            if (minerDetailOpt.isEmpty()) {
-                log.warn("Майнер не найден: idOrSlug={}", idOrSlug);
-                // Устанавливаем статус 404 в запросе для обработки CustomErrorController
-                request.setAttribute(RequestDispatcher.ERROR_STATUS_CODE, HttpStatus.NOT_FOUND.value());
-                request.setAttribute(RequestDispatcher.ERROR_REQUEST_URI, request.getRequestURI());
-                // Перенаправляем на /error для обработки CustomErrorController
-                return "forward:/error";
-            }
-            
-            MinerDetail minerDetail = minerDetailOpt.get();
-            
-            // Устанавливаем URL изображения на основе standardName из MinerDetail
-            // Используем imageUrl из MinerDetail, если указан, иначе используем ImageUrlResolver
-            String imageUrl = null;
-            if (minerDetail.getImageUrl() != null && !minerDetail.getImageUrl().trim().isEmpty()) {
-                imageUrl = minerDetail.getImageUrl();
-            } else {
-                imageUrl = imageUrlResolver.resolveImageUrl(minerDetail.getStandardName());
+            // Прежний slug (товар переименован) - постоянный редирект на текущий адрес, без обращения к БД
+            MinerDetailSlugIndex.Resolution resolution = minerDetailSlugIndex.resolve(idOrSlug);
+            if (resolution != null && resolution.movedToSlug() != null) {
+                String queryString = request.getQueryString();
+                log.info("Прежний slug {} -> {} (301)", idOrSlug, resolution.movedToSlug());
+                request.setAttribute(View.RESPONSE_STATUS_ATTRIBUTE, HttpStatus.MOVED_PERMANENTLY);
+                return "redirect:/products/" + resolution.movedToSlug() + (queryString != null ? "?" + queryString : "");
             }
             
             // Определяем дату начала фильтрации
@@ -686,69 +347,25 @@ public class ProductsController {
             Sort sort = Sort.by(direction, sortBy);
             Pageable pageable = PageRequest.of(page, size, sort);
             
-            // Получаем ВСЕ предложения для ВСЕХ связанных товаров с пагинацией и фильтрацией
-            Page<Offer> offersPage = productService.getOffersByMinerDetailIdWithFilters(minerDetail.getId(), dateFrom, null, null, pageable);
-            List<Offer> offers = offersPage.getContent();
-            
-            // Разделяем предложения на продажи и покупки для статистики
-            List<Offer> sellOffers = offers.stream()
-                    .filter(o -> o.getOperationType() != null && o.getOperationType().name().equals("SELL"))
-                    .toList();
-            List<Offer> buyOffers = offers.stream()
-                    .filter(o -> o.getOperationType() != null && o.getOperationType().name().equals("BUY"))
-                    .toList();
-            
-            // Для расчета минимальной цены нужно получить все продажи (не только на странице)
-            // Фильтруем только предложения на продажу (SELL) с ценой больше 0
-            List<Offer> allSellOffers = productService.getOffersByMinerDetailId(minerDetail.getId()).stream()
-                    .filter(o -> o.getOperationType() != null && o.getOperationType() == OperationType.SELL)
-                    .filter(o -> o.getPrice() != null && o.getPrice().compareTo(java.math.BigDecimal.ZERO) > 0)
-                    .toList();
-            
-            // Вычисляем минимальную цену: сначала за последние 24 часа, потом за все время
-            java.util.Optional<java.math.BigDecimal> minPrice = java.util.Optional.empty();
-            String currency = null;
+            // MinerDetail, страница предложений, минимальная цена, майнер компании и JSON-LD - за фиксированное число запросов
+            Optional<MinerDetailPageService.MinerDetailPage> pageDataOpt = minerDetailPageService.load(idOrSlug, dateFrom, pageable);
             
-            if (!allSellOffers.isEmpty()) {
-                // Сначала ищем предложения за последние 24 часа
-                LocalDateTime oneDayAgo = LocalDateTime.now().minusDays(1);
-                List<Offer> recentOffers = allSellOffers.stream()
-                        .filter(o -> o.getUpdatedAt() != null && o.getUpdatedAt().isAfter(oneDayAgo))
-                        .collect(java.util.stream.Collectors.toList());
-                
-                if (!recentOffers.isEmpty()) {
-                    // Находим минимальную цену за последние 24 часа
-                    minPrice = recentOffers.stream()
-                            .map(Offer::getPrice)
-                            .min(java.util.Comparator.naturalOrder());
-                    
-                    if (minPrice.isPresent()) {
-                        final java.math.BigDecimal finalMinPrice = minPrice.get();
-                        currency = recentOffers.stream()
-                                .filter(o -> o.getPrice() != null && o.getPrice().equals(finalMinPrice))
-                                .map(Offer::getCurrency)
-                                .findFirst()
-                                .orElse("RUB");
-                    } else {
-                        minPrice = java.util.Optional.empty();
-                    }
-                } else {
-                    // Если за сутки нет предложений, ищем во всех предложениях
-                    minPrice = allSellOffers.stream()
-                            .map(Offer::getPrice)
-                            .min(java.util.Comparator.naturalOrder());
-                    
-                    if (minPrice.isPresent()) {
-                        final java.math.BigDecimal finalMinPrice = minPrice.get();
-                        currency = allSellOffers.stream()
-                                .filter(o -> o.getPrice() != null && o.getPrice().equals(finalMinPrice))
-                                .map(Offer::getCurrency)
-                                .findFirst()
-                                .orElse("RUB");
-                    }
-                }
+            if (pageDataOpt.isEmpty()) {
+                log.warn("Майнер не найден: idOrSlug={}", idOrSlug);
+                // Устанавливаем статус 404 в запросе для обработки CustomErrorController
+                request.setAttribute(RequestDispatcher.ERROR_STATUS_CODE, HttpStatus.NOT_FOUND.value());
+                request.setAttribute(RequestDispatcher.ERROR_REQUEST_URI, request.getRequestURI());
+                // Перенаправляем на /error для обработки CustomErrorController
+                return "forward:/error";
             }
             
+            MinerDetailPageService.MinerDetailPage pageData = pageDataOpt.get();
+            MinerDetail minerDetail = pageData.minerDetail();
+            PublicPageCache.tag(request, PublicPageCache.minerDetailTag(minerDetail.getId()));
+            String imageUrl = pageData.imageUrl();
+            Page<Offer> offersPage = pageData.offersPage();
+            List<Offer> offers = offersPage.getContent();
+            
             // Используем данные из MinerDetail для отображения
             String displayName = minerDetail.getStandardName() != null 
                     ? minerDetail.getStandardName() 
@@ -770,37 +387,22 @@ public class ProductsController {
             model.addAttribute("displayManufacturer", displayManufacturer);
             model.addAttribute("offers", offers);
             model.addAttribute("offersPage", offersPage);
-            model.addAttribute("sellOffers", sellOffers);
-            model.addAttribute("buyOffers", buyOffers);
-            // Сохраняем цену только если она не null и не 0
-            if (minPrice.isPresent() && minPrice.get().compareTo(java.math.BigDecimal.ZERO) > 0) {
-                model.addAttribute("minPrice", minPrice.get());
-            } else {
-                model.addAttribute("minPrice", null);
-            }
-            model.addAttribute("currency", currency != null ? currency : "RUB");
+            model.addAttribute("sellOffers", pageData.sellOffers());
+            model.addAttribute("buyOffers", pageData.buyOffers());
+            // Цена только если она не null и не 0
+            model.addAttribute("minPrice", pageData.minPrice());
+            model.addAttribute("currency", pageData.currency());
             model.addAttribute("dateFilter", dateFilter != null ? dateFilter : "");
             model.addAttribute("sortBy", sortBy);
             model.addAttribute("sortDir", sortDir);
             model.addAttribute("currentPage", page);
             model.addAttribute("pageSize", size);
             
-            // Проверяем наличие CompanyMiner для этого MinerDetail
-            Optional<CompanyMiner> companyMinerOpt = companyMinerRepository.findByMinerDetailIdAndActiveTrue(minerDetail.getId());
-            boolean useCompanyMiner = companyMinerOpt.isPresent();
-            CompanyMinerDTO.CompanyMinerInfo companyMinerInfo = null;
-            
-            if (useCompanyMiner) {
-                companyMinerInfo = companyMinerService.getCompanyMinerByMinerDetailId(minerDetail.getId())
-                        .orElse(null);
-            }
-            
-            model.addAttribute("useCompanyMiner", useCompanyMiner);
-            model.addAttribute("companyMiner", companyMinerInfo);
+            model.addAttribute("useCompanyMiner", pageData.companyMiner() != null);
+            model.addAttribute("companyMiner", pageData.companyMiner());
             
             // Schema.org разметка для страницы товара
-            String productSchema = SchemaOrgUtil.generateProductSchema(minerDetail, offers, imageUrl);
-            model.addAttribute("productSchema", productSchema);
+            model.addAttribute("productSchema", pageData.productSchema());
             
             // Вычисляем slug один раз
             String slug = minerDetail.getSlug() != null && !minerDetail.getSlug().isEmpty() 
@@ -861,7 +463,9 @@ public class ProductsController {
      * @param sortDir Направление сортировки: ASC или DESC
      * @param page Номер страницы
      * @param size Размер страницы
-     * @return JSON с предложениями и метаданными пагинации
+     * @param cursor Курсор nextCursor предыдущего ответа: следующая страница читается по ключу, page только для ответа
+     * @param withTotal Считать общее количество (false - клиент уже знает его, totalElements = null)
+     * @return JSON с предложениями, метаданными пагинации и nextCursor (null - страница последняя)
      */
     @GetMapping(value = "/api/products/{id}/offers", produces = "application/json;charset=UTF-8")
     @ResponseBody
@@ -874,7 +478,9 @@ public class ProductsController {
             @RequestParam(required = false, defaultValue = "updatedAt") String sortBy,
             @RequestParam(required = false, defaultValue = "DESC") String sortDir,
             @RequestParam(required = false, defaultValue = "0") int page,
-            @RequestParam(required = false, defaultValue = "20") int size) {
+            @RequestParam(required = false, defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor, // курсор следующей страницы из nextCursor предыдущего ответа
+            @RequestParam(required = false, defaultValue = "true") boolean withTotal) {
         try {
             // Проверяем, что MinerDetail существует
             log.info("Запрос предложений для MinerDetail ID={}", id);
@@ -926,15 +532,17 @@ public class ProductsController {
             log.debug("Запрос предложений для MinerDetail ID={}, фильтр даты={}, тип операции={}, с ценой={}, сортировка={} {}, страница={}, размер={}", 
                     id, dateFilter, operationTypeEnum, hasPrice, sortBy, sortDir, page, size);
             
-            // Используем новый метод для получения предложений по MinerDetail ID
-            Page<Offer> offersPage = productService.getOffersByMinerDetailIdWithFilters(id, dateFrom, operationTypeEnum, hasPrice, pageable);
+            // С курсором страница читается по ключу (после последней строки предыдущей), без курсора - по номеру
+            ProductService.OfferCursor after = ProductService.OfferCursor.decode(cursor);
+            ProductService.OfferSlice slice = productService.findOfferSlice(id, dateFrom, operationTypeEnum, hasPrice, sort,
+                    after, after == null ? pageable.getOffset() : 0, size, withTotal);
             
-            log.debug("Получено предложений: {}", offersPage.getContent().size());
+            log.debug("Получено предложений: {}", slice.content().size());
             
             // Преобразуем сущности в DTO для избежания циклических ссылок
             List<OfferDTO> offerDTOs = new java.util.ArrayList<>();
             try {
-                for (Offer offer : offersPage.getContent()) {
+                for (Offer offer : slice.content()) {
                     try {
                         OfferDTO dto = OfferDTO.fromEntity(offer);
                         if (dto != null) {
@@ -954,13 +562,17 @@ public class ProductsController {
             // Формируем ответ
             Map<String, Object> response = new HashMap<>();
             response.put("content", offerDTOs);
-            response.put("totalElements", offersPage.getTotalElements());
-            response.put("totalPages", offersPage.getTotalPages());
-            response.put("currentPage", offersPage.getNumber());
-            response.put("pageSize", offersPage.getSize());
-            response.put("first", offersPage.isFirst());
-            response.put("last", offersPage.isLast());
-            response.put("numberOfElements", offersPage.getNumberOfElements());
+            // totalElements/totalPages - null, если клиент не запрашивал количество (withTotal=false)
+            Long total = slice.totalElements();
+            response.put("totalElements", total);
+            response.put("totalPages", total != null ? (total + size - 1) / size : null);
+            response.put("totalExact", slice.totalExact());
+            response.put("currentPage", page);
+            response.put("pageSize", size);
+            response.put("first", page == 0);
+            response.put("last", slice.next() == null);
+            response.put("numberOfElements", offerDTOs.size());
+            response.put("nextCursor", slice.next() != null ? slice.next().encode() : null);
             
             log.debug("Ответ подготовлен, количество элементов: {}", offerDTOs.size());
             
@@ -983,223 +595,47 @@ public class ProductsController {
      * @param sortBy Тип сортировки: latestOffer, name, manufacturer
      * @param manufacturer Список производителей для фильтрации
      * @param series Список серий для фильтрации
+     * @param algorithm Список алгоритмов для фильтрации
+     * @param operationType Типы операций для фильтрации (SELL, BUY)
+     * @param search Поисковый запрос (поисковый индекс MinerSearchService; при сортировке по умолчанию - по релевантности)
+     * @param cursor Курсор следующей страницы (nextCursor из предыдущего ответа, только для latestOffer)
      * @return JSON с товарами и метаданными пагинации
      */
     @GetMapping(value = "/api/products", produces = "application/json;charset=UTF-8")
     @ResponseBody
-    @Transactional(readOnly = true)
     public ResponseEntity<Map<String, Object>> getProductsJson(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "12") int size,
             @RequestParam(required = false, defaultValue = "latestOffer") String sortBy,
             @RequestParam(required = false) List<String> manufacturer,
-            @RequestParam(required = false) List<String> series) {
+            @RequestParam(required = false) List<String> series,
+            @RequestParam(required = false) List<String> algorithm,
+            @RequestParam(required = false) List<String> operationType,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) String cursor) {
         try {
+            // Страница из снимка каталога в памяти; бесконечная прокрутка передает курсор из предыдущего ответа
+            CatalogSnapshot snapshot = catalogSnapshotService.get();
             Pageable pageable = PageRequest.of(page, size);
+            List<Long> searchHits = searchHits(search);
+            String catalogSort = catalogSort(sortBy, searchHits);
+            boolean sortByLatestOffer = CatalogSnapshot.isLatestOfferSort(catalogSort);
+            CatalogSnapshot.Page catalogPage = snapshot.page(catalogSort,
+                    CatalogSnapshot.filters(manufacturer, series, algorithm, operationType), searchHits,
+                    CatalogSnapshot.LatestOfferCursor.decode(cursor), pageable.getOffset(), size);
+            String nextCursor = catalogPage.next() != null ? catalogPage.next().encode() : null;
             
-            // Получаем данные так же, как в методе products()
-            Page<MinerDetail> minerDetailsPage = new org.springframework.data.domain.PageImpl<>(List.of());
-            List<MinerDetail> filteredMinerDetails;
-            
-            if ((manufacturer == null || manufacturer.isEmpty()) && (series == null || series.isEmpty())) {
-                filteredMinerDetails = minerDetailRepository.findAllWithOffers();
-            } else {
-                if (manufacturer != null && !manufacturer.isEmpty() && series != null && !series.isEmpty()) {
-                    filteredMinerDetails = minerDetailRepository.findAllWithOffersByManufacturersAndSeries(manufacturer, series);
-                } else if (manufacturer != null && !manufacturer.isEmpty()) {
-                    filteredMinerDetails = minerDetailRepository.findAllWithOffersByManufacturers(manufacturer);
-                } else {
-                    filteredMinerDetails = minerDetailRepository.findAllWithOffersBySeries(series);
-                }
-            }
-            
-            // Применяем сортировку
-            switch (sortBy) {
-                case "name":
-                    filteredMinerDetails.sort((md1, md2) -> {
-                        String name1 = md1.getStandardName() != null ? md1.getStandardName() : "";
-                        String name2 = md2.getStandardName() != null ? md2.getStandardName() : "";
-                        return name1.compareToIgnoreCase(name2);
-                    });
-                    break;
-                case "manufacturer":
-                    filteredMinerDetails.sort((md1, md2) -> {
-                        String man1 = md1.getManufacturer() != null ? md1.getManufacturer() : "";
-                        String man2 = md2.getManufacturer() != null ? md2.getManufacturer() : "";
-                        int cmp = man1.compareToIgnoreCase(man2);
-                        if (cmp == 0) {
-                            String name1 = md1.getStandardName() != null ? md1.getStandardName() : "";
-                            String name2 = md2.getStandardName() != null ? md2.getStandardName() : "";
-                            return name1.compareToIgnoreCase(name2);
-                        }
-                        return cmp;
-                    });
-                    break;
-                case "latestOffer":
-                default:
-                    minerDetailsPage = minerDetailService.findAllSortedByLatestOfferUpdate(pageable, manufacturer, series);
-                    filteredMinerDetails = new java.util.ArrayList<>();
-                    break;
-            }
-            
-            // Для сортировок "name" и "manufacturer" применяем пагинацию вручную
-            if (!"latestOffer".equals(sortBy)) {
-                if (filteredMinerDetails != null && !filteredMinerDetails.isEmpty()) {
-                    int start = (int) pageable.getOffset();
-                    int end = Math.min(start + pageable.getPageSize(), filteredMinerDetails.size());
-                    
-                    if (start >= filteredMinerDetails.size()) {
-                        minerDetailsPage = new org.springframework.data.domain.PageImpl<>(List.of(), pageable, filteredMinerDetails.size());
-                    } else {
-                        if (start < 0) start = 0;
-                        if (end <= start) end = Math.min(start + pageable.getPageSize(), filteredMinerDetails.size());
-                        if (end > filteredMinerDetails.size()) end = filteredMinerDetails.size();
-                        
-                        try {
-                            if (start >= 0 && start < filteredMinerDetails.size() && end > start && end <= filteredMinerDetails.size()) {
-                                List<MinerDetail> pageContent = filteredMinerDetails.subList(start, end);
-                                minerDetailsPage = new org.springframework.data.domain.PageImpl<>(pageContent, pageable, filteredMinerDetails.size());
-                            } else {
-                                minerDetailsPage = new org.springframework.data.domain.PageImpl<>(filteredMinerDetails, pageable, filteredMinerDetails.size());
-                            }
-                        } catch (IndexOutOfBoundsException e) {
-                            log.error("Ошибка IndexOutOfBoundsException при создании подсписка: start={}, end={}, size={}", 
-                                    start, end, filteredMinerDetails.size(), e);
-                            minerDetailsPage = new org.springframework.data.domain.PageImpl<>(filteredMinerDetails, pageable, filteredMinerDetails.size());
-                        }
-                    }
-                } else {
-                    minerDetailsPage = new org.springframework.data.domain.PageImpl<>(List.of(), pageable, 0);
-                }
-            }
-            
-            List<MinerDetail> minerDetails = minerDetailsPage.getContent();
-            
-            // Собираем статистику для каждого MinerDetail
             Map<Long, ProductOperationInfo> minerDetailOperationInfo = new HashMap<>();
             Map<Long, String> imageUrls = new HashMap<>();
-            
-            for (MinerDetail minerDetail : minerDetails) {
-                List<Product> linkedProducts = productRepository.findByMinerDetailId(minerDetail.getId());
-                List<Long> linkedProductIds = linkedProducts.stream().map(Product::getId).toList();
-                
-                List<Offer> allMinerDetailOffers = new java.util.ArrayList<>();
-                if (!linkedProductIds.isEmpty()) {
-                    List<Offer> offers = offerRepository.findByProductIdIn(linkedProductIds);
-                    offers.forEach(offer -> {
-                        if (offer.getSeller() != null) {
-                            offer.getSeller().getName();
-                        }
-                    });
-                    allMinerDetailOffers.addAll(offers);
-                }
-                
-                if (!allMinerDetailOffers.isEmpty()) {
-                    long sellCount = allMinerDetailOffers.stream()
-                            .filter(o -> o.getOperationType() != null && o.getOperationType() == OperationType.SELL)
-                            .count();
-                    long buyCount = allMinerDetailOffers.stream()
-                            .filter(o -> o.getOperationType() != null && o.getOperationType() == OperationType.BUY)
-                            .count();
-                    
-                    int totalQuantity = allMinerDetailOffers.stream()
-                            .filter(o -> o.getQuantity() != null)
-                            .mapToInt(Offer::getQuantity)
-                            .sum();
-                    
-                    // Вычисляем минимальную цену: сначала за последние 24 часа, потом за все время
-                    // Исключаем цены равные 0
-                    java.util.Optional<java.math.BigDecimal> minPrice = java.util.Optional.empty();
-                    String currency = null;
-                    
-                    // Фильтруем только предложения на продажу (SELL)
-                    List<Offer> sellOffers = allMinerDetailOffers.stream()
-                            .filter(o -> o.getOperationType() != null && o.getOperationType() == OperationType.SELL)
-                            .filter(o -> o.getPrice() != null && o.getPrice().compareTo(java.math.BigDecimal.ZERO) > 0)
-                            .collect(java.util.stream.Collectors.toList());
-                    
-                    if (!sellOffers.isEmpty()) {
-                        // Сначала ищем предложения за последние 24 часа
-                        LocalDateTime oneDayAgo = LocalDateTime.now().minusDays(1);
-                        List<Offer> recentOffers = sellOffers.stream()
-                                .filter(o -> o.getUpdatedAt() != null && o.getUpdatedAt().isAfter(oneDayAgo))
-                                .collect(java.util.stream.Collectors.toList());
-                        
-                        if (!recentOffers.isEmpty()) {
-                            // Находим минимальную цену за последние 24 часа
-                            minPrice = recentOffers.stream()
-                                    .map(Offer::getPrice)
-                                    .min(java.util.Comparator.naturalOrder());
-                            
-                            if (minPrice.isPresent()) {
-                                final java.math.BigDecimal finalMinPrice = minPrice.get();
-                                currency = recentOffers.stream()
-                                        .filter(o -> o.getPrice() != null && o.getPrice().equals(finalMinPrice))
-                                        .map(Offer::getCurrency)
-                                        .findFirst()
-                                        .orElse("RUB");
-                            } else {
-                                minPrice = java.util.Optional.empty();
-                            }
-                        } else {
-                            // Если за сутки нет предложений, ищем во всех предложениях
-                            minPrice = sellOffers.stream()
-                                    .map(Offer::getPrice)
-                                    .min(java.util.Comparator.naturalOrder());
-                            
-                            if (minPrice.isPresent()) {
-                                final java.math.BigDecimal finalMinPrice = minPrice.get();
-                                currency = sellOffers.stream()
-                                        .filter(o -> o.getPrice() != null && o.getPrice().equals(finalMinPrice))
-                                        .map(Offer::getCurrency)
-                                        .findFirst()
-                                        .orElse("RUB");
-                            }
-                        }
-                    } else {
-                        minPrice = java.util.Optional.empty();
-                    }
-                    
-                    ProductOperationInfo info = new ProductOperationInfo();
-                    info.setHasSellOffers(sellCount > 0);
-                    info.setHasBuyOffers(buyCount > 0);
-                    info.setSellCount(sellCount);
-                    info.setBuyCount(buyCount);
-                    info.setTotalQuantity(totalQuantity);
-                    // Сохраняем цену только если она не null и не 0
-                    if (minPrice.isPresent() && minPrice.get().compareTo(java.math.BigDecimal.ZERO) > 0) {
-                        info.setMinPrice(minPrice.get());
-                    } else {
-                        info.setMinPrice(null);
-                    }
-                    info.setCurrency(currency);
-                    info.setManufacturer(minerDetail.getManufacturer());
-                    
-                    if (sellCount > 0 && buyCount == 0) {
-                        info.setPrimaryOperationType(OperationType.SELL);
-                    } else if (buyCount > 0 && sellCount == 0) {
-                        info.setPrimaryOperationType(OperationType.BUY);
-                    } else if (sellCount > 0 && buyCount > 0) {
-                        info.setPrimaryOperationType(OperationType.SELL);
-                    }
-                    
-                    minerDetailOperationInfo.put(minerDetail.getId(), info);
-                }
-                
-                // Добавляем URL изображения: сначала проверяем imageUrl из MinerDetail, если нет - используем ImageUrlResolver
-                String imageUrl = null;
-                if (minerDetail.getImageUrl() != null && !minerDetail.getImageUrl().trim().isEmpty()) {
-                    imageUrl = minerDetail.getImageUrl();
-                } else {
-                    imageUrl = imageUrlResolver.resolveImageUrl(minerDetail.getStandardName());
-                }
-                imageUrls.put(minerDetail.getId(), imageUrl);
+            for (CatalogSnapshot.Card card : catalogPage.content()) {
+                minerDetailOperationInfo.put(card.id(), ProductOperationInfo.fromCard(card));
+                imageUrls.put(card.id(), card.imageUrl());
             }
-            
-            // Преобразуем в DTO
-            List<com.miners.shop.dto.MinerDetailDTO> minerDetailDTOs = minerDetails.stream()
-                    .map(com.miners.shop.dto.MinerDetailDTO::fromEntity)
+            List<com.miners.shop.dto.MinerDetailDTO> minerDetailDTOs = catalogPage.content().stream()
+                    .map(CatalogSnapshot.Card::minerDetail)
                     .toList();
+            Page<com.miners.shop.dto.MinerDetailDTO> minerDetailsPage = new org.springframework.data.domain.PageImpl<>(
+                    minerDetailDTOs, pageable, catalogPage.totalElements());
             
             // Формируем ответ
             Map<String, Object> response = new HashMap<>();
@@ -1234,6 +670,13 @@ public class ProductsController {
             response.put("first", minerDetailsPage.isFirst());
             response.put("last", minerDetailsPage.isLast());
             response.put("numberOfElements", minerDetailsPage.getNumberOfElements());
+            response.put("catalogVersion", snapshot.getVersion());
+            response.put("catalogBuiltAt", snapshot.getBuiltAt());
+            if (sortByLatestOffer) {
+                // Номер страницы при работе по курсору не соответствует смещению - признак конца берем из курсора
+                response.put("nextCursor", nextCursor);
+                response.put("last", nextCursor == null);
+            }
             
             return ResponseEntity.ok()
                     .header("Content-Type", "application/json;charset=UTF-8")
@@ -1246,6 +689,80 @@ public class ProductsController {
         }
     }
     
+    /**
+     * Счетчики фильтров каталога (производитель, серия, алгоритм, тип операции) для текущего выбора - одним запросом
+     * по битовым картам снимка каталога. Счетчик значения - сколько товаров будет найдено, если отметить его
+     * при остальных выбранных фильтрах.
+     * @return JSON: total - товаров с учетом всех фильтров, facets - фасет -> [{value, count, selected}]
+     */
+    @GetMapping(value = "/api/products/facets", produces = "application/json;charset=UTF-8")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> getProductFacets(
+            @RequestParam(required = false) List<String> manufacturer,
+            @RequestParam(required = false) List<String> series,
+            @RequestParam(required = false) List<String> algorithm,
+            @RequestParam(required = false) List<String> operationType,
+            @RequestParam(required = false) String search) {
+        CatalogSnapshot snapshot = catalogSnapshotService.get();
+        CatalogSnapshot.FacetCounts counts = snapshot.facets(
+                CatalogSnapshot.filters(manufacturer, series, algorithm, operationType), searchHits(search));
+        Map<String, Object> response = new HashMap<>();
+        response.put("total", counts.total());
+        response.put("facets", counts.facets());
+        response.put("catalogVersion", snapshot.getVersion());
+        return ResponseEntity.ok()
+                .header("Content-Type", "application/json;charset=UTF-8")
+                .body(response);
+    }
+    
+    /**
+     * Подсказки поиска (автодополнение): MinerDetail каталога по релевантности, последнее слово запроса - префикс
+     * @param q Введенный текст
+     * @param limit Максимальное количество подсказок
+     * @return JSON со списком подсказок
+     */
+    @GetMapping(value = "/api/products/suggest", produces = "application/json;charset=UTF-8")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> suggestProducts(
+            @RequestParam(required = false) String q,
+            @RequestParam(defaultValue = "8") int limit) {
+        CatalogSnapshot snapshot = catalogSnapshotService.get();
+        List<Long> hits = searchHits(q);
+        List<Map<String, Object>> suggestions = snapshot.find(CatalogSnapshot.SORT_RELEVANCE, null,
+                        hits != null ? hits : List.of()).stream()
+                .limit(Math.max(1, Math.min(limit, 20)))
+                .map(card -> {
+                    Map<String, Object> suggestion = new HashMap<>();
+                    suggestion.put("id", card.id());
+                    suggestion.put("name", card.minerDetail().getStandardName());
+                    suggestion.put("manufacturer", card.minerDetail().getManufacturer());
+                    suggestion.put("slug", card.slug());
+                    suggestion.put("imageUrl", card.imageUrl());
+                    return suggestion;
+                })
+                .toList();
+        Map<String, Object> response = new HashMap<>();
+        response.put("suggestions", suggestions);
+        response.put("catalogVersion", snapshot.getVersion());
+        return ResponseEntity.ok()
+                .header("Content-Type", "application/json;charset=UTF-8")
+                .body(response);
+    }
+    
+    /**
+     * Результаты поискового индекса по убыванию релевантности (null - запроса нет)
+     */
+    private List<Long> searchHits(String search) {
+        return search != null && !search.trim().isEmpty() ? minerSearchService.search(search.trim()) : null;
+    }
+    
+    /**
+     * При поиске сортировка по умолчанию заменяется на сортировку по релевантности
+     */
+    private static String catalogSort(String sortBy, List<Long> searchHits) {
+        return searchHits != null && CatalogSnapshot.isLatestOfferSort(sortBy) ? CatalogSnapshot.SORT_RELEVANCE : sortBy;
+    }
+    
     /**
      * REST API endpoint для получения доступных серий по выбранным производителям (для AJAX)
      * @param manufacturers Список производителей
@@ -1253,19 +770,20 @@ public class ProductsController {
      */
     @GetMapping(value = "/api/products/series", produces = "application/json;charset=UTF-8")
     @ResponseBody
-    @Transactional(readOnly = true)
     public ResponseEntity<Map<String, Object>> getSeriesByManufacturers(
             @RequestParam(required = false) List<String> manufacturers) {
         try {
+            CatalogSnapshot snapshot = catalogSnapshotService.get();
             List<String> availableSeries;
             if (manufacturers == null || manufacturers.isEmpty()) {
-                availableSeries = minerDetailService.getDistinctSeries();
+                availableSeries = snapshot.getSeries();
             } else {
-                availableSeries = minerDetailService.getDistinctSeriesByManufacturers(manufacturers);
+                availableSeries = snapshot.getSeriesByManufacturers(manufacturers);
             }
             
             Map<String, Object> response = new HashMap<>();
             response.put("series", availableSeries);
+            response.put("catalogVersion", snapshot.getVersion());
             
             return ResponseEntity.ok()
                     .header("Content-Type", "application/json;charset=UTF-8")
@@ -1347,6 +865,8 @@ public class ProductsController {
             MinerDetail oldMinerDetail = product.getMinerDetail();
             product.setMinerDetail(minerDetail);
             productRepository.save(product);
+            offerStatsService.markDirty(oldMinerDetail != null ? oldMinerDetail.getId() : null,
+                    minerDetail != null ? minerDetail.getId() : null);
             
             String oldName = oldMinerDetail != null ? oldMinerDetail.getStandardName() : "нет";
             String newName = minerDetail != null ? minerDetail.getStandardName() : "нет";
@@ -1395,15 +915,24 @@ public class ProductsController {
             // Нормализуем поисковый запрос
             String searchQuery = (search != null && !search.trim().isEmpty()) ? search.trim() : null;
             
-            // Получаем MinerDetails с пагинацией и поиском
-            Page<MinerDetail> minerDetailsPage = minerDetailRepository.findAllBySearchOrderByStandardNameAsc(
-                    searchQuery, pageable);
+            // С запросом - поисковый индекс (релевантность, опечатки, транслитерация), без запроса - все MinerDetail по названию
+            Page<MinerDetail> minerDetailsPage;
+            if (searchQuery != null) {
+                List<Long> hits = minerSearchService.search(searchQuery);
+                int from = (int) Math.min(pageable.getOffset(), hits.size());
+                List<Long> pageIds = hits.subList(from, Math.min(from + size, hits.size()));
+                Map<Long, MinerDetail> loaded = minerDetailRepository.findAllById(pageIds).stream()
+                        .collect(java.util.stream.Collectors.toMap(MinerDetail::getId, md -> md));
+                List<MinerDetail> pageContent = pageIds.stream().map(loaded::get).filter(java.util.Objects::nonNull).toList();
+                minerDetailsPage = new org.springframework.data.domain.PageImpl<>(pageContent, pageable, hits.size());
+            } else {
+                minerDetailsPage = minerDetailRepository.findAllBySearchOrderByStandardNameAsc(null, pageable);
+            }
             
-            // Подсчитываем количество товаров для каждого MinerDetail
+            // Количество товаров для каждого MinerDetail - из поискового индекса
             List<Map<String, Object>> minerDetailsData = new java.util.ArrayList<>();
             for (MinerDetail md : minerDetailsPage.getContent()) {
-                // Подсчитываем количество связанных товаров
-                long productCount = productRepository.findByMinerDetailId(md.getId()).size();
+                long productCount = minerSearchService.productCount(md.getId());
                 
                 Map<String, Object> mdData = new HashMap<>();
                 mdData.put("id", md.getId());
@@ -1451,6 +980,28 @@ public class ProductsController {
         private String currency = null;
         private String manufacturer = null;
         
+        /**
+         * Информация для карточки каталога из снимка каталога (статистика предложений MinerDetail)
+         */
+        public static ProductOperationInfo fromCard(CatalogSnapshot.Card card) {
+            ProductOperationInfo info = new ProductOperationInfo();
+            info.setHasSellOffers(card.sellCount() > 0);
+            info.setHasBuyOffers(card.buyCount() > 0);
+            info.setSellCount(card.sellCount());
+            info.setBuyCount(card.buyCount());
+            info.setTotalQuantity((int) Math.min(card.totalQuantity(), Integer.MAX_VALUE));
+            info.setMinPrice(card.minPrice());
+            info.setCurrency(card.currency());
+            info.setManufacturer(card.minerDetail().getManufacturer());
+            // Основной тип операции: SELL, если есть продажи, иначе BUY
+            if (card.sellCount() > 0) {
+                info.setPrimaryOperationType(OperationType.SELL);
+            } else if (card.buyCount() > 0) {
+                info.setPrimaryOperationType(OperationType.BUY);
+            }
+            return info;
+        }
+        
         public boolean isHasSellOffers() {
             return hasSellOffers;
         }
@@ -0,0 +1,194 @@
+package com.miners.shop.controller;
+
+import com.miners.shop.service.PublicPageCache;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Кэш отрисованных публичных страниц для анонимных GET-запросов (PublicPageCache)
+ *
+ * Ключ - схема, хост, путь и отсортированные параметры запроса (без меток рекламных кампаний).
+ * Хранится gzip-тело: попадание в кэш не требует ни отрисовки Thymeleaf, ни сжатия.
+ * Не кэшируются: запросы авторизованных пользователей, ответы не 200, не text/html, с Set-Cookie,
+ * слишком большие, а также страница товара с dateFilter (окно дат сдвигается со временем).
+ * Фильтр стоит после Spring Security, поэтому контекст безопасности уже заполнен.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PublicPageCacheFilter extends OncePerRequestFilter {
+
+    private static final Set<String> CACHEABLE_PATHS = Set.of(
+            "/", "/products", "/about", "/delivery", "/services",
+            "/cookies-policy", "/privacy-policy", "/personal-data-consent", "/offer", "/user-agreement", "/company-details");
+    private static final String PRODUCT_PATH_PREFIX = "/products/";
+    private static final List<String> IGNORED_PARAM_PREFIXES = List.of("utm_", "yclid", "gclid", "fbclid", "_openstat");
+    private static final List<String> REPLAYED_HEADERS = List.of(
+            HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_LANGUAGE, HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED, HttpHeaders.CACHE_CONTROL);
+
+    private final PublicPageCache publicPageCache;
+
+    @Value("${app.page-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.page-cache.max-entry-kb:1024}")
+    private int maxEntryKb;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!enabled) {
+            return true;
+        }
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return true;
+        }
+        String path = request.getRequestURI();
+        boolean productPage = path.startsWith(PRODUCT_PATH_PREFIX) && path.indexOf('/', PRODUCT_PATH_PREFIX.length()) < 0;
+        if (!CACHEABLE_PATHS.contains(path) && !productPage) {
+            return true;
+        }
+        return productPage && request.getParameter("dateFilter") != null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!isAnonymous()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String key = cacheKey(request);
+        PublicPageCache.CachedPage cached = publicPageCache.get(key);
+        if (cached != null) {
+            write(cached, request, response);
+            return;
+        }
+
+        long generation = publicPageCache.generation();
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        chain.doFilter(request, wrapper);
+
+        byte[] body = wrapper.getContentAsByteArray();
+        if (!isCacheable(wrapper, body)) {
+            wrapper.copyBodyToResponse();
+            return;
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String name : REPLAYED_HEADERS) {
+            String value = name.equals(HttpHeaders.CONTENT_TYPE) ? wrapper.getContentType() : wrapper.getHeader(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        PublicPageCache.CachedPage page = new PublicPageCache.CachedPage(gzip(body), headers, PublicPageCache.tags(request));
+        publicPageCache.put(key, page, generation);
+        // Тело в буфере обертки не копируется: ответ уже сжат, отдаем его как из кэша
+        write(page, request, response);
+    }
+
+    private boolean isCacheable(ContentCachingResponseWrapper response, byte[] body) {
+        String contentType = response.getContentType();
+        return response.getStatus() == HttpServletResponse.SC_OK
+                && contentType != null && contentType.startsWith("text/html")
+                && response.getHeaders(HttpHeaders.SET_COOKIE).isEmpty()
+                && body.length > 0 && body.length <= maxEntryKb * 1024;
+    }
+
+    /**
+     * Отдача сохраненной страницы: 304 по ETag/Last-Modified, gzip - если клиент его принимает
+     */
+    private void write(PublicPageCache.CachedPage page, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        page.headers().forEach(response::setHeader);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        String etag = page.headers().get(HttpHeaders.ETAG);
+        String lastModified = page.headers().get(HttpHeaders.LAST_MODIFIED);
+        if (etag != null || lastModified != null) {
+            long lastModifiedMillis = lastModified != null
+                    ? ZonedDateTime.parse(lastModified, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli()
+                    : -1;
+            if (new ServletWebRequest(request, response).checkNotModified(etag, lastModifiedMillis)) {
+                return;
+            }
+        }
+        byte[] body = page.gzipBody();
+        if (acceptsGzip(request)) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        } else {
+            body = gunzip(body);
+        }
+        response.setContentLength(body.length);
+        if (!"HEAD".equals(request.getMethod())) {
+            response.getOutputStream().write(body);
+        }
+    }
+
+    private static boolean isAnonymous() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null || authentication instanceof AnonymousAuthenticationToken || !authentication.isAuthenticated();
+    }
+
+    /**
+     * Нормализованный ключ: параметры отсортированы, пустые и рекламные метки отброшены
+     */
+    static String cacheKey(HttpServletRequest request) {
+        String query = request.getParameterMap().entrySet().stream()
+                .filter(entry -> IGNORED_PARAM_PREFIXES.stream().noneMatch(entry.getKey()::startsWith))
+                .sorted(Map.Entry.comparingByKey())
+                .flatMap(entry -> Arrays.stream(entry.getValue())
+                        .filter(value -> value != null && !value.isEmpty())
+                        .sorted()
+                        .map(value -> entry.getKey() + "=" + value))
+                .collect(Collectors.joining("&"));
+        String base = request.getScheme() + "://" + request.getServerName() + ":" + request.getServerPort() + request.getRequestURI();
+        return query.isEmpty() ? base : base + "?" + query;
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] body) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return in.readAllBytes();
+        }
+    }
+}
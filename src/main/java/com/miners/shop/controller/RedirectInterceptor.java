@@ -1,26 +1,24 @@
 package com.miners.shop.controller;
 
-import com.miners.shop.entity.Redirect;
-import com.miners.shop.repository.RedirectRepository;
+import com.miners.shop.service.RedirectRuleService;
+import com.miners.shop.service.RedirectTable;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 
-import java.util.Optional;
-
 /**
  * Интерцептор для обработки редиректов перед обработкой запроса
+ * Правила берутся из таблицы в памяти (RedirectRuleService): точные, по префиксу и по выражению
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class RedirectInterceptor implements HandlerInterceptor {
     
-    private final RedirectRepository redirectRepository;
+    private final RedirectRuleService redirectRuleService;
     
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
@@ -35,7 +33,7 @@ public class RedirectInterceptor implements HandlerInterceptor {
             url.startsWith("/private/redirects") || // Пропускаем страницу управления редиректами
             url.equals("/favicon.ico") ||
             url.equals("/robots.txt") ||
-            url.equals("/sitemap.xml") ||
+            url.startsWith("/sitemap") ||
             url.equals("/") ||
             url.equals("/login") ||
             url.equals("/error") ||
@@ -47,16 +45,12 @@ public class RedirectInterceptor implements HandlerInterceptor {
         String fullUrl = queryString != null ? url + "?" + queryString : url;
         
         try {
-            // Проверяем, есть ли редирект для этого URL
-            Optional<Redirect> redirectOpt = redirectRepository.findByFromUrlAndActiveTrue(fullUrl);
-            if (redirectOpt.isPresent()) {
-                Redirect redirect = redirectOpt.get();
-                int statusCode = redirect.getRedirectType() == 301 
-                        ? HttpStatus.MOVED_PERMANENTLY.value() 
-                        : HttpStatus.FOUND.value();
-                response.setStatus(statusCode);
-                response.setHeader("Location", redirect.getToUrl());
-                log.info("Выполнен редирект: {} -> {} (тип: {})", fullUrl, redirect.getToUrl(), redirect.getRedirectType());
+            // Проверяем, есть ли редирект для этого URL (таблица в памяти, без запроса к БД)
+            RedirectTable.Match redirect = redirectRuleService.find(url, queryString);
+            if (redirect != null) {
+                response.setStatus(redirect.statusCode());
+                response.setHeader("Location", redirect.location());
+                log.info("Выполнен редирект: {} -> {} (тип: {})", fullUrl, redirect.location(), redirect.statusCode());
                 return false; // Прерываем обработку запроса
             }
         } catch (Exception e) {
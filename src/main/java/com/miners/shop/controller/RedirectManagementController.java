@@ -2,8 +2,12 @@ package com.miners.shop.controller;
 
 import com.miners.shop.entity.NotFoundError;
 import com.miners.shop.entity.Redirect;
+import com.miners.shop.entity.RedirectMatchType;
+import com.miners.shop.entity.RedirectQueryMode;
 import com.miners.shop.repository.NotFoundErrorRepository;
 import com.miners.shop.repository.RedirectRepository;
+import com.miners.shop.service.NotFoundTracker;
+import com.miners.shop.service.RedirectRuleService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -35,6 +39,8 @@ public class RedirectManagementController {
     
     private final RedirectRepository redirectRepository;
     private final NotFoundErrorRepository notFoundErrorRepository;
+    private final RedirectRuleService redirectRuleService;
+    private final NotFoundTracker notFoundTracker;
     
     /**
      * Страница со списком редиректов
@@ -72,6 +78,8 @@ public class RedirectManagementController {
             @RequestParam(defaultValue = "50") int size,
             Model model) {
         
+        // Накопленные в памяти обращения записываются до чтения, чтобы список был актуальным
+        notFoundTracker.flush();
         Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "lastOccurred"));
         Page<NotFoundError> errorsPage = notFoundErrorRepository.findAllByOrderByLastOccurredDesc(pageable);
         
@@ -115,8 +123,19 @@ public class RedirectManagementController {
             redirect.setFromUrl(fromUrl.trim());
             redirect.setToUrl(toUrl.trim());
             redirect.setRedirectType(redirectType);
+            redirect.setMatchType(parseEnum(RedirectMatchType.class, request.get("matchType"), RedirectMatchType.EXACT));
+            redirect.setQueryMode(parseEnum(RedirectQueryMode.class, request.get("queryMode"), RedirectQueryMode.MATCH));
             redirect.setActive(true);
             
+            String validationError = redirectRuleService.validate(redirect);
+            if (validationError != null) {
+                Map<String, Object> error = new HashMap<>();
+                error.put("success", false);
+                error.put("error", validationError);
+                return ResponseEntity.badRequest().body(error);
+            }
+            
+            // Таблица редиректов в памяти пересобирается после коммита (RedirectRuleListener)
             redirectRepository.save(redirect);
             
             log.info("Создан редирект: {} -> {} (тип: {})", fromUrl, toUrl, redirectType);
@@ -128,7 +147,9 @@ public class RedirectManagementController {
                 "id", redirect.getId(),
                 "fromUrl", redirect.getFromUrl(),
                 "toUrl", redirect.getToUrl(),
-                "redirectType", redirect.getRedirectType()
+                "redirectType", redirect.getRedirectType(),
+                "matchType", redirect.getMatchType(),
+                "queryMode", redirect.getQueryMode()
             ));
             
             return ResponseEntity.ok().body(response);
@@ -179,6 +200,20 @@ public class RedirectManagementController {
             if (active != null) {
                 redirect.setActive(active);
             }
+            if (request.get("matchType") != null) {
+                redirect.setMatchType(parseEnum(RedirectMatchType.class, request.get("matchType"), redirect.getMatchType()));
+            }
+            if (request.get("queryMode") != null) {
+                redirect.setQueryMode(parseEnum(RedirectQueryMode.class, request.get("queryMode"), redirect.getQueryMode()));
+            }
+            
+            String validationError = redirectRuleService.validate(redirect);
+            if (validationError != null) {
+                Map<String, Object> error = new HashMap<>();
+                error.put("success", false);
+                error.put("error", validationError);
+                return ResponseEntity.badRequest().body(error);
+            }
             
             redirectRepository.save(redirect);
             
@@ -235,6 +270,18 @@ public class RedirectManagementController {
         }
     }
     
+    /**
+     * API статистики учета 404 (очередь в памяти, отброшенные URL, сбросы в БД)
+     */
+    @GetMapping(value = "/api/404-errors/stats", produces = "application/json;charset=UTF-8")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> notFoundStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("tracker", notFoundTracker.getStats());
+        return ResponseEntity.ok().body(response);
+    }
+    
     /**
      * API для удаления старых 404 ошибок
      */
@@ -263,9 +310,18 @@ public class RedirectManagementController {
             return ResponseEntity.status(500).body(error);
         }
     }
+    
+    /**
+     * Значение перечисления из JSON (без учета регистра); пустое или неизвестное - значение по умолчанию
+     */
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, Object value, E defaultValue) {
+        if (value == null || value.toString().isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.toString().trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
+        }
+    }
 }
-
-
-
-
-
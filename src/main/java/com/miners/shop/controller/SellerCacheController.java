@@ -0,0 +1,50 @@
+package com.miners.shop.controller;
+
+import com.miners.shop.service.SellerService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Мониторинг кэша продавцов (телефон -> продавец)
+ * Доступен только для администраторов
+ */
+@RestController
+@RequestMapping("/private/sellers/cache")
+@RequiredArgsConstructor
+@Slf4j
+@PreAuthorize("hasRole('ADMIN')")
+public class SellerCacheController {
+
+    private final SellerService sellerService;
+
+    /**
+     * Размер кэша, попадания и промахи
+     * GET /private/sellers/cache/stats
+     */
+    @GetMapping(value = "/stats", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> stats() {
+        return ResponseEntity.ok(sellerService.getCacheStats());
+    }
+
+    /**
+     * Полная очистка кэша
+     */
+    @PostMapping(value = "/clear", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<Map<String, Object>> clear() {
+        sellerService.clearCache();
+        log.info("🧹 Кэш продавцов очищен администратором");
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Кэш продавцов очищен");
+        return ResponseEntity.ok(response);
+    }
+}
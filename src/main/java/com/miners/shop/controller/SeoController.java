@@ -1,24 +1,31 @@
 package com.miners.shop.controller;
 
-import com.miners.shop.entity.MinerDetail;
-import com.miners.shop.repository.MinerDetailRepository;
-import com.miners.shop.util.SlugUtil;
+import com.miners.shop.service.SitemapService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.context.request.WebRequest;
 
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Контроллер для обработки SEO файлов (robots.txt, sitemap.xml)
@@ -28,10 +35,9 @@ import java.util.List;
 @Slf4j
 public class SeoController {
 
-    private final MinerDetailRepository minerDetailRepository;
-    
-    private static final String BASE_URL = "https://minerhive.ru";
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final int OPEN_ATTEMPTS = 3;
+
+    private final SitemapService sitemapService;
 
     /**
      * Обработка запроса robots.txt
@@ -56,109 +62,108 @@ public class SeoController {
     }
 
     /**
-     * Динамическая генерация sitemap.xml с ЧПУ ссылками
-     * Автоматически генерирует slug для товаров, у которых его нет
+     * Файлы sitemap: индекс /sitemap.xml и части /sitemap-N.xml (генерирует SitemapService в фоне)
+     * Клиенту, принимающему gzip, отдается заранее сжатая копия; .xml.gz можно запросить и напрямую.
+     * ETag и Last-Modified - по размеру и времени записи открытого файла, повторный запрос без изменений получает 304.
      */
-    @GetMapping("/sitemap.xml")
-    @Transactional
-    public ResponseEntity<String> sitemapXml() {
+    @GetMapping("/{name:sitemap(?:-\\d+)?\\.xml(?:\\.gz)?}")
+    public ResponseEntity<Resource> sitemap(@PathVariable String name,
+                                            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                            WebRequest webRequest) throws IOException {
+        boolean explicitGzip = name.endsWith(".gz");
+        boolean gzip = explicitGzip || (acceptEncoding != null && acceptEncoding.contains("gzip"));
+        Path file = gzip ? sitemapService.getFile(explicitGzip ? name : name + ".gz") : null;
+        if (file == null) {
+            gzip = false;
+            file = explicitGzip ? null : sitemapService.getFile(name);
+        }
+        if (file == null) {
+            // Файлы еще не сгенерированы (первый запуск) или части с таким номером нет
+            return SitemapService.INDEX_FILE.equals(name)
+                    ? ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "60").build()
+                    : ResponseEntity.notFound().build();
+        }
+
+        SitemapFile opened = open(file);
+        if (opened == null) {
+            return ResponseEntity.notFound().build();
+        }
+        SeekableByteChannel channel = opened.channel();
         try {
-            StringBuilder sitemap = new StringBuilder();
-            sitemap.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-            sitemap.append("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
-            
-            String currentDate = LocalDateTime.now().format(DATE_FORMATTER);
-            
-            // Главная страница
-            addUrl(sitemap, BASE_URL + "/", currentDate, "daily", "1.0");
-            
-            // Страница каталога товаров
-            addUrl(sitemap, BASE_URL + "/products", currentDate, "daily", "0.8");
-            
-            // Получаем все MinerDetail
-            List<MinerDetail> minerDetails = minerDetailRepository.findAll();
-            int generatedSlugsCount = 0;
-            
-            for (MinerDetail minerDetail : minerDetails) {
-                // Пропускаем неактивные товары
-                if (minerDetail.getActive() != null && !minerDetail.getActive()) {
-                    continue;
-                }
-                
-                String slug = minerDetail.getSlug();
-                
-                // Если slug отсутствует, генерируем его
-                if (slug == null || slug.isEmpty()) {
-                    if (minerDetail.getStandardName() != null && !minerDetail.getStandardName().isEmpty()) {
-                        slug = SlugUtil.generateSlug(minerDetail.getStandardName());
-                        
-                        // Проверяем уникальность slug
-                        String finalSlug = slug;
-                        int counter = 1;
-                        while (minerDetailRepository.existsBySlug(finalSlug)) {
-                            finalSlug = slug + "-" + counter;
-                            counter++;
-                        }
-                        slug = finalSlug;
-                        
-                        // Сохраняем сгенерированный slug
-                        minerDetail.setSlug(slug);
-                        minerDetailRepository.save(minerDetail);
-                        generatedSlugsCount++;
-                        log.debug("Сгенерирован slug для товара {}: {}", minerDetail.getId(), slug);
-                    } else {
-                        // Если нет названия, используем ID
-                        slug = String.valueOf(minerDetail.getId());
-                    }
+            long size = opened.size();
+            long lastModified = opened.lastModified();
+            String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + (gzip ? "-gz" : "") + "\"";
+            if (webRequest.checkNotModified(etag, lastModified)) {
+                channel.close();
+                return null;
+            }
+
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .eTag(etag)
+                    .lastModified(lastModified)
+                    .cacheControl(CacheControl.maxAge(1, TimeUnit.HOURS).cachePublic())
+                    .contentLength(size);
+            if (explicitGzip) {
+                response.contentType(MediaType.parseMediaType("application/gzip"));
+            } else {
+                response.contentType(MediaType.APPLICATION_XML).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                if (gzip) {
+                    response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
                 }
-                
-                // Используем ЧПУ ссылку
-                String url = BASE_URL + "/products/" + slug;
-                addUrl(sitemap, url, currentDate, "weekly", "0.7");
             }
-            
-            sitemap.append("</urlset>");
-            
-            String content = sitemap.toString();
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_XML);
-            headers.setContentLength(content.getBytes(StandardCharsets.UTF_8).length);
-            
-            log.info("Сгенерирован sitemap.xml с {} товарами (создано {} новых slug)", 
-                    minerDetails.size(), generatedSlugsCount);
-            
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(content);
-        } catch (Exception e) {
-            log.error("Ошибка при генерации sitemap.xml: {}", e.getMessage(), e);
-            return ResponseEntity.status(500).build();
+            // Поток закрывает ResourceHttpMessageConverter после записи ответа
+            return response.body(new InputStreamResource(Channels.newInputStream(channel)));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
         }
     }
-    
+
     /**
-     * Добавление URL в sitemap
+     * Открывает файл sitemap и читает его атрибуты
+     * Публикация заменяет файл атомарным переименованием, а устаревшие части удаляет. Атрибуты читаются по пути
+     * до и после открытия: если путь все это время указывал на один и тот же файл (fileKey, а без него - время
+     * записи и размер), открытый дескриптор - тот же файл, и ETag соответствует отдаваемому содержимому.
+     * Файл, замененный во время открытия, открывается заново.
+     * @return null, если файла больше нет
      */
-    private void addUrl(StringBuilder sitemap, String loc, String lastmod, String changefreq, String priority) {
-        sitemap.append("  <url>\n");
-        sitemap.append("    <loc>").append(escapeXml(loc)).append("</loc>\n");
-        sitemap.append("    <lastmod>").append(lastmod).append("</lastmod>\n");
-        sitemap.append("    <changefreq>").append(changefreq).append("</changefreq>\n");
-        sitemap.append("    <priority>").append(priority).append("</priority>\n");
-        sitemap.append("  </url>\n");
+    private static SitemapFile open(Path file) throws IOException {
+        for (int attempt = 0; attempt < OPEN_ATTEMPTS; attempt++) {
+            BasicFileAttributes before;
+            SeekableByteChannel channel;
+            try {
+                before = Files.readAttributes(file, BasicFileAttributes.class);
+                channel = Files.newByteChannel(file);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            try {
+                BasicFileAttributes after = Files.readAttributes(file, BasicFileAttributes.class);
+                long size = channel.size();
+                if (isSameFile(before, after) && after.size() == size) {
+                    return new SitemapFile(channel, after.lastModifiedTime().toMillis(), size);
+                }
+            } catch (NoSuchFileException e) {
+                channel.close();
+                return null;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            channel.close();
+        }
+        throw new IOException("Файл " + file + " заменяется быстрее, чем удается его открыть");
     }
-    
-    /**
-     * Экранирование XML символов
-     */
-    private String escapeXml(String text) {
-        if (text == null) {
-            return "";
+
+    private static boolean isSameFile(BasicFileAttributes before, BasicFileAttributes after) {
+        if (before.fileKey() != null) {
+            return before.fileKey().equals(after.fileKey()) && before.lastModifiedTime().equals(after.lastModifiedTime());
         }
-        return text.replace("&", "&amp;")
-                   .replace("<", "&lt;")
-                   .replace(">", "&gt;")
-                   .replace("\"", "&quot;")
-                   .replace("'", "&apos;");
+        return before.lastModifiedTime().equals(after.lastModifiedTime()) && before.size() == after.size();
     }
+
+    /**
+     * Открытый файл sitemap и его атрибуты
+     */
+    private record SitemapFile(SeekableByteChannel channel, long lastModified, long size) {}
 }
@@ -93,11 +93,11 @@ public class TelegramGroupController {
     }
     
     /**
-     * Синхронизирует список групп из сообщений
+     * Полная сверка списка групп и счетчиков с сообщениями (для исправления расхождений)
      */
     @PostMapping("/sync")
     public ResponseEntity<Map<String, Object>> syncGroups() {
-        log.info("Синхронизация групп из сообщений");
+        log.info("Полная сверка групп с сообщениями");
         groupService.syncGroupsFromMessages();
         
         Map<String, Object> response = new HashMap<>();
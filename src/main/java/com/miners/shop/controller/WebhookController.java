@@ -1,18 +1,22 @@
 package com.miners.shop.controller;
 
 import com.miners.shop.dto.WhatsAppMessageDTO;
-import com.miners.shop.entity.WhatsAppMessage;
-import com.miners.shop.service.ProductService;
-import com.miners.shop.service.TelegramGroupService;
+import com.miners.shop.entity.WebhookIngestion;
+import com.miners.shop.service.MessageDeliveryFilter;
+import com.miners.shop.service.WebhookBatchService;
+import com.miners.shop.service.WebhookIngestionService;
+import com.miners.shop.service.WebhookProcessingService;
 import com.miners.shop.service.WhatsAppMessageService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -22,17 +26,27 @@ import java.util.Map;
 public class WebhookController {
     
     private final WhatsAppMessageService messageService;
-    private final ProductService productService;
-    private final TelegramGroupService groupService;
+    private final WebhookProcessingService processingService;
+    private final WebhookIngestionService ingestionService;
+    private final WebhookBatchService batchService;
+    private final MessageDeliveryFilter deliveryFilter;
+    
+    /**
+     * Режим приема: sync - обработка в потоке запроса, async - через очередь webhook_ingestion_queue
+     */
+    @Value("${app.webhook.ingestion.mode:sync}")
+    private String ingestionMode;
     
     /**
      * Endpoint для приема сообщений от WhatsApp сервиса
+     * Повторная доставка уже принятого сообщения пропускается; force=true - обработать принудительно
      */
     @PostMapping(value = "/whatsapp", produces = "application/json;charset=UTF-8", 
                  consumes = "application/json;charset=UTF-8")
     public ResponseEntity<?> receiveWhatsAppMessage(
             @Valid @RequestBody WhatsAppMessageDTO messageDTO,
-            @RequestHeader(value = "X-API-Key", required = false) String apiKey) {
+            @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+            @RequestParam(value = "force", defaultValue = "false") boolean force) {
         
         // ═══════════════════════════════════════════════════════════════════════════════
         // ДЕТАЛЬНОЕ ЛОГИРОВАНИЕ ПЕРЕДАЧИ ДАННЫХ ОТ WHATSAPP SERVICE
@@ -164,157 +178,22 @@ public class WebhookController {
             log.debug("content (contains Cyrillic): {}", messageDTO.getContent().matches(".*[А-Яа-яЁё].*"));
         }
         
+        // Точная повторная доставка уже принятого сообщения - отвечаем успехом без обработки
+        if (!force && deliveryFilter.isDuplicate(messageDTO)) {
+            return duplicateResponse();
+        }
+        
         try {
-            // Проверяем, есть ли предыдущие сообщения от этого продавца (для определения обновлений)
-            String originalMessageId = null;
-            if (messageDTO.getSenderPhoneNumber() != null && messageDTO.getParsedData() != null) {
-                originalMessageId = messageService.findPreviousMessageIdFromSeller(
-                        messageDTO.getSenderPhoneNumber(), 
-                        messageDTO.getChatId(),
-                        messageDTO.getMessageId()
-                );
+            // Асинхронный режим: сохраняем сообщение в очередь и сразу отвечаем 202
+            if (isAsyncMode()) {
+                return enqueue(messageDTO, WebhookProcessingService.SOURCE_WHATSAPP);
             }
             
-            // Сохраняем сообщение с информацией об обновлении
-            WhatsAppMessage saved = messageService.saveMessage(messageDTO, originalMessageId);
-            
-            // Если это сообщение из группы, синхронизируем информацию о группе
-            if ("group".equals(messageDTO.getChatType()) && messageDTO.getChatId() != null) {
-                try {
-                    groupService.syncGroupsFromMessages();
-                } catch (Exception e) {
-                    log.warn("Ошибка при синхронизации групп: {}", e.getMessage());
-                }
-            }
-            
-            // Обрабатываем распарсенные данные от Ollama, если они есть
-            boolean isUpdate = false;
-            log.info("═".repeat(80));
-            log.info("ПРОВЕРКА PARSED DATA ДЛЯ СООБЩЕНИЯ: {}", messageDTO.getMessageId());
-            log.info("═".repeat(80));
-            
-            if (messageDTO.getParsedData() == null) {
-                log.warn("⚠️  parsedData == null - распарсенные данные от Ollama отсутствуют!");
-            } else {
-                log.info("✅ parsedData присутствует, тип: {}", messageDTO.getParsedData().getClass().getName());
-                
-                // Логируем содержимое parsedData
-                try {
-                    com.fasterxml.jackson.databind.ObjectMapper objectMapper = new com.fasterxml.jackson.databind.ObjectMapper();
-                    String parsedDataJson = objectMapper.writeValueAsString(messageDTO.getParsedData());
-                    log.info("📋 Содержимое parsedData (JSON):");
-                    log.info(parsedDataJson);
-                    
-                    // Проверяем структуру
-                    if (messageDTO.getParsedData() instanceof Map) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> parsedDataMap = (Map<String, Object>) messageDTO.getParsedData();
-                        log.info("📋 parsedData является Map, ключи: {}", parsedDataMap.keySet());
-                        log.info("📋 operationType: {}", parsedDataMap.get("operationType"));
-                        log.info("📋 location: {}", parsedDataMap.get("location"));
-                        
-                        Object productsObj = parsedDataMap.get("products");
-                        if (productsObj instanceof java.util.List) {
-                            @SuppressWarnings("unchecked")
-                            java.util.List<Map<String, Object>> products = (java.util.List<Map<String, Object>>) productsObj;
-                            log.info("📋 products - список, размер: {}", products.size());
-                        } else {
-                            log.warn("⚠️  products не является List, тип: {}", productsObj != null ? productsObj.getClass().getName() : "null");
-                        }
-                    } else {
-                        log.warn("⚠️  parsedData не является Map, тип: {}", messageDTO.getParsedData().getClass().getName());
-                    }
-                } catch (Exception e) {
-                    log.error("❌ Ошибка при логировании parsedData: {}", e.getMessage(), e);
-                }
-            }
-            
-            log.info("═".repeat(80));
-            
-            if (messageDTO.getParsedData() != null) {
-                try {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> parsedData = (Map<String, Object>) messageDTO.getParsedData();
-                    
-                    log.info("🔄 Начало обработки распарсенных данных от Ollama для сообщения: {}", messageDTO.getMessageId());
-                    log.info("🔄 Параметры: chatName={}, senderName={}, senderPhone={}", 
-                            messageDTO.getChatName(), messageDTO.getSenderName(), messageDTO.getSenderPhoneNumber());
-                    log.info("🔄 Детальная информация об отправителе:");
-                    log.info("   senderId: {}", messageDTO.getSenderId());
-                    log.info("   senderName: {}", messageDTO.getSenderName());
-                    log.info("   senderPhoneNumber: {}", messageDTO.getSenderPhoneNumber());
-                    
-                    // ВАЛИДАЦИЯ: Проверяем, что senderPhoneNumber не является WhatsApp ID
-                    String sellerPhone = messageDTO.getSenderPhoneNumber();
-                    String sellerName = messageDTO.getSenderName();
-                    
-                    // Если senderPhoneNumber похож на WhatsApp ID (длинная числовая строка > 15 символов или содержит @)
-                    if (sellerPhone != null && (sellerPhone.length() > 15 || sellerPhone.contains("@") || sellerPhone.contains("_"))) {
-                        log.warn("⚠️  senderPhoneNumber похож на WhatsApp ID, а не на номер телефона: {}", sellerPhone);
-                        // Пытаемся извлечь номер из senderId
-                        if (messageDTO.getSenderId() != null) {
-                            String extractedPhone = messageDTO.getSenderId().replaceAll("@.*", "").trim();
-                            if (extractedPhone.length() <= 15 && !extractedPhone.contains("_") && extractedPhone.matches("^[0-9]+$")) {
-                                sellerPhone = extractedPhone;
-                                log.info("✅ Извлечен номер телефона из senderId: {}", sellerPhone);
-                            } else {
-                                log.warn("⚠️  Не удалось извлечь номер из senderId: {}", messageDTO.getSenderId());
-                                sellerPhone = null; // Не используем WhatsApp ID как номер телефона
-                            }
-                        } else {
-                            sellerPhone = null;
-                        }
-                    }
-                    
-                    // Если senderName похож на WhatsApp ID (длинная числовая строка > 15 символов)
-                    if (sellerName != null && sellerName.length() > 15 && sellerName.matches("^[0-9]+$")) {
-                        log.warn("⚠️  senderName похож на WhatsApp ID, а не на имя: {}", sellerName);
-                        sellerName = null; // Не используем WhatsApp ID как имя
-                    }
-                    
-                    log.info("🔄 Исправленные параметры: sellerName={}, sellerPhone={}", sellerName, sellerPhone);
-                    
-                    isUpdate = productService.processParsedData(
-                            parsedData,
-                            messageDTO.getMessageId(),
-                            messageDTO.getChatName(),
-                            sellerName,
-                            sellerPhone,
-                            null // location будет извлечена из parsedData
-                    );
-                    
-                    log.info("═".repeat(100));
-                    log.info("✅ ОБРАБОТКА РАСПАРСЕННЫХ ДАННЫХ ЗАВЕРШЕНА");
-                    log.info("═".repeat(100));
-                    log.info("   Результат: isUpdate={}", isUpdate);
-                    log.info("═".repeat(100));
-                    
-                    // Если обнаружено обновление, но originalMessageId еще не установлен - устанавливаем
-                    if (isUpdate && saved.getOriginalMessageId() == null && originalMessageId == null) {
-                        originalMessageId = messageService.findPreviousMessageIdFromSeller(
-                                messageDTO.getSenderPhoneNumber(), 
-                                messageDTO.getChatId(),
-                                messageDTO.getMessageId()
-                        );
-                        if (originalMessageId != null) {
-                            saved.setIsUpdate(true);
-                            saved.setOriginalMessageId(originalMessageId);
-                            messageService.updateMessage(saved);
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("❌ ОШИБКА при обработке распарсенных данных!", e);
-                    log.error("❌ Сообщение ошибки: {}", e.getMessage());
-                    log.error("❌ Стек ошибки:", e);
-                    // Не прерываем выполнение, если ошибка в обработке товаров
-                }
-            } else {
-                log.info("═".repeat(100));
-                log.warn("⚠️  PARSED DATA == NULL, ОБРАБОТКА ТОВАРОВ НЕ ВЫПОЛНЕНА");
-                log.info("═".repeat(100));
-            }
+            WebhookProcessingService.ProcessingResult result = processingService.process(
+                    messageDTO, WebhookProcessingService.SOURCE_WHATSAPP, false);
+            deliveryFilter.markDelivered(messageDTO);
             
-            String responseMessage = isUpdate 
+            String responseMessage = result.isUpdate() 
                     ? "Сообщение успешно сохранено и обновлены существующие предложения" 
                     : "Сообщение успешно сохранено";
             
@@ -322,13 +201,13 @@ public class WebhookController {
             log.info("✅✅✅ ОБРАБОТКА WEBHOOK ЗАВЕРШЕНА УСПЕШНО ✅✅✅");
             log.info("═".repeat(100));
             log.info("   messageId: {}", messageDTO.getMessageId());
-            log.info("   saved.getId(): {}", saved.getId());
-            log.info("   isUpdate: {}", isUpdate);
+            log.info("   saved.getId(): {}", result.messageId());
+            log.info("   isUpdate: {}", result.isUpdate());
             log.info("   responseMessage: {}", responseMessage);
             log.info("═".repeat(100));
             
             return ResponseEntity.ok()
-                    .body(new WebhookResponse(true, responseMessage, saved.getId()));
+                    .body(new WebhookResponse(true, responseMessage, result.messageId()));
         } catch (Exception e) {
             log.error("Ошибка при сохранении сообщения", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -343,7 +222,8 @@ public class WebhookController {
                  consumes = "application/json;charset=UTF-8")
     public ResponseEntity<?> receiveTelegramMessage(
             @Valid @RequestBody WhatsAppMessageDTO messageDTO,
-            @RequestHeader(value = "X-API-Key", required = false) String apiKey) {
+            @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+            @RequestParam(value = "force", defaultValue = "false") boolean force) {
         
         // Логируем входящие данные для диагностики кодировки
         log.info("Получен webhook от Telegram сервиса: messageId={}", messageDTO.getMessageId());
@@ -360,125 +240,27 @@ public class WebhookController {
             log.debug("content (contains Cyrillic): {}", messageDTO.getContent().matches(".*[А-Яа-яЁё].*"));
         }
         
+        // Точная повторная доставка уже принятого сообщения - отвечаем успехом без обработки
+        if (!force && deliveryFilter.isDuplicate(messageDTO)) {
+            return duplicateResponse();
+        }
+        
         try {
-            // Проверяем, есть ли предыдущие сообщения от этого продавца (для определения обновлений)
-            String originalMessageId = null;
-            // Для Telegram используем senderId вместо senderPhoneNumber
-            String senderIdentifier = messageDTO.getSenderPhoneNumber() != null 
-                    ? messageDTO.getSenderPhoneNumber() 
-                    : messageDTO.getSenderId();
-            
-            if (senderIdentifier != null && messageDTO.getParsedData() != null) {
-                originalMessageId = messageService.findPreviousMessageIdFromSeller(
-                        senderIdentifier, 
-                        messageDTO.getChatId(),
-                        messageDTO.getMessageId()
-                );
-            }
-            
-            // Сохраняем сообщение с информацией об обновлении
-            WhatsAppMessage saved = messageService.saveMessage(messageDTO, originalMessageId);
-            
-            // Если это сообщение из группы, синхронизируем информацию о группе
-            if ("group".equals(messageDTO.getChatType()) && messageDTO.getChatId() != null) {
-                try {
-                    groupService.syncGroupsFromMessages();
-                } catch (Exception e) {
-                    log.warn("Ошибка при синхронизации групп: {}", e.getMessage());
-                }
-            }
-            
-            // Обрабатываем распарсенные данные от Ollama, если они есть
-            boolean isUpdate = false;
-            log.info("═".repeat(80));
-            log.info("ПРОВЕРКА PARSED DATA ДЛЯ СООБЩЕНИЯ TELEGRAM: {}", messageDTO.getMessageId());
-            log.info("═".repeat(80));
-            
-            if (messageDTO.getParsedData() == null) {
-                log.warn("⚠️  parsedData == null - распарсенные данные от Ollama отсутствуют!");
-            } else {
-                log.info("✅ parsedData присутствует, тип: {}", messageDTO.getParsedData().getClass().getName());
-                
-                // Логируем содержимое parsedData
-                try {
-                    com.fasterxml.jackson.databind.ObjectMapper objectMapper = new com.fasterxml.jackson.databind.ObjectMapper();
-                    String parsedDataJson = objectMapper.writeValueAsString(messageDTO.getParsedData());
-                    log.info("📋 Содержимое parsedData (JSON):");
-                    log.info(parsedDataJson);
-                    
-                    // Проверяем структуру
-                    if (messageDTO.getParsedData() instanceof Map) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> parsedDataMap = (Map<String, Object>) messageDTO.getParsedData();
-                        log.info("📋 parsedData является Map, ключи: {}", parsedDataMap.keySet());
-                        log.info("📋 operationType: {}", parsedDataMap.get("operationType"));
-                        log.info("📋 location: {}", parsedDataMap.get("location"));
-                        
-                        Object productsObj = parsedDataMap.get("products");
-                        if (productsObj instanceof java.util.List) {
-                            @SuppressWarnings("unchecked")
-                            java.util.List<Map<String, Object>> products = (java.util.List<Map<String, Object>>) productsObj;
-                            log.info("📋 products - список, размер: {}", products.size());
-                        } else {
-                            log.warn("⚠️  products не является List, тип: {}", productsObj != null ? productsObj.getClass().getName() : "null");
-                        }
-                    } else {
-                        log.warn("⚠️  parsedData не является Map, тип: {}", messageDTO.getParsedData().getClass().getName());
-                    }
-                } catch (Exception e) {
-                    log.error("❌ Ошибка при логировании parsedData: {}", e.getMessage(), e);
-                }
+            // Асинхронный режим: сохраняем сообщение в очередь и сразу отвечаем 202
+            if (isAsyncMode()) {
+                return enqueue(messageDTO, WebhookProcessingService.SOURCE_TELEGRAM);
             }
             
-            log.info("═".repeat(80));
+            WebhookProcessingService.ProcessingResult result = processingService.process(
+                    messageDTO, WebhookProcessingService.SOURCE_TELEGRAM, false);
+            deliveryFilter.markDelivered(messageDTO);
             
-            if (messageDTO.getParsedData() != null) {
-                try {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> parsedData = (Map<String, Object>) messageDTO.getParsedData();
-                    
-                    log.info("🔄 Начало обработки распарсенных данных от Ollama для сообщения Telegram: {}", messageDTO.getMessageId());
-                    log.info("🔄 Параметры: chatName={}, senderName={}, senderId={}", 
-                            messageDTO.getChatName(), messageDTO.getSenderName(), senderIdentifier);
-                    
-                    isUpdate = productService.processParsedData(
-                            parsedData,
-                            messageDTO.getMessageId(),
-                            messageDTO.getChatName(),
-                            messageDTO.getSenderName(),
-                            senderIdentifier,
-                            null // location будет извлечена из parsedData
-                    );
-                    
-                    log.info("✅ Обработка распарсенных данных завершена. isUpdate={}", isUpdate);
-                    
-                    // Если обнаружено обновление, но originalMessageId еще не установлен - устанавливаем
-                    if (isUpdate && saved.getOriginalMessageId() == null && originalMessageId == null) {
-                        originalMessageId = messageService.findPreviousMessageIdFromSeller(
-                                senderIdentifier, 
-                                messageDTO.getChatId(),
-                                messageDTO.getMessageId()
-                        );
-                        if (originalMessageId != null) {
-                            saved.setIsUpdate(true);
-                            saved.setOriginalMessageId(originalMessageId);
-                            messageService.updateMessage(saved);
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("❌ ОШИБКА при обработке распарсенных данных!", e);
-                    log.error("❌ Сообщение ошибки: {}", e.getMessage());
-                    log.error("❌ Стек ошибки:", e);
-                    // Не прерываем выполнение, если ошибка в обработке товаров
-                }
-            }
-            
-            String responseMessage = isUpdate 
+            String responseMessage = result.isUpdate() 
                     ? "Сообщение успешно сохранено и обновлены существующие предложения" 
                     : "Сообщение успешно сохранено";
             
             return ResponseEntity.ok()
-                    .body(new WebhookResponse(true, responseMessage, saved.getId()));
+                    .body(new WebhookResponse(true, responseMessage, result.messageId()));
         } catch (Exception e) {
             log.error("Ошибка при сохранении сообщения Telegram", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -486,6 +268,83 @@ public class WebhookController {
         }
     }
     
+    /**
+     * Пакетный прием сообщений от WhatsApp сервиса (JSON-массив сообщений)
+     * Статус возвращается по каждому сообщению: PROCESSED, QUEUED, DUPLICATE_IN_BATCH, DUPLICATE_DELIVERY, INVALID, FAILED
+     */
+    @PostMapping(value = "/whatsapp/batch", produces = "application/json;charset=UTF-8", 
+                 consumes = "application/json;charset=UTF-8")
+    public ResponseEntity<?> receiveWhatsAppBatch(
+            @RequestBody List<WhatsAppMessageDTO> messages,
+            @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+            @RequestParam(value = "force", defaultValue = "false") boolean force) {
+        return receiveBatch(messages, WebhookProcessingService.SOURCE_WHATSAPP, force);
+    }
+    
+    /**
+     * Пакетный прием сообщений от Telegram сервиса (JSON-массив сообщений)
+     */
+    @PostMapping(value = "/telegram/batch", produces = "application/json;charset=UTF-8", 
+                 consumes = "application/json;charset=UTF-8")
+    public ResponseEntity<?> receiveTelegramBatch(
+            @RequestBody List<WhatsAppMessageDTO> messages,
+            @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+            @RequestParam(value = "force", defaultValue = "false") boolean force) {
+        return receiveBatch(messages, WebhookProcessingService.SOURCE_TELEGRAM, force);
+    }
+    
+    private ResponseEntity<?> receiveBatch(List<WhatsAppMessageDTO> messages, String source, boolean force) {
+        if (messages == null || messages.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(new WebhookResponse(false, "Пачка сообщений пуста", null));
+        }
+        if (messages.size() > batchService.getMaxBatchSize()) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(new WebhookResponse(false, "Слишком много сообщений в пачке: " + messages.size()
+                            + " (максимум " + batchService.getMaxBatchSize() + ")", null));
+        }
+        
+        log.info("Получена пачка webhook ({}): {} сообщений", source, messages.size());
+        boolean async = isAsyncMode();
+        List<WebhookBatchService.BatchItemResult> results = batchService.receive(messages, source, async, force);
+        
+        int accepted = (int) results.stream()
+                .filter(r -> WebhookBatchService.STATUS_PROCESSED.equals(r.status())
+                        || WebhookBatchService.STATUS_QUEUED.equals(r.status())
+                        || WebhookBatchService.STATUS_DUPLICATE_DELIVERY.equals(r.status()))
+                .count();
+        return ResponseEntity.status(async ? HttpStatus.ACCEPTED : HttpStatus.OK)
+                .body(new WebhookBatchResponse(accepted > 0, results.size(), accepted, results));
+    }
+    
+    /**
+     * Включен ли асинхронный режим приема (app.webhook.ingestion.mode=async)
+     */
+    private boolean isAsyncMode() {
+        return "async".equalsIgnoreCase(ingestionMode);
+    }
+    
+    /**
+     * Сохраняет сообщение в очередь приема и возвращает 202 Accepted
+     * Дальнейшая обработка выполняется WebhookIngestionWorker
+     */
+    private ResponseEntity<?> enqueue(WhatsAppMessageDTO messageDTO, String source) throws Exception {
+        WebhookIngestion ingestion = ingestionService.enqueue(messageDTO, source);
+        deliveryFilter.markDelivered(messageDTO);
+        log.info("📥 Сообщение {} ({}) принято в очередь обработки, ID записи={}", 
+                messageDTO.getMessageId(), source, ingestion.getId());
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(new WebhookAcceptedResponse(true, "Сообщение принято в очередь обработки", ingestion.getId()));
+    }
+    
+    /**
+     * Ответ на повторную доставку: 200, чтобы мост не повторял отправку
+     */
+    private ResponseEntity<?> duplicateResponse() {
+        return ResponseEntity.ok()
+                .body(new WebhookResponse(true, "Сообщение уже принято ранее, повторная доставка пропущена", null));
+    }
+    
     /**
      * Health check endpoint
      */
@@ -515,4 +374,11 @@ public class WebhookController {
     
     // Внутренний класс для ответа
     private record WebhookResponse(boolean success, String message, Long messageId) {}
+    
+    // Ответ для асинхронного режима: ID записи в очереди приема
+    private record WebhookAcceptedResponse(boolean success, String message, Long ingestionId) {}
+    
+    // Ответ для пакетного приема: статус по каждому сообщению
+    private record WebhookBatchResponse(boolean success, int total, int accepted,
+                                        List<WebhookBatchService.BatchItemResult> results) {}
 }
@@ -0,0 +1,21 @@
+package com.miners.shop.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Облегченное представление сообщения для списков (/private/messages, /api/messages)
+ * Заполняется JPQL-проекцией: полный текст, parsedData и медиа не загружаются,
+ * превью текста обрезается в SQL (WhatsAppMessageRepository.findSummaries)
+ */
+public record MessageSummaryDTO(
+        Long id,
+        String chatName,
+        String chatType,
+        String senderName,
+        LocalDateTime timestamp,
+        String contentPreview,
+        Boolean hasMedia,
+        Boolean isUpdate,
+        Boolean hasParsedData
+) {
+}
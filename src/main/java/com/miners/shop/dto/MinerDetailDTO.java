@@ -37,6 +37,7 @@ public class MinerDetailDTO {
     private String placementInfo;
     private String producerInfo;
     private String imageUrl;
+    private String slug; // ЧПУ-ссылка (если не задана, в URL используется ID)
     private Boolean active; // Флаг активности майнера
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
@@ -50,7 +51,21 @@ public class MinerDetailDTO {
             return null;
         }
         
-        MinerDetailDTO dto = MinerDetailDTO.builder()
+        // Добавляем ID связанных товаров
+        List<Long> productIds = null;
+        if (minerDetail.getProducts() != null) {
+            productIds = minerDetail.getProducts().stream()
+                    .map(product -> product.getId())
+                    .collect(Collectors.toList());
+        }
+        return fromEntity(minerDetail, productIds);
+    }
+    
+    /**
+     * Преобразует сущность в DTO с заранее загруженными ID товаров (без обращения к ленивой коллекции products)
+     */
+    public static MinerDetailDTO fromEntity(MinerDetail minerDetail, List<Long> productIds) {
+        return MinerDetailDTO.builder()
                 .id(minerDetail.getId())
                 .standardName(minerDetail.getStandardName())
                 .manufacturer(minerDetail.getManufacturer())
@@ -69,19 +84,12 @@ public class MinerDetailDTO {
                 .placementInfo(minerDetail.getPlacementInfo())
                 .producerInfo(minerDetail.getProducerInfo())
                 .imageUrl(minerDetail.getImageUrl())
+                .slug(minerDetail.getSlug())
                 .active(minerDetail.getActive() != null ? minerDetail.getActive() : true)
                 .createdAt(minerDetail.getCreatedAt())
                 .updatedAt(minerDetail.getUpdatedAt())
+                .productIds(productIds)
                 .build();
-        
-        // Добавляем ID связанных товаров
-        if (minerDetail.getProducts() != null) {
-            dto.setProductIds(minerDetail.getProducts().stream()
-                    .map(product -> product.getId())
-                    .collect(Collectors.toList()));
-        }
-        
-        return dto;
     }
     
     /**
@@ -0,0 +1,71 @@
+package com.miners.shop.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Последние успешно полученные рыночные данные по монете (калькулятор доходности)
+ * Записываются фоновым обновлением CryptoDataService и загружаются при старте,
+ * чтобы первый запрос после перезапуска не ждал внешние API.
+ */
+@Entity
+@Table(name = "crypto_quotes")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CryptoQuote {
+
+    /**
+     * Тикер (BTC, LTC, DOGE)
+     */
+    @Id
+    @Column(length = 10)
+    private String crypto;
+
+    /**
+     * Курс в рублях (null - ни разу не получен)
+     */
+    @Column(precision = 24, scale = 8)
+    private BigDecimal price;
+
+    /**
+     * Время получения курса
+     */
+    @Column(name = "price_updated_at")
+    private LocalDateTime priceUpdatedAt;
+
+    /**
+     * Сложность сети в T (null - ни разу не получена)
+     */
+    @Column(precision = 24, scale = 8)
+    private BigDecimal difficulty;
+
+    /**
+     * Время получения сложности
+     */
+    @Column(name = "difficulty_updated_at")
+    private LocalDateTime difficultyUpdatedAt;
+
+    /**
+     * Комиссия пула, %
+     */
+    @Column(name = "pool_fee", precision = 6, scale = 2)
+    private BigDecimal poolFee;
+
+    /**
+     * Источник (app.crypto.provider)
+     */
+    @Column(length = 20)
+    private String source;
+
+    /**
+     * Время последней записи строки (получено хотя бы одно из значений)
+     */
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
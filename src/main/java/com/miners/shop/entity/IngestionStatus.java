@@ -0,0 +1,26 @@
+package com.miners.shop.entity;
+
+/**
+ * Статус записи в очереди приема webhook-сообщений
+ */
+public enum IngestionStatus {
+    /**
+     * Ожидает обработки (в том числе повторной после ошибки)
+     */
+    PENDING,
+
+    /**
+     * Захвачена воркером и обрабатывается
+     */
+    PROCESSING,
+
+    /**
+     * Успешно обработана
+     */
+    DONE,
+
+    /**
+     * Исчерпаны попытки обработки - требуется ручной разбор
+     */
+    DEAD_LETTER
+}
@@ -15,13 +15,16 @@ import java.util.List;
  */
 @Entity
 @Table(name = "miner_details")
+@EntityListeners({com.miners.shop.service.CatalogSnapshotListener.class, com.miners.shop.service.MinerSearchIndexListener.class,
+        com.miners.shop.service.MinerDetailSlugIndexListener.class})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class MinerDetail {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "miner_details_seq")
+    @SequenceGenerator(name = "miner_details_seq", sequenceName = "miner_details_seq", allocationSize = 50)
     private Long id;
     
     /**
@@ -0,0 +1,76 @@
+package com.miners.shop.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Статистика предложений по MinerDetail (read model для каталога)
+ * Агрегирует предложения всех Product, связанных с MinerDetail.
+ * Строки пересчитываются в транзакции записи предложений (MinerDetailOfferStatsService),
+ * поэтому каталог читает только эту таблицу вместо загрузки всех предложений.
+ * Строка существует только для MinerDetail, у которых есть хотя бы одно предложение.
+ */
+@Entity
+@Table(name = "miner_detail_offer_stats", indexes = {
+        @Index(name = "idx_md_offer_stats_valid_until", columnList = "min_price_valid_until")
+})
+@Data
+@NoArgsConstructor
+public class MinerDetailOfferStats {
+
+    @Id
+    @Column(name = "miner_detail_id")
+    private Long minerDetailId;
+
+    /**
+     * Всего предложений (включая предложения без типа операции)
+     */
+    @Column(name = "offer_count", nullable = false)
+    private long offerCount;
+
+    @Column(name = "sell_count", nullable = false)
+    private long sellCount;
+
+    @Column(name = "buy_count", nullable = false)
+    private long buyCount;
+
+    /**
+     * Сумма количества по всем предложениям
+     */
+    @Column(name = "total_quantity", nullable = false)
+    private long totalQuantity;
+
+    /**
+     * Минимальная цена SELL (цены 0 не учитываются): среди предложений, обновленных за последние 24 часа,
+     * а если таких нет - среди всех
+     */
+    @Column(name = "min_price", precision = 10, scale = 2)
+    private BigDecimal minPrice;
+
+    /**
+     * Валюта предложения с минимальной ценой
+     */
+    @Column(length = 10)
+    private String currency;
+
+    /**
+     * Дата последнего обновления предложений (сортировка каталога "по последнему предложению",
+     * страницы по курсору - см. CatalogSnapshot.LatestOfferCursor)
+     */
+    @Column(name = "last_offer_updated_at", nullable = false)
+    private LocalDateTime lastOfferUpdatedAt;
+
+    /**
+     * Момент, когда самое старое из "свежих" предложений выйдет из окна 24 часов
+     * и минимальная цена может измениться без записи предложений; null - цена от времени не зависит
+     */
+    @Column(name = "min_price_valid_until")
+    private LocalDateTime minPriceValidUntil;
+
+    @Column(name = "refreshed_at")
+    private LocalDateTime refreshedAt;
+}
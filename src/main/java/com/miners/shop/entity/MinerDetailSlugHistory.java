@@ -0,0 +1,36 @@
+package com.miners.shop.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Прежний slug MinerDetail
+ * Записывается при смене slug (MinerDetailService.updateMinerDetail), чтобы старые ссылки
+ * отвечали 301 на текущий адрес товара (MinerDetailSlugIndex), а не 404.
+ */
+@Entity
+@Table(name = "miner_detail_slug_history", indexes = {
+        @Index(name = "idx_md_slug_history_miner_detail", columnList = "miner_detail_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MinerDetailSlugHistory {
+
+    /**
+     * Прежний slug (у одного slug - одна запись, при повторной смене она перезаписывается)
+     */
+    @Id
+    @Column(name = "old_slug", length = 200)
+    private String oldSlug;
+
+    @Column(name = "miner_detail_id", nullable = false)
+    private Long minerDetailId;
+
+    @Column(name = "changed_at", nullable = false)
+    private LocalDateTime changedAt;
+}
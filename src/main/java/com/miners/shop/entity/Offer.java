@@ -11,16 +11,23 @@ import java.time.LocalDateTime;
 /**
  * Сущность предложения о продаже товара
  * Один товар может иметь несколько предложений от разных продавцов
+ * Уникальный ключ: (product_id, seller_id, operation_type) - см. OfferUniqueKeyMigration
+ * Индексы для постраничного вывода по ключу - см. V6__offers_keyset_indexes.sql
  */
 @Entity
-@Table(name = "offers")
+@Table(name = "offers", indexes = {
+        // Постраничный вывод предложений MinerDetail по ключу (ProductService.findOfferSlice)
+        @Index(name = "idx_offers_product_type_updated", columnList = "product_id, operation_type, updated_at, id"),
+        @Index(name = "idx_offers_product_updated", columnList = "product_id, updated_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Offer {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "offers_seq")
+    @SequenceGenerator(name = "offers_seq", sequenceName = "offers_seq", allocationSize = 50)
     private Long id;
     
     /**
@@ -15,14 +15,16 @@ import java.util.List;
  * Один товар может иметь несколько предложений от разных продавцов
  */
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = @Index(name = "idx_products_miner_detail_id", columnList = "miner_detail_id"))
+@EntityListeners({com.miners.shop.service.ProductModelIndexListener.class, com.miners.shop.service.MinerSearchIndexListener.class})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Product {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+    @SequenceGenerator(name = "products_seq", sequenceName = "products_seq", allocationSize = 50)
     private Long id;
     
     /**
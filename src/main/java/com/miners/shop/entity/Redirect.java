@@ -10,8 +10,10 @@ import java.time.LocalDateTime;
 /**
  * Сущность для хранения редиректов (301, 302)
  * Используется для управления редиректами со старых URL на новые
+ * Активные редиректы обслуживаются из таблицы в памяти (RedirectRuleService)
  */
 @Entity
+@EntityListeners(com.miners.shop.service.RedirectRuleListener.class)
 @Table(name = "redirects", uniqueConstraints = {
     @UniqueConstraint(columnNames = "fromUrl")
 })
@@ -43,6 +45,20 @@ public class Redirect {
     @Column(nullable = false)
     private Integer redirectType = 301; // По умолчанию 301
     
+    /**
+     * Способ сопоставления fromUrl (null в старых записях - EXACT)
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private RedirectMatchType matchType = RedirectMatchType.EXACT;
+    
+    /**
+     * Обработка строки запроса (null в старых записях - MATCH)
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private RedirectQueryMode queryMode = RedirectQueryMode.MATCH;
+    
     /**
      * Активен ли редирект
      */
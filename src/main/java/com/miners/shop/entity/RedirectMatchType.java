@@ -0,0 +1,21 @@
+package com.miners.shop.entity;
+
+/**
+ * Способ сопоставления URL запроса с fromUrl редиректа
+ */
+public enum RedirectMatchType {
+    /**
+     * Точное совпадение
+     */
+    EXACT,
+
+    /**
+     * Путь начинается с fromUrl; остаток пути добавляется к toUrl (/old/ -> /new/: /old/a -> /new/a)
+     */
+    PREFIX,
+
+    /**
+     * fromUrl - регулярное выражение для всего пути; в toUrl допустимы группы $1, $2...
+     */
+    PATTERN
+}
@@ -0,0 +1,21 @@
+package com.miners.shop.entity;
+
+/**
+ * Обработка строки запроса (?a=b) при сопоставлении редиректа
+ */
+public enum RedirectQueryMode {
+    /**
+     * Строка запроса - часть сопоставляемого URL (fromUrl вида /page?id=1), в toUrl не переносится
+     */
+    MATCH,
+
+    /**
+     * Сопоставляется только путь, строка запроса отбрасывается
+     */
+    IGNORE,
+
+    /**
+     * Сопоставляется только путь, строка запроса переносится в toUrl
+     */
+    KEEP
+}
@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -12,18 +13,22 @@ import java.util.List;
 /**
  * Сущность продавца
  * Хранит информацию о продавцах для обратной связи
+ * Продавцы предложений (EAGER) догружаются пачками, а не запросом на каждое предложение
  */
 @Entity
 @Table(name = "sellers", uniqueConstraints = {
     @UniqueConstraint(columnNames = "phone")
 })
+@EntityListeners(com.miners.shop.service.SellerCacheInvalidationListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@BatchSize(size = 50)
 public class Seller {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sellers_seq")
+    @SequenceGenerator(name = "sellers_seq", sequenceName = "sellers_seq", allocationSize = 50)
     private Long id;
     
     /**
@@ -0,0 +1,99 @@
+package com.miners.shop.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Запись промежуточной очереди приема сообщений от WhatsApp/Telegram сервисов
+ * Webhook сохраняет сюда исходное сообщение и сразу отвечает 202,
+ * а фоновые воркеры разбирают очередь (at-least-once, с повторами и dead-letter)
+ */
+@Entity
+@Table(name = "webhook_ingestion_queue", indexes = {
+    @Index(name = "idx_ingestion_status_next_attempt", columnList = "status, nextAttemptAt"),
+    @Index(name = "idx_ingestion_message_id", columnList = "messageId")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebhookIngestion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "webhook_ingestion_queue_seq")
+    @SequenceGenerator(name = "webhook_ingestion_queue_seq", sequenceName = "webhook_ingestion_queue_seq", allocationSize = 50)
+    private Long id;
+
+    /**
+     * Источник сообщения: whatsapp или telegram
+     */
+    @Column(nullable = false, length = 20)
+    private String source;
+
+    /**
+     * ID сообщения из мессенджера (для диагностики и поиска)
+     */
+    @Column(nullable = false, length = 200)
+    private String messageId;
+
+    /**
+     * Исходное тело запроса (WhatsAppMessageDTO в JSON)
+     */
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private IngestionStatus status = IngestionStatus.PENDING;
+
+    /**
+     * Количество выполненных попыток обработки
+     */
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    /**
+     * Текст последней ошибки обработки
+     */
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    /**
+     * Время приема сообщения webhook'ом
+     */
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime receivedAt;
+
+    /**
+     * Не раньше какого времени можно выполнить следующую попытку
+     */
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    /**
+     * Время захвата записи воркером (для возврата "зависших" записей в очередь)
+     */
+    private LocalDateTime lockedAt;
+
+    /**
+     * Время успешной обработки
+     */
+    private LocalDateTime processedAt;
+
+    /**
+     * ID сохраненного WhatsAppMessage после обработки
+     */
+    private Long resultMessageId;
+
+    @PrePersist
+    protected void onCreate() {
+        LocalDateTime now = LocalDateTime.now();
+        receivedAt = now;
+        if (nextAttemptAt == null) {
+            nextAttemptAt = now;
+        }
+    }
+}
@@ -15,7 +15,8 @@ import java.time.LocalDateTime;
 public class WhatsAppMessage {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "whatsapp_messages_seq")
+    @SequenceGenerator(name = "whatsapp_messages_seq", sequenceName = "whatsapp_messages_seq", allocationSize = 50)
     private Long id;
     
     @Column(nullable = false, unique = true)
@@ -50,8 +51,17 @@ public class WhatsAppMessage {
     
     private String mediaFilename;
     
-    @Column(columnDefinition = "TEXT")
-    private String mediaData; // base64
+    /**
+     * SHA-256 медиафайла в хранилище MediaStorageService (файлы общие для пересланных копий)
+     * Сами данные в строке не хранятся; старая колонка media_data переносится MediaMigrationJob
+     */
+    @Column(length = 64)
+    private String mediaHash;
+    
+    /**
+     * Размер медиафайла в байтах
+     */
+    private Long mediaSize;
     
     private String messageType;
     
@@ -3,6 +3,7 @@ package com.miners.shop.repository;
 import com.miners.shop.entity.CompanyMiner;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -44,6 +45,18 @@ public interface CompanyMinerRepository extends JpaRepository<CompanyMiner, Long
            "LEFT JOIN FETCH cm.hashrateUnit " +
            "LEFT JOIN FETCH cm.customFields")
     List<CompanyMiner> findAllWithRelations();
+    
+    /**
+     * Найти активный майнер компании по ID MinerDetail со всеми связанными сущностями одним запросом
+     * (страница товара, см. MinerDetailPageService)
+     */
+    @Query("SELECT DISTINCT cm FROM CompanyMiner cm " +
+           "LEFT JOIN FETCH cm.minerDetail " +
+           "LEFT JOIN FETCH cm.currency " +
+           "LEFT JOIN FETCH cm.hashrateUnit " +
+           "LEFT JOIN FETCH cm.customFields " +
+           "WHERE cm.minerDetail.id = :minerDetailId AND cm.active = true")
+    Optional<CompanyMiner> findActiveByMinerDetailIdWithRelations(@Param("minerDetailId") Long minerDetailId);
 }
 
 
@@ -0,0 +1,9 @@
+package com.miners.shop.repository;
+
+import com.miners.shop.entity.CryptoQuote;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CryptoQuoteRepository extends JpaRepository<CryptoQuote, String> {
+}
@@ -0,0 +1,23 @@
+package com.miners.shop.repository;
+
+import com.miners.shop.entity.MinerDetailOfferStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface MinerDetailOfferStatsRepository extends JpaRepository<MinerDetailOfferStats, Long> {
+
+    List<MinerDetailOfferStats> findByMinerDetailIdIn(Collection<Long> minerDetailIds);
+
+    /**
+     * MinerDetail, у которых минимальная цена могла измениться из-за выхода предложений из окна 24 часов
+     */
+    @Query("SELECT s.minerDetailId FROM MinerDetailOfferStats s WHERE s.minPriceValidUntil <= :now")
+    List<Long> findExpiredMinPriceIds(@Param("now") LocalDateTime now);
+}
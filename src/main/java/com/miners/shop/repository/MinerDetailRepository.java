@@ -1,15 +1,19 @@
 package com.miners.shop.repository;
 
 import com.miners.shop.entity.MinerDetail;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Репозиторий для работы с детальной информацией о майнерах
@@ -67,6 +71,14 @@ public interface MinerDetailRepository extends JpaRepository<MinerDetail, Long>
     @Query("SELECT DISTINCT md.series as series, md.manufacturer as manufacturer FROM MinerDetail md WHERE md.series IS NOT NULL AND md.series != '' AND md.manufacturer IS NOT NULL AND md.manufacturer != '' AND (md.active IS NULL OR md.active = true)")
     List<Object[]> findSeriesManufacturerMapping();
     
+    /**
+     * Поля, из которых строятся списки фильтров (производитель, серия, алгоритм, активность), - как они записаны в базе
+     * FlushMode COMMIT: измененная в текущей транзакции сущность не сбрасывается в базу перед запросом
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "COMMIT"))
+    @Query("SELECT md.manufacturer, md.series, md.algorithm, md.active FROM MinerDetail md WHERE md.id = :id")
+    List<Object[]> findFilterFields(@Param("id") Long id);
+    
     /**
      * Получить список уникальных алгоритмов
      */
@@ -176,5 +188,27 @@ public interface MinerDetailRepository extends JpaRepository<MinerDetail, Long>
      * Находит MinerDetail по slug
      */
     Optional<MinerDetail> findBySlug(String slug);
+    
+    /**
+     * Пары (id, slug) всех MinerDetail со slug (загрузка MinerDetailSlugIndex)
+     */
+    @Query("SELECT md.id, md.slug FROM MinerDetail md WHERE md.slug IS NOT NULL AND md.slug <> ''")
+    List<Object[]> findAllIdAndSlug();
+
+    /**
+     * Активные MinerDetail без slug (SitemapService назначает slug перед генерацией)
+     */
+    @Query("SELECT md FROM MinerDetail md WHERE (md.slug IS NULL OR md.slug = '') AND (md.active IS NULL OR md.active = true)")
+    List<MinerDetail> findActiveWithoutSlug();
+
+    /**
+     * Строки sitemap в порядке ID: id, slug, время изменения MinerDetail, время последнего изменения предложений
+     * Читается потоком (в транзакции), весь каталог в памяти не держится
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT md.id, md.slug, md.updatedAt, s.lastOfferUpdatedAt FROM MinerDetail md " +
+           "LEFT JOIN MinerDetailOfferStats s ON s.minerDetailId = md.id " +
+           "WHERE md.active IS NULL OR md.active = true ORDER BY md.id")
+    Stream<Object[]> streamSitemapRows();
 }
 
@@ -9,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -87,6 +88,12 @@ public interface OfferRepository extends JpaRepository<Offer, Long> {
      */
     List<Offer> findBySellerId(Long sellerId);
     
+    /**
+     * ID MinerDetail, к которым относятся предложения (для пересчета miner_detail_offer_stats)
+     */
+    @Query("SELECT DISTINCT o.product.minerDetail.id FROM Offer o WHERE o.id IN :offerIds")
+    List<Long> findMinerDetailIdsByOfferIds(@Param("offerIds") Collection<Long> offerIds);
+    
     /**
      * Находит предложения по ID сообщения источника
      */
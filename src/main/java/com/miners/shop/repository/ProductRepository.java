@@ -9,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,6 +21,29 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
      */
     Optional<Product> findByModel(String model);
     
+    /**
+     * Находит товары по списку моделей (батч-загрузка для пачки webhook-сообщений)
+     */
+    List<Product> findByModelIn(Collection<String> models);
+
+    /**
+     * Все пары (ID, модель) для прогрева индекса моделей (ProductModelIndex)
+     */
+    @Query("SELECT p.id, p.model FROM Product p")
+    List<Object[]> findAllIdAndModel();
+
+    /**
+     * Все пары (ID MinerDetail, ID товара) для снимка каталога (CatalogSnapshotService)
+     */
+    @Query("SELECT p.minerDetail.id, p.id FROM Product p WHERE p.minerDetail IS NOT NULL")
+    List<Object[]> findAllMinerDetailIdAndId();
+
+    /**
+     * Все тройки (ID товара, ID MinerDetail, модель) привязанных товаров для поискового индекса (MinerSearchService)
+     */
+    @Query("SELECT p.id, p.minerDetail.id, p.model FROM Product p WHERE p.minerDetail IS NOT NULL")
+    List<Object[]> findAllIdMinerDetailIdAndModel();
+
     /**
      * Находит все товары с пагинацией, отсортированные по дате обновления
      */
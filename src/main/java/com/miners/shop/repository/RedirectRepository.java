@@ -4,6 +4,7 @@ import com.miners.shop.entity.Redirect;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -26,6 +27,11 @@ public interface RedirectRepository extends JpaRepository<Redirect, Long> {
      * Проверить существование редиректа для URL
      */
     boolean existsByFromUrl(String fromUrl);
+    
+    /**
+     * Все активные редиректы (загрузка таблицы RedirectRuleService)
+     */
+    List<Redirect> findByActiveTrueOrderByIdAsc();
 }
 
 
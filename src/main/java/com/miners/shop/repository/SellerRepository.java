@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,6 +22,11 @@ public interface SellerRepository extends JpaRepository<Seller, Long> {
      */
     Optional<Seller> findByPhone(String phone);
     
+    /**
+     * Находит продавцов по списку телефонов (батч-загрузка для пачки webhook-сообщений)
+     */
+    List<Seller> findByPhoneIn(Collection<String> phones);
+    
     /**
      * Находит продавца по WhatsApp ID
      */
@@ -2,9 +2,12 @@ package com.miners.shop.repository;
 
 import com.miners.shop.entity.TelegramGroup;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,6 +22,31 @@ public interface TelegramGroupRepository extends JpaRepository<TelegramGroup, Lo
     
     @Query("SELECT tg FROM TelegramGroup tg WHERE tg.monitoringEnabled = true ORDER BY tg.chatName ASC")
     List<TelegramGroup> findActiveGroups();
+    
+    /**
+     * Атомарно учитывает новые сообщения группы (increment штук, для одиночного сообщения - 1):
+     * создает группу или увеличивает счетчик, обновляет дату последнего сообщения
+     * и название (только если сообщение не старее уже учтенного)
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO telegram_groups (chat_id, chat_name, monitoring_enabled, message_count, last_message_date, created_at, updated_at)
+            VALUES (:chatId, :chatName, true, :increment, :messageDate, now(), now())
+            ON CONFLICT (chat_id) DO UPDATE SET
+                message_count = telegram_groups.message_count + EXCLUDED.message_count,
+                chat_name = CASE
+                    WHEN telegram_groups.last_message_date IS NULL
+                      OR EXCLUDED.last_message_date >= telegram_groups.last_message_date
+                    THEN EXCLUDED.chat_name
+                    ELSE telegram_groups.chat_name
+                END,
+                last_message_date = GREATEST(telegram_groups.last_message_date, EXCLUDED.last_message_date),
+                updated_at = now()
+            """, nativeQuery = true)
+    int upsertMessageStats(@Param("chatId") String chatId,
+                           @Param("chatName") String chatName,
+                           @Param("messageDate") LocalDateTime messageDate,
+                           @Param("increment") int increment);
 }
 
 
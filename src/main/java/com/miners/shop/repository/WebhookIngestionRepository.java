@@ -0,0 +1,106 @@
+package com.miners.shop.repository;
+
+import com.miners.shop.entity.IngestionStatus;
+import com.miners.shop.entity.WebhookIngestion;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Репозиторий очереди приема webhook-сообщений
+ */
+@Repository
+public interface WebhookIngestionRepository extends JpaRepository<WebhookIngestion, Long> {
+
+    /**
+     * Выбирает записи, готовые к обработке, с блокировкой строк
+     * SKIP LOCKED позволяет нескольким воркерам (и нескольким инстансам) не мешать друг другу.
+     * Захваченные, но "зависшие" записи (воркер упал) возвращаются в обработку по lockedAt,
+     * если попытки не исчерпаны (исчерпавшие попытки переводит в DEAD_LETTER deadLetterStale).
+     */
+    @Query(value = """
+            SELECT * FROM webhook_ingestion_queue
+            WHERE (status = 'PENDING' AND next_attempt_at <= :now)
+               OR (status = 'PROCESSING' AND locked_at < :staleBefore AND attempts < :maxAttempts)
+            ORDER BY id
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<WebhookIngestion> findReadyForProcessing(@Param("now") LocalDateTime now,
+                                                  @Param("staleBefore") LocalDateTime staleBefore,
+                                                  @Param("maxAttempts") int maxAttempts,
+                                                  @Param("limit") int limit);
+
+    /**
+     * Переводит в DEAD_LETTER зависшие записи, исчерпавшие попытки (воркер падал на каждой из них)
+     * @return Количество переведенных записей
+     */
+    @Modifying
+    @Query("""
+            UPDATE WebhookIngestion w
+            SET w.status = com.miners.shop.entity.IngestionStatus.DEAD_LETTER, w.lockedAt = null, w.lastError = :error
+            WHERE w.status = com.miners.shop.entity.IngestionStatus.PROCESSING
+              AND w.lockedAt < :staleBefore AND w.attempts >= :maxAttempts
+            """)
+    int deadLetterStale(@Param("staleBefore") LocalDateTime staleBefore,
+                        @Param("maxAttempts") int maxAttempts,
+                        @Param("error") String error);
+
+    /**
+     * Отмечает запись обработанной, только если она все еще захвачена этим воркером
+     * (статус PROCESSING и lockedAt совпадает со временем захвата)
+     * @return 1 - запись обновлена, 0 - запись перехвачена другим воркером или изменена
+     */
+    @Modifying
+    @Query("""
+            UPDATE WebhookIngestion w
+            SET w.status = com.miners.shop.entity.IngestionStatus.DONE, w.processedAt = :now,
+                w.resultMessageId = :resultMessageId, w.lockedAt = null, w.lastError = null
+            WHERE w.id = :id AND w.status = com.miners.shop.entity.IngestionStatus.PROCESSING AND w.lockedAt = :claimedAt
+            """)
+    int markDoneIfClaimed(@Param("id") Long id,
+                          @Param("claimedAt") LocalDateTime claimedAt,
+                          @Param("now") LocalDateTime now,
+                          @Param("resultMessageId") Long resultMessageId);
+
+    /**
+     * Возвращает запись в очередь или переводит в DEAD_LETTER, только если она все еще захвачена этим воркером
+     * @return 1 - запись обновлена, 0 - запись перехвачена другим воркером или изменена
+     */
+    @Modifying
+    @Query("""
+            UPDATE WebhookIngestion w
+            SET w.status = :status, w.nextAttemptAt = :nextAttemptAt, w.lockedAt = null, w.lastError = :error
+            WHERE w.id = :id AND w.status = com.miners.shop.entity.IngestionStatus.PROCESSING AND w.lockedAt = :claimedAt
+            """)
+    int markFailedIfClaimed(@Param("id") Long id,
+                            @Param("claimedAt") LocalDateTime claimedAt,
+                            @Param("status") IngestionStatus status,
+                            @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                            @Param("error") String error);
+
+    long countByStatus(IngestionStatus status);
+
+    /**
+     * Время приема самой старой записи в указанном статусе (для расчета задержки обработки)
+     */
+    @Query("SELECT MIN(w.receivedAt) FROM WebhookIngestion w WHERE w.status = :status")
+    LocalDateTime findOldestReceivedAtByStatus(@Param("status") IngestionStatus status);
+
+    Page<WebhookIngestion> findByStatusOrderByIdDesc(IngestionStatus status, Pageable pageable);
+
+    /**
+     * Удаляет успешно обработанные записи старше указанной даты
+     */
+    @Modifying
+    @Query("DELETE FROM WebhookIngestion w WHERE w.status = :status AND w.processedAt < :before")
+    int deleteByStatusAndProcessedAtBefore(@Param("status") IngestionStatus status,
+                                           @Param("before") LocalDateTime before);
+}
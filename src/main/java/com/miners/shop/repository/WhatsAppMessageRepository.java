@@ -1,13 +1,16 @@
 package com.miners.shop.repository;
 
+import com.miners.shop.dto.MessageSummaryDTO;
 import com.miners.shop.entity.WhatsAppMessage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,8 +19,19 @@ public interface WhatsAppMessageRepository extends JpaRepository<WhatsAppMessage
     
     Optional<WhatsAppMessage> findByMessageId(String messageId);
     
+    List<WhatsAppMessage> findByMessageIdIn(Collection<String> messageIds);
+
+    /**
+     * Текст и наличие parsedData сохраненного сообщения (проверка повторной доставки без загрузки сущности)
+     */
+    @Query("SELECT m.content, CASE WHEN m.parsedData IS NOT NULL THEN true ELSE false END " +
+           "FROM WhatsAppMessage m WHERE m.messageId = :messageId")
+    List<Object[]> findDeliveryFingerprint(@Param("messageId") String messageId);
+    
     List<WhatsAppMessage> findByChatIdOrderByTimestampDesc(String chatId);
     
+    Optional<WhatsAppMessage> findFirstByChatIdOrderByTimestampDesc(String chatId);
+    
     List<WhatsAppMessage> findByChatTypeOrderByTimestampDesc(String chatType);
     
     Page<WhatsAppMessage> findAllByOrderByTimestampDesc(Pageable pageable);
@@ -26,6 +40,19 @@ public interface WhatsAppMessageRepository extends JpaRepository<WhatsAppMessage
     List<WhatsAppMessage> findRecentMessages(LocalDateTime since);
     
     Page<WhatsAppMessage> findByChatTypeOrderByTimestampDesc(String chatType, Pageable pageable);
+
+    /**
+     * Страница списка сообщений без тяжелых колонок (content обрезается в SQL до 300 символов, parsedData - только признак наличия)
+     * Сравнение с '' не распаковывает TOAST: PostgreSQL сравнивает сначала длины
+     */
+    @Query(value = "SELECT new com.miners.shop.dto.MessageSummaryDTO(m.id, m.chatName, m.chatType, m.senderName, m.timestamp, " +
+                   "SUBSTRING(m.content, 1, 300), m.hasMedia, m.isUpdate, " +
+                   "CASE WHEN m.parsedData IS NOT NULL AND m.parsedData <> '' THEN true ELSE false END) " +
+                   "FROM WhatsAppMessage m " +
+                   "WHERE (:chatType IS NULL OR m.chatType = :chatType) " +
+                   "ORDER BY m.timestamp DESC, m.id DESC",
+           countQuery = "SELECT COUNT(m) FROM WhatsAppMessage m WHERE (:chatType IS NULL OR m.chatType = :chatType)")
+    Page<MessageSummaryDTO> findSummaries(@Param("chatType") String chatType, Pageable pageable);
     
     long countByChatType(String chatType);
     
@@ -35,4 +62,33 @@ public interface WhatsAppMessageRepository extends JpaRepository<WhatsAppMessage
      */
     List<WhatsAppMessage> findBySenderPhoneNumberAndChatIdOrderByTimestampDesc(
             String senderPhoneNumber, String chatId);
+    
+    /**
+     * Последнее сообщение каждого продавца в каждом из чатов (для пачки webhook-сообщений)
+     * Возвращает sender_phone_number, chat_id, message_id; сообщения самой пачки исключаются
+     */
+    @Query(value = """
+            SELECT DISTINCT ON (m.sender_phone_number, m.chat_id) m.sender_phone_number, m.chat_id, m.message_id
+            FROM whatsapp_messages m
+            WHERE m.sender_phone_number IN (:senders)
+              AND m.chat_id IN (:chatIds)
+              AND m.message_id NOT IN (:excludeMessageIds)
+            ORDER BY m.sender_phone_number, m.chat_id, m.timestamp DESC
+            """, nativeQuery = true)
+    List<Object[]> findLatestMessageIdsBySenderAndChat(@Param("senders") Collection<String> senders,
+                                                       @Param("chatIds") Collection<String> chatIds,
+                                                       @Param("excludeMessageIds") Collection<String> excludeMessageIds);
+    
+    /**
+     * Агрегаты по групповым чатам для полной сверки telegram_groups:
+     * chat_id, название из последнего сообщения, дата последнего сообщения, общее количество сообщений чата
+     */
+    @Query(value = """
+            SELECT DISTINCT ON (m.chat_id) m.chat_id, m.chat_name, m.timestamp, c.cnt
+            FROM whatsapp_messages m
+            JOIN (SELECT chat_id, COUNT(*) AS cnt FROM whatsapp_messages GROUP BY chat_id) c ON c.chat_id = m.chat_id
+            WHERE m.chat_type = 'group'
+            ORDER BY m.chat_id, m.timestamp DESC
+            """, nativeQuery = true)
+    List<Object[]> findGroupChatStats();
 }
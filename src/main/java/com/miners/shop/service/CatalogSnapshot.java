@@ -0,0 +1,413 @@
+package com.miners.shop.service;
+
+import com.miners.shop.dto.MinerDetailDTO;
+import com.miners.shop.entity.OperationType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Неизменяемый снимок публичного каталога: карточки активных MinerDetail с предложениями,
+ * списки для фильтров и готовый порядок для каждого вида сортировки.
+ * Собирается CatalogSnapshotService целиком и подменяется атомарно; читатели работают
+ * со своей ссылкой на снимок без блокировок и без обращений к БД.
+ * Объекты внутри снимка (в т.ч. MinerDetailDTO) не должны изменяться после сборки.
+ */
+public final class CatalogSnapshot {
+
+    public static final String SORT_LATEST_OFFER = "latestOffer";
+    public static final String SORT_NAME = "name";
+    public static final String SORT_MANUFACTURER = "manufacturer";
+    /**
+     * Порядок результатов поиска (MinerSearchService); без поиска - как latestOffer
+     */
+    public static final String SORT_RELEVANCE = "relevance";
+
+    public static final String FACET_MANUFACTURER = "manufacturer";
+    public static final String FACET_SERIES = "series";
+    public static final String FACET_ALGORITHM = "algorithm";
+    public static final String FACET_OPERATION_TYPE = "operationType";
+    public static final List<String> FACETS = List.of(FACET_MANUFACTURER, FACET_SERIES, FACET_ALGORITHM, FACET_OPERATION_TYPE);
+
+    private static final Comparator<Card> BY_LATEST_OFFER = Comparator
+            .comparing(Card::lastOfferAt, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Card::id, Comparator.reverseOrder());
+
+    private static final Comparator<Card> BY_NAME = Comparator
+            .comparing((Card card) -> nullToEmpty(card.minerDetail().getStandardName()), String.CASE_INSENSITIVE_ORDER);
+
+    private static final Comparator<Card> BY_MANUFACTURER = Comparator
+            .comparing((Card card) -> nullToEmpty(card.minerDetail().getManufacturer()), String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(BY_NAME);
+
+    private final long version;
+    private final LocalDateTime builtAt;
+    private final Map<Long, Card> cardsById;
+    private final Map<String, List<Card>> orders;
+    /**
+     * Позиция карточки в порядке latestOffer - номер бита в битовых картах фасетов
+     */
+    private final Map<Long, Integer> positionById;
+    /**
+     * Фасет -> значение -> карточки с этим значением (битовая карта по позициям)
+     */
+    private final Map<String, Map<String, BitSet>> facetBits;
+    private final List<String> manufacturers;
+    private final List<String> series;
+    private final Map<String, Set<String>> seriesToManufacturers;
+    private final long totalMinerDetails;
+    private final long totalProducts;
+    private final long totalOffers;
+
+    /**
+     * @param cards - карточки в любом порядке
+     * @param manufacturers - производители активных MinerDetail (для фильтров)
+     * @param series - серии активных MinerDetail (для фильтров)
+     * @param seriesToManufacturers - серия -> производители
+     */
+    public CatalogSnapshot(long version, LocalDateTime builtAt, List<Card> cards,
+                           List<String> manufacturers, List<String> series,
+                           Map<String, Set<String>> seriesToManufacturers,
+                           long totalMinerDetails, long totalProducts, long totalOffers) {
+        this.version = version;
+        this.builtAt = builtAt;
+        this.cardsById = cards.stream().collect(Collectors.toUnmodifiableMap(Card::id, Function.identity()));
+        this.orders = Map.of(
+                SORT_LATEST_OFFER, cards.stream().sorted(BY_LATEST_OFFER).toList(),
+                SORT_NAME, cards.stream().sorted(BY_NAME).toList(),
+                SORT_MANUFACTURER, cards.stream().sorted(BY_MANUFACTURER).toList());
+        List<Card> positions = orders.get(SORT_LATEST_OFFER);
+        Map<Long, Integer> positionMap = new HashMap<>();
+        Map<String, Map<String, BitSet>> bits = new HashMap<>();
+        FACETS.forEach(facet -> bits.put(facet, new TreeMap<>(String.CASE_INSENSITIVE_ORDER)));
+        for (int position = 0; position < positions.size(); position++) {
+            Card card = positions.get(position);
+            positionMap.put(card.id(), position);
+            for (String facet : FACETS) {
+                for (String value : card.facetValues(facet)) {
+                    bits.get(facet).computeIfAbsent(value, k -> new BitSet(positions.size())).set(position);
+                }
+            }
+        }
+        this.positionById = Map.copyOf(positionMap);
+        this.facetBits = bits.entrySet().stream()
+                .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, e -> Collections.unmodifiableMap(e.getValue())));
+        this.manufacturers = List.copyOf(manufacturers);
+        this.series = List.copyOf(series);
+        this.seriesToManufacturers = seriesToManufacturers.entrySet().stream()
+                .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, e -> Set.copyOf(e.getValue())));
+        this.totalMinerDetails = totalMinerDetails;
+        this.totalProducts = totalProducts;
+        this.totalOffers = totalOffers;
+    }
+
+    /**
+     * Карточки с учетом фильтров в порядке сортировки (неизвестная сортировка = latestOffer)
+     * @param filters - фасет -> выбранные значения (ИЛИ внутри фасета, И между фасетами), см. filters()
+     * @param searchHits - ID MinerDetail из поискового индекса по убыванию релевантности (null - без поиска);
+     *                     ID без карточки (неактивные, без предложений) пропускаются
+     */
+    public List<Card> find(String sortBy, Map<String, List<String>> filters, List<Long> searchHits) {
+        List<Card> ordered;
+        if (searchHits != null && SORT_RELEVANCE.equals(sortBy)) {
+            ordered = searchHits.stream().map(cardsById::get).filter(Objects::nonNull).toList();
+        } else {
+            ordered = orders.getOrDefault(sortBy, orders.get(SORT_LATEST_OFFER));
+        }
+        if ((filters == null || filters.isEmpty()) && searchHits == null) {
+            return ordered;
+        }
+        BitSet matched = matching(filters, searchHits, null);
+        return ordered.stream()
+                .filter(card -> matched.get(positionById.get(card.id())))
+                .toList();
+    }
+
+    /**
+     * Счетчики фасетов для текущего выбора за один проход по битовым картам: для значения фасета -
+     * сколько карточек останется, если выбрать его при прочих фильтрах (собственный фильтр фасета не учитывается,
+     * иначе невыбранные значения всегда давали бы 0)
+     */
+    public FacetCounts facets(Map<String, List<String>> filters, List<Long> searchHits) {
+        Map<String, List<FacetValue>> result = new LinkedHashMap<>();
+        for (String facet : FACETS) {
+            BitSet mask = matching(filters, searchHits, facet);
+            List<String> selected = filters != null ? filters.getOrDefault(facet, List.of()) : List.of();
+            List<FacetValue> values = new ArrayList<>();
+            facetBits.get(facet).forEach((value, bits) -> {
+                BitSet intersection = (BitSet) bits.clone();
+                intersection.and(mask);
+                values.add(new FacetValue(value, intersection.cardinality(), selected.contains(value)));
+            });
+            result.put(facet, values);
+        }
+        return new FacetCounts(matching(filters, searchHits, null).cardinality(), result);
+    }
+
+    /**
+     * Фильтры для find/page/facets; пустые и null-списки пропускаются
+     */
+    public static Map<String, List<String>> filters(List<String> manufacturers, List<String> series,
+                                                    List<String> algorithms, List<String> operationTypes) {
+        Map<String, List<String>> filters = new HashMap<>();
+        putFilter(filters, FACET_MANUFACTURER, manufacturers);
+        putFilter(filters, FACET_SERIES, series);
+        putFilter(filters, FACET_ALGORITHM, algorithms);
+        putFilter(filters, FACET_OPERATION_TYPE, operationTypes);
+        return filters;
+    }
+
+    /**
+     * Страница каталога
+     * @param after - курсор (только для latestOffer): страница начинается сразу после него, offset не используется
+     */
+    public Page page(String sortBy, Map<String, List<String>> filters, List<Long> searchHits,
+                     LatestOfferCursor after, long offset, int size) {
+        List<Card> matched = find(sortBy, filters, searchHits);
+        boolean latestOffer = isLatestOfferSort(sortBy);
+        int start = latestOffer && after != null ? indexAfter(matched, after) : (int) Math.min(offset, matched.size());
+        int end = Math.min(start + size, matched.size());
+        List<Card> content = matched.subList(start, end);
+        LatestOfferCursor next = null;
+        if (latestOffer && end < matched.size() && !content.isEmpty()) {
+            Card last = content.get(content.size() - 1);
+            next = new LatestOfferCursor(last.lastOfferAt(), last.id());
+        }
+        return new Page(content, matched.size(), next);
+    }
+
+    /**
+     * Сортировка по последнему предложению (сортировка по умолчанию, страницы по курсору)
+     */
+    public static boolean isLatestOfferSort(String sortBy) {
+        return !SORT_NAME.equals(sortBy) && !SORT_MANUFACTURER.equals(sortBy) && !SORT_RELEVANCE.equals(sortBy);
+    }
+
+    /**
+     * Первые limit карточек производителя по количеству предложений (главная страница)
+     */
+    public List<Card> topByOfferCount(String manufacturer, int limit) {
+        return orders.get(SORT_LATEST_OFFER).stream()
+                .filter(card -> manufacturer.equals(card.minerDetail().getManufacturer()))
+                .sorted(Comparator.comparingLong(Card::offerCount).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Серии выбранных производителей (по алфавиту)
+     */
+    public List<String> getSeriesByManufacturers(List<String> manufacturers) {
+        Set<String> result = new TreeSet<>();
+        seriesToManufacturers.forEach((seriesValue, seriesManufacturers) -> {
+            if (seriesManufacturers.stream().anyMatch(manufacturers::contains)) {
+                result.add(seriesValue);
+            }
+        });
+        return List.copyOf(result);
+    }
+
+    public Card getCard(Long minerDetailId) {
+        return cardsById.get(minerDetailId);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public LocalDateTime getBuiltAt() {
+        return builtAt;
+    }
+
+    public int getCardCount() {
+        return cardsById.size();
+    }
+
+    public List<String> getManufacturers() {
+        return manufacturers;
+    }
+
+    public List<String> getSeries() {
+        return series;
+    }
+
+    public Map<String, Set<String>> getSeriesToManufacturers() {
+        return seriesToManufacturers;
+    }
+
+    public long getTotalMinerDetails() {
+        return totalMinerDetails;
+    }
+
+    public long getTotalProducts() {
+        return totalProducts;
+    }
+
+    public long getTotalOffers() {
+        return totalOffers;
+    }
+
+    /**
+     * Позиция первой карточки, идущей в сортировке latestOffer после курсора
+     */
+    private static int indexAfter(List<Card> ordered, LatestOfferCursor cursor) {
+        Card probe = new Card(null, null, null, 0, 0, 0, 0, null, null, cursor.lastOfferAt(), cursor.id());
+        int low = 0;
+        int high = ordered.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (BY_LATEST_OFFER.compare(ordered.get(mid), probe) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Карточки, прошедшие поиск и фильтры (кроме фасета skipFacet)
+     */
+    private BitSet matching(Map<String, List<String>> filters, List<Long> searchHits, String skipFacet) {
+        BitSet result = new BitSet(positionById.size());
+        if (searchHits != null) {
+            for (Long id : searchHits) {
+                Integer position = positionById.get(id);
+                if (position != null) {
+                    result.set(position);
+                }
+            }
+        } else {
+            result.set(0, positionById.size());
+        }
+        if (filters == null) {
+            return result;
+        }
+        filters.forEach((facet, values) -> {
+            Map<String, BitSet> valueBits = facetBits.get(facet);
+            if (facet.equals(skipFacet) || valueBits == null) {
+                return;
+            }
+            BitSet selected = new BitSet(positionById.size());
+            values.stream().map(valueBits::get).filter(Objects::nonNull).forEach(selected::or);
+            result.and(selected);
+        });
+        return result;
+    }
+
+    private static void putFilter(Map<String, List<String>> filters, String facet, List<String> values) {
+        if (values != null && !values.isEmpty()) {
+            filters.put(facet, values);
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * Карточка MinerDetail в каталоге
+     * @param minerDetail - данные MinerDetail (только чтение)
+     * @param slug - slug или ID для ссылки на страницу товара
+     * @param imageUrl - изображение (из MinerDetail или ImageUrlResolver)
+     * @param minPrice - минимальная цена SELL (сначала за последние 24 часа), null - цены нет
+     * @param lastOfferAt - дата последнего обновления предложений
+     * @param id - ID MinerDetail
+     */
+    public record Card(MinerDetailDTO minerDetail, String slug, String imageUrl,
+                       long offerCount, long sellCount, long buyCount, long totalQuantity,
+                       BigDecimal minPrice, String currency, LocalDateTime lastOfferAt, Long id) {
+
+        /**
+         * Значения фасета карточки (тип операции - SELL и/или BUY по наличию предложений)
+         */
+        List<String> facetValues(String facet) {
+            String value = switch (facet) {
+                case FACET_MANUFACTURER -> minerDetail.getManufacturer();
+                case FACET_SERIES -> minerDetail.getSeries();
+                case FACET_ALGORITHM -> minerDetail.getAlgorithm();
+                default -> null;
+            };
+            if (FACET_OPERATION_TYPE.equals(facet)) {
+                List<String> types = new ArrayList<>(2);
+                if (sellCount > 0) {
+                    types.add(OperationType.SELL.name());
+                }
+                if (buyCount > 0) {
+                    types.add(OperationType.BUY.name());
+                }
+                return types;
+            }
+            return value != null && !value.isBlank() ? List.of(value) : List.of();
+        }
+    }
+
+    /**
+     * Значение фасета
+     * @param count - карточек при выборе этого значения (с учетом остальных фильтров)
+     * @param selected - значение выбрано в текущем фильтре
+     */
+    public record FacetValue(String value, int count, boolean selected) {
+    }
+
+    /**
+     * Счетчики фасетов
+     * @param total - карточек с учетом всех фильтров
+     * @param facets - фасет -> значения (по алфавиту)
+     */
+    public record FacetCounts(int total, Map<String, List<FacetValue>> facets) {
+    }
+
+    /**
+     * Страница каталога
+     * @param content - карточки страницы
+     * @param totalElements - всего карточек с учетом фильтров
+     * @param next - курсор следующей страницы (только для latestOffer; null - страница последняя)
+     */
+    public record Page(List<Card> content, long totalElements, LatestOfferCursor next) {
+    }
+
+    /**
+     * Позиция в сортировке "по последнему предложению": дата последнего предложения и ID MinerDetail
+     * В API передается строкой "<дата ISO>_<id>"
+     */
+    public record LatestOfferCursor(LocalDateTime lastOfferAt, long id) {
+
+        public String encode() {
+            return lastOfferAt + "_" + id;
+        }
+
+        /**
+         * @return Курсор или null, если строка пустая или некорректная
+         */
+        public static LatestOfferCursor decode(String value) {
+            if (value == null || value.isBlank()) {
+                return null;
+            }
+            int separator = value.lastIndexOf('_');
+            if (separator <= 0) {
+                return null;
+            }
+            try {
+                return new LatestOfferCursor(LocalDateTime.parse(value.substring(0, separator)),
+                        Long.parseLong(value.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.MinerDetail;
+import com.miners.shop.util.TransactionUtil;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JPA-слушатель MinerDetail: помечает снимок каталога устаревшим после коммита
+ * (название, изображение, slug, активность и фильтры карточек берутся из MinerDetail)
+ * и обновляет штамп MinerDetail для условных GET-запросов страницы товара
+ */
+@Component
+@RequiredArgsConstructor
+public class CatalogSnapshotListener {
+
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final CatalogVersionService catalogVersionService;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    void onChange(MinerDetail minerDetail) {
+        List<Long> ids = Collections.singletonList(minerDetail.getId());
+        TransactionUtil.afterCommit(() -> {
+            catalogSnapshotService.markDirty();
+            catalogVersionService.touch(ids);
+        });
+    }
+}
@@ -0,0 +1,208 @@
+package com.miners.shop.service;
+
+import com.miners.shop.dto.MinerDetailDTO;
+import com.miners.shop.entity.MinerDetail;
+import com.miners.shop.entity.MinerDetailOfferStats;
+import com.miners.shop.repository.MinerDetailOfferStatsRepository;
+import com.miners.shop.repository.MinerDetailRepository;
+import com.miners.shop.repository.OfferRepository;
+import com.miners.shop.repository.ProductRepository;
+import com.miners.shop.util.ImageUrlResolver;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Публичный каталог из памяти (CatalogSnapshot)
+ *
+ * /products, /api/products, /api/products/series и главная страница читают текущий снимок и не обращаются к БД.
+ * Изменения предложений (MinerDetailOfferStatsService) и MinerDetail (CatalogSnapshotListener) только помечают
+ * снимок устаревшим; пересборка идет в фоне после паузы в изменениях (debounce), но не реже max-delay
+ * при непрерывном потоке изменений. Новый снимок подменяется атомарно - читатели видят либо старую,
+ * либо новую версию целиком.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CatalogSnapshotService {
+
+    private final MinerDetailRepository minerDetailRepository;
+    private final MinerDetailOfferStatsRepository statsRepository;
+    private final ProductRepository productRepository;
+    private final OfferRepository offerRepository;
+    private final ImageUrlResolver imageUrlResolver;
+    private final TransactionTemplate transactionTemplate;
+    private final PublicPageCache publicPageCache;
+
+    @Value("${app.catalog.snapshot.debounce-ms:2000}")
+    private long debounceMs;
+
+    @Value("${app.catalog.snapshot.max-delay-ms:30000}")
+    private long maxDelayMs;
+
+    private final AtomicReference<CatalogSnapshot> current = new AtomicReference<>();
+    private final AtomicLong versionSequence = new AtomicLong();
+
+    /**
+     * Время первого и последнего изменения после последней сборки (0 - снимок актуален)
+     */
+    private final AtomicLong firstChangeAt = new AtomicLong();
+    private final AtomicLong lastChangeAt = new AtomicLong();
+
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong failedRebuilds = new AtomicLong();
+    private volatile long lastBuildMs;
+
+    /**
+     * Текущий снимок; до первой сборки (запросы во время старта) собирается синхронно
+     */
+    public CatalogSnapshot get() {
+        CatalogSnapshot snapshot = current.get();
+        return snapshot != null ? snapshot : ensureBuilt();
+    }
+
+    /**
+     * Помечает снимок устаревшим; пересборка - по расписанию (rebuildIfDirty)
+     */
+    public void markDirty() {
+        long now = System.currentTimeMillis();
+        lastChangeAt.set(now);
+        firstChangeAt.compareAndSet(0, now);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("❌ Не удалось собрать снимок каталога при старте: {}", e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.catalog.snapshot.check-interval-ms:500}")
+    public void rebuildIfDirty() {
+        long first = firstChangeAt.get();
+        if (first == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastChangeAt.get() < debounceMs && now - first < maxDelayMs) {
+            return;
+        }
+        // Сбрасываем до сборки: изменения, пришедшие во время сборки, вызовут следующую
+        firstChangeAt.set(0);
+        try {
+            rebuild();
+        } catch (Exception e) {
+            markDirty();
+            log.error("❌ Ошибка пересборки снимка каталога: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Первая сборка: запросы, ждавшие блокировку, получают снимок, собранный первым из них
+     */
+    private synchronized CatalogSnapshot ensureBuilt() {
+        CatalogSnapshot snapshot = current.get();
+        return snapshot != null ? snapshot : rebuild();
+    }
+
+    /**
+     * Собирает новый снимок и публикует его
+     */
+    public synchronized CatalogSnapshot rebuild() {
+        long started = System.currentTimeMillis();
+        try {
+            CatalogSnapshot snapshot = transactionTemplate.execute(status -> build());
+            current.set(snapshot);
+            // Главная и каталог отрисованы по прежнему снимку
+            publicPageCache.evictTag(PublicPageCache.TAG_CATALOG);
+            rebuilds.incrementAndGet();
+            lastBuildMs = System.currentTimeMillis() - started;
+            log.info("📦 Снимок каталога v{} собран: {} карточек ({} мс)",
+                    snapshot.getVersion(), snapshot.getCardCount(), lastBuildMs);
+            return snapshot;
+        } catch (RuntimeException e) {
+            failedRebuilds.incrementAndGet();
+            throw e;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        CatalogSnapshot snapshot = current.get();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("version", snapshot != null ? snapshot.getVersion() : null);
+        result.put("builtAt", snapshot != null ? snapshot.getBuiltAt() : null);
+        result.put("cards", snapshot != null ? snapshot.getCardCount() : 0);
+        result.put("dirty", firstChangeAt.get() != 0);
+        result.put("rebuilds", rebuilds.get());
+        result.put("failedRebuilds", failedRebuilds.get());
+        result.put("lastBuildMs", lastBuildMs);
+        result.put("debounceMs", debounceMs);
+        result.put("maxDelayMs", maxDelayMs);
+        return result;
+    }
+
+    /**
+     * Чтение каталога из БД: статистика предложений, активные MinerDetail с предложениями, ID товаров, фильтры
+     */
+    private CatalogSnapshot build() {
+        Map<Long, MinerDetailOfferStats> stats = statsRepository.findAll().stream()
+                .collect(Collectors.toMap(MinerDetailOfferStats::getMinerDetailId, Function.identity()));
+
+        Map<Long, List<Long>> productIds = new HashMap<>();
+        for (Object[] row : productRepository.findAllMinerDetailIdAndId()) {
+            productIds.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((Long) row[1]);
+        }
+
+        List<CatalogSnapshot.Card> cards = new ArrayList<>();
+        for (MinerDetail minerDetail : minerDetailRepository.findAllById(stats.keySet())) {
+            if (Boolean.FALSE.equals(minerDetail.getActive())) {
+                continue;
+            }
+            MinerDetailOfferStats offerStats = stats.get(minerDetail.getId());
+            MinerDetailDTO dto = MinerDetailDTO.fromEntity(minerDetail,
+                    List.copyOf(productIds.getOrDefault(minerDetail.getId(), List.of())));
+            String slug = dto.getSlug() != null && !dto.getSlug().isEmpty() ? dto.getSlug() : String.valueOf(dto.getId());
+            String imageUrl = dto.getImageUrl() != null && !dto.getImageUrl().trim().isEmpty()
+                    ? dto.getImageUrl()
+                    : imageUrlResolver.resolveImageUrl(dto.getStandardName());
+            cards.add(new CatalogSnapshot.Card(dto, slug, imageUrl,
+                    offerStats.getOfferCount(), offerStats.getSellCount(), offerStats.getBuyCount(),
+                    offerStats.getTotalQuantity(), offerStats.getMinPrice(), offerStats.getCurrency(),
+                    offerStats.getLastOfferUpdatedAt(), dto.getId()));
+        }
+
+        Map<String, Set<String>> seriesToManufacturers = new HashMap<>();
+        for (Object[] row : minerDetailRepository.findSeriesManufacturerMapping()) {
+            String seriesValue = (String) row[0];
+            String manufacturerValue = (String) row[1];
+            if (seriesValue != null && manufacturerValue != null) {
+                seriesToManufacturers.computeIfAbsent(seriesValue, k -> new HashSet<>()).add(manufacturerValue);
+            }
+        }
+
+        return new CatalogSnapshot(versionSequence.incrementAndGet(), LocalDateTime.now(), cards,
+                minerDetailRepository.findDistinctManufacturers(), minerDetailRepository.findDistinctSeries(),
+                seriesToManufacturers,
+                minerDetailRepository.count(), productRepository.count(), offerRepository.count());
+    }
+}
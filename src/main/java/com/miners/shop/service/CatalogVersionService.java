@@ -0,0 +1,111 @@
+package com.miners.shop.service;
+
+import com.miners.shop.util.TransactionUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Версии данных каталога для условных GET-запросов (ETag / Last-Modified + 304)
+ *
+ * Для каждого MinerDetail хранится штамп изменения: номер ревизии (монотонно растет при любой записи
+ * предложений, MinerDetail или майнера компании) и время изменения. Штампы живут в памяти,
+ * поэтому ответ 304 отдается без обращения к БД. MinerDetail, не менявшиеся с запуска, получают штамп запуска,
+ * а идентификатор экземпляра в ETag не дает совпасть тегам, выданным до перезапуска.
+ * Вместе со штампом из кэша отрисованных страниц удаляется страница товара (PublicPageCache).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CatalogVersionService {
+
+    private final PublicPageCache publicPageCache;
+
+    private final String instanceId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong revision = new AtomicLong();
+    private final Map<Long, Stamp> stamps = new ConcurrentHashMap<>();
+    private volatile Stamp baseline = new Stamp(0, secondsNow());
+    private final AtomicLong notModifiedResponses = new AtomicLong();
+
+    /**
+     * Идентификатор экземпляра приложения (часть ETag)
+     */
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Штамп изменения MinerDetail
+     */
+    public Stamp getStamp(Long minerDetailId) {
+        Stamp current = baseline;
+        Stamp stamp = minerDetailId != null ? stamps.get(minerDetailId) : null;
+        return stamp != null && stamp.revision() > current.revision() ? stamp : current;
+    }
+
+    /**
+     * Отмечает изменение MinerDetail сразу (вызывающий код сам отвечает за момент после коммита)
+     */
+    public void touch(Collection<Long> minerDetailIds) {
+        Stamp stamp = new Stamp(revision.incrementAndGet(), secondsNow());
+        List<Long> ids = minerDetailIds.stream().filter(Objects::nonNull).toList();
+        ids.forEach(id -> stamps.put(id, stamp));
+        publicPageCache.evictMinerDetails(ids);
+    }
+
+    /**
+     * Отмечает изменение MinerDetail после коммита текущей транзакции (без транзакции - сразу)
+     */
+    public void touchAfterCommit(Long... minerDetailIds) {
+        Collection<Long> ids = Arrays.asList(minerDetailIds);
+        TransactionUtil.afterCommit(() -> touch(ids));
+    }
+
+    /**
+     * Отмечает изменение всего каталога (полная пересборка статистики)
+     */
+    public void touchAll() {
+        baseline = new Stamp(revision.incrementAndGet(), secondsNow());
+        stamps.clear();
+        publicPageCache.evictAll();
+        log.debug("Все штампы каталога сброшены, ревизия {}", baseline.revision());
+    }
+
+    public void recordNotModified() {
+        notModifiedResponses.incrementAndGet();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("instanceId", instanceId);
+        result.put("revision", revision.get());
+        result.put("trackedMinerDetails", stamps.size());
+        result.put("baselineModifiedAt", baseline.modifiedAt());
+        result.put("notModifiedResponses", notModifiedResponses.get());
+        return result;
+    }
+
+    /**
+     * Last-Modified передается с точностью до секунды, поэтому время хранится округленным
+     */
+    private static long secondsNow() {
+        return System.currentTimeMillis() / 1000 * 1000;
+    }
+
+    /**
+     * Штамп изменения
+     * @param revision - номер ревизии (строгий ETag)
+     * @param modifiedAt - время изменения, мс (Last-Modified)
+     */
+    public record Stamp(long revision, long modifiedAt) {
+    }
+}
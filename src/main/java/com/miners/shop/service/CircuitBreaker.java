@@ -0,0 +1,101 @@
+package com.miners.shop.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Предохранитель для внешнего сервиса
+ *
+ * После failureThreshold ошибок подряд размыкается на openMillis: вызовы отклоняются без обращения к сервису.
+ * По истечении паузы пропускается один пробный вызов (HALF_OPEN): успех замыкает предохранитель,
+ * ошибка снова размыкает его на openMillis.
+ */
+@Slf4j
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntil;
+    private long rejected;
+    private long opened;
+    private Instant lastFailureAt;
+    private String lastError;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true - вызов разрешен (для HALF_OPEN - единственный пробный)
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() >= openUntil) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                rejected++;
+                return false;
+            default:
+                rejected++;
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("✅ {}: сервис снова доступен", name);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void onFailure(Throwable error) {
+        consecutiveFailures++;
+        lastFailureAt = Instant.now();
+        lastError = error == null ? null : error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openUntil = System.currentTimeMillis() + openMillis;
+            opened++;
+            log.warn("⛔ {}: {} ошибок подряд, запросы приостановлены на {} с: {}",
+                    name, consecutiveFailures, openMillis / 1000, lastError);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("state", state);
+        result.put("consecutiveFailures", consecutiveFailures);
+        result.put("opened", opened);
+        result.put("rejected", rejected);
+        result.put("openUntil", state == State.OPEN ? Instant.ofEpochMilli(openUntil) : null);
+        result.put("lastFailureAt", lastFailureAt);
+        result.put("lastError", lastError);
+        return result;
+    }
+}
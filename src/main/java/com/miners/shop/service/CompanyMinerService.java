@@ -33,6 +33,7 @@ public class CompanyMinerService {
     private final MinerDetailRepository minerDetailRepository;
     private final CurrencyRepository currencyRepository;
     private final HashrateUnitRepository hashrateUnitRepository;
+    private final CatalogVersionService catalogVersionService;
     
     /**
      * Получить все майнеры компании
@@ -124,6 +125,8 @@ public class CompanyMinerService {
         // Сохраняем CompanyMiner
         CompanyMiner saved = companyMinerRepository.save(companyMiner);
         log.info("Создан CompanyMiner с ID: {}", saved.getId());
+        // Майнер компании показывается на странице товара
+        catalogVersionService.touchAfterCommit(minerDetail.getId());
         
         // Создаем дополнительные поля, если они есть
         if (dto.customFields() != null && !dto.customFields().isEmpty()) {
@@ -190,6 +193,7 @@ public class CompanyMinerService {
         // Сохраняем изменения
         CompanyMiner saved = companyMinerRepository.save(companyMiner);
         log.info("Обновлен CompanyMiner с ID: {}", saved.getId());
+        catalogVersionService.touchAfterCommit(saved.getMinerDetail() != null ? saved.getMinerDetail().getId() : null);
         
         return CompanyMinerDTO.fromEntity(saved);
     }
@@ -201,11 +205,11 @@ public class CompanyMinerService {
     public void deleteCompanyMiner(Long id) {
         log.info("Удаление CompanyMiner с ID: {}", id);
         
-        if (!companyMinerRepository.existsById(id)) {
-            throw new IllegalArgumentException("CompanyMiner с ID " + id + " не найден");
-        }
+        CompanyMiner companyMiner = companyMinerRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("CompanyMiner с ID " + id + " не найден"));
         
-        companyMinerRepository.deleteById(id);
+        companyMinerRepository.delete(companyMiner);
+        catalogVersionService.touchAfterCommit(companyMiner.getMinerDetail() != null ? companyMiner.getMinerDetail().getId() : null);
         log.info("Удален CompanyMiner с ID: {}", id);
     }
     
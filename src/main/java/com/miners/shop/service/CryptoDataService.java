@@ -1,198 +1,280 @@
 package com.miners.shop.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miners.shop.entity.CryptoQuote;
+import com.miners.shop.repository.CryptoQuoteRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Сервис для получения данных о криптовалютах из внешних API
+ * Сервис данных о криптовалютах для калькулятора доходности
  * - Курс криптовалюты
  * - Сложность сети
  * - Комиссия пула (средние значения)
+ *
+ * Запрос калькулятора никогда не ждет внешние API: отдаются последние успешно полученные значения
+ * (в памяти и в таблице crypto_quotes, загружаются при старте). Фоновое обновление раз в refresh-interval-ms
+ * запрашивает курсы всех монет и сложность сетей параллельно (CryptoMarketProvider, app.crypto.provider)
+ * и сохраняет удачные значения; при ошибке источника остаются прежние вместе со своим временем получения
+ * (время хранится отдельно для курса и для сложности). Значения по умолчанию не сохраняются: пока значение
+ * ни разу не получено, калькулятор получает значение по умолчанию, а данные считаются устаревшими.
+ * Если значения старше stale-after-ms (например, планировщик занят), запрос калькулятора запускает
+ * внеочередное обновление в фоне.
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class CryptoDataService {
-    
-    private final ObjectMapper objectMapper;
-    private final HttpClient httpClient;
-    
-    public CryptoDataService() {
-        this.objectMapper = new ObjectMapper();
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
+
+    /**
+     * Монеты калькулятора
+     */
+    public static final List<String> SUPPORTED_CRYPTOS = List.of("BTC", "LTC", "DOGE");
+
+    private final List<CryptoMarketProvider> providers;
+    private final CryptoQuoteRepository cryptoQuoteRepository;
+
+    @Value("${app.crypto.provider:http}")
+    private String providerName;
+
+    @Value("${app.crypto.refresh-timeout-ms:20000}")
+    private long refreshTimeoutMs;
+
+    @Value("${app.crypto.stale-after-ms:900000}")
+    private long staleAfterMs;
+
+    /**
+     * Внеочередное обновление запускается не чаще этого интервала (не нагружать недоступный источник)
+     */
+    @Value("${app.crypto.min-retry-interval-ms:60000}")
+    private long minRetryIntervalMs;
+
+    private CryptoMarketProvider provider;
+
+    /**
+     * Последние сохраненные строки crypto_quotes (новый объект на каждое обновление)
+     */
+    private final Map<String, CryptoQuote> lastGood = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile long lastAttemptAt;
+    private volatile LocalDateTime lastRefreshAt;
+    private volatile long lastRefreshMs;
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failedFetches = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+    private final AtomicLong defaultsServed = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        provider = providers.stream()
+                .filter(p -> p.getName().equalsIgnoreCase(providerName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Неизвестный app.crypto.provider: " + providerName));
     }
-    
+
     /**
-     * Получить данные для калькулятора доходности
-     * Использует Spring Cache для кэширования (TTL 5 минут)
+     * Загрузка сохраненных значений и первое обновление в фоне
      */
-    @Cacheable(value = "cryptoData", key = "#crypto")
-    public CryptoCalculatorData getCalculatorData(String crypto) {
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
         try {
-            log.info("Получение данных для {} (не из кэша)", crypto);
-            
-            CryptoCalculatorData data = new CryptoCalculatorData();
-            
-            // Получаем курс криптовалюты
-            data.setPrice(getCryptoPrice(crypto));
-            
-            // Получаем сложность сети
-            data.setDifficulty(getNetworkDifficulty(crypto));
-            
-            // Получаем среднюю комиссию пула
-            data.setPoolFee(getAveragePoolFee(crypto));
-            
-            log.info("Получены данные для {}: цена={}, сложность={}, комиссия={}", 
-                    crypto, data.getPrice(), data.getDifficulty(), data.getPoolFee());
-            
-            return data;
-        } catch (Exception e) {
-            log.error("Ошибка при получении данных для {}: {}", crypto, e.getMessage(), e);
-            // Возвращаем значения по умолчанию
-            return getDefaultData(crypto);
+            for (CryptoQuote quote : cryptoQuoteRepository.findAll()) {
+                lastGood.put(quote.getCrypto(), quote);
+            }
+            log.info("✅ Данные калькулятора загружены из БД: {} монет, источник {}", lastGood.size(), provider.getName());
+        } catch (RuntimeException e) {
+            log.error("Ошибка загрузки данных калькулятора из БД: {}", e.getMessage(), e);
         }
+        triggerRefresh();
     }
-    
+
     /**
-     * Получить курс криптовалюты в рублях через CoinGecko API
+     * Получить данные для калькулятора доходности (без обращения к сети)
+     * Если значений еще нет (первый запуск без сети) - значения по умолчанию
      */
-    private BigDecimal getCryptoPrice(String crypto) {
-        try {
-            String coinId = getCoinGeckoId(crypto);
-            if (coinId == null) {
-                log.warn("Неизвестная криптовалюта: {}", crypto);
-                return getDefaultPrice(crypto);
-            }
-            
-            // CoinGecko API для получения курса в рублях
-            String url = String.format("https://api.coingecko.com/api/v3/simple/price?ids=%s&vs_currencies=rub", coinId);
-            
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofSeconds(10))
-                    .GET()
-                    .build();
-            
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            
-            if (response.statusCode() == 200) {
-                JsonNode json = objectMapper.readTree(response.body());
-                JsonNode priceNode = json.get(coinId).get("rub");
-                if (priceNode != null) {
-                    return priceNode.decimalValue();
-                }
+    public CryptoCalculatorData getCalculatorData(String crypto) {
+        if (!SUPPORTED_CRYPTOS.contains(crypto)) {
+            return getDefaultData(crypto);
+        }
+        CryptoQuote quote = lastGood.get(crypto);
+        CryptoCalculatorData data = quote != null ? toData(quote) : null;
+        if (data == null || isStale(data)) {
+            if (data != null) {
+                staleServed.incrementAndGet();
+            } else {
+                defaultsServed.incrementAndGet();
             }
-            
-            log.warn("Не удалось получить курс для {} из CoinGecko", crypto);
-            return getDefaultPrice(crypto);
-        } catch (Exception e) {
-            log.error("Ошибка при получении курса для {}: {}", crypto, e.getMessage());
-            return getDefaultPrice(crypto);
+            triggerRefresh();
         }
+        return data != null ? data : getDefaultData(crypto);
     }
-    
+
+    /**
+     * Внеочередное обновление в отдельном потоке (не чаще min-retry-interval-ms)
+     */
+    public void triggerRefresh() {
+        if (refreshing.get() || System.currentTimeMillis() - lastAttemptAt < minRetryIntervalMs) {
+            return;
+        }
+        Thread.ofVirtual().name("crypto-refresh").start(this::refresh);
+    }
+
     /**
-     * Получить сложность сети
-     * Сложность возвращается как есть (без конвертации), так как она используется в формуле
-     * для расчета хешрейта сети: network_hashrate = difficulty * 2^32 / block_time
+     * Обновление всех монет: курсы одним запросом, сложности параллельно
+     * Одновременно выполняется не более одного обновления
      */
-    private BigDecimal getNetworkDifficulty(String crypto) {
+    @Scheduled(fixedDelayString = "${app.crypto.refresh-interval-ms:300000}",
+            initialDelayString = "${app.crypto.refresh-interval-ms:300000}")
+    public void refresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        lastAttemptAt = started;
         try {
-            if ("BTC".equals(crypto)) {
-                // Blockchain.com API для Bitcoin - возвращает сложность напрямую
-                String url = "https://blockchain.info/q/getdifficulty";
-                
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(url))
-                        .timeout(Duration.ofSeconds(10))
-                        .GET()
-                        .build();
-                
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                
-                if (response.statusCode() == 200) {
-                    // Blockchain.info возвращает сложность напрямую (например, 95,000,000,000,000)
-                    String responseBody = response.body().trim();
-                    double difficulty = Double.parseDouble(responseBody);
-                    log.info("Получена сложность Bitcoin из blockchain.info: {} (raw), {} T (normalized)", 
-                            difficulty, difficulty / 1e12);
-                    // Конвертируем в T (терахеши) для удобства отображения
-                    // Сложность ~95T означает 95 триллионов
-                    return BigDecimal.valueOf(difficulty / 1e12);
+            CompletableFuture<Map<String, BigDecimal>> pricesFuture = provider.fetchPrices(SUPPORTED_CRYPTOS);
+            Map<String, CompletableFuture<BigDecimal>> difficultyFutures = new LinkedHashMap<>();
+            for (String crypto : SUPPORTED_CRYPTOS) {
+                difficultyFutures.put(crypto, provider.fetchDifficulty(crypto));
+            }
+
+            // Запросы уже выполняются параллельно, ожидание ограничено общим сроком
+            long deadline = started + refreshTimeoutMs;
+            Map<String, BigDecimal> prices = await(pricesFuture, deadline, "курсы");
+            List<CryptoQuote> updated = new ArrayList<>();
+            LocalDateTime now = LocalDateTime.now();
+            for (String crypto : SUPPORTED_CRYPTOS) {
+                BigDecimal price = prices != null ? prices.get(crypto) : null;
+                BigDecimal difficulty = await(difficultyFutures.get(crypto), deadline, "сложность " + crypto);
+                if (price == null && difficulty == null) {
+                    continue;
                 }
-            } else if ("LTC".equals(crypto)) {
-                // Litecoin API - BlockCypher возвращает сложность
-                String url = "https://api.blockcypher.com/v1/ltc/main";
-                
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(url))
-                        .timeout(Duration.ofSeconds(10))
-                        .GET()
-                        .build();
-                
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                
-                if (response.statusCode() == 200) {
-                    JsonNode json = objectMapper.readTree(response.body());
-                    JsonNode difficultyNode = json.get("difficulty");
-                    if (difficultyNode != null) {
-                        // BlockCypher возвращает сложность напрямую
-                        double difficulty = difficultyNode.asDouble();
-                        // Конвертируем в T для удобства
-                        return BigDecimal.valueOf(difficulty / 1e12);
-                    }
+                // Не полученное значение остается прежним вместе с временем его получения (или пустым)
+                CryptoQuote previous = lastGood.get(crypto);
+                CryptoQuote quote = new CryptoQuote();
+                quote.setCrypto(crypto);
+                if (price != null) {
+                    quote.setPrice(price);
+                    quote.setPriceUpdatedAt(now);
+                } else if (previous != null) {
+                    quote.setPrice(previous.getPrice());
+                    quote.setPriceUpdatedAt(previous.getPriceUpdatedAt());
                 }
-            } else if ("DOGE".equals(crypto)) {
-                // Dogecoin API - BlockCypher возвращает сложность
-                String url = "https://api.blockcypher.com/v1/doge/main";
-                
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(url))
-                        .timeout(Duration.ofSeconds(10))
-                        .GET()
-                        .build();
-                
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                
-                if (response.statusCode() == 200) {
-                    JsonNode json = objectMapper.readTree(response.body());
-                    JsonNode difficultyNode = json.get("difficulty");
-                    if (difficultyNode != null) {
-                        // BlockCypher возвращает сложность напрямую
-                        double difficulty = difficultyNode.asDouble();
-                        // Конвертируем в T для удобства
-                        return BigDecimal.valueOf(difficulty / 1e12);
-                    }
+                if (difficulty != null) {
+                    quote.setDifficulty(difficulty);
+                    quote.setDifficultyUpdatedAt(now);
+                } else if (previous != null) {
+                    quote.setDifficulty(previous.getDifficulty());
+                    quote.setDifficultyUpdatedAt(previous.getDifficultyUpdatedAt());
                 }
+                quote.setPoolFee(getAveragePoolFee(crypto));
+                quote.setSource(provider.getName());
+                quote.setUpdatedAt(now);
+                updated.add(quote);
+            }
+
+            if (!updated.isEmpty()) {
+                cryptoQuoteRepository.saveAll(updated);
+                updated.forEach(quote -> lastGood.put(quote.getCrypto(), quote));
             }
-            
-            log.warn("Не удалось получить сложность для {}", crypto);
-            return getDefaultDifficulty(crypto);
+            lastRefreshAt = now;
+            lastRefreshMs = System.currentTimeMillis() - started;
+            refreshes.incrementAndGet();
+            log.info("Данные калькулятора обновлены: {} из {} монет за {} мс", updated.size(), SUPPORTED_CRYPTOS.size(), lastRefreshMs);
+        } catch (RuntimeException e) {
+            log.error("Ошибка обновления данных калькулятора: {}", e.getMessage(), e);
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("provider", provider.getName());
+        result.put("refreshing", refreshing.get());
+        result.put("lastRefreshAt", lastRefreshAt);
+        result.put("lastRefreshMs", lastRefreshMs);
+        result.put("refreshes", refreshes.get());
+        result.put("failedFetches", failedFetches.get());
+        result.put("staleServed", staleServed.get());
+        result.put("defaultsServed", defaultsServed.get());
+        Map<String, Object> quotes = new LinkedHashMap<>();
+        for (String crypto : SUPPORTED_CRYPTOS) {
+            CryptoQuote quote = lastGood.get(crypto);
+            Map<String, Object> updatedAt = new LinkedHashMap<>();
+            updatedAt.put("price", quote != null ? quote.getPriceUpdatedAt() : null);
+            updatedAt.put("difficulty", quote != null ? quote.getDifficultyUpdatedAt() : null);
+            quotes.put(crypto, updatedAt);
+        }
+        result.put("updatedAt", quotes);
+        result.put("providerStats", provider.getStats());
+        return result;
+    }
+
+    /**
+     * Результат запроса к источнику или null (ошибка, истек общий срок)
+     */
+    private <T> T await(CompletableFuture<T> future, long deadline, String what) {
+        try {
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         } catch (Exception e) {
-            log.error("Ошибка при получении сложности для {}: {}", crypto, e.getMessage());
-            return getDefaultDifficulty(crypto);
+            future.cancel(true);
+            failedFetches.incrementAndGet();
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.warn("Не удалось получить {} ({}): {}", what, provider.getName(), cause.getMessage());
+            return null;
         }
     }
+
+    private boolean isStale(CryptoCalculatorData data) {
+        return data.getUpdatedAt() == null
+                || Duration.between(data.getUpdatedAt(), LocalDateTime.now()).toMillis() > staleAfterMs;
+    }
+
+    /**
+     * Данные калькулятора из сохраненной строки: недостающее значение - по умолчанию,
+     * время получения - более раннее из двух (null, если какое-то значение ни разу не получено)
+     */
+    private static CryptoCalculatorData toData(CryptoQuote quote) {
+        String crypto = quote.getCrypto();
+        CryptoCalculatorData data = new CryptoCalculatorData();
+        data.setPrice(quote.getPrice() != null ? quote.getPrice() : getDefaultPrice(crypto));
+        data.setDifficulty(quote.getDifficulty() != null ? quote.getDifficulty() : getDefaultDifficulty(crypto));
+        data.setPoolFee(quote.getPoolFee() != null ? quote.getPoolFee() : getAveragePoolFee(crypto));
+        LocalDateTime priceAt = quote.getPrice() != null ? quote.getPriceUpdatedAt() : null;
+        LocalDateTime difficultyAt = quote.getDifficulty() != null ? quote.getDifficultyUpdatedAt() : null;
+        data.setUpdatedAt(priceAt == null || difficultyAt == null ? null
+                : priceAt.isBefore(difficultyAt) ? priceAt : difficultyAt);
+        return data;
+    }
     
     /**
      * Получить среднюю комиссию пула
      * Используем средние значения популярных пулов
      */
-    private BigDecimal getAveragePoolFee(String crypto) {
+    private static BigDecimal getAveragePoolFee(String crypto) {
         // Средние комиссии популярных пулов
         Map<String, BigDecimal> defaultFees = Map.of(
             "BTC", BigDecimal.valueOf(1.0),  // F2Pool, Antpool, ViaBTC обычно 1-2%
@@ -204,21 +286,9 @@ public class CryptoDataService {
     }
     
     /**
-     * Получить ID криптовалюты для CoinGecko API
-     */
-    private String getCoinGeckoId(String crypto) {
-        return switch (crypto) {
-            case "BTC" -> "bitcoin";
-            case "LTC" -> "litecoin";
-            case "DOGE" -> "dogecoin";
-            default -> null;
-        };
-    }
-    
-    /**
-     * Значения по умолчанию
+     * Значения по умолчанию (нет сохраненных значений; также используются StubCryptoMarketProvider)
      */
-    private CryptoCalculatorData getDefaultData(String crypto) {
+    private static CryptoCalculatorData getDefaultData(String crypto) {
         CryptoCalculatorData data = new CryptoCalculatorData();
         data.setPrice(getDefaultPrice(crypto));
         data.setDifficulty(getDefaultDifficulty(crypto));
@@ -226,7 +296,7 @@ public class CryptoDataService {
         return data;
     }
     
-    private BigDecimal getDefaultPrice(String crypto) {
+    static BigDecimal getDefaultPrice(String crypto) {
         return switch (crypto) {
             case "BTC" -> BigDecimal.valueOf(6500000);
             case "LTC" -> BigDecimal.valueOf(8500);
@@ -235,7 +305,7 @@ public class CryptoDataService {
         };
     }
     
-    private BigDecimal getDefaultDifficulty(String crypto) {
+    static BigDecimal getDefaultDifficulty(String crypto) {
         return switch (crypto) {
             case "BTC" -> BigDecimal.valueOf(95.0);
             case "LTC" -> BigDecimal.valueOf(25.0);
@@ -251,6 +321,7 @@ public class CryptoDataService {
         private BigDecimal price;
         private BigDecimal difficulty;
         private BigDecimal poolFee;
+        private LocalDateTime updatedAt;
         
         public BigDecimal getPrice() {
             return price;
@@ -275,6 +346,17 @@ public class CryptoDataService {
         public void setPoolFee(BigDecimal poolFee) {
             this.poolFee = poolFee;
         }
+        
+        /**
+         * Время получения более старого из значений курса и сложности (null - есть значения по умолчанию)
+         */
+        public LocalDateTime getUpdatedAt() {
+            return updatedAt;
+        }
+        
+        public void setUpdatedAt(LocalDateTime updatedAt) {
+            this.updatedAt = updatedAt;
+        }
     }
     
 }
@@ -0,0 +1,34 @@
+package com.miners.shop.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Источник рыночных данных для калькулятора доходности (CryptoDataService)
+ * Выбирается настройкой app.crypto.provider по getName(); методы не блокируют вызывающий поток
+ */
+public interface CryptoMarketProvider {
+
+    String getName();
+
+    /**
+     * Курсы в рублях одним запросом
+     * @param cryptos - тикеры (BTC, LTC, DOGE)
+     * @return Курс по тикеру; тикеры без курса отсутствуют в результате
+     */
+    CompletableFuture<Map<String, BigDecimal>> fetchPrices(Collection<String> cryptos);
+
+    /**
+     * Сложность сети в T (difficulty / 1e12)
+     */
+    CompletableFuture<BigDecimal> fetchDifficulty(String crypto);
+
+    /**
+     * Состояние источника (предохранители и т.п.)
+     */
+    default Map<String, Object> getStats() {
+        return Map.of();
+    }
+}
@@ -0,0 +1,169 @@
+package com.miners.shop.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Рыночные данные из внешних API (app.crypto.provider: http)
+ * - курсы: CoinGecko (все монеты одним запросом);
+ * - сложность BTC: blockchain.info, LTC и DOGE: BlockCypher.
+ * Запросы асинхронные (HttpClient.sendAsync); у каждого сервиса свой предохранитель (CircuitBreaker),
+ * чтобы недоступный сервис не опрашивался при каждом обновлении.
+ */
+@Component
+@Slf4j
+public class HttpCryptoMarketProvider implements CryptoMarketProvider {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final CircuitBreaker coinGecko;
+    private final CircuitBreaker blockchainInfo;
+    private final CircuitBreaker blockCypher;
+
+    public HttpCryptoMarketProvider(
+            @Value("${app.crypto.breaker.failure-threshold:3}") int failureThreshold,
+            @Value("${app.crypto.breaker.open-ms:600000}") long openMillis) {
+        this.coinGecko = new CircuitBreaker("CoinGecko", failureThreshold, openMillis);
+        this.blockchainInfo = new CircuitBreaker("blockchain.info", failureThreshold, openMillis);
+        this.blockCypher = new CircuitBreaker("BlockCypher", failureThreshold, openMillis);
+    }
+
+    @Override
+    public String getName() {
+        return "http";
+    }
+
+    @Override
+    public CompletableFuture<Map<String, BigDecimal>> fetchPrices(Collection<String> cryptos) {
+        Map<String, String> tickerByCoinId = new HashMap<>();
+        for (String crypto : cryptos) {
+            String coinId = getCoinGeckoId(crypto);
+            if (coinId != null) {
+                tickerByCoinId.put(coinId, crypto);
+            }
+        }
+        if (tickerByCoinId.isEmpty()) {
+            return CompletableFuture.completedFuture(Map.of());
+        }
+        // CoinGecko API для получения курса в рублях
+        String url = "https://api.coingecko.com/api/v3/simple/price?ids="
+                + String.join(",", tickerByCoinId.keySet()) + "&vs_currencies=rub";
+        return call(coinGecko, url, body -> {
+            JsonNode json = readTree(body);
+            Map<String, BigDecimal> prices = new LinkedHashMap<>();
+            tickerByCoinId.forEach((coinId, crypto) -> {
+                JsonNode priceNode = json.path(coinId).get("rub");
+                if (priceNode != null && priceNode.isNumber()) {
+                    prices.put(crypto, priceNode.decimalValue());
+                }
+            });
+            return prices;
+        });
+    }
+
+    /**
+     * Сложность возвращается в T (как есть / 1e12): в формуле калькулятора
+     * network_hashrate = difficulty * 2^32 / block_time
+     */
+    @Override
+    public CompletableFuture<BigDecimal> fetchDifficulty(String crypto) {
+        return switch (crypto) {
+            // Blockchain.com API для Bitcoin - возвращает сложность напрямую (например, 95,000,000,000,000)
+            case "BTC" -> call(blockchainInfo, "https://blockchain.info/q/getdifficulty",
+                    body -> toTera(Double.parseDouble(body.trim())));
+            // BlockCypher возвращает сложность в поле difficulty
+            case "LTC" -> call(blockCypher, "https://api.blockcypher.com/v1/ltc/main", this::parseBlockCypherDifficulty);
+            case "DOGE" -> call(blockCypher, "https://api.blockcypher.com/v1/doge/main", this::parseBlockCypherDifficulty);
+            default -> CompletableFuture.failedFuture(new IllegalArgumentException("Неизвестная криптовалюта: " + crypto));
+        };
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        return Map.of(
+                coinGecko.getName(), coinGecko.getStats(),
+                blockchainInfo.getName(), blockchainInfo.getStats(),
+                blockCypher.getName(), blockCypher.getStats());
+    }
+
+    /**
+     * GET-запрос через предохранитель: при разомкнутом - сразу ошибка, без обращения к сервису
+     */
+    private <T> CompletableFuture<T> call(CircuitBreaker breaker, String url, Function<String, T> parser) {
+        if (!breaker.tryAcquire()) {
+            return CompletableFuture.failedFuture(new IllegalStateException(breaker.getName() + ": запросы приостановлены"));
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(REQUEST_TIMEOUT)
+                .GET()
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException(breaker.getName() + " вернул HTTP " + response.statusCode());
+                    }
+                    return parser.apply(response.body());
+                })
+                .whenComplete((result, error) -> {
+                    if (error == null) {
+                        breaker.onSuccess();
+                    } else {
+                        breaker.onFailure(error.getCause() != null ? error.getCause() : error);
+                    }
+                });
+    }
+
+    private BigDecimal parseBlockCypherDifficulty(String body) {
+        JsonNode difficultyNode = readTree(body).get("difficulty");
+        if (difficultyNode == null) {
+            throw new IllegalStateException("BlockCypher: нет поля difficulty");
+        }
+        return toTera(difficultyNode.asDouble());
+    }
+
+    private JsonNode readTree(String body) {
+        try {
+            return objectMapper.readTree(body);
+        } catch (Exception e) {
+            throw new IllegalStateException("Некорректный JSON: " + e.getMessage(), e);
+        }
+    }
+
+    private static BigDecimal toTera(double difficulty) {
+        return BigDecimal.valueOf(difficulty / 1e12);
+    }
+
+    /**
+     * Получить ID криптовалюты для CoinGecko API
+     */
+    private static String getCoinGeckoId(String crypto) {
+        return switch (crypto) {
+            case "BTC" -> "bitcoin";
+            case "LTC" -> "litecoin";
+            case "DOGE" -> "dogecoin";
+            default -> null;
+        };
+    }
+}
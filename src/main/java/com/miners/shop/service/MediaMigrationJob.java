@@ -0,0 +1,172 @@
+package com.miners.shop.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Перенос старых base64-медиа из колонки whatsapp_messages.media_data в MediaStorageService
+ * Колонка больше не отображается на сущность; строки обрабатываются пачками по возрастанию id,
+ * после переноса в строке остаются media_hash и media_size, а media_data обнуляется.
+ * Некорректные данные (не base64) не удаляются - они пропускаются и видны в счетчике failed.
+ * Когда переносить больше нечего, задача перестает обращаться к БД до ручного перезапуска.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MediaMigrationJob {
+
+    private final DataSource dataSource;
+    private final MediaStorageService mediaStorageService;
+
+    @Value("${app.media.migration.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.media.migration.batch-size:20}")
+    private int batchSize;
+
+    @Value("${app.media.migration.max-batches-per-run:25}")
+    private int maxBatchesPerRun;
+
+    private volatile boolean completed;
+    /**
+     * Курсор по id: пропущенные (некорректные) строки не выбираются повторно в пределах запуска приложения
+     */
+    private long lastId;
+
+    private final AtomicLong migrated = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bytesMoved = new AtomicLong();
+
+    @Scheduled(fixedDelayString = "${app.media.migration.interval-ms:60000}", initialDelay = 30000)
+    public void run() {
+        if (enabled && !completed) {
+            migrateBatches(maxBatchesPerRun);
+        }
+    }
+
+    /**
+     * Переносит до maxBatches пачек
+     * @return Количество перенесенных в этом вызове сообщений
+     */
+    public synchronized int migrateBatches(int maxBatches) {
+        int moved = 0;
+        try (Connection conn = dataSource.getConnection()) {
+            if (!hasLegacyColumn(conn)) {
+                completed = true;
+                return 0;
+            }
+            for (int batch = 0; batch < maxBatches; batch++) {
+                int processed = migrateBatch(conn);
+                if (processed < 0) {
+                    completed = true;
+                    log.info("✅ Перенос медиа из whatsapp_messages.media_data завершен: перенесено={}, ошибок={}, байт={}",
+                            migrated.get(), failed.get(), bytesMoved.get());
+                    break;
+                }
+                moved += processed;
+            }
+        } catch (Exception e) {
+            log.error("❌ Ошибка переноса медиа в файловое хранилище: {}", e.getMessage(), e);
+        }
+        if (moved > 0) {
+            log.info("📦 Медиа перенесено в файловое хранилище: {} (всего {}, ошибок {})", moved, migrated.get(), failed.get());
+        }
+        return moved;
+    }
+
+    /**
+     * Сбрасывает курсор и признак завершения (повторная попытка для пропущенных строк)
+     */
+    public synchronized void restart() {
+        lastId = 0;
+        completed = false;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("completed", completed);
+        result.put("lastId", lastId);
+        result.put("migrated", migrated.get());
+        result.put("deduplicated", deduplicated.get());
+        result.put("failed", failed.get());
+        result.put("bytesMoved", bytesMoved.get());
+        return result;
+    }
+
+    /**
+     * @return Количество перенесенных строк или -1, если строк с media_data больше нет
+     */
+    private int migrateBatch(Connection conn) throws Exception {
+        int selected = 0;
+        int moved = 0;
+        long movedBytes = 0;
+        long startId = lastId;
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement select = conn.prepareStatement(
+                "SELECT id, media_data FROM whatsapp_messages WHERE media_data IS NOT NULL AND id > ? ORDER BY id LIMIT ?");
+             PreparedStatement update = conn.prepareStatement(
+                     "UPDATE whatsapp_messages SET media_hash = ?, media_size = ?, media_data = NULL WHERE id = ?")) {
+            select.setLong(1, lastId);
+            select.setInt(2, batchSize);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    selected++;
+                    long id = rs.getLong(1);
+                    lastId = id;
+                    MediaStorageService.StoredMedia stored = mediaStorageService.storeBase64(rs.getString(2));
+                    if (stored == null) {
+                        failed.incrementAndGet();
+                        log.warn("⚠️  Медиа сообщения id={} не перенесено: данные не являются base64", id);
+                        continue;
+                    }
+                    update.setString(1, stored.hash());
+                    update.setLong(2, stored.size());
+                    update.setLong(3, id);
+                    update.addBatch();
+                    moved++;
+                    movedBytes += stored.size();
+                    if (!stored.created()) {
+                        deduplicated.incrementAndGet();
+                    }
+                }
+            }
+            if (moved > 0) {
+                update.executeBatch();
+            }
+            conn.commit();
+        } catch (Exception e) {
+            conn.rollback();
+            lastId = startId;
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        migrated.addAndGet(moved);
+        bytesMoved.addAndGet(movedBytes);
+        return selected == 0 ? -1 : moved;
+    }
+
+    private boolean hasLegacyColumn(Connection conn) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                SELECT COUNT(*) FROM information_schema.columns
+                WHERE table_name = 'whatsapp_messages' AND column_name = 'media_data'
+                """);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() && rs.getLong(1) > 0;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.miners.shop.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Хранилище медиафайлов сообщений с адресацией по содержимому
+ * Файл называется SHA-256 своего содержимого и лежит в {app.media.dir}/ab/cd/<hash>,
+ * поэтому пересланные копии одного медиа хранятся один раз, а файлы никогда не перезаписываются.
+ */
+@Service
+@Slf4j
+public class MediaStorageService {
+
+    private static final Pattern HASH_PATTERN = Pattern.compile("^[0-9a-f]{64}$");
+
+    @Value("${app.media.dir:media}")
+    private String mediaDir;
+
+    /**
+     * Сохраняет медиа из webhook (base64, допускается префикс data:...;base64,)
+     * @return Хеш и размер сохраненного файла или null, если данные пустые или не являются base64
+     */
+    public StoredMedia storeBase64(String base64) throws IOException {
+        if (base64 == null || base64.isBlank()) {
+            return null;
+        }
+        String data = base64.trim();
+        int comma = data.indexOf(',');
+        if (data.startsWith("data:") && comma > 0) {
+            data = data.substring(comma + 1);
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getMimeDecoder().decode(data);
+        } catch (IllegalArgumentException e) {
+            log.warn("⚠️  Медиаданные не являются корректным base64: {}", e.getMessage());
+            return null;
+        }
+        return store(bytes);
+    }
+
+    /**
+     * Сохраняет содержимое, если файла с таким хешем еще нет
+     */
+    public StoredMedia store(byte[] bytes) throws IOException {
+        String hash = sha256(bytes);
+        Path target = resolve(hash);
+        if (Files.exists(target)) {
+            return new StoredMedia(hash, bytes.length, false);
+        }
+
+        Files.createDirectories(target.getParent());
+        // Пишем во временный файл рядом и переносим атомарно: читатели никогда не увидят недописанный файл
+        Path temp = Files.createTempFile(target.getParent(), hash, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target);
+            }
+        } catch (FileAlreadyExistsException e) {
+            // Тот же файл параллельно сохранил другой поток - содержимое идентично
+            log.debug("Медиафайл {} уже сохранен параллельно", hash);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        log.debug("Медиафайл сохранен: {} ({} байт)", hash, bytes.length);
+        return new StoredMedia(hash, bytes.length, true);
+    }
+
+    /**
+     * Путь к файлу по хешу (без проверки существования)
+     * @throws IllegalArgumentException если строка не является SHA-256 в hex (защита от обхода путей)
+     */
+    public Path resolve(String hash) {
+        if (hash == null || !HASH_PATTERN.matcher(hash).matches()) {
+            throw new IllegalArgumentException("Некорректный хеш медиафайла: " + hash);
+        }
+        return getBasePath().resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private Path getBasePath() {
+        return Paths.get(mediaDir).toAbsolutePath().normalize();
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    /**
+     * Сохраненный медиафайл
+     * @param hash - SHA-256 содержимого (имя файла)
+     * @param size - размер в байтах
+     * @param created - был ли файл записан сейчас (false - уже существовал)
+     */
+    public record StoredMedia(String hash, long size, boolean created) {}
+}
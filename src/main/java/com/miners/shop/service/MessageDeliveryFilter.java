@@ -0,0 +1,241 @@
+package com.miners.shop.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.miners.shop.dto.WhatsAppMessageDTO;
+import com.miners.shop.repository.WhatsAppMessageRepository;
+import com.miners.shop.util.BloomFilter;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фильтр повторных доставок webhook-сообщений (мост повторяет отправку при ретраях)
+ * Срабатывает до любой работы с БД для недавних сообщений:
+ * 1. ограниченный кэш недавно принятых messageId (вытеснение по размеру);
+ * 2. фильтр Блума по всем messageId из whatsapp_messages (перестраивается при старте) -
+ *    отрицательный ответ означает "точно новое сообщение"; положительный подтверждается одним легким запросом.
+ *
+ * Повтором считается только точная копия: тот же messageId, тот же текст и нет новых parsedData.
+ * Отредактированное сообщение или пришедший позже parsedData обрабатываются как обычно.
+ * Принудительная обработка: параметр force=true у webhook или allowOnce(messageId) из админки.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageDeliveryFilter {
+
+    private final DataSource dataSource;
+    private final WhatsAppMessageRepository messageRepository;
+
+    @Value("${app.webhook.dedup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.webhook.dedup.recent-size:100000}")
+    private long recentSize;
+
+    @Value("${app.webhook.dedup.bloom-expected-insertions:2000000}")
+    private long bloomExpectedInsertions;
+
+    @Value("${app.webhook.dedup.bloom-fpp:0.01}")
+    private double bloomFpp;
+
+    private Cache<String, Delivery> recent;
+    /**
+     * null, пока фильтр не построен: до этого проверяется только кэш недавних сообщений
+     */
+    private volatile BloomFilter history;
+    private final Set<String> forced = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong suppressedFromHistory = new AtomicLong();
+    private final AtomicLong bloomFalsePositives = new AtomicLong();
+    private final AtomicLong forcedDeliveries = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        recent = Caffeine.newBuilder()
+                .maximumSize(recentSize)
+                .build();
+    }
+
+    /**
+     * Перестраивает фильтр Блума по всем сохраненным messageId
+     * Сообщения, принятые во время перестроения, остаются в кэше недавних
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            log.info("ℹ️  Фильтр повторных доставок webhook отключен (app.webhook.dedup.enabled=false)");
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try (Connection conn = dataSource.getConnection()) {
+            long total;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM whatsapp_messages")) {
+                total = rs.next() ? rs.getLong(1) : 0;
+            }
+            // Запас x2 на рост таблицы до следующего перестроения
+            BloomFilter filter = new BloomFilter(Math.max(bloomExpectedInsertions, total * 2), bloomFpp);
+
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false); // иначе драйвер PostgreSQL игнорирует fetchSize и читает все в память
+            long loaded = 0;
+            try (Statement stmt = conn.createStatement()) {
+                stmt.setFetchSize(10_000);
+                try (ResultSet rs = stmt.executeQuery("SELECT message_id FROM whatsapp_messages")) {
+                    while (rs.next()) {
+                        filter.put(rs.getString(1));
+                        loaded++;
+                    }
+                }
+                conn.commit();
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+
+            history = filter;
+            log.info("✅ Фильтр повторных доставок построен: messageId={}, бит={}, хешей={} ({} мс)",
+                    loaded, filter.getBitCount(), filter.getHashCount(), System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            // Без фильтра Блума работает только кэш недавних сообщений
+            log.error("❌ Не удалось построить фильтр повторных доставок: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Является ли сообщение точной повторной доставкой уже принятого
+     * При true сообщение не нужно ни сохранять, ни ставить в очередь
+     */
+    public boolean isDuplicate(WhatsAppMessageDTO dto) {
+        String messageId = dto.getMessageId();
+        if (!enabled || messageId == null) {
+            return false;
+        }
+        if (forced.remove(messageId)) {
+            forcedDeliveries.incrementAndGet();
+            recent.invalidate(messageId);
+            log.info("🔁 Сообщение {} обрабатывается повторно по запросу администратора", messageId);
+            return false;
+        }
+
+        Delivery seen = recent.getIfPresent(messageId);
+        if (seen == null) {
+            BloomFilter filter = history;
+            if (filter == null || !filter.mightContain(messageId)) {
+                return false;
+            }
+            // Возможно, сообщение уже сохранено: подтверждаем одним запросом без загрузки сущности
+            List<Object[]> rows = messageRepository.findDeliveryFingerprint(messageId);
+            if (rows.isEmpty()) {
+                bloomFalsePositives.incrementAndGet();
+                return false;
+            }
+            seen = new Delivery(ContentDigest.of((String) rows.get(0)[0]), Boolean.TRUE.equals(rows.get(0)[1]));
+            recent.put(messageId, seen);
+            if (seen.covers(dto)) {
+                suppressedFromHistory.incrementAndGet();
+            }
+        }
+
+        if (seen.covers(dto)) {
+            suppressed.incrementAndGet();
+            log.info("⏭️  Повторная доставка сообщения {} пропущена (всего пропущено: {})", messageId, suppressed.get());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Запоминает успешно принятое (обработанное или поставленное в очередь) сообщение
+     */
+    public void markDelivered(WhatsAppMessageDTO dto) {
+        String messageId = dto.getMessageId();
+        if (!enabled || messageId == null) {
+            return;
+        }
+        recent.put(messageId, new Delivery(ContentDigest.of(dto.getContent()), dto.getParsedData() != null));
+        BloomFilter filter = history;
+        if (filter != null) {
+            filter.put(messageId);
+        }
+    }
+
+    /**
+     * Разрешает однократную повторную обработку сообщения (следующая доставка не будет отброшена)
+     */
+    public void allowOnce(String messageId) {
+        forced.add(messageId);
+        recent.invalidate(messageId);
+    }
+
+    public void clearRecent() {
+        recent.invalidateAll();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("recentSize", recent.estimatedSize());
+        result.put("recentMaxSize", recentSize);
+        result.put("historyReady", history != null);
+        result.put("suppressed", suppressed.get());
+        result.put("suppressedFromHistory", suppressedFromHistory.get());
+        result.put("bloomFalsePositives", bloomFalsePositives.get());
+        result.put("forced", forcedDeliveries.get());
+        result.put("pendingForced", forced.size());
+        return result;
+    }
+
+    /**
+     * Отпечаток текста: первые 128 бит SHA-256 и длина в символах
+     * Случайное совпадение отпечатков у отредактированного текста практически исключено,
+     * иначе правка была бы ошибочно отброшена как повтор
+     * @param length - длина текста, -1 для null
+     */
+    private record ContentDigest(long high, long low, int length) {
+        static ContentDigest of(String content) {
+            if (content == null) {
+                return new ContentDigest(0, 0, -1);
+            }
+            try {
+                ByteBuffer digest = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256")
+                        .digest(content.getBytes(StandardCharsets.UTF_8)));
+                return new ContentDigest(digest.getLong(), digest.getLong(), content.length());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 недоступен", e);
+            }
+        }
+    }
+
+    /**
+     * Отпечаток принятого сообщения
+     * @param content - отпечаток текста
+     * @param hasParsedData - были ли у сообщения распарсенные данные
+     */
+    private record Delivery(ContentDigest content, boolean hasParsedData) {
+        boolean covers(WhatsAppMessageDTO dto) {
+            return content.equals(ContentDigest.of(dto.getContent())) && (hasParsedData || dto.getParsedData() == null);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.MinerDetailOfferStats;
+import com.miners.shop.repository.MinerDetailOfferStatsRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Поддержка read model miner_detail_offer_stats (статистика предложений по MinerDetail)
+ *
+ * Код, меняющий предложения (ProductService, удаление в PrivateController) или связь Product -> MinerDetail,
+ * вызывает markDirty: затронутые MinerDetail копятся в текущей транзакции и пересчитываются
+ * перед ее коммитом одним SQL-запросом - статистика коммитится вместе с предложениями или не коммитится вовсе.
+ * Пересчет берет advisory-блокировку каждого MinerDetail до конца транзакции, поэтому параллельные
+ * транзакции пересчитывают один MinerDetail по очереди и не затирают предложения друг друга.
+ * Минимальная цена зависит от времени (окно 24 часа), поэтому строки с истекшим minPriceValidUntil
+ * пересчитываются по расписанию. Для восстановления после ручных правок БД - rebuildAll().
+ * Любое изменение статистики помечает устаревшим снимок каталога (CatalogSnapshotService)
+ * и обновляет штампы затронутых MinerDetail для условных GET-запросов (CatalogVersionService).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MinerDetailOfferStatsService {
+
+    private static final int REFRESH_CHUNK_SIZE = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final MinerDetailOfferStatsRepository statsRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final CatalogVersionService catalogVersionService;
+
+    @Value("${app.products.offer-stats.rebuild-on-startup:true}")
+    private boolean rebuildOnStartup;
+
+    private final AtomicLong refreshedRows = new AtomicLong();
+    private final AtomicLong expiredRefreshes = new AtomicLong();
+    private volatile LocalDateTime lastRebuildAt;
+
+    /**
+     * Помечает MinerDetail для пересчета статистики
+     * В транзакции пересчет выполняется перед коммитом (один раз на все накопленные ID), без транзакции - сразу
+     */
+    public void markDirty(Collection<Long> minerDetailIds) {
+        Set<Long> ids = minerDetailIds.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            transactionTemplate.executeWithoutResult(status -> refresh(ids));
+            catalogSnapshotService.markDirty();
+            catalogVersionService.touch(ids);
+            return;
+        }
+        PendingRefresh pending = TransactionSynchronizationManager.getSynchronizations().stream()
+                .filter(PendingRefresh.class::isInstance)
+                .map(PendingRefresh.class::cast)
+                .findFirst()
+                .orElseGet(() -> {
+                    PendingRefresh created = new PendingRefresh();
+                    TransactionSynchronizationManager.registerSynchronization(created);
+                    return created;
+                });
+        pending.ids.addAll(ids);
+    }
+
+    public void markDirty(Long... minerDetailIds) {
+        markDirty(Arrays.asList(minerDetailIds));
+    }
+
+    /**
+     * Статистика по ID MinerDetail (MinerDetail без предложений в результат не попадают)
+     */
+    public Map<Long, MinerDetailOfferStats> getStats(Collection<Long> minerDetailIds) {
+        if (minerDetailIds == null || minerDetailIds.isEmpty()) {
+            return Map.of();
+        }
+        return statsRepository.findByMinerDetailIdIn(minerDetailIds).stream()
+                .collect(Collectors.toMap(MinerDetailOfferStats::getMinerDetailId, Function.identity()));
+    }
+
+    /**
+     * Пересчитывает статистику указанных MinerDetail в текущей транзакции
+     * @return Количество обновленных строк
+     */
+    public int refresh(Collection<Long> minerDetailIds) {
+        if (minerDetailIds.isEmpty()) {
+            return 0;
+        }
+        // Предложения, измененные через сущности, должны попасть в БД до агрегирования
+        entityManager.flush();
+        LocalDateTime now = LocalDateTime.now();
+        // По возрастанию ID: блокировки всех транзакций берутся в одном порядке и не дают взаимоблокировок
+        List<Long> ids = new ArrayList<>(new TreeSet<>(minerDetailIds));
+        int updated = 0;
+        for (int from = 0; from < ids.size(); from += REFRESH_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + REFRESH_CHUNK_SIZE, ids.size()));
+            // Параллельная транзакция с предложениями тех же MinerDetail ждет до нашего коммита,
+            // а затем агрегирует уже с нашими предложениями - иначе каждая записала бы статистику
+            // без предложений другой (потерянное обновление)
+            entityManager.createNativeQuery(LOCK_SQL)
+                    .setParameter("ids", chunk)
+                    .getSingleResult();
+            Query upsert = entityManager.createNativeQuery(
+                    UPSERT_STATS_SQL.formatted("WHERE p.miner_detail_id IN (:ids)"));
+            upsert.setParameter("ids", chunk);
+            upsert.setParameter("since", now.minusDays(1));
+            upsert.setParameter("now", now);
+            updated += upsert.executeUpdate();
+
+            entityManager.createNativeQuery(DELETE_EMPTY_SQL)
+                    .setParameter("ids", chunk)
+                    .executeUpdate();
+        }
+        refreshedRows.addAndGet(updated);
+        log.debug("Статистика предложений пересчитана для MinerDetail: {}", ids);
+        return updated;
+    }
+
+    /**
+     * Полная пересборка таблицы из offers (команда восстановления)
+     * @return Количество MinerDetail с предложениями
+     */
+    public int rebuildAll() {
+        long started = System.currentTimeMillis();
+        Integer rows = transactionTemplate.execute(status -> {
+            entityManager.createNativeQuery("DELETE FROM miner_detail_offer_stats").executeUpdate();
+            LocalDateTime now = LocalDateTime.now();
+            Query insert = entityManager.createNativeQuery(UPSERT_STATS_SQL.formatted(""));
+            insert.setParameter("since", now.minusDays(1));
+            insert.setParameter("now", now);
+            return insert.executeUpdate();
+        });
+        lastRebuildAt = LocalDateTime.now();
+        catalogSnapshotService.markDirty();
+        catalogVersionService.touchAll();
+        log.info("✅ Статистика предложений по MinerDetail пересобрана: {} строк ({} мс)",
+                rows, System.currentTimeMillis() - started);
+        return rows != null ? rows : 0;
+    }
+
+    /**
+     * Первичное заполнение таблицы, если она пуста (первый запуск после появления read model)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (!rebuildOnStartup) {
+            return;
+        }
+        try {
+            if (statsRepository.count() == 0) {
+                rebuildAll();
+            }
+        } catch (Exception e) {
+            log.error("❌ Не удалось заполнить miner_detail_offer_stats: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Пересчет строк, у которых предложения вышли из окна 24 часов (минимальная цена могла измениться)
+     */
+    @Scheduled(fixedDelayString = "${app.products.offer-stats.expire-check-interval-ms:300000}", initialDelay = 60000)
+    public void refreshExpired() {
+        try {
+            List<Long> ids = transactionTemplate.execute(status -> {
+                List<Long> expired = statsRepository.findExpiredMinPriceIds(LocalDateTime.now());
+                refresh(expired);
+                return expired;
+            });
+            int refreshed = ids != null ? ids.size() : 0;
+            if (refreshed > 0) {
+                expiredRefreshes.addAndGet(refreshed);
+                catalogSnapshotService.markDirty();
+                catalogVersionService.touch(ids);
+                log.debug("Статистика предложений обновлена по окну 24 часов: {} строк", refreshed);
+            }
+        } catch (Exception e) {
+            log.error("❌ Ошибка пересчета статистики предложений: {}", e.getMessage(), e);
+        }
+    }
+
+    public Map<String, Object> getServiceStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("rows", statsRepository.count());
+        result.put("refreshedRows", refreshedRows.get());
+        result.put("expiredRefreshes", expiredRefreshes.get());
+        result.put("lastRebuildAt", lastRebuildAt);
+        return result;
+    }
+
+    /**
+     * MinerDetail, накопленные в транзакции; пересчитываются перед коммитом,
+     * после коммита снимок каталога помечается устаревшим, а штампы MinerDetail обновляются
+     */
+    private class PendingRefresh implements TransactionSynchronization {
+        private final Set<Long> ids = new HashSet<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (!ids.isEmpty()) {
+                refresh(ids);
+            }
+        }
+
+        @Override
+        public void afterCommit() {
+            catalogSnapshotService.markDirty();
+            catalogVersionService.touch(ids);
+        }
+    }
+
+    /**
+     * Транзакционные advisory-блокировки по ID MinerDetail в порядке возрастания,
+     * снимаются при коммите или откате транзакции
+     */
+    private static final String LOCK_SQL = """
+            SELECT COUNT(*) FROM (
+                SELECT pg_advisory_xact_lock(m.id)
+                FROM (SELECT id FROM miner_details WHERE id IN (:ids) ORDER BY id) m
+            ) locked
+            """;
+
+    /**
+     * Агрегаты по MinerDetail одним проходом по предложениям связанных Product (%s - фильтр по MinerDetail).
+     * Минимальная цена: SELL с ценой > 0; предложения за последние сутки имеют приоритет (recent DESC).
+     * min_price_valid_until - когда самое старое из свежих предложений выйдет из окна.
+     */
+    private static final String UPSERT_STATS_SQL = """
+            WITH o AS (
+                SELECT p.miner_detail_id, o.id, o.operation_type, o.quantity, o.price, o.currency, o.updated_at, o.created_at,
+                       (o.operation_type = 'SELL' AND o.price > 0) AS priced,
+                       (o.updated_at > CAST(:since AS timestamp)) AS recent
+                FROM offers o
+                JOIN products p ON p.id = o.product_id
+                %s
+            ),
+            agg AS (
+                SELECT miner_detail_id,
+                       COUNT(*) AS offer_count,
+                       COUNT(*) FILTER (WHERE operation_type = 'SELL') AS sell_count,
+                       COUNT(*) FILTER (WHERE operation_type = 'BUY') AS buy_count,
+                       COALESCE(SUM(quantity), 0) AS total_quantity,
+                       MAX(COALESCE(updated_at, created_at, TIMESTAMP '1970-01-01')) AS last_offer_updated_at,
+                       MIN(updated_at) FILTER (WHERE priced AND recent) AS oldest_recent_priced
+                FROM o
+                WHERE miner_detail_id IS NOT NULL
+                GROUP BY miner_detail_id
+            ),
+            best AS (
+                SELECT DISTINCT ON (miner_detail_id) miner_detail_id, price, currency
+                FROM o
+                WHERE priced AND miner_detail_id IS NOT NULL
+                ORDER BY miner_detail_id, recent DESC, price, id
+            )
+            INSERT INTO miner_detail_offer_stats (miner_detail_id, offer_count, sell_count, buy_count, total_quantity,
+                                                  min_price, currency, last_offer_updated_at, min_price_valid_until,
+                                                  refreshed_at)
+            SELECT a.miner_detail_id, a.offer_count, a.sell_count, a.buy_count, a.total_quantity,
+                   b.price, CASE WHEN b.price IS NOT NULL THEN COALESCE(b.currency, 'RUB') END,
+                   a.last_offer_updated_at, a.oldest_recent_priced + INTERVAL '1 day', CAST(:now AS timestamp)
+            FROM agg a
+            LEFT JOIN best b ON b.miner_detail_id = a.miner_detail_id
+            ON CONFLICT (miner_detail_id) DO UPDATE SET
+                offer_count = EXCLUDED.offer_count,
+                sell_count = EXCLUDED.sell_count,
+                buy_count = EXCLUDED.buy_count,
+                total_quantity = EXCLUDED.total_quantity,
+                min_price = EXCLUDED.min_price,
+                currency = EXCLUDED.currency,
+                last_offer_updated_at = EXCLUDED.last_offer_updated_at,
+                min_price_valid_until = EXCLUDED.min_price_valid_until,
+                refreshed_at = EXCLUDED.refreshed_at
+            """;
+
+    /**
+     * Строки MinerDetail, у которых не осталось предложений
+     */
+    private static final String DELETE_EMPTY_SQL = """
+            DELETE FROM miner_detail_offer_stats s
+            WHERE s.miner_detail_id IN (:ids)
+              AND NOT EXISTS (SELECT 1 FROM offers o JOIN products p ON p.id = o.product_id
+                              WHERE p.miner_detail_id = s.miner_detail_id)
+            """;
+}
@@ -0,0 +1,127 @@
+package com.miners.shop.service;
+
+import com.miners.shop.dto.CompanyMinerDTO;
+import com.miners.shop.entity.MinerDetail;
+import com.miners.shop.entity.MinerDetailOfferStats;
+import com.miners.shop.entity.Offer;
+import com.miners.shop.entity.OperationType;
+import com.miners.shop.repository.CompanyMinerRepository;
+import com.miners.shop.repository.MinerDetailRepository;
+import com.miners.shop.util.ImageUrlResolver;
+import com.miners.shop.util.SchemaOrgUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Данные страницы товара (/products/{idOrSlug}) за фиксированное число запросов
+ *
+ * Число запросов не зависит от количества предложений:
+ * - MinerDetail по ID (slug ищется в индексе MinerDetailSlugIndex);
+ * - страница предложений (ProductService.findOfferSlice), продавцы догружаются пачками (@BatchSize на Seller);
+ * - строка miner_detail_offer_stats: общее количество и минимальная цена (сначала за 24 часа, затем за все время);
+ * - майнер компании со всеми связями одним JOIN FETCH.
+ * С фильтром по дате к ним добавляется ограниченный подсчет предложений.
+ * Изображение берется из карточки снимка каталога, JSON-LD строится по предложениям страницы.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MinerDetailPageService {
+
+    private final MinerDetailRepository minerDetailRepository;
+    private final CompanyMinerRepository companyMinerRepository;
+    private final ProductService productService;
+    private final MinerDetailOfferStatsService offerStatsService;
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final MinerDetailSlugIndex minerDetailSlugIndex;
+    private final ImageUrlResolver imageUrlResolver;
+
+    /**
+     * @param idOrSlug - текущий slug или числовой ID MinerDetail (прежний slug обрабатывает контроллер - 301)
+     * @param dateFrom - начало периода предложений (null - все)
+     * @param pageable - страница и сортировка предложений
+     * @return Данные страницы или empty, если MinerDetail не найден
+     */
+    @Transactional(readOnly = true)
+    public Optional<MinerDetailPage> load(String idOrSlug, LocalDateTime dateFrom, Pageable pageable) {
+        CatalogSnapshot snapshot = catalogSnapshotService.get();
+        Optional<MinerDetail> minerDetailOpt = findMinerDetail(idOrSlug);
+        if (minerDetailOpt.isEmpty()) {
+            return Optional.empty();
+        }
+        MinerDetail minerDetail = minerDetailOpt.get();
+        Long id = minerDetail.getId();
+
+        MinerDetailOfferStats stats = offerStatsService.getStats(List.of(id)).get(id);
+        // Без фильтра по дате количество берется из статистики, отдельный COUNT не нужен
+        ProductService.OfferSlice slice = productService.findOfferSlice(id, dateFrom, null, null, pageable.getSort(),
+                null, pageable.getOffset(), pageable.getPageSize(), dateFrom != null);
+        long total = dateFrom != null ? slice.totalElements() : stats != null ? stats.getOfferCount() : 0;
+        List<Offer> offers = slice.content();
+        Page<Offer> offersPage = new PageImpl<>(offers, pageable, Math.max(total, pageable.getOffset() + offers.size()));
+
+        List<Offer> sellOffers = offers.stream().filter(o -> o.getOperationType() == OperationType.SELL).toList();
+        List<Offer> buyOffers = offers.stream().filter(o -> o.getOperationType() == OperationType.BUY).toList();
+
+        BigDecimal minPrice = stats != null && stats.getMinPrice() != null && stats.getMinPrice().compareTo(BigDecimal.ZERO) > 0
+                ? stats.getMinPrice()
+                : null;
+        String currency = minPrice != null && stats.getCurrency() != null ? stats.getCurrency() : "RUB";
+
+        CompanyMinerDTO.CompanyMinerInfo companyMiner = companyMinerRepository.findActiveByMinerDetailIdWithRelations(id)
+                .map(CompanyMinerDTO::fromEntity)
+                .orElse(null);
+
+        String imageUrl = resolveImageUrl(snapshot, minerDetail);
+        String productSchema = SchemaOrgUtil.generateProductSchema(minerDetail, offers, imageUrl);
+
+        return Optional.of(new MinerDetailPage(minerDetail, imageUrl, offersPage, sellOffers, buyOffers,
+                minPrice, currency, companyMiner, productSchema));
+    }
+
+    /**
+     * ID определяется по индексу slug в памяти (текущий slug или числовой ID), неизвестный slug - без обращения к БД
+     */
+    private Optional<MinerDetail> findMinerDetail(String idOrSlug) {
+        MinerDetailSlugIndex.Resolution resolution = minerDetailSlugIndex.resolve(idOrSlug);
+        return resolution != null ? minerDetailRepository.findById(resolution.minerDetailId()) : Optional.empty();
+    }
+
+    private String resolveImageUrl(CatalogSnapshot snapshot, MinerDetail minerDetail) {
+        if (minerDetail.getImageUrl() != null && !minerDetail.getImageUrl().trim().isEmpty()) {
+            return minerDetail.getImageUrl();
+        }
+        CatalogSnapshot.Card card = snapshot.getCard(minerDetail.getId());
+        if (card != null && card.imageUrl() != null) {
+            return card.imageUrl();
+        }
+        return imageUrlResolver.resolveImageUrl(minerDetail.getStandardName());
+    }
+
+    /**
+     * Данные страницы товара
+     * @param minerDetail - MinerDetail
+     * @param imageUrl - изображение (MinerDetail, снимок каталога или ImageUrlResolver)
+     * @param offersPage - страница предложений
+     * @param sellOffers - продажи на странице
+     * @param buyOffers - покупки на странице
+     * @param minPrice - минимальная цена продажи (null - нет цен)
+     * @param currency - валюта минимальной цены
+     * @param companyMiner - активный майнер компании (null - нет)
+     * @param productSchema - разметка Schema.org (JSON-LD)
+     */
+    public record MinerDetailPage(MinerDetail minerDetail, String imageUrl, Page<Offer> offersPage,
+                                  List<Offer> sellOffers, List<Offer> buyOffers, BigDecimal minPrice, String currency,
+                                  CompanyMinerDTO.CompanyMinerInfo companyMiner, String productSchema) {
+    }
+}
@@ -1,14 +1,15 @@
 package com.miners.shop.service;
 
+import com.miners.shop.config.CacheConfig;
 import com.miners.shop.entity.MinerDetail;
-import com.miners.shop.entity.Offer;
 import com.miners.shop.entity.Product;
 import com.miners.shop.repository.MinerDetailRepository;
-import com.miners.shop.repository.OfferRepository;
 import com.miners.shop.repository.ProductRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
+import com.miners.shop.util.TransactionUtil;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -17,10 +18,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -33,17 +37,19 @@ public class MinerDetailService {
     
     private final MinerDetailRepository minerDetailRepository;
     private final ProductRepository productRepository;
-    private final OfferRepository offerRepository;
+    private final MinerDetailOfferStatsService offerStatsService;
+    private final MinerDetailSlugIndex minerDetailSlugIndex;
+    private final CacheManager cacheManager;
     
     /**
      * Создает детальную запись для товара с данными из нейросети
      * Вызывается автоматически при создании нового Product
+     * Кэшированные списки производителей и серий сбрасываются, только если в них нет значений новой записи
      * 
      * @param product Товар, для которого создается детальная запись
      * @return Созданная детальная запись
      */
     @Transactional
-    @CacheEvict(value = "minerDetails", allEntries = true)
     public MinerDetail createMinerDetailForProduct(Product product) {
         log.info("Создание детальной записи для товара: {} (ID: {})", product.getModel(), product.getId());
         
@@ -72,8 +78,9 @@ public class MinerDetailService {
                 product.getModel(), saved.getId(), saved.getStandardName());
         
         // Устанавливаем связь в товаре
-        product.setMinerDetail(saved);
+        linkProduct(product, saved);
         productRepository.save(product);
+        evictFilterLists(null, FilterFields.of(saved));
         
         return saved;
     }
@@ -119,15 +126,105 @@ public class MinerDetailService {
         return minerDetailRepository.findById(id);
     }
     
+    /**
+     * Привязывает товар к MinerDetail; статистика предложений пересчитывается для старой и новой записи
+     */
+    private void linkProduct(Product product, MinerDetail minerDetail) {
+        MinerDetail previous = product.getMinerDetail();
+        product.setMinerDetail(minerDetail);
+        offerStatsService.markDirty(previous != null ? previous.getId() : null,
+                minerDetail != null ? minerDetail.getId() : null);
+    }
+    
     /**
      * Обновляет детальную запись
+     * При смене slug прежний сохраняется в истории: старые ссылки отвечают 301 (MinerDetailSlugIndex)
+     * Из кэшированных списков фильтров сбрасываются только те, чье поле изменилось (значения до изменения - из базы)
      */
     @Transactional
-    @CacheEvict(value = "minerDetails", allEntries = true)
     public MinerDetail updateMinerDetail(MinerDetail minerDetail) {
         log.info("Обновление детальной записи: ID={}, стандартное название={}", 
                 minerDetail.getId(), minerDetail.getStandardName());
-        return minerDetailRepository.save(minerDetail);
+        FilterFields previous = null;
+        if (minerDetail.getId() != null) {
+            minerDetailSlugIndex.recordSlugChange(minerDetail.getId(), minerDetail.getSlug());
+            previous = minerDetailRepository.findFilterFields(minerDetail.getId()).stream()
+                    .findFirst()
+                    .map(FilterFields::of)
+                    .orElse(null);
+        }
+        MinerDetail saved = minerDetailRepository.save(minerDetail);
+        evictFilterLists(previous, FilterFields.of(saved));
+        return saved;
+    }
+    
+    /**
+     * Сбрасывает после коммита кэшированные списки фильтров (getDistinctManufacturers, getDistinctSeries,
+     * getDistinctAlgorithms), которые изменение записи могло затронуть
+     * @param previous - поля до изменения (null - новая запись)
+     */
+    private void evictFilterLists(FilterFields previous, FilterFields current) {
+        Cache cache = cacheManager.getCache(CacheConfig.MINER_DETAILS);
+        if (cache == null) {
+            return;
+        }
+        List<String> keys = new ArrayList<>();
+        addIfChanged(keys, cache, "manufacturers", previous, current, FilterFields::listedManufacturer);
+        addIfChanged(keys, cache, "series", previous, current, FilterFields::listedSeries);
+        addIfChanged(keys, cache, "algorithms", previous, current, FilterFields::listedAlgorithm);
+        if (!keys.isEmpty()) {
+            log.debug("Сброс списков фильтров MinerDetail: {}", keys);
+            TransactionUtil.afterCommit(() -> keys.forEach(cache::evict));
+        }
+    }
+    
+    /**
+     * Список меняется, если запись перестала давать в него прежнее значение (оно могло быть единственным)
+     * или дает новое, которого в кэшированном списке нет
+     */
+    private static void addIfChanged(List<String> keys, Cache cache, String key, FilterFields previous,
+                                     FilterFields current, Function<FilterFields, String> value) {
+        String oldValue = previous != null ? value.apply(previous) : null;
+        String newValue = value.apply(current);
+        if (Objects.equals(oldValue, newValue)) {
+            return;
+        }
+        List<?> cached = cache.get(key, List.class);
+        if (oldValue != null || (cached != null && !cached.contains(newValue))) {
+            keys.add(key);
+        }
+    }
+    
+    /**
+     * Поля MinerDetail, из которых строятся списки фильтров
+     * Производители и серии берутся только у активных записей, алгоритмы - у всех (как в запросах MinerDetailRepository)
+     */
+    private record FilterFields(String manufacturer, String series, String algorithm, boolean active) {
+        
+        static FilterFields of(MinerDetail minerDetail) {
+            return new FilterFields(minerDetail.getManufacturer(), minerDetail.getSeries(), minerDetail.getAlgorithm(),
+                    !Boolean.FALSE.equals(minerDetail.getActive()));
+        }
+        
+        static FilterFields of(Object[] row) {
+            return new FilterFields((String) row[0], (String) row[1], (String) row[2], !Boolean.FALSE.equals(row[3]));
+        }
+        
+        String listedManufacturer() {
+            return active ? nonEmpty(manufacturer) : null;
+        }
+        
+        String listedSeries() {
+            return active ? nonEmpty(series) : null;
+        }
+        
+        String listedAlgorithm() {
+            return nonEmpty(algorithm);
+        }
+        
+        private static String nonEmpty(String value) {
+            return value != null && !value.isEmpty() ? value : null;
+        }
     }
     
     /**
@@ -174,7 +271,7 @@ public class MinerDetailService {
                         : "нет";
                 
                 // Устанавливаем целевую MinerDetail
-                product.setMinerDetail(targetMinerDetail);
+                linkProduct(product, targetMinerDetail);
                 productRepository.save(product);
                 
                 log.info("Товар ID={} ({}) объединен: {} -> MinerDetail ID={} ({})", 
@@ -202,256 +299,11 @@ public class MinerDetailService {
         return minerDetailRepository.findAll();
     }
     
-    /**
-     * Получает MinerDetail, отсортированные по последнему обновлению предложений, с пагинацией
-     * @param pageable Пагинация
-     * @param manufacturers Список производителей для фильтрации (null или пустой = все)
-     * @param series Список серий для фильтрации (null или пустой = все)
-     * @return Страница MinerDetail, отсортированная по MAX(offer.updatedAt)
-     */
-    @Transactional(readOnly = true)
-    public Page<MinerDetail> findAllSortedByLatestOfferUpdate(Pageable pageable, List<String> manufacturers, List<String> series) {
-        // Получаем все MinerDetail, у которых есть предложения, с фильтрацией
-        List<MinerDetail> allMinerDetailsWithOffers;
-        
-        // Нормализуем параметры фильтров: если список пустой, передаем null
-        List<String> normalizedManufacturers = (manufacturers != null && !manufacturers.isEmpty()) ? manufacturers : null;
-        List<String> normalizedSeries = (series != null && !series.isEmpty()) ? series : null;
-        
-        if (normalizedManufacturers == null && normalizedSeries == null) {
-            // Без фильтров - получаем все
-            allMinerDetailsWithOffers = minerDetailRepository.findAllWithOffers();
-        } else if (normalizedManufacturers != null && normalizedSeries != null) {
-            // Оба фильтра
-            allMinerDetailsWithOffers = minerDetailRepository.findAllWithOffersByManufacturersAndSeries(normalizedManufacturers, normalizedSeries);
-        } else if (normalizedManufacturers != null) {
-            // Только производитель
-            allMinerDetailsWithOffers = minerDetailRepository.findAllWithOffersByManufacturers(normalizedManufacturers);
-        } else {
-            // Только серия
-            allMinerDetailsWithOffers = minerDetailRepository.findAllWithOffersBySeries(normalizedSeries);
-        }
-        
-        if (allMinerDetailsWithOffers.isEmpty()) {
-            return new PageImpl<>(List.of(), pageable, 0);
-        }
-        
-        // Получаем все Product ID для этих MinerDetail
-        List<Long> minerDetailIds = allMinerDetailsWithOffers.stream()
-                .map(MinerDetail::getId)
-                .collect(Collectors.toList());
-        
-        // Получаем все Product, связанные с этими MinerDetail
-        List<Product> allProducts = minerDetailIds.stream()
-                .flatMap(id -> productRepository.findByMinerDetailId(id).stream())
-                .collect(Collectors.toList());
-        
-        List<Long> productIds = allProducts.stream()
-                .map(Product::getId)
-                .collect(Collectors.toList());
-        
-        // Получаем все offers для этих продуктов
-        List<Offer> allOffers = offerRepository.findByProductIdIn(productIds);
-        
-        // Группируем offers по MinerDetail ID
-        Map<Long, List<Offer>> offersByMinerDetailId = new HashMap<>();
-        for (Product product : allProducts) {
-            if (product.getMinerDetail() != null) {
-                Long minerDetailId = product.getMinerDetail().getId();
-                List<Offer> productOffers = allOffers.stream()
-                        .filter(o -> o.getProduct().getId().equals(product.getId()))
-                        .collect(Collectors.toList());
-                
-                offersByMinerDetailId.computeIfAbsent(minerDetailId, k -> new java.util.ArrayList<>())
-                        .addAll(productOffers);
-            }
-        }
-        
-        // Вычисляем максимальную дату обновления для каждого MinerDetail
-        Map<Long, LocalDateTime> maxUpdateDateByMinerDetailId = new HashMap<>();
-        for (Map.Entry<Long, List<Offer>> entry : offersByMinerDetailId.entrySet()) {
-            Optional<LocalDateTime> maxDate = entry.getValue().stream()
-                    .map(Offer::getUpdatedAt)
-                    .filter(date -> date != null)
-                    .max(LocalDateTime::compareTo);
-            
-            maxUpdateDateByMinerDetailId.put(entry.getKey(), maxDate.orElse(null));
-        }
-        
-        // Логируем текущую дату для отладки
-        LocalDateTime now = LocalDateTime.now();
-        log.info("Текущая дата и время: {}", now);
-        log.info("Всего майнеров с предложениями: {}", allMinerDetailsWithOffers.size());
-        
-        // Логируем даты обновления для первых 10 майнеров (до сортировки)
-        log.info("Даты последнего обновления предложений (до сортировки):");
-        for (int i = 0; i < Math.min(10, allMinerDetailsWithOffers.size()); i++) {
-            MinerDetail md = allMinerDetailsWithOffers.get(i);
-            LocalDateTime maxOfferDate = maxUpdateDateByMinerDetailId.get(md.getId());
-            if (maxOfferDate != null) {
-                log.info("  MinerDetail ID={}, название={}, макс. дата предложения={}", 
-                        md.getId(), md.getStandardName(), maxOfferDate);
-            }
-        }
-        
-        // Сортируем MinerDetail по максимальной дате обновления предложений (DESC - самые свежие первыми)
-        // Используем явную сортировку по убыванию даты
-        List<MinerDetail> sorted = allMinerDetailsWithOffers.stream()
-                .sorted((md1, md2) -> {
-                    // Получаем максимальные даты обновления предложений для обоих майнеров
-                    LocalDateTime maxDate1 = maxUpdateDateByMinerDetailId.get(md1.getId());
-                    LocalDateTime maxDate2 = maxUpdateDateByMinerDetailId.get(md2.getId());
-                    
-                    // Если у первого майнера нет даты - он идет в конец
-                    if (maxDate1 == null && maxDate2 == null) {
-                        // Если у обоих нет даты, сортируем по updatedAt MinerDetail
-                        LocalDateTime upd1 = md1.getUpdatedAt() != null ? md1.getUpdatedAt() : LocalDateTime.MIN;
-                        LocalDateTime upd2 = md2.getUpdatedAt() != null ? md2.getUpdatedAt() : LocalDateTime.MIN;
-                        return upd2.compareTo(upd1); // DESC
-                    }
-                    if (maxDate1 == null) {
-                        return 1; // Первый майнер идет в конец
-                    }
-                    if (maxDate2 == null) {
-                        return -1; // Второй майнер идет в конец
-                    }
-                    
-                    // Сравниваем даты обновления предложений (DESC - новые первыми)
-                    int compareResult = maxDate2.compareTo(maxDate1); // maxDate2.compareTo(maxDate1) дает DESC
-                    
-                    // Если даты предложений равны, сортируем по updatedAt MinerDetail
-                    if (compareResult == 0) {
-                        LocalDateTime upd1 = md1.getUpdatedAt() != null ? md1.getUpdatedAt() : LocalDateTime.MIN;
-                        LocalDateTime upd2 = md2.getUpdatedAt() != null ? md2.getUpdatedAt() : LocalDateTime.MIN;
-                        return upd2.compareTo(upd1); // DESC
-                    }
-                    
-                    return compareResult;
-                })
-                .collect(Collectors.toList());
-        
-        // Логируем первые 10 майнеров после сортировки для отладки
-        log.info("Результат сортировки майнеров (первые 10):");
-        for (int i = 0; i < Math.min(10, sorted.size()); i++) {
-            MinerDetail md = sorted.get(i);
-            LocalDateTime maxOfferDate = maxUpdateDateByMinerDetailId.get(md.getId());
-            log.info("  {}: MinerDetail ID={}, название={}, макс. дата предложения={}", 
-                    i + 1, md.getId(), md.getStandardName(), 
-                    maxOfferDate != null ? maxOfferDate : "нет предложений");
-        }
-        
-        // Применяем пагинацию
-        int start = (int) pageable.getOffset();
-        int end = Math.min(start + pageable.getPageSize(), sorted.size());
-        
-        if (start >= sorted.size() || sorted.isEmpty()) {
-            // Если запрошенная страница вне диапазона или список пуст, возвращаем пустую страницу
-            return new PageImpl<>(List.of(), pageable, sorted.size());
-        }
-        
-        // Убеждаемся, что start не отрицательный
-        if (start < 0) {
-            start = 0;
-        }
-        
-        // Убеждаемся, что end не меньше start
-        if (end <= start) {
-            end = Math.min(start + pageable.getPageSize(), sorted.size());
-        }
-        
-        List<MinerDetail> pageContent = sorted.subList(start, end);
-        return new PageImpl<>(pageContent, pageable, sorted.size());
-    }
-    
-    /**
-     * Сортирует список MinerDetail по последнему обновлению предложений
-     * Принимает уже отфильтрованный список и сортирует его
-     * @param minerDetails Список MinerDetail для сортировки
-     * @return Отсортированный список MinerDetail
-     */
-    @Transactional(readOnly = true)
-    public List<MinerDetail> sortByLatestOfferUpdate(List<MinerDetail> minerDetails) {
-        if (minerDetails == null || minerDetails.isEmpty()) {
-            return minerDetails != null ? minerDetails : List.of();
-        }
-        
-        // Получаем все Product, связанные с этими MinerDetail
-        List<Long> minerDetailIds = minerDetails.stream()
-                .map(MinerDetail::getId)
-                .collect(Collectors.toList());
-        
-        List<Product> allProducts = minerDetailIds.stream()
-                .flatMap(id -> productRepository.findByMinerDetailId(id).stream())
-                .collect(Collectors.toList());
-        
-        List<Long> productIds = allProducts.stream()
-                .map(Product::getId)
-                .collect(Collectors.toList());
-        
-        // Получаем все offers для этих продуктов
-        List<Offer> allOffers = offerRepository.findByProductIdIn(productIds);
-        
-        // Группируем offers по MinerDetail ID
-        Map<Long, List<Offer>> offersByMinerDetailId = new HashMap<>();
-        for (Product product : allProducts) {
-            if (product.getMinerDetail() != null) {
-                Long minerDetailId = product.getMinerDetail().getId();
-                List<Offer> productOffers = allOffers.stream()
-                        .filter(o -> o.getProduct().getId().equals(product.getId()))
-                        .collect(Collectors.toList());
-                
-                offersByMinerDetailId.computeIfAbsent(minerDetailId, k -> new java.util.ArrayList<>())
-                        .addAll(productOffers);
-            }
-        }
-        
-        // Вычисляем максимальную дату обновления для каждого MinerDetail
-        Map<Long, LocalDateTime> maxUpdateDateByMinerDetailId = new HashMap<>();
-        for (Map.Entry<Long, List<Offer>> entry : offersByMinerDetailId.entrySet()) {
-            Optional<LocalDateTime> maxDate = entry.getValue().stream()
-                    .map(Offer::getUpdatedAt)
-                    .filter(date -> date != null)
-                    .max(LocalDateTime::compareTo);
-            
-            maxUpdateDateByMinerDetailId.put(entry.getKey(), maxDate.orElse(null));
-        }
-        
-        // Сортируем MinerDetail по максимальной дате обновления предложений (DESC - самые свежие первыми)
-        return minerDetails.stream()
-                .sorted((md1, md2) -> {
-                    LocalDateTime maxDate1 = maxUpdateDateByMinerDetailId.get(md1.getId());
-                    LocalDateTime maxDate2 = maxUpdateDateByMinerDetailId.get(md2.getId());
-                    
-                    if (maxDate1 == null && maxDate2 == null) {
-                        LocalDateTime upd1 = md1.getUpdatedAt() != null ? md1.getUpdatedAt() : LocalDateTime.MIN;
-                        LocalDateTime upd2 = md2.getUpdatedAt() != null ? md2.getUpdatedAt() : LocalDateTime.MIN;
-                        return upd2.compareTo(upd1); // DESC
-                    }
-                    if (maxDate1 == null) {
-                        return 1;
-                    }
-                    if (maxDate2 == null) {
-                        return -1;
-                    }
-                    
-                    int compareResult = maxDate2.compareTo(maxDate1); // DESC
-                    
-                    if (compareResult == 0) {
-                        LocalDateTime upd1 = md1.getUpdatedAt() != null ? md1.getUpdatedAt() : LocalDateTime.MIN;
-                        LocalDateTime upd2 = md2.getUpdatedAt() != null ? md2.getUpdatedAt() : LocalDateTime.MIN;
-                        return upd2.compareTo(upd1); // DESC
-                    }
-                    
-                    return compareResult;
-                })
-                .collect(Collectors.toList());
-    }
-    
     /**
      * Получает список уникальных производителей
      */
     @Transactional(readOnly = true)
-    @Cacheable(value = "minerDetails", key = "'manufacturers'")
+    @Cacheable(value = CacheConfig.MINER_DETAILS, key = "'manufacturers'", sync = true)
     public List<String> getDistinctManufacturers() {
         return minerDetailRepository.findDistinctManufacturers();
     }
@@ -460,7 +312,7 @@ public class MinerDetailService {
      * Получает список уникальных серий
      */
     @Transactional(readOnly = true)
-    @Cacheable(value = "minerDetails", key = "'series'")
+    @Cacheable(value = CacheConfig.MINER_DETAILS, key = "'series'", sync = true)
     public List<String> getDistinctSeries() {
         return minerDetailRepository.findDistinctSeries();
     }
@@ -480,7 +332,7 @@ public class MinerDetailService {
      * Получает список уникальных алгоритмов
      */
     @Transactional(readOnly = true)
-    @Cacheable(value = "minerDetails", key = "'algorithms'")
+    @Cacheable(value = CacheConfig.MINER_DETAILS, key = "'algorithms'", sync = true)
     public List<String> getDistinctAlgorithms() {
         return minerDetailRepository.findDistinctAlgorithms();
     }
@@ -509,7 +361,7 @@ public class MinerDetailService {
             try {
                 // Создаем MinerDetail для товара
                 MinerDetail minerDetail = createMinerDetailForProduct(product);
-                product.setMinerDetail(minerDetail);
+                linkProduct(product, minerDetail);
                 productRepository.save(product);
                 createdCount++;
                 log.debug("Создан MinerDetail для товара {} (ID: {}) -> MinerDetail ID={}", 
@@ -686,7 +538,7 @@ public class MinerDetailService {
                     Optional<Product> productOpt = productRepository.findById(productId);
                     if (productOpt.isPresent()) {
                         Product product = productOpt.get();
-                        product.setMinerDetail(saved);
+                        linkProduct(product, saved);
                         productRepository.save(product);
                         log.debug("  → Связан Product ID={} ({})", productId, product.getModel());
                     }
@@ -773,7 +625,7 @@ public class MinerDetailService {
                         saved.getId(), miner.standardName, miner.productId);
                 
                 // Связываем товар с MinerDetail
-                product.setMinerDetail(saved);
+                linkProduct(product, saved);
                 productRepository.save(product);
                 
                 created++;
@@ -0,0 +1,199 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.MinerDetailSlugHistory;
+import com.miners.shop.repository.MinerDetailRepository;
+import com.miners.shop.repository.MinerDetailSlugHistoryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Двусторонний индекс slug <-> ID MinerDetail в памяти и история прежних slug
+ *
+ * Страница товара (/products/{idOrSlug}) определяет MinerDetail без запроса к БД: неизвестный slug сразу дает 404,
+ * прежний slug - 301 на текущий адрес. Индекс загружается при старте и обновляется после коммита
+ * изменений MinerDetail (MinerDetailSlugIndexListener); прежние slug хранятся в miner_detail_slug_history
+ * (записываются в MinerDetailService.updateMinerDetail) и переживают перезапуск.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MinerDetailSlugIndex {
+
+    private final MinerDetailRepository minerDetailRepository;
+    private final MinerDetailSlugHistoryRepository slugHistoryRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile Maps maps;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong moved = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        ensureLoaded();
+    }
+
+    /**
+     * Полная перезагрузка из БД; до окончания загрузки используется прежний индекс
+     */
+    public synchronized void reload() {
+        long started = System.currentTimeMillis();
+        Maps loaded = new Maps();
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Object[] row : minerDetailRepository.findAllIdAndSlug()) {
+                loaded.put((Long) row[0], (String) row[1]);
+            }
+            for (MinerDetailSlugHistory history : slugHistoryRepository.findAll()) {
+                loaded.idByOldSlug.put(history.getOldSlug(), history.getMinerDetailId());
+            }
+        });
+        maps = loaded;
+        log.info("✅ Индекс slug MinerDetail загружен: slug={}, прежних slug={} ({} мс)",
+                loaded.idBySlug.size(), loaded.idByOldSlug.size(), System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Определяет MinerDetail по адресу страницы товара
+     * @param idOrSlug - текущий или прежний slug либо числовой ID
+     * @return Результат; null - такого MinerDetail нет
+     */
+    public Resolution resolve(String idOrSlug) {
+        if (idOrSlug == null || idOrSlug.isEmpty()) {
+            return null;
+        }
+        Maps current = ensureLoaded();
+        Long id = current.idBySlug.get(idOrSlug);
+        if (id != null) {
+            hits.incrementAndGet();
+            return new Resolution(id, null);
+        }
+        Long previousOwner = current.idByOldSlug.get(idOrSlug);
+        String currentSlug = previousOwner != null ? current.slugById.get(previousOwner) : null;
+        if (currentSlug != null) {
+            moved.incrementAndGet();
+            return new Resolution(previousOwner, currentSlug);
+        }
+        try {
+            // Числовой ID проверяет вызывающий код (у MinerDetail может не быть slug)
+            return new Resolution(Long.parseLong(idOrSlug), null);
+        } catch (NumberFormatException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Текущий slug MinerDetail (null - не задан)
+     */
+    public String getSlug(Long minerDetailId) {
+        return minerDetailId != null ? ensureLoaded().slugById.get(minerDetailId) : null;
+    }
+
+    /**
+     * Занят ли slug (текущим или прежним slug какого-либо MinerDetail) - для выбора нового slug без запроса к БД
+     */
+    public boolean isTaken(String slug) {
+        Maps current = ensureLoaded();
+        return current.idBySlug.containsKey(slug) || current.idByOldSlug.containsKey(slug);
+    }
+
+    /**
+     * Сохраняет прежний slug в истории, если slug MinerDetail меняется (в транзакции изменения)
+     */
+    public void recordSlugChange(Long minerDetailId, String newSlug) {
+        String previous = getSlug(minerDetailId);
+        if (previous == null || previous.equals(newSlug)) {
+            return;
+        }
+        MinerDetailSlugHistory history = slugHistoryRepository.findById(previous).orElseGet(MinerDetailSlugHistory::new);
+        history.setOldSlug(previous);
+        history.setMinerDetailId(minerDetailId);
+        history.setChangedAt(LocalDateTime.now());
+        slugHistoryRepository.save(history);
+        log.info("Slug MinerDetail ID={} изменен: {} -> {}, старые ссылки будут перенаправляться (301)",
+                minerDetailId, previous, newSlug);
+    }
+
+    /**
+     * Применяет сохраненный MinerDetail (после коммита); прежний slug остается ссылкой на этот MinerDetail
+     */
+    public synchronized void onMinerDetailSaved(Long id, String slug) {
+        Maps current = ensureLoaded();
+        String previous = current.slugById.get(id);
+        if (Objects.equals(previous, slug)) {
+            return;
+        }
+        if (previous != null) {
+            current.idBySlug.remove(previous, id);
+            current.slugById.remove(id);
+            current.idByOldSlug.put(previous, id);
+        }
+        if (slug != null && !slug.isEmpty()) {
+            current.put(id, slug);
+        }
+    }
+
+    public synchronized void onMinerDetailRemoved(Long id) {
+        Maps current = ensureLoaded();
+        String previous = current.slugById.remove(id);
+        if (previous != null) {
+            current.idBySlug.remove(previous, id);
+        }
+        current.idByOldSlug.values().removeIf(id::equals);
+    }
+
+    public Map<String, Object> getStats() {
+        Maps current = ensureLoaded();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("slugs", current.idBySlug.size());
+        result.put("oldSlugs", current.idByOldSlug.size());
+        result.put("hits", hits.get());
+        result.put("movedRedirects", moved.get());
+        result.put("misses", misses.get());
+        return result;
+    }
+
+    private Maps ensureLoaded() {
+        Maps current = maps;
+        if (current == null) {
+            synchronized (this) {
+                if (maps == null) {
+                    reload();
+                }
+                current = maps;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Результат определения MinerDetail
+     * @param minerDetailId - ID MinerDetail
+     * @param movedToSlug - текущий slug, если запрошен прежний (нужен 301), иначе null
+     */
+    public record Resolution(Long minerDetailId, String movedToSlug) {
+    }
+
+    private static final class Maps {
+        private final Map<String, Long> idBySlug = new ConcurrentHashMap<>();
+        private final Map<Long, String> slugById = new ConcurrentHashMap<>();
+        private final Map<String, Long> idByOldSlug = new ConcurrentHashMap<>();
+
+        private void put(Long id, String slug) {
+            idBySlug.put(slug, id);
+            slugById.put(id, slug);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.MinerDetail;
+import com.miners.shop.util.TransactionUtil;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA-слушатель MinerDetail: поддерживает индекс slug (MinerDetailSlugIndex) в актуальном состоянии
+ * Значение slug снимается в момент события, изменение применяется после коммита
+ */
+@Component
+@RequiredArgsConstructor
+public class MinerDetailSlugIndexListener {
+
+    private final MinerDetailSlugIndex minerDetailSlugIndex;
+
+    @PostPersist
+    @PostUpdate
+    void onSave(MinerDetail minerDetail) {
+        Long id = minerDetail.getId();
+        String slug = minerDetail.getSlug();
+        TransactionUtil.afterCommit(() -> minerDetailSlugIndex.onMinerDetailSaved(id, slug));
+    }
+
+    @PostRemove
+    void onRemove(MinerDetail minerDetail) {
+        Long id = minerDetail.getId();
+        TransactionUtil.afterCommit(() -> minerDetailSlugIndex.onMinerDetailRemoved(id));
+    }
+}
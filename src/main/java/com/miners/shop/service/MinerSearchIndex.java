@@ -0,0 +1,460 @@
+package com.miners.shop.service;
+
+import com.miners.shop.util.SlugUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * Инвертированный индекс MinerDetail для поиска в каталоге
+ * Поля документа: стандартное название, производитель, серия, хешрейт и модели связанных товаров (синонимы).
+ *
+ * Анализатор: нижний регистр, разбиение на слова, транслитерация кириллицы по правилам SlugUtil;
+ * русские написания слов моделей, которые транслитерация не сводит к латинскому ("гидро" -> gidro),
+ * и сокращения ("Hyd" у Bitmain - Hydro) заменяются по словарю TERM_ALIASES. К словам поля добавляются склейки соседних слов ("S21 Hydro" -> s21, hydro, s21hydro).
+ * Запрос анализируется так же, поэтому "с21 гидро" и "S21 Hydro" сравниваются в одной латинской форме.
+ *
+ * Слово запроса сопоставляется с термами индекса: точно, по префиксу (автодополнение, "hyd" -> hydro)
+ * и нечетко - по триграммам или одной правке ("hydor" -> hydro). Цифры нечеткого совпадения обязаны совпадать (S19 и S21 - разные модели).
+ * Оценка документа - сумма лучших совпадений слов запроса с учетом веса поля; в результат попадают документы,
+ * совпавшие со всеми словами, а если таких нет - с наибольшим их числом.
+ *
+ * Запись - synchronized, чтение - без блокировок по конкурентным структурам.
+ * Класс не зависит от Spring: живой индекс ведет MinerSearchService, замер на синтетическом каталоге - MinerSearchIndexTest.
+ */
+public class MinerSearchIndex {
+
+    static final float WEIGHT_NAME = 3.0f;
+    static final float WEIGHT_ALIAS = 2.0f;
+    static final float WEIGHT_SERIES = 1.5f;
+    static final float WEIGHT_MANUFACTURER = 1.0f;
+    static final float WEIGHT_HASHRATE = 1.0f;
+
+    private static final double SCORE_EXACT = 1.0;
+    private static final double SCORE_FUZZY = 0.5;
+    private static final double SINGLE_EDIT_SIMILARITY = 0.8;
+    private static final int MAX_PREFIX_EXPANSIONS = 100;
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}+]+");
+    private static final Pattern NON_DIGITS = Pattern.compile("\\D+");
+
+    /**
+     * Русские написания и сокращения слов моделей -> термы индекса
+     */
+    private static final Map<String, String> TERM_ALIASES = Map.of(
+            "hyd", "hydro",
+            "гидро", "hydro",
+            "хайдро", "hydro",
+            "антмайнер", "antminer",
+            "ватсмайнер", "whatsminer",
+            "вотсмайнер", "whatsminer",
+            "авалон", "avalon",
+            "про", "pro",
+            "плюс", "plus");
+
+    private final double fuzzyThreshold;
+    private final int fuzzyMinLength;
+
+    private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+    /**
+     * Терм -> (ID MinerDetail -> вес лучшего поля с этим термом); отсортирован для поиска по префиксу
+     */
+    private final ConcurrentSkipListMap<String, Map<Long, Float>> postings = new ConcurrentSkipListMap<>();
+    private final Map<String, Set<String>> termsByTrigram = new ConcurrentHashMap<>();
+
+    /**
+     * Товар -> (MinerDetail, модель); модели связанных товаров - синонимы документа
+     */
+    private final Map<Long, ProductAlias> aliasesByProduct = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> productIdsByMinerDetail = new ConcurrentHashMap<>();
+
+    /**
+     * @param fuzzyThreshold - минимальная схожесть триграмм (0..1) для нечеткого совпадения
+     * @param fuzzyMinLength - более короткие слова запроса сопоставляются только точно и по префиксу
+     */
+    public MinerSearchIndex(double fuzzyThreshold, int fuzzyMinLength) {
+        this.fuzzyThreshold = fuzzyThreshold;
+        this.fuzzyMinLength = fuzzyMinLength;
+    }
+
+    /**
+     * Добавляет или обновляет поля MinerDetail (синонимы из товаров сохраняются)
+     */
+    public synchronized void putMinerDetail(Long id, String standardName, String manufacturer, String series, String hashrate) {
+        if (id == null) {
+            return;
+        }
+        Document previous = documents.get(id);
+        Document document = new Document(id, standardName, manufacturer, series, hashrate,
+                previous != null ? previous.aliases() : aliasesOf(id));
+        reindex(previous, document);
+    }
+
+    public synchronized void removeMinerDetail(Long id) {
+        Document previous = id != null ? documents.get(id) : null;
+        if (previous != null) {
+            reindex(previous, null);
+        }
+    }
+
+    /**
+     * Добавляет, перепривязывает или обновляет модель товара
+     * @param minerDetailId - MinerDetail товара (null - товар не привязан и не участвует в поиске)
+     */
+    public synchronized void putProduct(Long productId, Long minerDetailId, String model) {
+        if (productId == null) {
+            return;
+        }
+        ProductAlias previous = aliasesByProduct.get(productId);
+        ProductAlias current = minerDetailId != null ? new ProductAlias(minerDetailId, model) : null;
+        if (Objects.equals(previous, current)) {
+            return;
+        }
+        if (previous != null) {
+            aliasesByProduct.remove(productId);
+            Set<Long> ids = productIdsByMinerDetail.get(previous.minerDetailId());
+            if (ids != null) {
+                ids.remove(productId);
+                if (ids.isEmpty()) {
+                    productIdsByMinerDetail.remove(previous.minerDetailId());
+                }
+            }
+            refreshAliases(previous.minerDetailId());
+        }
+        if (current != null) {
+            aliasesByProduct.put(productId, current);
+            productIdsByMinerDetail.computeIfAbsent(minerDetailId, k -> ConcurrentHashMap.newKeySet()).add(productId);
+            refreshAliases(minerDetailId);
+        }
+    }
+
+    public void removeProduct(Long productId) {
+        putProduct(productId, null, null);
+    }
+
+    /**
+     * Поиск с ранжированием
+     * @return Совпадения по убыванию релевантности (не более limit)
+     */
+    public List<Hit> search(String query, int limit) {
+        List<String> queryTokens = new ArrayList<>(new LinkedHashSet<>(tokens(query)));
+        if (queryTokens.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        List<Map<Long, ? extends Number>> matches = new ArrayList<>();
+        for (int i = 0; i < queryTokens.size(); i++) {
+            matches.add(matchToken(queryTokens.get(i), i == queryTokens.size() - 1));
+        }
+
+        // Обычно документ совпадает со всеми словами: пересечение от самого короткого списка,
+        // без обхода длинных списков частых слов (antminer, pro)
+        matches.sort(Comparator.comparingInt(Map::size));
+        List<Hit> hits = new ArrayList<>();
+        for (Long id : matches.get(0).keySet()) {
+            double score = 0;
+            boolean all = true;
+            for (Map<Long, ? extends Number> match : matches) {
+                Number tokenScore = match.get(id);
+                if (tokenScore == null) {
+                    all = false;
+                    break;
+                }
+                score += tokenScore.doubleValue();
+            }
+            if (all) {
+                hits.add(new Hit(id, score));
+            }
+        }
+        if (hits.isEmpty() && matches.size() > 1) {
+            hits = partialHits(matches);
+        }
+        return hits.stream()
+                .sorted(Comparator.comparingDouble(Hit::score).reversed().thenComparing(Hit::minerDetailId))
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Ни один документ не совпал со всеми словами: документы с наибольшим числом совпавших слов
+     */
+    private static List<Hit> partialHits(List<Map<Long, ? extends Number>> matches) {
+        Map<Long, double[]> scores = new HashMap<>(); // [сумма оценок, число совпавших слов]
+        for (Map<Long, ? extends Number> match : matches) {
+            match.forEach((id, tokenScore) -> {
+                double[] score = scores.computeIfAbsent(id, k -> new double[2]);
+                score[0] += tokenScore.doubleValue();
+                score[1]++;
+            });
+        }
+        double bestMatched = scores.values().stream().mapToDouble(score -> score[1]).max().orElse(0);
+        return scores.entrySet().stream()
+                .filter(entry -> entry.getValue()[1] == bestMatched)
+                .map(entry -> new Hit(entry.getKey(), entry.getValue()[0]))
+                .toList();
+    }
+
+    /**
+     * Количество товаров, привязанных к MinerDetail
+     */
+    public int productCount(Long minerDetailId) {
+        Set<Long> ids = productIdsByMinerDetail.get(minerDetailId);
+        return ids != null ? ids.size() : 0;
+    }
+
+    public int documentCount() {
+        return documents.size();
+    }
+
+    public int termCount() {
+        return postings.size();
+    }
+
+    public int aliasCount() {
+        return aliasesByProduct.size();
+    }
+
+    /**
+     * Слова текста в форме индекса: нижний регистр, словарь TERM_ALIASES, транслитерация,
+     * без знаков препинания ("+" сохраняется: M50S++)
+     */
+    public static List<String> tokens(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT)))
+                .filter(token -> !token.isEmpty())
+                .map(token -> TERM_ALIASES.getOrDefault(token, SlugUtil.transliterate(token)))
+                .toList();
+    }
+
+    /**
+     * Лучшая оценка каждого документа для одного слова запроса
+     * Слово, известное индексу, сопоставляется только точно; префикс - для последнего (набираемого) слова
+     * и неизвестных слов, нечеткое совпадение - только для неизвестных (вероятная опечатка)
+     */
+    private Map<Long, ? extends Number> matchToken(String token, boolean last) {
+        Map<Long, Float> exact = postings.get(token);
+        if (exact != null && !last) {
+            return exact; // оценка точного совпадения = вес поля (SCORE_EXACT = 1), список не копируется
+        }
+
+        Map<Long, Double> result = new HashMap<>();
+        if (exact != null) {
+            exact.forEach((id, weight) -> result.merge(id, SCORE_EXACT * weight, Math::max));
+        }
+
+        NavigableMap<String, Map<Long, Float>> prefixed = postings.subMap(token, false, token + Character.MAX_VALUE, false);
+        int expansions = 0;
+        for (Map.Entry<String, Map<Long, Float>> entry : prefixed.entrySet()) {
+            if (++expansions > MAX_PREFIX_EXPANSIONS) {
+                break;
+            }
+            // Чем большую часть терма покрывает префикс, тем выше оценка (но ниже точного совпадения)
+            double score = 0.6 + 0.3 * token.length() / entry.getKey().length();
+            entry.getValue().forEach((id, weight) -> result.merge(id, score * weight, Math::max));
+        }
+
+        if (exact == null && token.length() >= fuzzyMinLength) {
+            for (Map.Entry<String, Double> candidate : fuzzyTerms(token).entrySet()) {
+                Map<Long, Float> ids = postings.get(candidate.getKey());
+                if (ids != null) {
+                    double score = SCORE_FUZZY * candidate.getValue();
+                    ids.forEach((id, weight) -> result.merge(id, score * weight, Math::max));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Термы, похожие на слово, с тем же набором цифр: по триграммам (коэффициент Жаккара, как в ProductModelIndex)
+     * или на расстоянии одной правки с перестановкой соседних букв ("hydor" -> hydro), которую триграммы не ловят
+     */
+    private Map<String, Double> fuzzyTerms(String token) {
+        Set<String> tokenTrigrams = trigrams(token);
+        Map<String, Integer> common = new HashMap<>();
+        for (String trigram : tokenTrigrams) {
+            Set<String> terms = termsByTrigram.get(trigram);
+            if (terms != null) {
+                for (String term : terms) {
+                    common.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+        String digits = digitsOf(token);
+        Map<String, Double> result = new HashMap<>();
+        common.forEach((term, shared) -> {
+            if (term.equals(token) || !digits.equals(digitsOf(term))) {
+                return;
+            }
+            // shared / |триграммы слова| - верхняя граница схожести: отсекает термы без подсчета их триграмм
+            if (shared >= fuzzyThreshold * tokenTrigrams.size()) {
+                double similarity = (double) shared / (tokenTrigrams.size() + trigrams(term).size() - shared);
+                if (similarity >= fuzzyThreshold) {
+                    result.put(term, similarity);
+                    return;
+                }
+            }
+            if (Math.abs(term.length() - token.length()) <= 1 && isOneEditAway(token, term)) {
+                result.put(term, SINGLE_EDIT_SIMILARITY);
+            }
+        });
+        return result;
+    }
+
+    private void refreshAliases(Long minerDetailId) {
+        Document previous = documents.get(minerDetailId);
+        if (previous != null) {
+            reindex(previous, previous.withAliases(aliasesOf(minerDetailId)));
+        }
+    }
+
+    private List<String> aliasesOf(Long minerDetailId) {
+        Set<Long> productIds = productIdsByMinerDetail.get(minerDetailId);
+        if (productIds == null) {
+            return List.of();
+        }
+        return productIds.stream()
+                .map(aliasesByProduct::get)
+                .filter(Objects::nonNull)
+                .map(ProductAlias::model)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+    }
+
+    private void reindex(Document previous, Document current) {
+        Map<String, Float> oldTerms = previous != null ? previous.terms() : Map.of();
+        Map<String, Float> newTerms = current != null ? current.terms() : Map.of();
+        Long id = previous != null ? previous.id() : current.id();
+
+        for (String term : oldTerms.keySet()) {
+            if (newTerms.containsKey(term)) {
+                continue;
+            }
+            Map<Long, Float> ids = postings.get(term);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(term);
+                    for (String trigram : trigrams(term)) {
+                        Set<String> terms = termsByTrigram.get(trigram);
+                        if (terms != null) {
+                            terms.remove(term);
+                            if (terms.isEmpty()) {
+                                termsByTrigram.remove(trigram);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        newTerms.forEach((term, weight) -> {
+            Map<Long, Float> ids = postings.computeIfAbsent(term, k -> {
+                for (String trigram : trigrams(k)) {
+                    termsByTrigram.computeIfAbsent(trigram, t -> ConcurrentHashMap.newKeySet()).add(k);
+                }
+                return new ConcurrentHashMap<>();
+            });
+            ids.put(id, weight);
+        });
+
+        if (current != null) {
+            documents.put(id, current);
+        } else {
+            documents.remove(id);
+        }
+    }
+
+    private static Set<String> trigrams(String term) {
+        String padded = "  " + term + " ";
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    /**
+     * Расстояние Дамерау-Левенштейна (вставка, удаление, замена, перестановка соседних символов) не больше 1
+     */
+    private static boolean isOneEditAway(String a, String b) {
+        if (a.length() > b.length()) {
+            String swap = a;
+            a = b;
+            b = swap;
+        }
+        int i = 0;
+        while (i < a.length() && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (a.length() == b.length()) {
+            if (a.substring(i + 1).equals(b.substring(i + 1))) {
+                return true; // замена
+            }
+            return i + 1 < a.length() && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+                    && a.substring(i + 2).equals(b.substring(i + 2)); // перестановка
+        }
+        return a.substring(i).equals(b.substring(i + 1)); // вставка
+    }
+
+    private static String digitsOf(String term) {
+        return NON_DIGITS.matcher(term).replaceAll(" ").trim();
+    }
+
+    /**
+     * Документ индекса (поля MinerDetail и модели связанных товаров)
+     */
+    private record Document(Long id, String standardName, String manufacturer, String series, String hashrate,
+                            List<String> aliases) {
+
+        Document withAliases(List<String> newAliases) {
+            return new Document(id, standardName, manufacturer, series, hashrate, newAliases);
+        }
+
+        /**
+         * Термы документа с весом лучшего поля
+         */
+        Map<String, Float> terms() {
+            Map<String, Float> terms = new HashMap<>();
+            addField(terms, standardName, WEIGHT_NAME);
+            aliases.forEach(alias -> addField(terms, alias, WEIGHT_ALIAS));
+            addField(terms, series, WEIGHT_SERIES);
+            addField(terms, manufacturer, WEIGHT_MANUFACTURER);
+            addField(terms, hashrate, WEIGHT_HASHRATE);
+            return terms;
+        }
+
+        private static void addField(Map<String, Float> terms, String value, float weight) {
+            List<String> tokens = tokens(value);
+            for (int i = 0; i < tokens.size(); i++) {
+                terms.merge(tokens.get(i), weight, Math::max);
+                if (i + 1 < tokens.size()) {
+                    terms.merge(tokens.get(i) + tokens.get(i + 1), weight, Math::max);
+                }
+            }
+        }
+    }
+
+    private record ProductAlias(Long minerDetailId, String model) {}
+
+    /**
+     * Совпадение поиска
+     * @param minerDetailId - ID MinerDetail
+     * @param score - релевантность (сумма оценок слов запроса)
+     */
+    public record Hit(Long minerDetailId, double score) {}
+}
@@ -0,0 +1,50 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.MinerDetail;
+import com.miners.shop.entity.Product;
+import com.miners.shop.util.TransactionUtil;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA-слушатель MinerDetail и Product: поддерживает поисковый индекс (MinerSearchService) в актуальном состоянии
+ * Значения полей снимаются в момент события, изменения применяются после коммита
+ */
+@Component
+@RequiredArgsConstructor
+public class MinerSearchIndexListener {
+
+    private final MinerSearchService minerSearchService;
+
+    @PostPersist
+    @PostUpdate
+    void onSave(Object entity) {
+        if (entity instanceof MinerDetail minerDetail) {
+            Long id = minerDetail.getId();
+            String standardName = minerDetail.getStandardName();
+            String manufacturer = minerDetail.getManufacturer();
+            String series = minerDetail.getSeries();
+            String hashrate = minerDetail.getHashrate();
+            TransactionUtil.afterCommit(() -> minerSearchService.onMinerDetailSaved(id, standardName, manufacturer, series, hashrate));
+        } else if (entity instanceof Product product) {
+            Long id = product.getId();
+            Long minerDetailId = product.getMinerDetail() != null ? product.getMinerDetail().getId() : null;
+            String model = product.getModel();
+            TransactionUtil.afterCommit(() -> minerSearchService.onProductSaved(id, minerDetailId, model));
+        }
+    }
+
+    @PostRemove
+    void onRemove(Object entity) {
+        if (entity instanceof MinerDetail minerDetail) {
+            Long id = minerDetail.getId();
+            TransactionUtil.afterCommit(() -> minerSearchService.onMinerDetailRemoved(id));
+        } else if (entity instanceof Product product) {
+            Long id = product.getId();
+            TransactionUtil.afterCommit(() -> minerSearchService.onProductRemoved(id));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.MinerDetail;
+import com.miners.shop.repository.MinerDetailRepository;
+import com.miners.shop.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Поиск MinerDetail по инвертированному индексу в памяти (MinerSearchIndex)
+ * Заменяет LIKE-запросы в поиске каталога (/products?search=), подсказках (/api/products/suggest)
+ * и выборе MinerDetail в админке (/api/miner-details/search).
+ * Индекс загружается при старте и обновляется после коммита изменений MinerDetail и Product (MinerSearchIndexListener).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MinerSearchService {
+
+    private final MinerDetailRepository minerDetailRepository;
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.search.index.fuzzy-threshold:0.4}")
+    private double fuzzyThreshold;
+
+    @Value("${app.search.index.fuzzy-min-length:4}")
+    private int fuzzyMinLength;
+
+    @Value("${app.search.index.max-results:500}")
+    private int maxResults;
+
+    private volatile MinerSearchIndex index;
+    /**
+     * Растет при каждом изменении индекса (часть ETag ответов каталога с поиском)
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong searchNanos = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        ensureLoaded();
+    }
+
+    /**
+     * Полная перезагрузка индекса из БД; до окончания загрузки поиск идет по прежнему индексу
+     */
+    public synchronized void reload() {
+        long started = System.currentTimeMillis();
+        MinerSearchIndex loaded = new MinerSearchIndex(fuzzyThreshold, fuzzyMinLength);
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Object[] row : productRepository.findAllIdMinerDetailIdAndModel()) {
+                loaded.putProduct((Long) row[0], (Long) row[1], (String) row[2]);
+            }
+            for (MinerDetail minerDetail : minerDetailRepository.findAll()) {
+                loaded.putMinerDetail(minerDetail.getId(), minerDetail.getStandardName(), minerDetail.getManufacturer(),
+                        minerDetail.getSeries(), minerDetail.getHashrate());
+            }
+        });
+        index = loaded;
+        generation.incrementAndGet();
+        log.info("✅ Поисковый индекс MinerDetail загружен: документов={}, термов={}, моделей товаров={} ({} мс)",
+                loaded.documentCount(), loaded.termCount(), loaded.aliasCount(), System.currentTimeMillis() - started);
+    }
+
+    /**
+     * ID MinerDetail по убыванию релевантности (включая неактивные - фильтрует вызывающий код)
+     */
+    public List<Long> search(String query) {
+        return search(query, maxResults).stream().map(MinerSearchIndex.Hit::minerDetailId).toList();
+    }
+
+    public List<MinerSearchIndex.Hit> search(String query, int limit) {
+        long started = System.nanoTime();
+        List<MinerSearchIndex.Hit> hits = ensureLoaded().search(query, Math.min(limit, maxResults));
+        searches.incrementAndGet();
+        searchNanos.addAndGet(System.nanoTime() - started);
+        return hits;
+    }
+
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public int productCount(Long minerDetailId) {
+        return ensureLoaded().productCount(minerDetailId);
+    }
+
+    /**
+     * Инкрементальные обновления синхронизированы с reload(), чтобы не потеряться при подмене индекса
+     */
+    public synchronized void onMinerDetailSaved(Long id, String standardName, String manufacturer, String series, String hashrate) {
+        ensureLoaded().putMinerDetail(id, standardName, manufacturer, series, hashrate);
+        generation.incrementAndGet();
+    }
+
+    public synchronized void onMinerDetailRemoved(Long id) {
+        ensureLoaded().removeMinerDetail(id);
+        generation.incrementAndGet();
+    }
+
+    public synchronized void onProductSaved(Long productId, Long minerDetailId, String model) {
+        ensureLoaded().putProduct(productId, minerDetailId, model);
+        generation.incrementAndGet();
+    }
+
+    public synchronized void onProductRemoved(Long productId) {
+        ensureLoaded().removeProduct(productId);
+        generation.incrementAndGet();
+    }
+
+    public Map<String, Object> getStats() {
+        MinerSearchIndex current = index;
+        long count = searches.get();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("documents", current != null ? current.documentCount() : 0);
+        result.put("terms", current != null ? current.termCount() : 0);
+        result.put("productModels", current != null ? current.aliasCount() : 0);
+        result.put("fuzzyThreshold", fuzzyThreshold);
+        result.put("fuzzyMinLength", fuzzyMinLength);
+        result.put("searches", count);
+        result.put("avgSearchMicros", count > 0 ? searchNanos.get() / count / 1000 : 0);
+        return result;
+    }
+
+    private MinerSearchIndex ensureLoaded() {
+        MinerSearchIndex current = index;
+        if (current == null) {
+            synchronized (this) {
+                if (index == null) {
+                    reload();
+                }
+                current = index;
+            }
+        }
+        return current;
+    }
+}
@@ -0,0 +1,267 @@
+package com.miners.shop.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Учет 404 с отложенной записью (not_found_errors)
+ *
+ * Обращения копятся в памяти: URL -> количество, первое/последнее время, последние метод, User-Agent, IP и Referer.
+ * Раз в flush-interval-ms накопленное записывается пакетным upsert (UPDATE существующих + INSERT новых одним запросом
+ * на пачку) вместо чтения и сохранения строки на каждый 404. Число разных URL в окне ограничено max-urls:
+ * новые URL сверх лимита отбрасываются и считаются (dropped), поэтому поток случайных адресов от сканера
+ * не раздувает ни память, ни нагрузку на БД. Повторы уже учтенных URL считаются всегда.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotFoundTracker {
+
+    private static final int FLUSH_CHUNK_SIZE = 200;
+
+    /**
+     * Вставка новых URL и обновление существующих строк одним запросом; строк-дублей по url может быть несколько
+     * (уникального ограничения нет) - обновляются все
+     */
+    private static final String UPSERT_SQL = """
+            WITH v (url, http_method, user_agent, ip_address, referer, hits, first_occurred, last_occurred) AS (
+                VALUES %s
+            ),
+            updated AS (
+                UPDATE not_found_errors e
+                SET count = e.count + v.hits,
+                    last_occurred = GREATEST(e.last_occurred, v.last_occurred),
+                    http_method = v.http_method,
+                    user_agent = v.user_agent,
+                    ip_address = v.ip_address,
+                    referer = v.referer
+                FROM v
+                WHERE e.url = v.url
+                RETURNING e.url
+            )
+            INSERT INTO not_found_errors (url, http_method, user_agent, ip_address, referer, count, first_occurred, last_occurred)
+            SELECT v.url, v.http_method, v.user_agent, v.ip_address, v.referer, v.hits, v.first_occurred, v.last_occurred
+            FROM v
+            WHERE NOT EXISTS (SELECT 1 FROM updated u WHERE u.url = v.url)
+            """;
+
+    private static final String VALUES_ROW = "(CAST(?%d AS varchar), CAST(?%d AS varchar), CAST(?%d AS varchar), CAST(?%d AS varchar), "
+            + "CAST(?%d AS varchar), CAST(?%d AS integer), CAST(?%d AS timestamp), CAST(?%d AS timestamp))";
+
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Сброс вызывается и из read-only транзакций (страница 404 в админке), поэтому пишет в собственной
+     */
+    private TransactionTemplate writeTransaction;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.not-found.max-urls:2000}")
+    private int maxUrls;
+
+    private final Map<String, Hit> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong flushedUrls = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private volatile LocalDateTime lastFlushAt;
+
+    @PostConstruct
+    void init() {
+        writeTransaction = new TransactionTemplate(transactionManager);
+        writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Учитывает обращение к несуществующему URL (без обращения к БД)
+     */
+    public void record(HttpServletRequest request, String url) {
+        if (url == null) {
+            return;
+        }
+        String key = truncate(url, 1000);
+        if (pending.size() >= maxUrls && !pending.containsKey(key)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        String method = truncate(request.getMethod(), 10);
+        String userAgent = truncate(request.getHeader("User-Agent"), 500);
+        String ipAddress = truncate(getClientIpAddress(request), 50);
+        String referer = truncate(request.getHeader("Referer"), 1000);
+        // Изменение записи - только внутри compute: flush забирает ее через remove атомарно
+        pending.compute(key, (k, hit) -> {
+            Hit current = hit != null ? hit : new Hit(now);
+            current.count++;
+            current.lastSeen = now;
+            current.method = method;
+            current.userAgent = userAgent;
+            current.ipAddress = ipAddress;
+            current.referer = referer;
+            return current;
+        });
+        recorded.incrementAndGet();
+    }
+
+    /**
+     * Записывает накопленное в not_found_errors; при ошибке пачка возвращается в очередь (в пределах лимита)
+     */
+    @Scheduled(fixedDelayString = "${app.not-found.flush-interval-ms:10000}", initialDelay = 10000)
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, Hit> batch = new LinkedHashMap<>();
+        for (String url : new ArrayList<>(pending.keySet())) {
+            Hit hit = pending.remove(url);
+            if (hit != null) {
+                batch.put(url, hit);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            List<Map.Entry<String, Hit>> entries = new ArrayList<>(batch.entrySet());
+            writeTransaction.executeWithoutResult(status -> {
+                for (int from = 0; from < entries.size(); from += FLUSH_CHUNK_SIZE) {
+                    upsert(entries.subList(from, Math.min(from + FLUSH_CHUNK_SIZE, entries.size())));
+                }
+            });
+            flushedUrls.addAndGet(batch.size());
+            flushes.incrementAndGet();
+            lastFlushAt = LocalDateTime.now();
+            log.debug("404: записано {} URL", batch.size());
+        } catch (RuntimeException e) {
+            failedFlushes.incrementAndGet();
+            log.error("Ошибка записи 404 ({} URL), повтор при следующем сбросе: {}", batch.size(), e.getMessage(), e);
+            batch.forEach((url, hit) -> {
+                if (pending.size() < maxUrls || pending.containsKey(url)) {
+                    pending.merge(url, hit, Hit::merge);
+                } else {
+                    dropped.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Не удалось записать 404 при остановке: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("pendingUrls", pending.size());
+        result.put("maxUrls", maxUrls);
+        result.put("recorded", recorded.get());
+        result.put("dropped", dropped.get());
+        result.put("flushedUrls", flushedUrls.get());
+        result.put("flushes", flushes.get());
+        result.put("failedFlushes", failedFlushes.get());
+        result.put("lastFlushAt", lastFlushAt);
+        return result;
+    }
+
+    private void upsert(List<Map.Entry<String, Hit>> entries) {
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < entries.size(); i++) {
+            int base = i * 8;
+            if (i > 0) {
+                values.append(", ");
+            }
+            values.append(VALUES_ROW.formatted(base + 1, base + 2, base + 3, base + 4, base + 5, base + 6, base + 7, base + 8));
+        }
+        Query query = entityManager.createNativeQuery(UPSERT_SQL.formatted(values));
+        for (int i = 0; i < entries.size(); i++) {
+            int base = i * 8;
+            String url = entries.get(i).getKey();
+            Hit hit = entries.get(i).getValue();
+            query.setParameter(base + 1, url);
+            query.setParameter(base + 2, hit.method);
+            query.setParameter(base + 3, hit.userAgent);
+            query.setParameter(base + 4, hit.ipAddress);
+            query.setParameter(base + 5, hit.referer);
+            query.setParameter(base + 6, (int) Math.min(hit.count, Integer.MAX_VALUE));
+            query.setParameter(base + 7, hit.firstSeen);
+            query.setParameter(base + 8, hit.lastSeen);
+        }
+        query.executeUpdate();
+    }
+
+    private static String getClientIpAddress(HttpServletRequest request) {
+        String xForwardedFor = request.getHeader("X-Forwarded-For");
+        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
+            return xForwardedFor.split(",")[0].trim();
+        }
+        String xRealIp = request.getHeader("X-Real-IP");
+        if (xRealIp != null && !xRealIp.isEmpty()) {
+            return xRealIp;
+        }
+        return request.getRemoteAddr();
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    /**
+     * Накопленные обращения к одному URL (изменяется только под блокировкой ConcurrentHashMap.compute)
+     */
+    private static final class Hit {
+        private final LocalDateTime firstSeen;
+        private long count;
+        private LocalDateTime lastSeen;
+        private String method;
+        private String userAgent;
+        private String ipAddress;
+        private String referer;
+
+        private Hit(LocalDateTime firstSeen) {
+            this.firstSeen = firstSeen;
+            this.lastSeen = firstSeen;
+        }
+
+        /**
+         * Возврат неудачной пачки: более новые обращения уже в очереди, из старой берутся счетчик и первое время
+         */
+        private static Hit merge(Hit queued, Hit returned) {
+            Hit merged = new Hit(returned.firstSeen.isBefore(queued.firstSeen) ? returned.firstSeen : queued.firstSeen);
+            merged.count = queued.count + returned.count;
+            merged.lastSeen = queued.lastSeen;
+            merged.method = queued.method;
+            merged.userAgent = queued.userAgent;
+            merged.ipAddress = queued.ipAddress;
+            merged.referer = queued.referer;
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.miners.shop.service;
+
+import com.miners.shop.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Индекс моделей товаров в памяти: нормализованный ключ модели -> ID товара
+ * Нормализация: регистр, пробелы и знаки препинания, префикс производителя (Bitmain, Antminer, ...)
+ * и суффикс хешрейта (110T, 200 TH/s) - так "Antminer S19 Pro 110T" и "s19pro" дают один ключ "s19pro".
+ *
+ * Порядок поиска: точная модель -> нормализованный ключ -> нечеткое совпадение (триграммы или
+ * расстояние Левенштейна, настраивается). Прогревается при старте, обновляется после коммита
+ * любых изменений товаров (ProductModelIndexListener).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductModelIndex {
+
+    public static final String FUZZY_TRIGRAM = "trigram";
+    public static final String FUZZY_LEVENSHTEIN = "levenshtein";
+
+    /**
+     * Хешрейт в конце модели: "110T", "104 TH/s", "(9500M)", "3.2PH"
+     * Число без единицы измерения не удаляется - это может быть часть модели (Avalon 1246);
+     * перед числом обязателен пробел или скобка, иначе цифра и буква модели приняли бы вид хешрейта (KS3M, E-KA1M)
+     */
+    private static final Pattern HASHRATE_SUFFIX = Pattern.compile(
+            "(?:\\s+|\\s*\\()\\d+(?:[.,]\\d+)?\\s*(?:t|th|g|gh|m|mh|k|kh|p|ph|ksol|sol)(?:/?s)?\\)?\\s*$");
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}+]+");
+    private static final Pattern NON_DIGITS = Pattern.compile("\\D+");
+
+    private final ProductRepository productRepository;
+
+    @Value("${app.products.model-index.vendor-prefixes:bitmain,antminer,microbt,whatsminer,canaan,avalonminer,innosilicon,goldshell,iceriver,jasminer,ipollo,elphapex}")
+    private List<String> vendorPrefixes;
+
+    /**
+     * trigram, levenshtein или none
+     */
+    @Value("${app.products.model-index.fuzzy:trigram}")
+    private String fuzzyMode;
+
+    @Value("${app.products.model-index.trigram-threshold:0.8}")
+    private double trigramThreshold;
+
+    @Value("${app.products.model-index.max-edit-distance:1}")
+    private int maxEditDistance;
+
+    @Value("${app.products.model-index.fuzzy-min-length:4}")
+    private int fuzzyMinLength;
+
+    private final Map<Long, String> modelById = new ConcurrentHashMap<>();
+    private final Map<String, Long> idByModel = new ConcurrentHashMap<>();
+    /**
+     * Ключ -> ID товаров; каноническим считается самый старый товар (минимальный ID)
+     */
+    private final Map<String, ConcurrentSkipListSet<Long>> idsByKey = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> trigramsByKey = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded;
+
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong keyHits = new AtomicLong();
+    private final AtomicLong fuzzyHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        ensureLoaded();
+    }
+
+    /**
+     * Полная перезагрузка индекса из БД
+     */
+    public synchronized void reload() {
+        modelById.clear();
+        idByModel.clear();
+        idsByKey.clear();
+        trigramsByKey.clear();
+        long started = System.currentTimeMillis();
+        for (Object[] row : productRepository.findAllIdAndModel()) {
+            putEntry((Long) row[0], (String) row[1]);
+        }
+        loaded = true;
+        log.info("✅ Индекс моделей товаров загружен: товаров={}, ключей={}, нечеткий поиск={} ({} мс)",
+                modelById.size(), idsByKey.size(), fuzzyMode, System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Ищет товар для модели из сообщения
+     * @return Совпадение (ID товара и способ сопоставления) или empty, если товар нужно создать
+     */
+    public Optional<Match> resolve(String model) {
+        if (model == null || model.isBlank()) {
+            return Optional.empty();
+        }
+        ensureLoaded();
+
+        Long exactId = idByModel.get(model);
+        if (exactId != null) {
+            exactHits.incrementAndGet();
+            return Optional.of(new Match(exactId, model, MatchType.EXACT));
+        }
+
+        String key = normalize(model);
+        if (key.isEmpty()) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        Long keyId = canonicalId(key);
+        if (keyId != null) {
+            keyHits.incrementAndGet();
+            return Optional.of(new Match(keyId, modelById.get(keyId), MatchType.KEY));
+        }
+
+        Optional<Match> fuzzy = findFuzzy(key);
+        if (fuzzy.isPresent()) {
+            fuzzyHits.incrementAndGet();
+            log.info("🔎 Модель '{}' нечетко сопоставлена с товаром '{}' (ID: {})",
+                    model, fuzzy.get().model(), fuzzy.get().productId());
+        } else {
+            misses.incrementAndGet();
+        }
+        return fuzzy;
+    }
+
+    /**
+     * Добавляет или обновляет товар в индексе (в том числе при смене модели)
+     */
+    public synchronized void register(Long productId, String model) {
+        if (productId == null || model == null) {
+            return;
+        }
+        String previous = modelById.get(productId);
+        if (model.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            removeEntry(productId, previous);
+        }
+        putEntry(productId, model);
+    }
+
+    public synchronized void unregister(Long productId) {
+        String previous = productId != null ? modelById.get(productId) : null;
+        if (previous != null) {
+            removeEntry(productId, previous);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("products", modelById.size());
+        result.put("keys", idsByKey.size());
+        result.put("fuzzy", fuzzyMode);
+        result.put("exactHits", exactHits.get());
+        result.put("keyHits", keyHits.get());
+        result.put("fuzzyHits", fuzzyHits.get());
+        result.put("misses", misses.get());
+        return result;
+    }
+
+    /**
+     * Нормализованный ключ модели: "Bitmain Antminer S19j PRO 104T" -> "s19jpro"
+     * "+" сохраняется: M50S и M50S++ - разные модели
+     */
+    public String normalize(String model) {
+        String value = model.toLowerCase(Locale.ROOT).trim();
+        value = HASHRATE_SUFFIX.matcher(value).replaceFirst("");
+        List<String> tokens = Arrays.stream(TOKEN_SEPARATOR.split(value))
+                .filter(token -> !token.isEmpty())
+                .toList();
+        int start = 0;
+        while (start < tokens.size() - 1 && isVendorPrefix(tokens.get(start))) {
+            start++;
+        }
+        return String.join("", tokens.subList(start, tokens.size()));
+    }
+
+    private boolean isVendorPrefix(String token) {
+        for (String prefix : vendorPrefixes) {
+            if (prefix.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    reload();
+                }
+            }
+        }
+    }
+
+    private Long canonicalId(String key) {
+        ConcurrentSkipListSet<Long> ids = idsByKey.get(key);
+        return ids == null || ids.isEmpty() ? null : ids.first();
+    }
+
+    private void putEntry(Long productId, String model) {
+        modelById.put(productId, model);
+        idByModel.putIfAbsent(model, productId);
+        String key = normalize(model);
+        if (!key.isEmpty()) {
+            idsByKey.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>()).add(productId);
+            trigramsByKey.computeIfAbsent(key, ProductModelIndex::trigrams);
+        }
+    }
+
+    private void removeEntry(Long productId, String model) {
+        modelById.remove(productId);
+        idByModel.remove(model, productId);
+        String key = normalize(model);
+        ConcurrentSkipListSet<Long> ids = idsByKey.get(key);
+        if (ids != null) {
+            ids.remove(productId);
+            if (ids.isEmpty()) {
+                idsByKey.remove(key);
+                trigramsByKey.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Нечеткий поиск по всем ключам. Цифры ключей обязаны совпадать (S19 и S21 - разные модели),
+     * при равной близости выбирается ключ с минимальным ID товара
+     */
+    private Optional<Match> findFuzzy(String key) {
+        boolean trigram = FUZZY_TRIGRAM.equalsIgnoreCase(fuzzyMode);
+        boolean levenshtein = FUZZY_LEVENSHTEIN.equalsIgnoreCase(fuzzyMode);
+        if ((!trigram && !levenshtein) || key.length() < fuzzyMinLength) {
+            return Optional.empty();
+        }
+        String digits = digitsOf(key);
+        Set<String> keyTrigrams = trigram ? trigrams(key) : Set.of();
+
+        Long bestId = null;
+        double bestScore = 0;
+        for (Map.Entry<String, Set<String>> entry : trigramsByKey.entrySet()) {
+            String candidate = entry.getKey();
+            Long candidateId = canonicalId(candidate);
+            if (candidateId == null || !digits.equals(digitsOf(candidate))) {
+                continue;
+            }
+            double score;
+            if (trigram) {
+                score = similarity(keyTrigrams, entry.getValue());
+                if (score < trigramThreshold) {
+                    continue;
+                }
+            } else {
+                if (Math.abs(candidate.length() - key.length()) > maxEditDistance) {
+                    continue;
+                }
+                int distance = editDistance(key, candidate);
+                if (distance > maxEditDistance) {
+                    continue;
+                }
+                score = 1.0 / (1 + distance);
+            }
+            if (bestId == null || score > bestScore || (score == bestScore && candidateId < bestId)) {
+                bestId = candidateId;
+                bestScore = score;
+            }
+        }
+        return bestId == null
+                ? Optional.empty()
+                : Optional.of(new Match(bestId, modelById.get(bestId), MatchType.FUZZY));
+    }
+
+    private static String digitsOf(String key) {
+        return NON_DIGITS.matcher(key).replaceAll(" ").trim();
+    }
+
+    private static Set<String> trigrams(String key) {
+        String padded = "  " + key + " ";
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
+        }
+        return Set.copyOf(result);
+    }
+
+    /**
+     * Коэффициент Жаккара по множествам триграмм (как similarity() в pg_trgm)
+     */
+    private static double similarity(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        long common = smaller.stream().filter(larger::contains).count();
+        return (double) common / (a.size() + b.size() - common);
+    }
+
+    private static int editDistance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    public enum MatchType { EXACT, KEY, FUZZY }
+
+    /**
+     * Найденный товар
+     * @param productId - ID товара
+     * @param model - модель товара в каталоге (может отличаться от модели из сообщения)
+     * @param type - способ сопоставления
+     */
+    public record Match(Long productId, String model, MatchType type) {}
+}
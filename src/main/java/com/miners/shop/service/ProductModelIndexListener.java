@@ -0,0 +1,34 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.Product;
+import com.miners.shop.util.TransactionUtil;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA-слушатель Product: поддерживает ProductModelIndex в актуальном состоянии
+ * Изменения применяются после коммита, чтобы откаченный товар не попал в индекс
+ */
+@Component
+@RequiredArgsConstructor
+public class ProductModelIndexListener {
+
+    private final ProductModelIndex productModelIndex;
+
+    @PostPersist
+    @PostUpdate
+    void onSave(Product product) {
+        Long id = product.getId();
+        String model = product.getModel();
+        TransactionUtil.afterCommit(() -> productModelIndex.register(id, model));
+    }
+
+    @PostRemove
+    void onRemove(Product product) {
+        Long id = product.getId();
+        TransactionUtil.afterCommit(() -> productModelIndex.unregister(id));
+    }
+}
@@ -1,18 +1,20 @@
 package com.miners.shop.service;
 
 import com.miners.shop.entity.MinerDetail;
+import com.miners.shop.entity.MinerDetailOfferStats;
 import com.miners.shop.entity.Offer;
 import com.miners.shop.entity.OperationType;
 import com.miners.shop.entity.Product;
 import com.miners.shop.entity.Seller;
 import com.miners.shop.repository.OfferRepository;
 import com.miners.shop.repository.ProductRepository;
-import com.miners.shop.service.SellerService;
+import com.miners.shop.service.SellerIdentityCache.SellerRef;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
@@ -22,10 +24,17 @@ import org.springframework.transaction.annotation.Transactional;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
 
 /**
  * Сервис для работы с товарами и предложениями
@@ -42,6 +51,23 @@ public class ProductService {
     private final OfferRepository offerRepository;
     private final SellerService sellerService;
     private final com.miners.shop.service.MinerDetailService minerDetailService;
+    private final ProductModelIndex productModelIndex;
+    private final MinerDetailOfferStatsService offerStatsService;
+    
+    /**
+     * Граница подсчета предложений с фильтрами по дате и цене: дальше количество не уточняется
+     */
+    @Value("${app.products.offers.count-cap:10000}")
+    private long offerCountCap;
+    
+    /**
+     * Типы колонок сортировки предложений для сравнения с курсором (остальные - varchar)
+     */
+    private static final Map<String, String> KEYSET_COLUMN_TYPES = Map.of(
+            "updated_at", "timestamp",
+            "created_at", "timestamp",
+            "price", "numeric",
+            "quantity", "integer");
     
     /**
      * Обрабатывает распарсенные данные от Ollama и сохраняет товары с предложениями
@@ -112,74 +138,26 @@ public class ProductService {
         log.info("   - sellerPhone == null: {}", sellerPhone == null);
         log.info("   - sellerPhone.isEmpty(): {}", sellerPhone != null && sellerPhone.isEmpty());
         
-        Seller seller = null;
-        if (sellerPhone != null && !sellerPhone.isEmpty() && !sellerPhone.equals("unknown")) {
-            log.info("   ✅ sellerPhone не null, не пустой и не 'unknown', начинаем валидацию");
-            
-            // Нормализуем номер телефона: удаляем пробелы, дефисы, скобки и другие символы форматирования
-            // Разрешаем только цифры и + в начале
-            String normalizedPhone = sellerPhone.trim().replaceAll("[\\s\\-\\(\\)]", "");
-            
-            // Проверяем, что номер не является "unknown" или похожим на WhatsApp ID
-            boolean isNotUnknown = !normalizedPhone.equalsIgnoreCase("unknown");
-            boolean noAt = !normalizedPhone.contains("@");
-            boolean noUnderscore = !normalizedPhone.contains("_");
-            
-            // Разрешаем + в начале, затем только цифры (максимум 15 цифр после +)
-            // Также разрешаем номера без + (только цифры, максимум 15)
-            boolean isValidFormat = normalizedPhone.matches("^\\+?[0-9]{1,15}$");
-            
-            // Для длины учитываем только цифры (без +)
-            String digitsOnly = normalizedPhone.replaceAll("\\+", "");
-            boolean lengthOk = digitsOnly.length() <= 15 && digitsOnly.length() >= 1;
-            
-            log.info("   Валидация номера телефона:");
-            log.info("   - Оригинальный номер: '{}'", sellerPhone);
-            log.info("   - Нормализованный номер: '{}'", normalizedPhone);
-            log.info("   - Только цифры (длина): {} (фактическая длина: {})", lengthOk, digitsOnly.length());
-            log.info("   - не содержит @: {}", noAt);
-            log.info("   - не содержит _: {}", noUnderscore);
-            log.info("   - не 'unknown': {}", isNotUnknown);
-            log.info("   - валидный формат (\\+?[0-9]{1,15}): {}", isValidFormat);
-            
-            if (!isNotUnknown || !noAt || !noUnderscore || !isValidFormat || !lengthOk) {
-                log.error("   ❌❌❌ sellerPhone НЕ ВАЛИДЕН ❌❌❌");
-                log.error("   ❌ sellerPhone: {}", sellerPhone);
-                log.error("   ❌ normalizedPhone: {}", normalizedPhone);
-                log.error("   ❌ Пропускаем создание продавца для этого сообщения");
-                log.error("   ⚠️  ВСЕ ПРЕДЛОЖЕНИЯ БУДУТ ПРОПУЩЕНЫ, Т.К. SELLER == NULL");
+        String phoneToSave = normalizeSellerPhone(sellerPhone);
+        SellerRef seller = null;
+        if (phoneToSave != null) {
+            log.info("   📞 Вызов sellerService.resolveSeller(phone={}, name={})", phoneToSave, sellerName);
+            seller = sellerService.resolveSeller(phoneToSave, sellerName, null);
+            if (seller != null) {
+                log.info("   ✅✅✅ ПРОДАВЕЦ УСПЕШНО НАЙДЕН/СОЗДАН ✅✅✅");
+                log.info("   ✅ ID: {}", seller.id());
+                log.info("   ✅ Phone: {}", seller.phone());
+                log.info("   ✅ Name: {}", seller.name());
             } else {
-                // Убираем + из начала перед сохранением (сохраняем только цифры)
-                String phoneToSave = normalizedPhone.startsWith("+") ? normalizedPhone.substring(1) : normalizedPhone;
-                
-                log.info("   ✅ Номер телефона валидный, создаем/ищем продавца");
-                log.info("   📞 Вызов sellerService.findOrCreateSeller(phone={}, name={})", phoneToSave, sellerName);
-                seller = sellerService.findOrCreateSeller(phoneToSave, sellerName, null);
-                if (seller != null) {
-                    log.info("   ✅✅✅ ПРОДАВЕЦ УСПЕШНО НАЙДЕН/СОЗДАН ✅✅✅");
-                    log.info("   ✅ ID: {}", seller.getId());
-                    log.info("   ✅ Phone: {}", seller.getPhone());
-                    log.info("   ✅ Name: {}", seller.getName());
-                } else {
-                    log.error("   ❌❌❌ НЕ УДАЛОСЬ СОЗДАТЬ/НАЙТИ ПРОДАВЦА ❌❌❌");
-                    log.error("   ❌ phone={}", phoneToSave);
-                    log.error("   ⚠️  ВСЕ ПРЕДЛОЖЕНИЯ БУДУТ ПРОПУЩЕНЫ, Т.К. SELLER == NULL");
-                }
+                log.error("   ❌❌❌ НЕ УДАЛОСЬ СОЗДАТЬ/НАЙТИ ПРОДАВЦА ❌❌❌");
+                log.error("   ❌ phone={}", phoneToSave);
+                log.error("   ⚠️  ВСЕ ПРЕДЛОЖЕНИЯ БУДУТ ПРОПУЩЕНЫ, Т.К. SELLER == NULL");
             }
-        } else {
-            log.error("   ❌❌❌ sellerPhone ПУСТОЙ, NULL ИЛИ 'unknown' ❌❌❌");
-            log.error("   ❌ sellerPhone: {}", sellerPhone);
-            log.error("   ⚠️  Невозможно создать/найти продавца");
-            log.error("   ⚠️  ВСЕ ПРЕДЛОЖЕНИЯ БУДУТ ПРОПУЩЕНЫ, Т.К. SELLER == NULL");
         }
         log.info("═".repeat(100));
         log.info("   РЕЗУЛЬТАТ: seller == null: {}", seller == null);
         log.info("═".repeat(100));
         
-        // Проверяем, есть ли уже предложения от этого продавца (для определения дубликатов)
-        // Считаем, что это обновление, если есть хотя бы одно предложение от этого продавца
-        boolean isUpdate = seller != null && !offerRepository.findBySellerId(seller.getId()).isEmpty();
-        
         int updatedCount = 0;
         int createdCount = 0;
         
@@ -196,7 +174,7 @@ public class ProductService {
                 String model = (String) productData.get("model");
                 log.info("🔄 Обработка товара {}/{}: {} (локация: {})", i + 1, products.size(), model != null ? model : "N/A", productLocation);
                 
-                boolean wasUpdated = processProduct(productData, messageId, chatName, seller, productLocation, operationType, isUpdate);
+                boolean wasUpdated = processProduct(productData, messageId, chatName, seller, productLocation, operationType);
                 if (wasUpdated) {
                     updatedCount++;
                     log.info("✅ Товар {} обновлен", model);
@@ -230,14 +208,199 @@ public class ProductService {
         return updatedCount > 0;
     }
     
+    /**
+     * Пакетная обработка распарсенных данных нескольких сообщений в одной транзакции
+     * Семантика та же, что у processParsedData для каждого сообщения по порядку, но:
+     * продавцы и товары загружаются одним IN-запросом каждый, измененные товары сохраняются через saveAll
+     * (JDBC batching Hibernate), а предложения записываются тем же upsert, что и в processParsedData,
+     * многострочными командами (upsertOffers)
+     * @param items - Данные сообщений в порядке поступления
+     * @return Результаты в том же порядке, что и items
+     */
+    @Transactional
+    public List<ParsedDataResult> processParsedDataBatch(List<ParsedDataItem> items) {
+        List<ParsedDataResult> results = new ArrayList<>(items.size());
+        if (items.isEmpty()) {
+            return results;
+        }
+        
+        // 1. Продавцы: нормализуем телефоны и загружаем/создаем всех одним запросом
+        List<String> phones = new ArrayList<>(items.size());
+        Map<String, String> namesByPhone = new LinkedHashMap<>();
+        for (ParsedDataItem item : items) {
+            String phone = hasProducts(item.parsedData()) ? normalizeSellerPhone(item.sellerPhone()) : null;
+            phones.add(phone);
+            if (phone != null) {
+                // Для повторяющегося телефона побеждает имя из последнего сообщения
+                namesByPhone.put(phone, item.sellerName());
+            }
+        }
+        Map<String, Seller> sellersByPhone = sellerService.findOrCreateSellers(namesByPhone);
+        
+        // 2. Товары: сопоставляем модели через индекс, загружаем найденные одним запросом, недостающие создаем
+        Map<String, Map<String, Object>> firstProductDataByModel = new LinkedHashMap<>();
+        for (ParsedDataItem item : items) {
+            for (Map<String, Object> productData : getProducts(item.parsedData())) {
+                String model = (String) productData.get("model");
+                if (model != null && !model.isEmpty()) {
+                    firstProductDataByModel.putIfAbsent(model, productData);
+                }
+            }
+        }
+        Map<String, Product> productsByModel = new HashMap<>();
+        if (!firstProductDataByModel.isEmpty()) {
+            Map<String, Long> indexedIds = new HashMap<>();
+            for (String model : firstProductDataByModel.keySet()) {
+                productModelIndex.resolve(model).ifPresent(match -> indexedIds.put(model, match.productId()));
+            }
+            Map<Long, Product> productsById = new HashMap<>();
+            for (Product product : productRepository.findAllById(new HashSet<>(indexedIds.values()))) {
+                productsById.put(product.getId(), product);
+            }
+            indexedIds.forEach((model, id) -> {
+                Product product = productsById.get(id);
+                if (product != null) {
+                    productsByModel.put(model, product);
+                }
+            });
+            // Промахи индекса: точный поиск в БД (товары, созданные в еще не закоммиченных транзакциях)
+            Set<String> missing = new HashSet<>(firstProductDataByModel.keySet());
+            missing.removeAll(productsByModel.keySet());
+            if (!missing.isEmpty()) {
+                for (Product product : productRepository.findByModelIn(missing)) {
+                    productsByModel.put(product.getModel(), product);
+                }
+            }
+            for (Map.Entry<String, Map<String, Object>> entry : firstProductDataByModel.entrySet()) {
+                if (!productsByModel.containsKey(entry.getKey())) {
+                    productsByModel.put(entry.getKey(), createProduct(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+        
+        // 3. Применяем сообщения по порядку; предложения записываются тем же upsert, что и в processParsedData
+        // Множество по ссылке: equals/hashCode сущностей (@Data) зависят от изменяемых полей
+        List<OfferUpsert> offerUpserts = new ArrayList<>();
+        List<Integer> offerItemIndexes = new ArrayList<>();
+        Set<Product> productsToSave = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Long> touchedMinerDetailIds = new HashSet<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < items.size(); i++) {
+            ParsedDataItem item = items.get(i);
+            List<Map<String, Object>> products = getProducts(item.parsedData());
+            if (products.isEmpty()) {
+                continue;
+            }
+            OperationType operationType = parseOperationType(item.parsedData().get("operationType"));
+            String location = (String) item.parsedData().get("location");
+            String phone = phones.get(i);
+            Seller seller = phone != null ? sellersByPhone.get(phone) : null;
+            SellerRef sellerRef = seller != null ? SellerRef.of(seller) : null;
+            
+            for (Map<String, Object> productData : products) {
+                String model = (String) productData.get("model");
+                if (model == null || model.isEmpty()) {
+                    continue;
+                }
+                Product product = productsByModel.get(model);
+                if (fillProductManufacturer(product, productData)) {
+                    productsToSave.add(product);
+                }
+                if (sellerRef == null) {
+                    continue;
+                }
+                
+                String productLocation = (String) productData.get("location");
+                if (productLocation == null || productLocation.isEmpty()) {
+                    productLocation = location;
+                }
+                offerUpserts.add(new OfferUpsert(product.getId(), sellerRef,
+                        parseOfferFields(productData, productLocation, operationType), item.messageId(), item.chatName()));
+                offerItemIndexes.add(i);
+                
+                product.setUpdatedAt(now);
+                productsToSave.add(product);
+                if (product.getMinerDetail() != null) {
+                    touchedMinerDetailIds.add(product.getMinerDetail().getId());
+                }
+            }
+        }
+        
+        productRepository.saveAll(productsToSave);
+        List<OfferUpsertResult> offerResults = upsertOffers(offerUpserts);
+        offerStatsService.markDirty(touchedMinerDetailIds);
+        
+        int[] createdCounts = new int[items.size()];
+        int[] updatedCounts = new int[items.size()];
+        for (int j = 0; j < offerResults.size(); j++) {
+            if (offerResults.get(j).updated()) {
+                updatedCounts[offerItemIndexes.get(j)]++;
+            } else {
+                createdCounts[offerItemIndexes.get(j)]++;
+            }
+        }
+        for (int i = 0; i < items.size(); i++) {
+            results.add(new ParsedDataResult(updatedCounts[i] > 0, createdCounts[i], updatedCounts[i]));
+        }
+        
+        log.info("📦 Пакетная обработка parsedData: сообщений={}, продавцов={}, моделей={}, предложений сохранено={}",
+                items.size(), sellersByPhone.size(), productsByModel.size(), offerUpserts.size());
+        return results;
+    }
+    
+    private static String offerKey(Long productId, Long sellerId, OperationType operationType) {
+        return productId + ":" + sellerId + ":" + operationType;
+    }
+    
+    private static boolean hasProducts(Map<String, Object> parsedData) {
+        return !getProducts(parsedData).isEmpty();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> getProducts(Map<String, Object> parsedData) {
+        if (parsedData == null || !(parsedData.get("products") instanceof List<?> products)) {
+            return List.of();
+        }
+        return (List<Map<String, Object>>) products;
+    }
+    
+    /**
+     * Тип операции из parsedData (по умолчанию SELL)
+     */
+    private static OperationType parseOperationType(Object operationTypeObj) {
+        if (operationTypeObj != null) {
+            try {
+                return OperationType.valueOf(operationTypeObj.toString().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.warn("⚠️  Неизвестный тип операции: {}, используем SELL по умолчанию", operationTypeObj);
+            }
+        }
+        return OperationType.SELL;
+    }
+    
+    /**
+     * Данные одного сообщения для пакетной обработки
+     */
+    public record ParsedDataItem(Map<String, Object> parsedData, String messageId, String chatName,
+                                 String sellerName, String sellerPhone) {}
+    
+    /**
+     * Результат пакетной обработки одного сообщения
+     * @param isUpdate - были ли обновлены существующие предложения (как в processParsedData)
+     * @param createdOffers - количество созданных предложений
+     * @param updatedOffers - количество обновленных предложений
+     */
+    public record ParsedDataResult(boolean isUpdate, int createdOffers, int updatedOffers) {}
+    
     /**
      * Обрабатывает один товар и создает/обновляет предложение
-     * Если уже есть предложение от этого продавца для этой модели - обновляет его
+     * Если уже есть предложение от этого продавца для этой модели и типа операции - обновляет его
+     * (одной командой INSERT ... ON CONFLICT DO UPDATE, см. upsertOffers)
      * @return true, если предложение было обновлено, false если создано новое
      */
     private boolean processProduct(Map<String, Object> productData, String messageId, 
-                               String chatName, Seller seller, String location,
-                               OperationType operationType, boolean checkForDuplicates) {
+                               String chatName, SellerRef seller, String location,
+                               OperationType operationType) {
         String model = (String) productData.get("model");
         if (model == null || model.isEmpty()) {
             log.warn("Модель товара не указана, пропускаем");
@@ -245,54 +408,11 @@ public class ProductService {
         }
         
         // Находим или создаем товар
-        Product product = productRepository.findByModel(model)
-                .orElseGet(() -> {
-                    Product newProduct = new Product();
-                    newProduct.setModel(model);
-                    newProduct.setDescription((String) productData.get("description"));
-                    // Сохраняем производителя из Ollama при создании нового товара
-                    String manufacturer = (String) productData.get("manufacturer");
-                    if (manufacturer != null && !manufacturer.trim().isEmpty()) {
-                        newProduct.setManufacturer(manufacturer.trim());
-                        log.info("✅ Установлен производитель для нового товара {}: {}", model, manufacturer.trim());
-                    } else {
-                        log.debug("⚠️  Производитель не указан в данных Ollama для нового товара: {}", model);
-                    }
-                    Product savedProduct = productRepository.save(newProduct);
-                    log.info("➕ Создан новый товар: {} (ID: {})", model, savedProduct.getId());
-                    
-                    // Автоматически создаем детальную запись для нового товара
-                    try {
-                        if (savedProduct.getMinerDetail() == null) {
-                            MinerDetail minerDetail = minerDetailService.createMinerDetailForProduct(savedProduct);
-                            savedProduct.setMinerDetail(minerDetail);
-                            productRepository.save(savedProduct);
-                            log.info("✅ Создана детальная запись для нового товара {}: MinerDetail ID={}", 
-                                    model, minerDetail.getId());
-                        }
-                    } catch (Exception e) {
-                        log.error("❌ Ошибка при создании детальной записи для товара {}: {}", 
-                                model, e.getMessage(), e);
-                        // Не прерываем выполнение, если ошибка в создании детальной записи
-                    }
-                    
-                    return savedProduct;
-                });
+        Product product = findProduct(model).orElseGet(() -> createProduct(model, productData));
         
         // Обновляем производителя в существующем товаре, если он еще не заполнен
-        if (product.getManufacturer() == null || product.getManufacturer().trim().isEmpty()) {
-            String manufacturer = (String) productData.get("manufacturer");
-            if (manufacturer != null && !manufacturer.trim().isEmpty()) {
-                product.setManufacturer(manufacturer.trim());
-                productRepository.save(product);
-                log.info("✅ Обновлен производитель для существующего товара {}: {} -> {}", 
-                        model, product.getManufacturer() != null ? product.getManufacturer() : "null", manufacturer.trim());
-            } else {
-                log.debug("⚠️  Производитель не указан в данных Ollama для существующего товара: {} (текущий manufacturer: {})", 
-                        model, product.getManufacturer());
-            }
-        } else {
-            log.debug("ℹ️  Производитель уже заполнен для товара {}: {}", model, product.getManufacturer());
+        if (fillProductManufacturer(product, productData)) {
+            productRepository.save(product);
         }
         
         log.debug("Товар найден/создан: {} (ID: {})", model, product.getId());
@@ -308,112 +428,210 @@ public class ProductService {
             return false;
         }
         
-        log.info("   ✅ Продавец присутствует (ID: {}), продолжаем создание предложения для товара {}", seller.getId(), model);
-        
-        // Ищем существующее предложение от этого продавца для этой модели
-        // Учитываем: продукт + продавец + тип операции (SELL/BUY)
-        // Это позволяет продавцу иметь отдельные предложения для продажи и покупки одной модели
-        Offer existingOffer = null;
-        if (checkForDuplicates && seller != null) {
-            List<Offer> existingOffers = offerRepository.findByProductIdAndSellerId(product.getId(), seller.getId());
-            if (!existingOffers.isEmpty()) {
-                // Фильтруем по типу операции - продавец может продавать И покупать одну модель
-                // Это разные предложения, поэтому обновляем только предложение с таким же типом операции
-                Optional<Offer> offerWithSameType = existingOffers.stream()
-                    .filter(o -> o.getOperationType() == operationType)
-                    .max((o1, o2) -> o2.getUpdatedAt().compareTo(o1.getUpdatedAt()));
-                
-                if (offerWithSameType.isPresent()) {
-                    existingOffer = offerWithSameType.get();
-                    log.debug("Найдено существующее предложение для обновления: Product={}, Seller={}, OperationType={}, OfferId={}", 
-                            product.getModel(), seller.getName(), operationType, existingOffer.getId());
+        log.info("   ✅ Продавец присутствует (ID: {}), продолжаем создание предложения для товара {}", seller.id(), model);
+        
+        // Продукт + продавец + тип операции (SELL/BUY) - уникальный ключ предложения:
+        // продавец может одновременно продавать и покупать одну модель
+        OfferFields fields = parseOfferFields(productData, location, operationType);
+        OfferUpsertResult result = upsertOffers(List.of(
+                new OfferUpsert(product.getId(), seller, fields, messageId, chatName))).get(0);
+        boolean isUpdate = result.updated();
+        log.info("✅ Предложение сохранено в БД: Offer ID={}", result.offerId());
+        if (product.getMinerDetail() != null) {
+            offerStatsService.markDirty(product.getMinerDetail().getId());
+        }
+        
+        // Обновляем updatedAt товара, чтобы он всплывал в списке
+        product.setUpdatedAt(LocalDateTime.now());
+        Product savedProduct = productRepository.save(product);
+        log.info("✅ Товар обновлен в БД: Product ID={}, Model={}", savedProduct.getId(), savedProduct.getModel());
+        
+        if (isUpdate) {
+            log.info("🔄 ОБНОВЛЕНО предложение для товара {} от продавца {} (ID: {}), тип {} (Offer ID: {})", 
+                    model, seller.name(), seller.id(), operationType, result.offerId());
+        } else {
+            log.info("➕ СОЗДАНО предложение для товара {} от продавца {} (ID: {}), тип {}: {} {} за {} шт. (Offer ID: {})", 
+                    model, seller.name(), seller.id(), operationType,
+                    fields.priceOnInsert(), fields.currency() != null ? fields.currency() : "USD",
+                    fields.quantity() != null ? fields.quantity() : 1, result.offerId());
+        }
+        
+        return isUpdate;
+    }
+    
+    /**
+     * Валидирует и нормализует телефон продавца из webhook
+     * Удаляет символы форматирования и ведущий +, отбрасывает "unknown" и WhatsApp ID
+     * @return Телефон для сохранения (только цифры) или null, если телефон невалиден
+     */
+    String normalizeSellerPhone(String sellerPhone) {
+        if (sellerPhone == null || sellerPhone.isEmpty() || sellerPhone.equals("unknown")) {
+            log.error("   ❌❌❌ sellerPhone ПУСТОЙ, NULL ИЛИ 'unknown' ❌❌❌");
+            log.error("   ❌ sellerPhone: {}", sellerPhone);
+            log.error("   ⚠️  Невозможно создать/найти продавца");
+            log.error("   ⚠️  ВСЕ ПРЕДЛОЖЕНИЯ БУДУТ ПРОПУЩЕНЫ, Т.К. SELLER == NULL");
+            return null;
+        }
+        log.info("   ✅ sellerPhone не null, не пустой и не 'unknown', начинаем валидацию");
+        
+        // Нормализуем номер телефона: удаляем пробелы, дефисы, скобки и другие символы форматирования
+        // Разрешаем только цифры и + в начале
+        String normalizedPhone = sellerPhone.trim().replaceAll("[\\s\\-\\(\\)]", "");
+        
+        // Проверяем, что номер не является "unknown" или похожим на WhatsApp ID
+        boolean isNotUnknown = !normalizedPhone.equalsIgnoreCase("unknown");
+        boolean noAt = !normalizedPhone.contains("@");
+        boolean noUnderscore = !normalizedPhone.contains("_");
+        
+        // Разрешаем + в начале, затем только цифры (максимум 15 цифр после +)
+        // Также разрешаем номера без + (только цифры, максимум 15)
+        boolean isValidFormat = normalizedPhone.matches("^\\+?[0-9]{1,15}$");
+        
+        // Для длины учитываем только цифры (без +)
+        String digitsOnly = normalizedPhone.replaceAll("\\+", "");
+        boolean lengthOk = digitsOnly.length() <= 15 && digitsOnly.length() >= 1;
+        
+        log.info("   Валидация номера телефона:");
+        log.info("   - Оригинальный номер: '{}'", sellerPhone);
+        log.info("   - Нормализованный номер: '{}'", normalizedPhone);
+        log.info("   - Только цифры (длина): {} (фактическая длина: {})", lengthOk, digitsOnly.length());
+        log.info("   - не содержит @: {}", noAt);
+        log.info("   - не содержит _: {}", noUnderscore);
+        log.info("   - не 'unknown': {}", isNotUnknown);
+        log.info("   - валидный формат (\\+?[0-9]{1,15}): {}", isValidFormat);
+        
+        if (!isNotUnknown || !noAt || !noUnderscore || !isValidFormat || !lengthOk) {
+            log.error("   ❌❌❌ sellerPhone НЕ ВАЛИДЕН ❌❌❌");
+            log.error("   ❌ sellerPhone: {}", sellerPhone);
+            log.error("   ❌ normalizedPhone: {}", normalizedPhone);
+            log.error("   ❌ Пропускаем создание продавца для этого сообщения");
+            log.error("   ⚠️  ВСЕ ПРЕДЛОЖЕНИЯ БУДУТ ПРОПУЩЕНЫ, Т.К. SELLER == NULL");
+            return null;
+        }
+        
+        // Убираем + из начала перед сохранением (сохраняем только цифры)
+        log.info("   ✅ Номер телефона валидный");
+        return normalizedPhone.startsWith("+") ? normalizedPhone.substring(1) : normalizedPhone;
+    }
+    
+    /**
+     * Находит товар для модели из сообщения: через индекс моделей (точное, нормализованное
+     * или нечеткое совпадение), при промахе - точным поиском в БД
+     */
+    private Optional<Product> findProduct(String model) {
+        Optional<ProductModelIndex.Match> match = productModelIndex.resolve(model);
+        if (match.isPresent()) {
+            Optional<Product> product = productRepository.findById(match.get().productId());
+            if (product.isPresent()) {
+                if (match.get().type() != ProductModelIndex.MatchType.EXACT) {
+                    log.info("🔎 Модель '{}' сопоставлена с товаром '{}' (ID: {}, способ: {})",
+                            model, product.get().getModel(), product.get().getId(), match.get().type());
                 }
+                return product;
             }
+            // Товар удален, а индекс еще не обновлен
+            productModelIndex.unregister(match.get().productId());
         }
+        return productRepository.findByModel(model);
+    }
+    
+    /**
+     * Создает новый товар по данным от Ollama вместе с детальной записью (MinerDetail)
+     */
+    private Product createProduct(String model, Map<String, Object> productData) {
+        Product newProduct = new Product();
+        newProduct.setModel(model);
+        newProduct.setDescription((String) productData.get("description"));
+        // Сохраняем производителя из Ollama при создании нового товара
+        String manufacturer = (String) productData.get("manufacturer");
+        if (manufacturer != null && !manufacturer.trim().isEmpty()) {
+            newProduct.setManufacturer(manufacturer.trim());
+            log.info("✅ Установлен производитель для нового товара {}: {}", model, manufacturer.trim());
+        } else {
+            log.debug("⚠️  Производитель не указан в данных Ollama для нового товара: {}", model);
+        }
+        Product savedProduct = productRepository.save(newProduct);
+        log.info("➕ Создан новый товар: {} (ID: {})", model, savedProduct.getId());
         
-        Offer offer;
-        boolean isUpdate;
+        // Автоматически создаем детальную запись для нового товара
+        try {
+            if (savedProduct.getMinerDetail() == null) {
+                MinerDetail minerDetail = minerDetailService.createMinerDetailForProduct(savedProduct);
+                savedProduct.setMinerDetail(minerDetail);
+                productRepository.save(savedProduct);
+                log.info("✅ Создана детальная запись для нового товара {}: MinerDetail ID={}", 
+                        model, minerDetail.getId());
+            }
+        } catch (Exception e) {
+            log.error("❌ Ошибка при создании детальной записи для товара {}: {}", 
+                    model, e.getMessage(), e);
+            // Не прерываем выполнение, если ошибка в создании детальной записи
+        }
         
-        if (existingOffer != null) {
-            // Обновляем существующее предложение
-            offer = existingOffer;
-            offer.setOperationType(operationType); // Обновляем тип операции
-            isUpdate = true;
-            log.info("Обновление существующего предложения от продавца {} (ID: {}) для модели {} (Offer ID: {}, тип: {})", 
-                    seller.getName(), seller.getId(), model, offer.getId(), operationType);
+        return savedProduct;
+    }
+    
+    /**
+     * Заполняет производителя товара из данных Ollama, если он еще не указан
+     * @return true, если производитель был изменен (товар нужно сохранить)
+     */
+    private boolean fillProductManufacturer(Product product, Map<String, Object> productData) {
+        String model = product.getModel();
+        if (product.getManufacturer() == null || product.getManufacturer().trim().isEmpty()) {
+            String manufacturer = (String) productData.get("manufacturer");
+            if (manufacturer != null && !manufacturer.trim().isEmpty()) {
+                log.info("✅ Обновлен производитель для существующего товара {}: {} -> {}", 
+                        model, product.getManufacturer() != null ? product.getManufacturer() : "null", manufacturer.trim());
+                product.setManufacturer(manufacturer.trim());
+                return true;
+            }
+            log.debug("⚠️  Производитель не указан в данных Ollama для существующего товара: {} (текущий manufacturer: {})", 
+                    model, product.getManufacturer());
         } else {
-            // Создаем новое предложение
-            offer = new Offer();
-            offer.setProduct(product);
-            offer.setSeller(seller); // Устанавливаем связь с продавцом
-            offer.setOperationType(operationType); // Устанавливаем тип операции
-            isUpdate = false;
-            log.info("Создание нового предложения от продавца {} (ID: {}) для модели {} (тип: {})", 
-                    seller.getName(), seller.getId(), model, operationType);
+            log.debug("ℹ️  Производитель уже заполнен для товара {}: {}", model, product.getManufacturer());
         }
-        
-        // Обновляем/устанавливаем поля предложения
+        return false;
+    }
+    
+    /**
+     * Разбирает поля предложения из данных Ollama
+     * null означает "поле не пришло в сообщении": при обновлении такие поля не перезаписываются
+     */
+    private OfferFields parseOfferFields(Map<String, Object> productData, String location, OperationType operationType) {
         // Цена - может быть null для запросов на покупку (BUY)
+        BigDecimal price = null;
         Object priceObj = productData.get("price");
         if (priceObj != null) {
             try {
                 if (priceObj instanceof Number) {
-                    offer.setPrice(BigDecimal.valueOf(((Number) priceObj).doubleValue()));
+                    price = BigDecimal.valueOf(((Number) priceObj).doubleValue());
                 } else {
-                    offer.setPrice(new BigDecimal(priceObj.toString()));
+                    price = new BigDecimal(priceObj.toString());
                 }
             } catch (Exception e) {
                 log.warn("Не удалось распарсить цену: {}", priceObj);
-                // Для покупки цена может быть null
-                if (operationType != OperationType.BUY && !isUpdate) {
-                    offer.setPrice(BigDecimal.ZERO);
-                } else if (operationType == OperationType.BUY) {
-                    offer.setPrice(null);
-                }
-            }
-        } else {
-            // Для запросов на покупку цена может быть null
-            if (operationType == OperationType.BUY) {
-                offer.setPrice(null);
-            } else if (!isUpdate) {
-                // Для продажи, если цена не указана и это новое предложение
-                offer.setPrice(BigDecimal.ZERO);
             }
         }
         
-        // Валюта
+        // Валюта: преобразуем "u" в "USD" для совместимости
         String currency = (String) productData.get("currency");
-        if (currency != null || !isUpdate) {
-            // Преобразуем "u" в "USD" для совместимости
-            if (currency != null && currency.equalsIgnoreCase("u")) {
-                currency = "USD";
-            }
-            offer.setCurrency(currency != null ? currency : "USD");
+        if (currency != null && currency.equalsIgnoreCase("u")) {
+            currency = "USD";
         }
         
         // Количество
+        Integer quantity = null;
         Object quantityObj = productData.get("quantity");
         if (quantityObj != null) {
             try {
                 if (quantityObj instanceof Number) {
-                    offer.setQuantity(((Number) quantityObj).intValue());
+                    quantity = ((Number) quantityObj).intValue();
                 } else {
-                    offer.setQuantity(Integer.parseInt(quantityObj.toString()));
+                    quantity = Integer.parseInt(quantityObj.toString());
                 }
             } catch (Exception e) {
                 log.warn("Не удалось распарсить количество: {}", quantityObj);
-                if (!isUpdate) {
-                    offer.setQuantity(1);
-                }
             }
-        } else if (!isUpdate) {
-            offer.setQuantity(1);
-        }
-        
-        // Состояние
-        String condition = (String) productData.get("condition");
-        if (condition != null || !isUpdate) {
-            offer.setCondition(condition);
         }
         
         // Дополнительные условия
@@ -421,49 +639,9 @@ public class ProductService {
         if (notes == null || notes.isEmpty()) {
             notes = (String) productData.get("additionalConditions");
         }
-        if (notes != null || !isUpdate) {
-            offer.setNotes(notes);
-        }
-        
-        // Локация
-        if (location != null || !isUpdate) {
-            offer.setLocation(location);
-        }
-        
-        // Hashrate (мощность майнера)
-        String hashrate = (String) productData.get("hashrate");
-        if (hashrate != null || !isUpdate) {
-            offer.setHashrate(hashrate);
-        }
-        
-        // Manufacturer (производитель)
-        String manufacturer = (String) productData.get("manufacturer");
-        if (manufacturer != null || !isUpdate) {
-            offer.setManufacturer(manufacturer);
-        }
-        
-        // Продавец - устанавливаем связь
-        offer.setSeller(seller);
-        
-        // Обратная совместимость - сохраняем имя и телефон для старых записей
-        // Устанавливаем значения из объекта Seller, чтобы deprecated поля были заполнены
-        if (seller != null) {
-            offer.setSellerName(seller.getName());
-            offer.setSellerPhone(seller.getPhone());
-        } else {
-            // Fallback: если seller не был создан (не должно произойти, но на всякий случай)
-            offer.setSellerName("Неизвестный продавец");
-            offer.setSellerPhone(null);
-        }
-        
-        // Источник - обновляем на новое сообщение
-        offer.setSourceMessageId(messageId);
-        if (chatName != null || !isUpdate) {
-            offer.setSourceChatName(chatName);
-        }
         
         // Сохраняем дополнительные данные из Ollama (все поля, которые не обрабатываются отдельно)
-        // Создаем копию productData и удаляем стандартные поля
+        String additionalData = null;
         try {
             Map<String, Object> additionalDataMap = new HashMap<>(productData);
             // Удаляем стандартные поля, которые уже обработаны
@@ -480,41 +658,164 @@ public class ProductService {
             
             // Если есть дополнительные поля, сохраняем их в JSON
             if (!additionalDataMap.isEmpty()) {
-                ObjectMapper objectMapper = new ObjectMapper();
-                String additionalDataJson = objectMapper.writeValueAsString(additionalDataMap);
-                offer.setAdditionalData(additionalDataJson);
-                log.info("✅ Сохранены дополнительные данные из Ollama для предложения {}: {}", offer.getId(), additionalDataJson);
-            } else {
-                offer.setAdditionalData(null);
+                additionalData = new ObjectMapper().writeValueAsString(additionalDataMap);
+                log.info("✅ Дополнительные данные из Ollama для модели {}: {}", productData.get("model"), additionalData);
             }
         } catch (Exception e) {
             log.warn("⚠️  Не удалось сохранить дополнительные данные из Ollama: {}", e.getMessage());
-            offer.setAdditionalData(null);
         }
         
-        // Сохраняем предложение
-        log.info("💾 Попытка сохранения предложения в БД: Product={}, Seller={}, OperationType={}", 
-                product.getModel(), seller.getName(), operationType);
-        
-        Offer savedOffer = offerRepository.save(offer);
-        log.info("✅ Предложение успешно сохранено в БД: Offer ID={}", savedOffer.getId());
+        return new OfferFields(operationType, price, currency, quantity, (String) productData.get("condition"), notes,
+                location, (String) productData.get("hashrate"), (String) productData.get("manufacturer"), additionalData);
+    }
+    
+    /**
+     * Создает или обновляет предложения по уникальному ключу (product_id, seller_id, operation_type)
+     * Единственный путь записи предложений из сообщений: одно сообщение - одна строка, пакет - многострочный VALUES.
+     * Атомарно и без гонок при одновременных сообщениях от одного продавца. Повтор ключа в списке
+     * уходит в следующую команду (одна команда ON CONFLICT не может изменить строку дважды), порядок сохраняется.
+     * @return Результаты в том же порядке, что и rows
+     */
+    private List<OfferUpsertResult> upsertOffers(List<OfferUpsert> rows) {
+        List<OfferUpsertResult> results = new ArrayList<>(rows.size());
+        int start = 0;
+        while (start < rows.size()) {
+            Set<String> keys = new HashSet<>();
+            int end = start;
+            while (end < rows.size() && end - start < MAX_OFFER_UPSERT_ROWS && keys.add(rows.get(end).key())) {
+                end++;
+            }
+            results.addAll(executeOfferUpsert(rows.subList(start, end)));
+            start = end;
+        }
+        return results;
+    }
+    
+    private List<OfferUpsertResult> executeOfferUpsert(List<OfferUpsert> rows) {
+        StringJoiner values = new StringJoiner(",\n");
+        for (int i = 0; i < rows.size(); i++) {
+            values.add(UPSERT_OFFER_VALUES_ROW.formatted(i));
+        }
+        Query query = entityManager.createNativeQuery(UPSERT_OFFERS_SQL.formatted(values));
+        for (int i = 0; i < rows.size(); i++) {
+            OfferUpsert row = rows.get(i);
+            OfferFields fields = row.fields();
+            query.setParameter("productId" + i, row.productId());
+            query.setParameter("sellerId" + i, row.seller().id());
+            query.setParameter("operationType" + i, fields.operationType().name());
+            query.setParameter("insertPrice" + i, fields.priceOnInsert());
+            query.setParameter("overwritePrice" + i, fields.overwritePrice());
+            query.setParameter("currency" + i, fields.currency());
+            query.setParameter("quantity" + i, fields.quantity());
+            query.setParameter("condition" + i, fields.condition());
+            query.setParameter("notes" + i, fields.notes());
+            query.setParameter("location" + i, fields.location());
+            query.setParameter("hashrate" + i, fields.hashrate());
+            query.setParameter("manufacturer" + i, fields.manufacturer());
+            query.setParameter("sellerName" + i, row.seller().name());
+            query.setParameter("sellerPhone" + i, row.seller().phone());
+            query.setParameter("sourceMessageId" + i, row.messageId());
+            query.setParameter("sourceChatName" + i, row.chatName());
+            query.setParameter("additionalData" + i, fields.additionalData());
+        }
         
-        // Обновляем updatedAt товара, чтобы он всплывал в списке
-        product.setUpdatedAt(LocalDateTime.now());
-        Product savedProduct = productRepository.save(product);
-        log.info("✅ Товар обновлен в БД: Product ID={}, Model={}", savedProduct.getId(), savedProduct.getModel());
+        // Порядок строк RETURNING не гарантирован - сопоставляем по ключу
+        Map<String, OfferUpsertResult> resultsByKey = new HashMap<>();
+        for (Object result : query.getResultList()) {
+            Object[] row = (Object[]) result;
+            resultsByKey.put(offerKey(((Number) row[1]).longValue(), ((Number) row[2]).longValue(),
+                            OperationType.valueOf((String) row[3])),
+                    new OfferUpsertResult(((Number) row[0]).longValue(), !Boolean.TRUE.equals(row[4])));
+        }
+        return rows.stream().map(row -> resultsByKey.get(row.key())).toList();
+    }
+    
+    /**
+     * Строк в одной команде upsert (17 параметров на строку, предел PostgreSQL - 65535 параметров)
+     */
+    private static final int MAX_OFFER_UPSERT_ROWS = 500;
+    
+    private static final String UPSERT_OFFER_VALUES_ROW = """
+            (CAST(:productId%1$d AS bigint), CAST(:sellerId%1$d AS bigint), CAST(:operationType%1$d AS varchar),
+             CAST(:insertPrice%1$d AS numeric), CAST(:overwritePrice%1$d AS boolean), CAST(:currency%1$d AS varchar),
+             CAST(:quantity%1$d AS integer), CAST(:condition%1$d AS varchar), CAST(:notes%1$d AS text),
+             CAST(:location%1$d AS varchar), CAST(:hashrate%1$d AS varchar), CAST(:manufacturer%1$d AS varchar),
+             CAST(:sellerName%1$d AS varchar), CAST(:sellerPhone%1$d AS varchar), CAST(:sourceMessageId%1$d AS varchar),
+             CAST(:sourceChatName%1$d AS varchar), CAST(:additionalData%1$d AS text))""";
+    
+    /**
+     * Upsert предложений. При обновлении null-значения не затирают сохраненные;
+     * цена BUY перезаписывается всегда (может быть null), цена SELL - только если пришла.
+     * Исходные значения строки (до подстановки значений по умолчанию) берутся из v по ключу.
+     * (xmax = 0) - строка вставлена, а не обновлена.
+     */
+    private static final String UPSERT_OFFERS_SQL = """
+            WITH v (product_id, seller_id, operation_type, insert_price, overwrite_price, currency, quantity, condition,
+                    notes, location, hashrate, manufacturer, seller_name, seller_phone, source_message_id,
+                    source_chat_name, additional_data) AS (
+                VALUES %s
+            )
+            INSERT INTO offers (id, product_id, seller_id, operation_type, price, currency, quantity, condition, notes,
+                                location, hashrate, manufacturer, seller_name, seller_phone, source_message_id,
+                                source_chat_name, additional_data, created_at, updated_at)
+            SELECT nextval('offers_seq'), v.product_id, v.seller_id, v.operation_type, v.insert_price,
+                   COALESCE(v.currency, 'USD'), COALESCE(v.quantity, 1), v.condition, v.notes, v.location, v.hashrate,
+                   v.manufacturer, v.seller_name, v.seller_phone, v.source_message_id, v.source_chat_name,
+                   v.additional_data, now(), now()
+            FROM v
+            ON CONFLICT (product_id, seller_id, operation_type) DO UPDATE SET
+                (price, currency, quantity, condition, notes, location, hashrate, manufacturer, seller_name,
+                 seller_phone, source_message_id, source_chat_name, additional_data, updated_at) = (
+                    SELECT CASE WHEN v.overwrite_price THEN v.insert_price ELSE offers.price END,
+                           COALESCE(v.currency, offers.currency), COALESCE(v.quantity, offers.quantity),
+                           COALESCE(v.condition, offers.condition), COALESCE(v.notes, offers.notes),
+                           COALESCE(v.location, offers.location), COALESCE(v.hashrate, offers.hashrate),
+                           COALESCE(v.manufacturer, offers.manufacturer), v.seller_name, v.seller_phone,
+                           v.source_message_id, COALESCE(v.source_chat_name, offers.source_chat_name),
+                           v.additional_data, now()
+                    FROM v
+                    WHERE v.product_id = EXCLUDED.product_id AND v.seller_id = EXCLUDED.seller_id
+                      AND v.operation_type = EXCLUDED.operation_type)
+            RETURNING id, product_id, seller_id, operation_type, (xmax = 0) AS inserted
+            """;
+    
+    /**
+     * Поля предложения, разобранные из данных Ollama (null - поле не пришло)
+     */
+    private record OfferFields(OperationType operationType, BigDecimal price, String currency, Integer quantity,
+                               String condition, String notes, String location, String hashrate,
+                               String manufacturer, String additionalData) {
+        
+        /**
+         * Цена нового предложения: для BUY может быть null, для SELL без цены - 0
+         */
+        BigDecimal priceOnInsert() {
+            return operationType == OperationType.BUY || price != null ? price : BigDecimal.ZERO;
+        }
         
-        if (isUpdate) {
-            log.info("🔄 ОБНОВЛЕНО предложение для товара {} от продавца {} (ID: {}): {} {} за {} шт. (Offer ID: {})", 
-                    model, seller != null ? seller.getName() : "Unknown", seller != null ? seller.getId() : 0,
-                    savedOffer.getPrice(), savedOffer.getCurrency(), savedOffer.getQuantity(), savedOffer.getId());
-        } else {
-            log.info("➕ СОЗДАНО предложение для товара {} от продавца {} (ID: {}): {} {} за {} шт. (Offer ID: {})", 
-                    model, seller != null ? seller.getName() : "Unknown", seller != null ? seller.getId() : 0,
-                    savedOffer.getPrice(), savedOffer.getCurrency(), savedOffer.getQuantity(), savedOffer.getId());
+        /**
+         * Перезаписывать ли цену существующего предложения: для BUY всегда, для SELL - только если цена пришла
+         */
+        boolean overwritePrice() {
+            return operationType == OperationType.BUY || price != null;
         }
+    }
+    
+    /**
+     * Результат upsert предложения
+     * @param offerId - ID предложения
+     * @param updated - true, если обновлено существующее предложение, false если создано новое
+     */
+    private record OfferUpsertResult(Long offerId, boolean updated) {}
+    
+    /**
+     * Строка upsert предложения: товар, продавец, поля из сообщения и источник
+     */
+    private record OfferUpsert(Long productId, SellerRef seller, OfferFields fields, String messageId, String chatName) {
         
-        return isUpdate;
+        String key() {
+            return offerKey(productId, seller.id(), fields.operationType());
+        }
     }
     
     /**
@@ -660,6 +961,8 @@ public class ProductService {
     
     /**
      * Получает предложения для всех товаров, связанных с MinerDetail, с пагинацией и фильтрацией
+     * Страница по номеру (OFFSET) поверх findOfferSlice; общее количество - из статистики предложений
+     * или ограниченным подсчетом (см. findOfferSlice)
      * @param minerDetailId ID MinerDetail
      * @param dateFrom Дата начала периода (может быть null)
      * @param operationType Тип операции: SELL или BUY (может быть null)
@@ -669,100 +972,179 @@ public class ProductService {
      */
     @Transactional(readOnly = true)
     public Page<Offer> getOffersByMinerDetailIdWithFilters(Long minerDetailId, LocalDateTime dateFrom, OperationType operationType, Boolean hasPrice, Pageable pageable) {
-        // Получаем все товары, связанные с MinerDetail
-        List<Product> linkedProducts = productRepository.findByMinerDetailId(minerDetailId);
-        
-        if (linkedProducts.isEmpty()) {
-            return new PageImpl<>(new java.util.ArrayList<>(), pageable, 0);
-        }
-        
-        // Собираем все ID связанных товаров
-        List<Long> productIds = linkedProducts.stream()
-                .map(Product::getId)
-                .toList();
-        
-        // Вычисляем LIMIT и OFFSET из Pageable
-        int limitCount = pageable.getPageSize();
-        int offsetCount = (int) pageable.getOffset();
-        
-        // Преобразуем OperationType в строку для SQL запроса (null если не указан)
-        String operationTypeStr = operationType != null ? operationType.name() : null;
-        
-        // Получаем параметры сортировки из Pageable
-        String sortBy = "updated_at"; // По умолчанию
-        String sortDir = "DESC"; // По умолчанию
-        
-        if (pageable.getSort().isSorted()) {
-            org.springframework.data.domain.Sort.Order order = pageable.getSort().get().findFirst().orElse(null);
-            if (order != null) {
-                // Преобразуем camelCase в snake_case для SQL
-                sortBy = convertCamelCaseToSnakeCase(order.getProperty());
-                sortDir = order.getDirection().name();
-                
-                // Валидация: разрешаем только определенные колонки для безопасности
-                if (!isValidSortColumn(sortBy)) {
-                    sortBy = "updated_at";
-                    log.warn("Недопустимая колонка для сортировки, используем updated_at по умолчанию");
-                }
+        OfferSlice slice = findOfferSlice(minerDetailId, dateFrom, operationType, hasPrice, pageable.getSort(),
+                null, pageable.getOffset(), pageable.getPageSize(), true);
+        return new PageImpl<>(slice.content(), pageable, slice.totalElements());
+    }
+    
+    /**
+     * Страница предложений всех товаров MinerDetail по ключу (keyset)
+     * Порядок - (колонка сортировки, id) с NULL в конце. Предложения MinerDetail распределены по нескольким товарам,
+     * поэтому страница собирается слиянием: для каждого товара (LATERAL) читается не больше size + 1 строк после курсора
+     * по индексу (product_id, operation_type, updated_at, id), внешняя сортировка объединяет их и обрезает до страницы.
+     * Стоимость страницы по курсору - (число товаров) x (size + 1) строк и от ее номера не зависит;
+     * по смещению (без курсора) каждый товар читает еще offset строк.
+     * Общее количество (withTotal): без фильтров по дате и цене - точное из miner_detail_offer_stats,
+     * иначе COUNT не дальше offerCountCap строк (totalExact = false, если граница достигнута).
+     * @param after Курсор - последняя строка предыдущей страницы (null или курсор другой сортировки - первая страница или offset)
+     * @param offset Смещение (используется только без курсора)
+     * @param withTotal Считать общее количество (клиент, уже знающий его, передает false)
+     */
+    @Transactional(readOnly = true)
+    public OfferSlice findOfferSlice(Long minerDetailId, LocalDateTime dateFrom, OperationType operationType, Boolean hasPrice,
+                                     org.springframework.data.domain.Sort sort, OfferCursor after, long offset, int size,
+                                     boolean withTotal) {
+        String sortBy = "updated_at";
+        String sortDir = "DESC";
+        org.springframework.data.domain.Sort.Order order = sort != null ? sort.get().findFirst().orElse(null) : null;
+        if (order != null) {
+            sortBy = convertCamelCaseToSnakeCase(order.getProperty());
+            sortDir = order.getDirection().name();
+            if (!isValidSortColumn(sortBy)) {
+                sortBy = "updated_at";
+                log.warn("Недопустимая колонка для сортировки, используем updated_at по умолчанию");
             }
         }
-        
-        // Валидация направления сортировки
-        if (!"ASC".equalsIgnoreCase(sortDir) && !"DESC".equalsIgnoreCase(sortDir)) {
-            sortDir = "DESC";
+        boolean descending = "DESC".equalsIgnoreCase(sortDir);
+        if (after != null && (!after.column().equals(sortBy) || after.descending() != descending)) {
+            after = null;
         }
         
-        // Строим динамический SQL запрос для данных с поддержкой нескольких product_id
-        StringBuilder sqlBuilder = new StringBuilder();
-        sqlBuilder.append("SELECT * FROM offers WHERE product_id IN (:productIds) ");
-        sqlBuilder.append("AND updated_at >= COALESCE(:dateFrom, '1900-01-01'::timestamp) ");
-        sqlBuilder.append("AND (CAST(:operationType AS varchar) IS NULL OR operation_type = CAST(:operationType AS varchar)) ");
-        // Фильтр "Без пустых цен": если hasPrice = true, показываем только записи с ценой (price IS NOT NULL)
+        Map<String, Object> params = new HashMap<>();
+        params.put("minerDetailId", minerDetailId);
+        StringBuilder filters = new StringBuilder();
+        if (dateFrom != null) {
+            filters.append(" AND o.updated_at >= CAST(:dateFrom AS timestamp)");
+            params.put("dateFrom", dateFrom);
+        }
+        if (operationType != null) {
+            filters.append(" AND o.operation_type = :operationType");
+            params.put("operationType", operationType.name());
+        }
+        // Фильтр "Без пустых цен"
         if (hasPrice != null && hasPrice) {
-            sqlBuilder.append("AND price IS NOT NULL ");
+            filters.append(" AND o.price IS NOT NULL");
         }
-        sqlBuilder.append("ORDER BY ").append(sortBy).append(" ").append(sortDir).append(" ");
-        sqlBuilder.append("LIMIT :limitCount OFFSET :offsetCount");
-        
-        // Создаем запрос для получения данных
-        Query query = entityManager.createNativeQuery(sqlBuilder.toString(), Offer.class);
-        query.setParameter("productIds", productIds);
-        query.setParameter("dateFrom", dateFrom);
-        query.setParameter("operationType", operationTypeStr);
-        query.setParameter("limitCount", limitCount);
-        query.setParameter("offsetCount", offsetCount);
         
+        StringBuilder perProduct = new StringBuilder("SELECT o.* FROM offers o WHERE o.product_id = p.id").append(filters);
+        if (after != null) {
+            String column = "o." + sortBy;
+            String comparison = descending ? "<" : ">";
+            if (after.value() == null) {
+                // Курсор в хвосте из NULL - остаются только NULL с id дальше курсора
+                perProduct.append(" AND ").append(column).append(" IS NULL AND o.id ").append(comparison).append(" :afterId");
+            } else {
+                perProduct.append(" AND (").append(column).append(" IS NULL OR (").append(column).append(", o.id) ")
+                        .append(comparison).append(" (CAST(:afterValue AS ").append(KEYSET_COLUMN_TYPES.getOrDefault(sortBy, "varchar"))
+                        .append("), :afterId))");
+                params.put("afterValue", after.value());
+            }
+            params.put("afterId", after.id());
+        }
+        String orderBy = " ORDER BY o." + sortBy + " " + (descending ? "DESC" : "ASC") + " NULLS LAST, o.id " + (descending ? "DESC" : "ASC");
+        // Каждый товар отдает не больше строк, чем нужно странице (с учетом смещения), слияние - внешней сортировкой.
+        // Одна лишняя строка - признак следующей страницы
+        long perProductLimit = size + 1 + (after == null ? offset : 0);
+        perProduct.append(orderBy).append(" LIMIT :perProductLimit");
+        params.put("perProductLimit", perProductLimit);
+        StringBuilder sql = new StringBuilder("SELECT o.* FROM products p CROSS JOIN LATERAL (").append(perProduct)
+                .append(") o WHERE p.miner_detail_id = :minerDetailId").append(orderBy).append(" LIMIT :limit");
+        params.put("limit", size + 1);
+        if (after == null && offset > 0) {
+            sql.append(" OFFSET :offset");
+            params.put("offset", offset);
+        }
+        Query query = entityManager.createNativeQuery(sql.toString(), Offer.class);
+        params.forEach(query::setParameter);
         @SuppressWarnings("unchecked")
-        List<Offer> offers = query.getResultList();
-        
-        // Получаем общее количество для пагинации
-        StringBuilder countSqlBuilder = new StringBuilder();
-        countSqlBuilder.append("SELECT COUNT(*) FROM offers WHERE product_id IN (:productIds) ");
-        countSqlBuilder.append("AND updated_at >= COALESCE(:dateFrom, '1900-01-01'::timestamp) ");
-        countSqlBuilder.append("AND (CAST(:operationType AS varchar) IS NULL OR operation_type = CAST(:operationType AS varchar)) ");
-        if (hasPrice != null && hasPrice) {
-            countSqlBuilder.append("AND price IS NOT NULL");
+        List<Offer> rows = query.getResultList();
+        
+        boolean hasNext = rows.size() > size;
+        List<Offer> offers = hasNext ? new ArrayList<>(rows.subList(0, size)) : rows;
+        OfferCursor next = hasNext ? OfferCursor.of(sortBy, descending, offers.get(offers.size() - 1)) : null;
+        
+        Long total = null;
+        boolean totalExact = true;
+        if (withTotal) {
+            if (dateFrom == null && (hasPrice == null || !hasPrice)) {
+                MinerDetailOfferStats stats = offerStatsService.getStats(List.of(minerDetailId)).get(minerDetailId);
+                total = stats == null ? 0L
+                        : operationType == OperationType.SELL ? stats.getSellCount()
+                        : operationType == OperationType.BUY ? stats.getBuyCount()
+                        : stats.getOfferCount();
+            } else {
+                Query countQuery = entityManager.createNativeQuery(
+                        "SELECT COUNT(*) FROM (SELECT 1 FROM offers o "
+                                + "WHERE o.product_id IN (SELECT p.id FROM products p WHERE p.miner_detail_id = :minerDetailId)"
+                                + filters + " LIMIT :cap) t");
+                params.entrySet().stream()
+                        .filter(e -> !e.getKey().equals("limit") && !e.getKey().equals("offset")
+                                && !e.getKey().equals("perProductLimit") && !e.getKey().startsWith("after"))
+                        .forEach(e -> countQuery.setParameter(e.getKey(), e.getValue()));
+                countQuery.setParameter("cap", offerCountCap);
+                total = ((Number) countQuery.getSingleResult()).longValue();
+                totalExact = total < offerCountCap;
+            }
+        }
+        return new OfferSlice(offers, total, totalExact, next);
+    }
+    
+    /**
+     * Страница предложений по ключу
+     * @param content - предложения страницы в порядке сортировки
+     * @param totalElements - всего предложений с учетом фильтров (null - не запрашивалось)
+     * @param totalExact - false, если подсчет остановлен на границе offerCountCap (totalElements - нижняя оценка)
+     * @param next - курсор следующей страницы (null - страница последняя)
+     */
+    public record OfferSlice(List<Offer> content, Long totalElements, boolean totalExact, OfferCursor next) {}
+    
+    /**
+     * Позиция в списке предложений: колонка и направление сортировки, значение колонки и ID последней строки
+     * В API передается непрозрачной строкой (Base64 URL); курсор другой сортировки не применяется
+     */
+    public record OfferCursor(String column, boolean descending, String value, long id) {
+        
+        static OfferCursor of(String column, boolean descending, Offer offer) {
+            Object value = switch (column) {
+                case "created_at" -> offer.getCreatedAt();
+                case "operation_type" -> offer.getOperationType() != null ? offer.getOperationType().name() : null;
+                case "price" -> offer.getPrice() != null ? offer.getPrice().toPlainString() : null;
+                case "quantity" -> offer.getQuantity();
+                case "hashrate" -> offer.getHashrate();
+                case "condition" -> offer.getCondition();
+                case "location" -> offer.getLocation();
+                case "seller_name" -> offer.getSellerName();
+                case "seller_phone" -> offer.getSellerPhone();
+                default -> offer.getUpdatedAt();
+            };
+            return new OfferCursor(column, descending, value != null ? value.toString() : null, offer.getId());
         }
         
-        Query countQuery = entityManager.createNativeQuery(countSqlBuilder.toString());
-        countQuery.setParameter("productIds", productIds);
-        countQuery.setParameter("dateFrom", dateFrom);
-        countQuery.setParameter("operationType", operationTypeStr);
-        
-        long totalCount = ((Number) countQuery.getSingleResult()).longValue();
+        public String encode() {
+            String raw = column + "|" + (descending ? "D" : "A") + "|" + id + "|" + (value != null ? "v" + value : "n");
+            return java.util.Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(raw.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        }
         
-        // Принудительно инициализируем продавцов для избежания LazyInitializationException
-        offers.forEach(offer -> {
-            if (offer.getSeller() != null) {
-                offer.getSeller().getName();
+        /**
+         * @return Курсор или null, если строка пустая или некорректная
+         */
+        public static OfferCursor decode(String value) {
+            if (value == null || value.isBlank()) {
+                return null;
             }
-            if (offer.getProduct() != null) {
-                offer.getProduct().getModel();
+            try {
+                String raw = new String(java.util.Base64.getUrlDecoder().decode(value), java.nio.charset.StandardCharsets.UTF_8);
+                String[] parts = raw.split("\\|", 4);
+                if (parts.length != 4 || parts[3].isEmpty()) {
+                    return null;
+                }
+                return new OfferCursor(parts[0], "D".equals(parts[1]), parts[3].startsWith("v") ? parts[3].substring(1) : null,
+                        Long.parseLong(parts[2]));
+            } catch (RuntimeException e) {
+                return null;
             }
-        });
-        
-        // Создаем Page объект вручную
-        return new PageImpl<>(offers, pageable, totalCount);
+        }
     }
     
     /**
@@ -0,0 +1,168 @@
+package com.miners.shop.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш отрисованных публичных страниц (PublicPageCacheFilter): gzip-тело и заголовки ответа
+ *
+ * Ограничен суммарным размером тел и временем жизни записи. Страница помечается тегами данных,
+ * от которых зависит (tag() в контроллере): снимок каталога (TAG_CATALOG) или конкретный MinerDetail.
+ * При изменении данных записи с соответствующим тегом удаляются (evictTag), страницы без тегов живут до TTL.
+ */
+@Service
+@Slf4j
+public class PublicPageCache {
+
+    public static final String TAG_CATALOG = "catalog";
+    private static final String TAG_MINER_DETAIL_PREFIX = "md:";
+    private static final String TAGS_ATTRIBUTE = PublicPageCache.class.getName() + ".TAGS";
+
+    @Value("${app.page-cache.max-size-mb:64}")
+    private long maxSizeMb;
+
+    @Value("${app.page-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private Cache<String, CachedPage> pages;
+    private final Map<String, Set<String>> keysByTag = new ConcurrentHashMap<>();
+    /**
+     * Растет при каждой инвалидации: страница, отрисованная во время инвалидации, не сохраняется
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        pages = Caffeine.newBuilder()
+                .maximumWeight(maxSizeMb * 1024 * 1024)
+                .weigher((String key, CachedPage page) -> key.length() * 2 + page.gzipBody().length)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .removalListener((String key, CachedPage page, RemovalCause cause) -> {
+                    // Слушатель асинхронный: если ключ уже сохранен заново, его теги не трогаем
+                    if (key != null && page != null && cause != RemovalCause.REPLACED && !pages.asMap().containsKey(key)) {
+                        page.tags().forEach(tag -> keysByTag.computeIfPresent(tag, (t, keys) -> {
+                            keys.remove(key);
+                            return keys.isEmpty() ? null : keys;
+                        }));
+                    }
+                })
+                .build();
+        log.info("Кэш публичных страниц: до {} МБ, TTL {} с", maxSizeMb, ttlSeconds);
+    }
+
+    /**
+     * Отмечает, от каких данных зависит страница текущего запроса
+     */
+    @SuppressWarnings("unchecked")
+    public static void tag(HttpServletRequest request, String... tags) {
+        Set<String> current = (Set<String>) request.getAttribute(TAGS_ATTRIBUTE);
+        if (current == null) {
+            current = new LinkedHashSet<>();
+            request.setAttribute(TAGS_ATTRIBUTE, current);
+        }
+        current.addAll(Set.of(tags));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Set<String> tags(HttpServletRequest request) {
+        Set<String> current = (Set<String>) request.getAttribute(TAGS_ATTRIBUTE);
+        return current != null ? Set.copyOf(current) : Set.of();
+    }
+
+    public static String minerDetailTag(Long minerDetailId) {
+        return TAG_MINER_DETAIL_PREFIX + minerDetailId;
+    }
+
+    public CachedPage get(String key) {
+        CachedPage page = pages.getIfPresent(key);
+        (page != null ? hits : misses).incrementAndGet();
+        return page;
+    }
+
+    /**
+     * Номер инвалидации на момент начала отрисовки (передается в put)
+     */
+    public long generation() {
+        return invalidations.get();
+    }
+
+    /**
+     * Сохраняет страницу, если с начала ее отрисовки не было инвалидаций
+     */
+    public void put(String key, CachedPage page, long generation) {
+        if (invalidations.get() != generation) {
+            return;
+        }
+        page.tags().forEach(tag -> keysByTag.computeIfAbsent(tag, t -> ConcurrentHashMap.newKeySet()).add(key));
+        pages.put(key, page);
+        // Инвалидация могла пройти между проверкой и индексацией тегов
+        if (invalidations.get() != generation) {
+            pages.invalidate(key);
+            return;
+        }
+        stores.incrementAndGet();
+    }
+
+    public void evictTag(String tag) {
+        invalidations.incrementAndGet();
+        Set<String> keys = keysByTag.remove(tag);
+        if (keys != null && !keys.isEmpty()) {
+            pages.invalidateAll(keys);
+            evictions.addAndGet(keys.size());
+            log.debug("Кэш страниц: удалено {} записей по тегу {}", keys.size(), tag);
+        }
+    }
+
+    public void evictMinerDetails(Collection<Long> minerDetailIds) {
+        minerDetailIds.forEach(id -> evictTag(minerDetailTag(id)));
+    }
+
+    public void evictAll() {
+        invalidations.incrementAndGet();
+        evictions.addAndGet(pages.estimatedSize());
+        pages.invalidateAll();
+        keysByTag.clear();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("entries", pages.estimatedSize());
+        result.put("sizeBytes", pages.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L));
+        result.put("maxSizeMb", maxSizeMb);
+        result.put("ttlSeconds", ttlSeconds);
+        result.put("hits", hits.get());
+        result.put("misses", misses.get());
+        result.put("stores", stores.get());
+        result.put("evictions", evictions.get());
+        return result;
+    }
+
+    /**
+     * Сохраненный ответ
+     * @param gzipBody - тело, сжатое gzip
+     * @param headers - заголовки ответа для повтора (Content-Type, ETag, Last-Modified, Cache-Control...)
+     * @param tags - теги данных для инвалидации
+     */
+    public record CachedPage(byte[] gzipBody, Map<String, String> headers, Set<String> tags) {
+    }
+}
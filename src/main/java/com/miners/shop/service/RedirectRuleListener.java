@@ -0,0 +1,46 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.Redirect;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JPA-слушатель Redirect: пересобирает таблицу редиректов (RedirectRuleService) после коммита изменения
+ * Несколько изменений в одной транзакции дают одну пересборку
+ */
+@Component
+@RequiredArgsConstructor
+public class RedirectRuleListener {
+
+    private static final Object RELOAD_KEY = RedirectRuleListener.class.getName() + ".RELOAD";
+
+    private final RedirectRuleService redirectRuleService;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    void onChange(Redirect redirect) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            redirectRuleService.reload();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(RELOAD_KEY)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(RELOAD_KEY, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(RELOAD_KEY);
+                if (status == STATUS_COMMITTED) {
+                    redirectRuleService.reload();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,141 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.Redirect;
+import com.miners.shop.repository.RedirectRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Редиректы из таблицы в памяти (RedirectTable) вместо запроса к БД на каждую страницу
+ *
+ * Таблица загружается при старте и пересобирается целиком после коммита любого изменения редиректов
+ * (RedirectRuleListener); запросы до окончания пересборки обслуживает прежняя таблица.
+ * PublicPageCacheFilter отдает сохраненные страницы до RedirectInterceptor, поэтому после пересборки
+ * кэш страниц очищается целиком: новое правило может перенаправлять любую из сохраненных страниц.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RedirectRuleService {
+
+    private final RedirectRepository redirectRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final PublicPageCache publicPageCache;
+
+    /**
+     * Пересборка вызывается и после коммита, поэтому читает в собственной транзакции
+     */
+    private TransactionTemplate readTransaction;
+
+    @Value("${app.redirects.load-retry-interval-ms:30000}")
+    private long loadRetryIntervalMs;
+
+    private volatile RedirectTable table;
+    /**
+     * Время последней неудачной загрузки: до истечения паузы запросы не обращаются к БД повторно
+     */
+    private volatile long lastFailedLoadAt;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong failedLoads = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        readTransaction.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        ensureLoaded();
+    }
+
+    /**
+     * Полная пересборка таблицы из БД
+     */
+    public synchronized void reload() {
+        long started = System.currentTimeMillis();
+        List<Redirect> redirects = readTransaction.execute(status -> redirectRepository.findByActiveTrueOrderByIdAsc());
+        RedirectTable loaded = new RedirectTable(redirects != null ? redirects : List.of());
+        RedirectTable previous = table;
+        table = loaded;
+        reloads.incrementAndGet();
+        if (previous != null) {
+            // После замены таблицы: страница, отрисованная по прежним правилам, уже не попадет в кэш
+            publicPageCache.evictAll();
+        }
+        log.info("✅ Таблица редиректов загружена: правил={} ({} мс)", loaded.size(), System.currentTimeMillis() - started);
+    }
+
+    /**
+     * @param path - путь запроса
+     * @param query - строка запроса без "?" (null - нет)
+     * @return Редирект или null
+     */
+    public RedirectTable.Match find(String path, String query) {
+        RedirectTable.Match match = ensureLoaded().find(path, query);
+        (match != null ? hits : misses).incrementAndGet();
+        return match;
+    }
+
+    /**
+     * Проверка правила до сохранения (корректность выражения PATTERN)
+     */
+    public String validate(Redirect redirect) {
+        return RedirectTable.validate(redirect.getMatchType(), redirect.getFromUrl());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("rules", ensureLoaded().size());
+        result.put("hits", hits.get());
+        result.put("misses", misses.get());
+        result.put("reloads", reloads.get());
+        result.put("failedLoads", failedLoads.get());
+        return result;
+    }
+
+    private RedirectTable ensureLoaded() {
+        RedirectTable current = table;
+        if (current == null) {
+            if (System.currentTimeMillis() - lastFailedLoadAt < loadRetryIntervalMs) {
+                return RedirectTable.empty();
+            }
+            synchronized (this) {
+                if (table == null) {
+                    if (System.currentTimeMillis() - lastFailedLoadAt < loadRetryIntervalMs) {
+                        return RedirectTable.empty();
+                    }
+                    try {
+                        reload();
+                    } catch (RuntimeException e) {
+                        // Без БД страницы отдаются без редиректов; следующая попытка - через load-retry-interval-ms
+                        lastFailedLoadAt = System.currentTimeMillis();
+                        failedLoads.incrementAndGet();
+                        log.error("Не удалось загрузить таблицу редиректов, повтор через {} мс: {}",
+                                loadRetryIntervalMs, e.getMessage(), e);
+                        return RedirectTable.empty();
+                    }
+                }
+                current = table;
+            }
+        }
+        return current;
+    }
+}
@@ -0,0 +1,277 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.Redirect;
+import com.miners.shop.entity.RedirectMatchType;
+import com.miners.shop.entity.RedirectQueryMode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Неизменяемая таблица активных редиректов (RedirectRuleService)
+ *
+ * Правила разложены по структурам, в которых поиск не перебирает их по одному:
+ * - EXACT - хэш-таблицы (полный URL для MATCH, только путь для IGNORE/KEEP);
+ * - PREFIX - префиксное дерево, выбирается самый длинный префикс;
+ * - PATTERN - все выражения собраны в одно с альтернативами (?<r0>...)|(?<r1>...), сработавшая альтернатива
+ *   определяет правило. Выражения с обратными ссылками (\1) проверяются отдельно: при склейке номера групп сдвигаются.
+ *   Если выражения не склеиваются, все выражения субъекта проверяются по одному.
+ * Порядок проверки: точное по полному URL, точное по пути, самый длинный префикс, первое выражение (по ID).
+ * Субъект сопоставления - полный URL (путь?запрос) для режима MATCH и только путь для IGNORE/KEEP.
+ */
+@Slf4j
+public final class RedirectTable {
+
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]|\\\\k<");
+    private static final String GROUP_PREFIX = "redirectRule";
+
+    private final Map<String, Rule> exactFull = new HashMap<>();
+    private final Map<String, Rule> exactPath = new HashMap<>();
+    private final PrefixNode prefixFull = new PrefixNode();
+    private final PrefixNode prefixPath = new PrefixNode();
+    private final PatternGroup patternsFull;
+    private final PatternGroup patternsPath;
+    private final int size;
+
+    public RedirectTable(List<Redirect> redirects) {
+        List<Rule> fullPatterns = new ArrayList<>();
+        List<Rule> pathPatterns = new ArrayList<>();
+        int count = 0;
+        for (Redirect redirect : redirects) {
+            Rule rule;
+            try {
+                rule = Rule.of(redirect);
+            } catch (PatternSyntaxException e) {
+                log.warn("Редирект ID={} пропущен: некорректное выражение {}: {}", redirect.getId(), redirect.getFromUrl(), e.getDescription());
+                continue;
+            }
+            boolean full = rule.queryMode() == RedirectQueryMode.MATCH;
+            switch (rule.matchType()) {
+                case PREFIX -> (full ? prefixFull : prefixPath).put(rule.fromUrl(), rule);
+                case PATTERN -> (full ? fullPatterns : pathPatterns).add(rule);
+                default -> (full ? exactFull : exactPath).putIfAbsent(rule.fromUrl(), rule);
+            }
+            count++;
+        }
+        this.patternsFull = new PatternGroup(fullPatterns);
+        this.patternsPath = new PatternGroup(pathPatterns);
+        this.size = count;
+    }
+
+    public static RedirectTable empty() {
+        return new RedirectTable(List.of());
+    }
+
+    /**
+     * Проверяет fromUrl правила до сохранения
+     * @return Текст ошибки или null
+     */
+    public static String validate(RedirectMatchType matchType, String fromUrl) {
+        if (matchType != RedirectMatchType.PATTERN) {
+            return null;
+        }
+        try {
+            Pattern.compile(fromUrl);
+            return null;
+        } catch (PatternSyntaxException e) {
+            return "Некорректное регулярное выражение: " + e.getDescription();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Ищет редирект для запроса
+     * @param path - путь (request.getRequestURI())
+     * @param query - строка запроса без "?" (null - нет)
+     * @return Совпадение или null
+     */
+    public Match find(String path, String query) {
+        if (size == 0 || path == null) {
+            return null;
+        }
+        String fullUrl = query != null && !query.isEmpty() ? path + "?" + query : path;
+        Rule rule = exactFull.get(fullUrl);
+        if (rule != null) {
+            return match(rule, rule.toUrl(), query);
+        }
+        rule = exactPath.get(path);
+        if (rule != null) {
+            return match(rule, rule.toUrl(), query);
+        }
+        Match prefix = findPrefix(prefixFull, fullUrl, query);
+        if (prefix == null) {
+            prefix = findPrefix(prefixPath, path, query);
+        }
+        if (prefix != null) {
+            return prefix;
+        }
+        Match pattern = patternsFull.find(fullUrl, query);
+        return pattern != null ? pattern : patternsPath.find(path, query);
+    }
+
+    private Match findPrefix(PrefixNode root, String subject, String query) {
+        PrefixNode.Found found = root.longest(subject);
+        if (found == null) {
+            return null;
+        }
+        return match(found.rule(), found.rule().toUrl() + subject.substring(found.length()), query);
+    }
+
+    /**
+     * Итоговый адрес: в режиме KEEP к нему добавляется строка запроса
+     */
+    private static Match match(Rule rule, String target, String query) {
+        if (rule.queryMode() == RedirectQueryMode.KEEP && query != null && !query.isEmpty()) {
+            target = target + (target.contains("?") ? "&" : "?") + query;
+        }
+        return new Match(rule.id(), target, rule.statusCode());
+    }
+
+    /**
+     * Найденный редирект
+     * @param redirectId - ID правила
+     * @param location - адрес для заголовка Location
+     * @param statusCode - 301 или 302
+     */
+    public record Match(Long redirectId, String location, int statusCode) {
+    }
+
+    private record Rule(Long id, String fromUrl, String toUrl, int statusCode,
+                        RedirectMatchType matchType, RedirectQueryMode queryMode, Pattern pattern) {
+
+        static Rule of(Redirect redirect) {
+            RedirectMatchType matchType = redirect.getMatchType() != null ? redirect.getMatchType() : RedirectMatchType.EXACT;
+            RedirectQueryMode queryMode = redirect.getQueryMode() != null ? redirect.getQueryMode() : RedirectQueryMode.MATCH;
+            // Как и прежде в RedirectInterceptor: постоянный редирект только для явного 301
+            int statusCode = Integer.valueOf(301).equals(redirect.getRedirectType()) ? 301 : 302;
+            Pattern pattern = matchType == RedirectMatchType.PATTERN ? Pattern.compile(redirect.getFromUrl()) : null;
+            return new Rule(redirect.getId(), redirect.getFromUrl(), redirect.getToUrl(), statusCode, matchType, queryMode, pattern);
+        }
+    }
+
+    /**
+     * Префиксное дерево по символам fromUrl
+     */
+    private static final class PrefixNode {
+        private final Map<Character, PrefixNode> children = new HashMap<>();
+        private Rule rule;
+
+        void put(String prefix, Rule value) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new PrefixNode());
+            }
+            if (node.rule == null) {
+                node.rule = value;
+            }
+        }
+
+        Found longest(String subject) {
+            PrefixNode node = this;
+            Found found = null;
+            for (int i = 0; i < subject.length(); i++) {
+                node = node.children.get(subject.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                if (node.rule != null) {
+                    found = new Found(node.rule, i + 1);
+                }
+            }
+            return found;
+        }
+
+        record Found(Rule rule, int length) {
+        }
+    }
+
+    /**
+     * Выражения одного субъекта (полный URL или путь), склеенные в одно
+     */
+    private static final class PatternGroup {
+        private final List<Rule> combinedRules = new ArrayList<>();
+        private final List<Rule> separateRules = new ArrayList<>();
+        private final Pattern combined;
+
+        PatternGroup(List<Rule> rules) {
+            StringBuilder alternatives = new StringBuilder();
+            for (Rule rule : rules) {
+                if (BACK_REFERENCE.matcher(rule.fromUrl()).find()) {
+                    separateRules.add(rule);
+                    continue;
+                }
+                if (!alternatives.isEmpty()) {
+                    alternatives.append('|');
+                }
+                alternatives.append("(?<").append(GROUP_PREFIX).append(combinedRules.size()).append('>')
+                        .append(rule.fromUrl()).append(')');
+                combinedRules.add(rule);
+            }
+            this.combined = combinedRules.isEmpty() ? null : compileCombined(alternatives.toString(), rules);
+        }
+
+        /**
+         * Выражения, корректные по отдельности, могут не склеиться (например, одинаковые именованные группы
+         * в разных правилах) - тогда все правила группы проверяются по одному в порядке ID
+         */
+        private Pattern compileCombined(String alternatives, List<Rule> rules) {
+            try {
+                return Pattern.compile(alternatives);
+            } catch (PatternSyntaxException e) {
+                log.warn("Выражения редиректов не удалось объединить, правил={} проверяются по одному: {}",
+                        rules.size(), e.getDescription());
+                combinedRules.clear();
+                separateRules.clear();
+                separateRules.addAll(rules);
+                return null;
+            }
+        }
+
+        Match find(String subject, String query) {
+            if (combined != null) {
+                Matcher matcher = combined.matcher(subject);
+                if (matcher.matches()) {
+                    for (int i = 0; i < combinedRules.size(); i++) {
+                        if (matcher.start(GROUP_PREFIX + i) >= 0) {
+                            Match match = expand(combinedRules.get(i), subject, query);
+                            if (match != null) {
+                                return match;
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+            for (Rule rule : separateRules) {
+                if (rule.pattern().matcher(subject).matches()) {
+                    Match match = expand(rule, subject, query);
+                    if (match != null) {
+                        return match;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Подстановка групп ($1...) собственным выражением правила
+         */
+        private static Match expand(Rule rule, String subject, String query) {
+            try {
+                return match(rule, rule.pattern().matcher(subject).replaceFirst(rule.toUrl()), query);
+            } catch (RuntimeException e) {
+                log.warn("Редирект ID={}: не удалось подставить группы в {}: {}", rule.id(), rule.toUrl(), e.getMessage());
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.Seller;
+import com.miners.shop.util.TransactionUtil;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA-слушатель Seller: сбрасывает запись SellerIdentityCache при любом изменении или удалении продавца
+ * (updateSellerContactInfo, правка администратором, пакетное обновление имен)
+ * Запись сбрасывается после коммита: до него параллельный запрос прочитал бы из БД прежние данные и вернул их в кэш
+ */
+@Component
+@RequiredArgsConstructor
+public class SellerCacheInvalidationListener {
+
+    private final SellerIdentityCache sellerIdentityCache;
+
+    @PostUpdate
+    @PostRemove
+    void onChange(Seller seller) {
+        String phone = seller.getPhone();
+        Long id = seller.getId();
+        TransactionUtil.afterCommit(() -> {
+            sellerIdentityCache.evict(phone);
+            // Телефон мог измениться - сбрасываем и запись под старым телефоном
+            sellerIdentityCache.evictById(id);
+        });
+    }
+}
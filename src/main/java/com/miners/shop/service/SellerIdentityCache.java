@@ -0,0 +1,116 @@
+package com.miners.shop.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.miners.shop.entity.Seller;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Кэш идентичности продавцов: телефон -> (ID, имя, WhatsApp ID)
+ * Ограничен по размеру и времени жизни; плюс набор блокировок по телефону (lock striping),
+ * чтобы параллельные воркеры webhook не создавали одного и того же продавца дважды.
+ * Записи инвалидируются при любом изменении/удалении продавца (SellerCacheInvalidationListener).
+ */
+@Component
+@Slf4j
+public class SellerIdentityCache {
+
+    @Value("${app.sellers.cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${app.sellers.cache.ttl-minutes:360}")
+    private long ttlMinutes;
+
+    @Value("${app.sellers.cache.lock-stripes:64}")
+    private int lockStripes;
+
+    private Cache<String, SellerRef> cache;
+    private ReentrantLock[] locks;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        locks = new ReentrantLock[Math.max(1, lockStripes)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        log.info("✅ Кэш продавцов: максимум {} записей, TTL {} мин, блокировок {}", maxSize, ttlMinutes, locks.length);
+    }
+
+    /**
+     * Находит продавца в кэше (учитывается в статистике попаданий/промахов)
+     */
+    public SellerRef get(String phone) {
+        return cache.getIfPresent(phone);
+    }
+
+    /**
+     * Повторная проверка под блокировкой (не учитывается в статистике)
+     */
+    public SellerRef peek(String phone) {
+        return cache.asMap().get(phone);
+    }
+
+    public void put(SellerRef seller) {
+        if (seller != null && seller.id() != null && seller.phone() != null) {
+            cache.put(seller.phone(), seller);
+        }
+    }
+
+    public void evict(String phone) {
+        if (phone != null) {
+            cache.invalidate(phone);
+        }
+    }
+
+    public void evictById(Long sellerId) {
+        if (sellerId != null) {
+            cache.asMap().values().removeIf(ref -> sellerId.equals(ref.id()));
+        }
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Блокировка для телефона: один и тот же телефон всегда попадает в одну и ту же блокировку
+     */
+    public ReentrantLock lockFor(String phone) {
+        return locks[Math.floorMod(phone.hashCode(), locks.length)];
+    }
+
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("maxSize", maxSize);
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+
+    /**
+     * Неизменяемый снимок продавца для горячего пути приема сообщений
+     */
+    public record SellerRef(Long id, String phone, String name, String whatsappId) {
+        static SellerRef of(Seller seller) {
+            return new SellerRef(seller.getId(), seller.getPhone(), seller.getName(), seller.getWhatsappId());
+        }
+    }
+}
@@ -2,6 +2,11 @@ package com.miners.shop.service;
 
 import com.miners.shop.entity.Seller;
 import com.miners.shop.repository.SellerRepository;
+import com.miners.shop.service.SellerIdentityCache.SellerRef;
+import com.miners.shop.util.TransactionUtil;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -9,8 +14,12 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Сервис для работы с продавцами
@@ -21,6 +30,101 @@ import java.util.Optional;
 public class SellerService {
     
     private final SellerRepository sellerRepository;
+    private final SellerIdentityCache sellerIdentityCache;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    /**
+     * Находит или создает продавца через кэш идентичности (горячий путь приема сообщений)
+     * Если в кэше есть продавец и имя/WhatsApp ID не требуют обновления - обращения к БД нет.
+     * Иначе продавец читается или записывается upsert-ом (ON CONFLICT по телефону) в транзакции вызывающего кода:
+     * отдельная транзакция заняла бы второе соединение пула на каждое сообщение. Параллельная вставка того же
+     * телефона ждет коммита первой и не создает дубликат; блокировка по телефону лишь не дает воркерам
+     * этого экземпляра выполнять одну и ту же запись одновременно. Кэш пополняется только после коммита.
+     * @return Снимок продавца или null, если телефон не указан
+     */
+    @Transactional
+    public SellerRef resolveSeller(String phone, String name, String whatsappId) {
+        if (phone == null || phone.isEmpty()) {
+            log.warn("Телефон продавца не указан, невозможно создать/найти продавца");
+            return null;
+        }
+        String validName = validateSellerName(name);
+        
+        SellerRef cached = sellerIdentityCache.get(phone);
+        if (cached != null && !needsUpdate(cached, validName, whatsappId)) {
+            return cached;
+        }
+        
+        ReentrantLock lock = sellerIdentityCache.lockFor(phone);
+        lock.lock();
+        try {
+            cached = sellerIdentityCache.peek(phone);
+            if (cached != null && !needsUpdate(cached, validName, whatsappId)) {
+                return cached;
+            }
+            SellerRef seller = sellerRepository.findByPhone(phone)
+                    .map(SellerRef::of)
+                    .filter(existing -> !needsUpdate(existing, validName, whatsappId))
+                    .orElseGet(() -> upsertSeller(phone, validName, whatsappId));
+            TransactionUtil.afterCommit(() -> sellerIdentityCache.put(seller));
+            return seller;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Вставляет продавца или обновляет имя и WhatsApp ID существующего (правила applySellerUpdates)
+     */
+    private SellerRef upsertSeller(String phone, String validName, String whatsappId) {
+        Query query = entityManager.createNativeQuery(UPSERT_SELLER_SQL);
+        query.setParameter("phone", phone);
+        query.setParameter("name", validName);
+        query.setParameter("whatsappId", whatsappId);
+        Object[] row = (Object[]) query.getSingleResult();
+        SellerRef seller = new SellerRef(((Number) row[0]).longValue(), phone, (String) row[1], (String) row[2]);
+        log.info("✅ Продавец {}: ID={}, phone={}, name={}", Boolean.TRUE.equals(row[3]) ? "создан" : "обновлен",
+                seller.id(), phone, seller.name());
+        return seller;
+    }
+    
+    /**
+     * Upsert продавца по телефону. Имя перезаписывается, если пришло известное имя;
+     * WhatsApp ID заполняется, только если не был установлен. (xmax = 0) - строка вставлена, а не обновлена.
+     */
+    private static final String UPSERT_SELLER_SQL = """
+            INSERT INTO sellers (id, phone, name, whatsapp_id, deals_count, created_at, updated_at)
+            VALUES (nextval('sellers_seq'), :phone, :name, CAST(:whatsappId AS varchar), 0, now(), now())
+            ON CONFLICT (phone) DO UPDATE SET
+                name = CASE WHEN EXCLUDED.name <> 'Неизвестный продавец' THEN EXCLUDED.name ELSE sellers.name END,
+                whatsapp_id = COALESCE(NULLIF(sellers.whatsapp_id, ''), EXCLUDED.whatsapp_id),
+                updated_at = now()
+            RETURNING id, name, whatsapp_id, (xmax = 0) AS inserted
+            """;
+    
+    /**
+     * Нужно ли обновлять продавца в БД (те же правила, что и в applySellerUpdates)
+     */
+    private boolean needsUpdate(SellerRef cached, String validName, String whatsappId) {
+        boolean nameChanged = validName != null && !validName.isEmpty() && !validName.equals("Неизвестный продавец")
+                && !validName.equals(cached.name());
+        boolean whatsappIdMissing = whatsappId != null && !whatsappId.isEmpty()
+                && (cached.whatsappId() == null || cached.whatsappId().isEmpty());
+        return nameChanged || whatsappIdMissing;
+    }
+    
+    /**
+     * Статистика кэша продавцов (попадания/промахи)
+     */
+    public Map<String, Object> getCacheStats() {
+        return sellerIdentityCache.getStats();
+    }
+    
+    public void clearCache() {
+        sellerIdentityCache.evictAll();
+    }
     
     /**
      * Находит или создает продавца по телефону и имени
@@ -37,13 +141,7 @@ public class SellerService {
         }
         
         // ВАЛИДАЦИЯ: Проверяем, что name не является WhatsApp ID
-        String validName = name;
-        if (name != null && name.length() > 15 && name.matches("^[0-9]+$")) {
-            log.warn("⚠️  Имя продавца похоже на WhatsApp ID ({}), устанавливаем 'Неизвестный продавец'", name);
-            validName = "Неизвестный продавец";
-        } else if (name == null || name.isEmpty() || name.trim().isEmpty()) {
-            validName = "Неизвестный продавец";
-        }
+        String validName = validateSellerName(name);
         
         log.info("🔍 Поиск/создание продавца: phone={}, name={}, whatsappId={}", phone, validName, whatsappId);
         
@@ -52,22 +150,7 @@ public class SellerService {
         
         if (existingSeller.isPresent()) {
             Seller seller = existingSeller.get();
-            
-            // Обновляем имя, если оно изменилось или было пустым
-            // НО: не обновляем, если новое имя - это WhatsApp ID
-            if (validName != null && !validName.isEmpty() && !validName.equals("Неизвестный продавец") &&
-                (seller.getName() == null || seller.getName().isEmpty() || 
-                 seller.getName().equals("Неизвестный продавец") || !seller.getName().equals(validName))) {
-                log.info("📝 Обновление имени продавца {}: '{}' -> '{}'", phone, seller.getName(), validName);
-                seller.setName(validName);
-            }
-            
-            // Обновляем WhatsApp ID, если он не был установлен
-            if (whatsappId != null && !whatsappId.isEmpty() && 
-                (seller.getWhatsappId() == null || seller.getWhatsappId().isEmpty())) {
-                seller.setWhatsappId(whatsappId);
-            }
-            
+            applySellerUpdates(seller, validName, whatsappId);
             sellerRepository.save(seller);
             log.info("✅ Найден существующий продавец: ID={}, phone={}, name={}", seller.getId(), phone, seller.getName());
             return seller;
@@ -84,6 +167,84 @@ public class SellerService {
         }
     }
     
+    /**
+     * Находит или создает продавцов для пачки сообщений
+     * Существующие продавцы загружаются одним запросом (IN по телефонам), новые сохраняются через saveAll
+     * Правила обновления имени те же, что и в findOrCreateSeller
+     * @param namesByPhone - Имя продавца по нормализованному телефону
+     * @return Продавцы по телефону
+     */
+    @Transactional
+    public Map<String, Seller> findOrCreateSellers(Map<String, String> namesByPhone) {
+        Map<String, Seller> sellersByPhone = new HashMap<>();
+        if (namesByPhone == null || namesByPhone.isEmpty()) {
+            return sellersByPhone;
+        }
+        
+        for (Seller seller : sellerRepository.findByPhoneIn(namesByPhone.keySet())) {
+            sellersByPhone.put(seller.getPhone(), seller);
+        }
+        
+        List<Seller> toSave = new ArrayList<>(namesByPhone.size());
+        int created = 0;
+        for (Map.Entry<String, String> entry : namesByPhone.entrySet()) {
+            String phone = entry.getKey();
+            if (phone == null || phone.isEmpty()) {
+                continue;
+            }
+            String validName = validateSellerName(entry.getValue());
+            Seller seller = sellersByPhone.get(phone);
+            if (seller != null) {
+                applySellerUpdates(seller, validName, null);
+            } else {
+                seller = new Seller();
+                seller.setPhone(phone);
+                seller.setName(validName);
+                sellersByPhone.put(phone, seller);
+                created++;
+            }
+            toSave.add(seller);
+        }
+        
+        sellerRepository.saveAll(toSave);
+        log.info("✅ Продавцы для пачки: найдено {}, создано {}", toSave.size() - created, created);
+        return sellersByPhone;
+    }
+    
+    /**
+     * Приводит имя продавца к допустимому значению
+     * WhatsApp ID (длинная числовая строка) и пустое имя заменяются на 'Неизвестный продавец'
+     */
+    private String validateSellerName(String name) {
+        if (name != null && name.length() > 15 && name.matches("^[0-9]+$")) {
+            log.warn("⚠️  Имя продавца похоже на WhatsApp ID ({}), устанавливаем 'Неизвестный продавец'", name);
+            return "Неизвестный продавец";
+        } else if (name == null || name.isEmpty() || name.trim().isEmpty()) {
+            return "Неизвестный продавец";
+        }
+        return name;
+    }
+    
+    /**
+     * Обновляет имя и WhatsApp ID существующего продавца
+     */
+    private void applySellerUpdates(Seller seller, String validName, String whatsappId) {
+        // Обновляем имя, если оно изменилось или было пустым
+        // НО: не обновляем, если новое имя - это WhatsApp ID
+        if (validName != null && !validName.isEmpty() && !validName.equals("Неизвестный продавец") &&
+            (seller.getName() == null || seller.getName().isEmpty() || 
+             seller.getName().equals("Неизвестный продавец") || !seller.getName().equals(validName))) {
+            log.info("📝 Обновление имени продавца {}: '{}' -> '{}'", seller.getPhone(), seller.getName(), validName);
+            seller.setName(validName);
+        }
+        
+        // Обновляем WhatsApp ID, если он не был установлен
+        if (whatsappId != null && !whatsappId.isEmpty() && 
+            (seller.getWhatsappId() == null || seller.getWhatsappId().isEmpty())) {
+            seller.setWhatsappId(whatsappId);
+        }
+    }
+    
     /**
      * Получает продавца по ID
      */
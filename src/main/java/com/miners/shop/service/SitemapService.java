@@ -0,0 +1,400 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.MinerDetail;
+import com.miners.shop.repository.MinerDetailRepository;
+import com.miners.shop.util.SlugUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Файлы sitemap, сгенерированные заранее (/sitemap.xml и части /sitemap-N.xml)
+ *
+ * /sitemap.xml - индекс (sitemapindex), товары разбиты на части не более max-urls-per-file адресов
+ * (лимит протокола - 50 000 адресов и 50 МБ на файл). Генерация идет в фоне: после изменения каталога
+ * (новая версия CatalogSnapshot), но не чаще min-interval-ms. Строки читаются из БД потоком и сразу пишутся
+ * в файл; рядом кладется сжатая копия .xml.gz. Файлы пишутся во временные и подменяются переименованием,
+ * поэтому запрос всегда получает целый файл. lastmod товара - позднее из изменения MinerDetail и его предложений.
+ * Перед генерацией активным MinerDetail без slug назначается slug (уникальность - по MinerDetailSlugIndex).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SitemapService {
+
+    public static final String INDEX_FILE = "sitemap.xml";
+
+    private static final Pattern FILE_NAME = Pattern.compile("sitemap(-\\d+)?\\.xml");
+    private static final String URLSET_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n";
+    private static final String URLSET_END = "</urlset>\n";
+    private static final int MAX_FILE_BYTES = 45 * 1024 * 1024;
+    private static final int SLUG_BATCH_SIZE = 200;
+
+    private final MinerDetailRepository minerDetailRepository;
+    private final MinerDetailSlugIndex minerDetailSlugIndex;
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.seo.base-url:https://minerhive.ru}")
+    private String baseUrl;
+
+    @Value("${app.seo.sitemap.dir:sitemap}")
+    private String sitemapDir;
+
+    @Value("${app.seo.sitemap.max-urls-per-file:50000}")
+    private int maxUrlsPerFile;
+
+    @Value("${app.seo.sitemap.min-interval-ms:600000}")
+    private long minIntervalMs;
+
+    private TransactionTemplate readTransaction;
+    private TransactionTemplate writeTransaction;
+
+    /**
+     * Версия снимка каталога, по которой сгенерированы файлы (-1 - еще не генерировались)
+     */
+    private volatile long generatedVersion = -1;
+    private volatile long lastGeneratedAt;
+    private volatile long lastGenerationMs;
+    private volatile int lastUrlCount;
+    private volatile int lastFileCount;
+
+    private final AtomicLong generations = new AtomicLong();
+    private final AtomicLong failedGenerations = new AtomicLong();
+    private final AtomicLong assignedSlugs = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+        writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * После перезапуска до новой генерации отдаются файлы, оставшиеся на диске; если их нет - генерация сразу
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (getFile(INDEX_FILE) == null) {
+            Thread.ofVirtual().name("sitemap-generate").start(this::generateIfChanged);
+        }
+    }
+
+    /**
+     * Генерация, если каталог изменился с прошлой генерации и прошло не меньше min-interval-ms
+     */
+    @Scheduled(fixedDelayString = "${app.seo.sitemap.check-interval-ms:60000}",
+            initialDelayString = "${app.seo.sitemap.check-interval-ms:60000}")
+    public void generateIfChanged() {
+        long version = catalogSnapshotService.get().getVersion();
+        if (version == generatedVersion || System.currentTimeMillis() - lastGeneratedAt < minIntervalMs) {
+            return;
+        }
+        try {
+            generate();
+        } catch (RuntimeException e) {
+            log.error("❌ Ошибка генерации sitemap: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Полная генерация: slug для новых товаров, части с товарами, индекс
+     */
+    public synchronized void generate() {
+        long started = System.currentTimeMillis();
+        long version = catalogSnapshotService.get().getVersion();
+        try {
+            assignMissingSlugs();
+            Path dir = getDirectory();
+            Files.createDirectories(dir);
+            deleteTempFiles(dir);
+            List<Path> parts = readTransaction.execute(status -> writeParts(dir));
+            writeIndex(dir, parts.size());
+            deleteStaleParts(dir, parts.size());
+
+            generatedVersion = version;
+            lastGeneratedAt = System.currentTimeMillis();
+            lastGenerationMs = lastGeneratedAt - started;
+            lastFileCount = parts.size();
+            generations.incrementAndGet();
+            log.info("🗺️ Sitemap сгенерирован: {} адресов, {} частей ({} мс)", lastUrlCount, parts.size(), lastGenerationMs);
+        } catch (IOException e) {
+            failedGenerations.incrementAndGet();
+            throw new UncheckedIOException("Не удалось записать sitemap: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            failedGenerations.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Файл sitemap по имени из запроса (sitemap.xml, sitemap-N.xml, с .gz - сжатая копия)
+     * @return Путь к существующему файлу или null
+     */
+    public Path getFile(String name) {
+        String plain = name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+        if (!FILE_NAME.matcher(plain).matches()) {
+            return null;
+        }
+        Path file = getDirectory().resolve(name);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("directory", getDirectory().toString());
+        result.put("catalogVersion", generatedVersion);
+        result.put("lastGeneratedAt", lastGeneratedAt > 0 ? Instant.ofEpochMilli(lastGeneratedAt) : null);
+        result.put("lastGenerationMs", lastGenerationMs);
+        result.put("urls", lastUrlCount);
+        result.put("files", lastFileCount);
+        result.put("generations", generations.get());
+        result.put("failedGenerations", failedGenerations.get());
+        result.put("assignedSlugs", assignedSlugs.get());
+        result.put("minIntervalMs", minIntervalMs);
+        return result;
+    }
+
+    /**
+     * Назначает slug активным MinerDetail без него; индекс slug обновляется после коммита (MinerDetailSlugIndexListener)
+     */
+    private void assignMissingSlugs() {
+        List<MinerDetail> withoutSlug = readTransaction.execute(status -> minerDetailRepository.findActiveWithoutSlug());
+        if (withoutSlug == null || withoutSlug.isEmpty()) {
+            return;
+        }
+        Set<String> assigned = new HashSet<>();
+        List<MinerDetail> changed = new ArrayList<>();
+        for (MinerDetail minerDetail : withoutSlug) {
+            if (minerDetail.getStandardName() == null || minerDetail.getStandardName().isEmpty()) {
+                continue;
+            }
+            String base = SlugUtil.generateSlug(minerDetail.getStandardName());
+            if (base == null || base.isEmpty()) {
+                continue;
+            }
+            String slug = base;
+            int counter = 1;
+            while (minerDetailSlugIndex.isTaken(slug) || assigned.contains(slug)) {
+                slug = base + "-" + counter++;
+            }
+            assigned.add(slug);
+            minerDetail.setSlug(slug);
+            changed.add(minerDetail);
+        }
+        for (int from = 0; from < changed.size(); from += SLUG_BATCH_SIZE) {
+            List<MinerDetail> batch = changed.subList(from, Math.min(from + SLUG_BATCH_SIZE, changed.size()));
+            writeTransaction.executeWithoutResult(status -> minerDetailRepository.saveAll(batch));
+        }
+        assignedSlugs.addAndGet(changed.size());
+        log.info("Назначен slug для {} товаров", changed.size());
+    }
+
+    /**
+     * Части с адресами: главная и каталог, затем товары в порядке ID (потоком из БД)
+     */
+    private List<Path> writeParts(Path dir) {
+        List<Path> parts = new ArrayList<>();
+        String today = LocalDate.now().toString();
+        int urls = 0;
+        try (Stream<Object[]> rows = minerDetailRepository.streamSitemapRows()) {
+            PartWriter part = new PartWriter(dir, 1);
+            part.add(baseUrl + "/", today, "daily", "1.0");
+            part.add(baseUrl + "/products", today, "daily", "0.8");
+            urls += 2;
+            for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                String slug = (String) row[1];
+                String loc = baseUrl + "/products/" + (slug != null && !slug.isEmpty() ? slug : String.valueOf(row[0]));
+                String entry = PartWriter.entry(loc, lastmod((LocalDateTime) row[2], (LocalDateTime) row[3], today), "weekly", "0.7");
+                if (!part.fits(entry, maxUrlsPerFile)) {
+                    parts.add(part.commit());
+                    part = new PartWriter(dir, parts.size() + 1);
+                }
+                part.write(entry);
+                urls++;
+            }
+            parts.add(part.commit());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lastUrlCount = urls;
+        return parts;
+    }
+
+    private void writeIndex(Path dir, int partCount) throws IOException {
+        String today = LocalDate.now().toString();
+        Path temp = Files.createTempFile(dir, "sitemap", ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(temp), StandardCharsets.UTF_8))) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+            for (int i = 1; i <= partCount; i++) {
+                writer.write("  <sitemap>\n    <loc>" + escapeXml(baseUrl + "/" + partName(i)) + "</loc>\n");
+                writer.write("    <lastmod>" + today + "</lastmod>\n  </sitemap>\n");
+            }
+            writer.write("</sitemapindex>\n");
+        }
+        publish(temp, dir.resolve(INDEX_FILE));
+    }
+
+    /**
+     * Удаляет части, которых нет в новом индексе (каталог уменьшился)
+     */
+    private void deleteStaleParts(Path dir, int partCount) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "sitemap-*.xml*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String number = name.substring("sitemap-".length(), name.indexOf(".xml"));
+                if (!number.chars().allMatch(Character::isDigit) || Integer.parseInt(number) > partCount) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Временные файлы, оставшиеся от прерванной генерации
+     */
+    private static void deleteTempFiles(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "sitemap*.tmp")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Подменяет файл и его сжатую копию переименованием временных файлов
+     */
+    private static void publish(Path temp, Path target) throws IOException {
+        Path gzTemp = Files.createTempFile(target.getParent(), "sitemap", ".gz.tmp");
+        try (InputStream in = Files.newInputStream(temp);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzTemp))) {
+            in.transferTo(out);
+        }
+        move(gzTemp, target.resolveSibling(target.getFileName() + ".gz"));
+        move(temp, target);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String lastmod(LocalDateTime minerDetailUpdatedAt, LocalDateTime lastOfferUpdatedAt, String fallback) {
+        LocalDateTime latest = minerDetailUpdatedAt;
+        if (lastOfferUpdatedAt != null && (latest == null || lastOfferUpdatedAt.isAfter(latest))) {
+            latest = lastOfferUpdatedAt;
+        }
+        return latest != null ? latest.toLocalDate().toString() : fallback;
+    }
+
+    private static String partName(int number) {
+        return "sitemap-" + number + ".xml";
+    }
+
+    private Path getDirectory() {
+        return Paths.get(sitemapDir).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Экранирование XML символов
+     */
+    private static String escapeXml(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.replace("&", "&amp;")
+                   .replace("<", "&lt;")
+                   .replace(">", "&gt;")
+                   .replace("\"", "&quot;")
+                   .replace("'", "&apos;");
+    }
+
+    /**
+     * Одна часть sitemap во временном файле; считает адреса и байты для разбиения по лимитам
+     */
+    private static final class PartWriter {
+        private final Path target;
+        private final Path temp;
+        private final Writer writer;
+        private int urls;
+        private long bytes;
+
+        PartWriter(Path dir, int number) throws IOException {
+            this.target = dir.resolve(partName(number));
+            this.temp = Files.createTempFile(dir, "sitemap", ".tmp");
+            this.writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(temp), StandardCharsets.UTF_8));
+            writer.write(URLSET_START);
+            bytes = URLSET_START.length() + URLSET_END.length();
+        }
+
+        static String entry(String loc, String lastmod, String changefreq, String priority) {
+            return "  <url>\n"
+                    + "    <loc>" + escapeXml(loc) + "</loc>\n"
+                    + "    <lastmod>" + lastmod + "</lastmod>\n"
+                    + "    <changefreq>" + changefreq + "</changefreq>\n"
+                    + "    <priority>" + priority + "</priority>\n"
+                    + "  </url>\n";
+        }
+
+        void add(String loc, String lastmod, String changefreq, String priority) throws IOException {
+            write(entry(loc, lastmod, changefreq, priority));
+        }
+
+        boolean fits(String entry, int maxUrls) {
+            return urls < maxUrls && bytes + entry.getBytes(StandardCharsets.UTF_8).length <= MAX_FILE_BYTES;
+        }
+
+        void write(String entry) throws IOException {
+            writer.write(entry);
+            urls++;
+            bytes += entry.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        Path commit() throws IOException {
+            writer.write(URLSET_END);
+            writer.close();
+            publish(temp, target);
+            return target;
+        }
+    }
+}
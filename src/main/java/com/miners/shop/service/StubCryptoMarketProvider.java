@@ -0,0 +1,59 @@
+package com.miners.shop.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Локальный источник рыночных данных без сети (app.crypto.provider: stub) - для разработки и проверки офлайн
+ * Отдает значения по умолчанию CryptoDataService; app.crypto.stub.fail: true имитирует недоступность источника
+ */
+@Component
+public class StubCryptoMarketProvider implements CryptoMarketProvider {
+
+    @Value("${app.crypto.stub.fail:false}")
+    private boolean fail;
+
+    private final AtomicLong calls = new AtomicLong();
+
+    @Override
+    public String getName() {
+        return "stub";
+    }
+
+    @Override
+    public CompletableFuture<Map<String, BigDecimal>> fetchPrices(Collection<String> cryptos) {
+        calls.incrementAndGet();
+        if (fail) {
+            return CompletableFuture.failedFuture(new IllegalStateException("stub: имитация недоступности"));
+        }
+        Map<String, BigDecimal> prices = new LinkedHashMap<>();
+        for (String crypto : cryptos) {
+            BigDecimal price = CryptoDataService.getDefaultPrice(crypto);
+            if (price.signum() > 0) {
+                prices.put(crypto, price);
+            }
+        }
+        return CompletableFuture.completedFuture(prices);
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> fetchDifficulty(String crypto) {
+        calls.incrementAndGet();
+        if (fail) {
+            return CompletableFuture.failedFuture(new IllegalStateException("stub: имитация недоступности"));
+        }
+        return CompletableFuture.completedFuture(CryptoDataService.getDefaultDifficulty(crypto));
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        return Map.of("calls", calls.get(), "fail", fail);
+    }
+}
@@ -25,12 +25,11 @@ public class TelegramGroupService {
     
     /**
      * Получает список всех доступных групп Telegram
+     * Счетчики поддерживаются инкрементально при приеме сообщений (recordGroupMessage),
+     * полная сверка выполняется отдельно через syncGroupsFromMessages
      */
     @Transactional(readOnly = true)
     public List<TelegramGroupDTO> getAllGroups() {
-        // Сначала синхронизируем группы из сообщений
-        syncGroupsFromMessages();
-        
         List<TelegramGroup> groups = groupRepository.findAllByOrderByChatNameAsc();
         return groups.stream()
                 .map(this::toDTO)
@@ -42,14 +41,39 @@ public class TelegramGroupService {
      */
     @Transactional(readOnly = true)
     public List<TelegramGroupDTO> getActiveGroups() {
-        syncGroupsFromMessages();
-        
         List<TelegramGroup> groups = groupRepository.findActiveGroups();
         return groups.stream()
                 .map(this::toDTO)
                 .collect(Collectors.toList());
     }
     
+    /**
+     * Учитывает новое сообщение группы в telegram_groups одним атомарным upsert
+     * Вызывается только для впервые сохраненных сообщений (повторная доставка не увеличивает счетчик)
+     * @param chatId - ID чата
+     * @param chatName - название чата из сообщения
+     * @param messageDate - время сообщения
+     */
+    @Transactional
+    public void recordGroupMessage(String chatId, String chatName, LocalDateTime messageDate) {
+        recordGroupMessages(chatId, chatName, messageDate, 1);
+    }
+    
+    /**
+     * Учитывает сразу несколько новых сообщений одной группы (пакетный прием)
+     * @param lastMessageDate - время самого нового сообщения из учитываемых
+     * @param count - количество новых сообщений
+     */
+    @Transactional
+    public void recordGroupMessages(String chatId, String chatName, LocalDateTime lastMessageDate, int count) {
+        if (chatId == null || chatId.isEmpty() || count <= 0) {
+            return;
+        }
+        String name = chatName != null && !chatName.isEmpty() ? chatName : "Неизвестная группа";
+        groupRepository.upsertMessageStats(chatId, name, lastMessageDate != null ? lastMessageDate : LocalDateTime.now(), count);
+        log.debug("Учтено сообщений группы {} ({}): {}", chatId, name, count);
+    }
+    
     /**
      * Включает или выключает мониторинг для группы
      */
@@ -66,12 +90,9 @@ public class TelegramGroupService {
             group.setChatId(chatId);
             
             // Получаем название группы из последнего сообщения
-            List<WhatsAppMessage> messages = messageRepository.findByChatIdOrderByTimestampDesc(chatId);
-            if (!messages.isEmpty()) {
-                group.setChatName(messages.get(0).getChatName());
-            } else {
-                group.setChatName("Неизвестная группа");
-            }
+            group.setChatName(messageRepository.findFirstByChatIdOrderByTimestampDesc(chatId)
+                    .map(WhatsAppMessage::getChatName)
+                    .orElse("Неизвестная группа"));
         }
         
         group.setMonitoringEnabled(enabled);
@@ -83,59 +104,57 @@ public class TelegramGroupService {
     }
     
     /**
-     * Синхронизирует список групп из сообщений в базе данных
+     * Полная сверка telegram_groups с сообщениями в базе данных (для исправления расхождений)
+     * Счетчики и даты пересчитываются одним агрегирующим запросом
      */
     @Transactional
     public void syncGroupsFromMessages() {
-        log.debug("Синхронизация групп из сообщений...");
+        log.info("🔄 Полная сверка групп с сообщениями...");
         
-        // Получаем все уникальные группы из сообщений (только group, не personal)
-        List<WhatsAppMessage> groupMessages = messageRepository.findByChatTypeOrderByTimestampDesc("group");
+        java.util.Map<String, TelegramGroup> existingGroups = groupRepository.findAll().stream()
+                .collect(Collectors.toMap(TelegramGroup::getChatId, g -> g));
         
-        // Группируем по chatId
-        java.util.Map<String, WhatsAppMessage> latestMessagesByChat = groupMessages.stream()
-                .collect(java.util.stream.Collectors.toMap(
-                        WhatsAppMessage::getChatId,
-                        msg -> msg,
-                        (existing, replacement) -> existing.getTimestamp().isAfter(replacement.getTimestamp()) 
-                                ? existing : replacement
-                ));
-        
-        // Обновляем или создаем записи в таблице telegram_groups
-        for (java.util.Map.Entry<String, WhatsAppMessage> entry : latestMessagesByChat.entrySet()) {
-            String chatId = entry.getKey();
-            WhatsAppMessage latestMessage = entry.getValue();
-            
-            Optional<TelegramGroup> groupOpt = groupRepository.findByChatId(chatId);
+        List<Object[]> stats = messageRepository.findGroupChatStats();
+        List<TelegramGroup> toSave = new java.util.ArrayList<>();
+        for (Object[] row : stats) {
+            String chatId = (String) row[0];
+            String chatName = (String) row[1];
+            LocalDateTime lastMessageDate = toLocalDateTime(row[2]);
+            long messageCount = ((Number) row[3]).longValue();
             
-            TelegramGroup group;
-            if (groupOpt.isPresent()) {
-                group = groupOpt.get();
-                // Обновляем название, если оно изменилось
-                if (!group.getChatName().equals(latestMessage.getChatName())) {
-                    group.setChatName(latestMessage.getChatName());
-                }
-            } else {
+            TelegramGroup group = existingGroups.get(chatId);
+            if (group == null) {
                 // Создаем новую группу
                 group = new TelegramGroup();
                 group.setChatId(chatId);
-                group.setChatName(latestMessage.getChatName());
                 group.setMonitoringEnabled(true); // По умолчанию включаем мониторинг
             }
             
-            // Обновляем статистику
-            long messageCount = messageRepository.findByChatIdOrderByTimestampDesc(chatId).size();
+            if (chatName != null && !chatName.equals(group.getChatName())) {
+                group.setChatName(chatName);
+            }
+            if (group.getChatName() == null) {
+                group.setChatName("Неизвестная группа");
+            }
             group.setMessageCount(messageCount);
-            
-            // Обновляем дату последнего сообщения
-            if (latestMessage.getTimestamp() != null) {
-                group.setLastMessageDate(latestMessage.getTimestamp());
+            if (lastMessageDate != null) {
+                group.setLastMessageDate(lastMessageDate);
             }
-            
-            groupRepository.save(group);
+            toSave.add(group);
         }
+        groupRepository.saveAll(toSave);
         
-        log.debug("Синхронизация завершена. Обработано групп: {}", latestMessagesByChat.size());
+        log.info("✅ Сверка групп завершена. Обработано групп: {}", toSave.size());
+    }
+    
+    private LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof java.sql.Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        if (value instanceof LocalDateTime localDateTime) {
+            return localDateTime;
+        }
+        return null;
     }
     
     /**
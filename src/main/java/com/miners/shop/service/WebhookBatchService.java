@@ -0,0 +1,247 @@
+package com.miners.shop.service;
+
+import com.miners.shop.dto.WhatsAppMessageDTO;
+import com.miners.shop.entity.WebhookIngestion;
+import com.miners.shop.entity.WhatsAppMessage;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Пакетный прием webhook-сообщений (массив сообщений в одном запросе)
+ * Дубликаты messageId внутри пачки отбрасываются, продавцы/товары/предложения
+ * загружаются одним IN-запросом каждый, запись идет через saveAll (JDBC batching Hibernate).
+ * Если пакетная транзакция не удалась - сообщения обрабатываются по одному,
+ * чтобы у каждого был собственный статус.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookBatchService {
+
+    public static final String STATUS_PROCESSED = "PROCESSED";
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_DUPLICATE = "DUPLICATE_IN_BATCH";
+    public static final String STATUS_DUPLICATE_DELIVERY = "DUPLICATE_DELIVERY";
+    public static final String STATUS_INVALID = "INVALID";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private final WhatsAppMessageService messageService;
+    private final ProductService productService;
+    private final WebhookProcessingService processingService;
+    private final WebhookIngestionService ingestionService;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
+    private final MessageDeliveryFilter deliveryFilter;
+
+    @Value("${app.webhook.batch.max-size:500}")
+    private int maxBatchSize;
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Принимает пачку сообщений
+     * @param messages - сообщения в порядке поступления
+     * @param source - источник: whatsapp или telegram
+     * @param async - поставить в очередь (true) или обработать сразу (false)
+     * @param force - обрабатывать и повторные доставки уже принятых сообщений
+     * @return Статус по каждому элементу пачки (в том же порядке)
+     */
+    public List<BatchItemResult> receive(List<WhatsAppMessageDTO> messages, String source, boolean async, boolean force) {
+        BatchItemResult[] results = new BatchItemResult[messages.size()];
+
+        // Валидация и дедупликация по messageId: побеждает последнее вхождение (самая свежая версия сообщения)
+        Map<String, Integer> indexByMessageId = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            WhatsAppMessageDTO dto = messages.get(i);
+            String error = validate(dto);
+            if (error != null) {
+                results[i] = BatchItemResult.of(dto != null ? dto.getMessageId() : null, STATUS_INVALID, error);
+                continue;
+            }
+            Integer previous = indexByMessageId.remove(dto.getMessageId());
+            if (previous != null) {
+                results[previous] = BatchItemResult.of(dto.getMessageId(), STATUS_DUPLICATE, null);
+            }
+            indexByMessageId.put(dto.getMessageId(), i);
+        }
+
+        // Повторные доставки уже принятых сообщений отбрасываются до любой работы с БД
+        List<Integer> indexes = new ArrayList<>(indexByMessageId.size());
+        for (Integer index : indexByMessageId.values()) {
+            WhatsAppMessageDTO dto = messages.get(index);
+            if (!force && deliveryFilter.isDuplicate(dto)) {
+                results[index] = BatchItemResult.of(dto.getMessageId(), STATUS_DUPLICATE_DELIVERY, null);
+            } else {
+                indexes.add(index);
+            }
+        }
+        List<WhatsAppMessageDTO> unique = indexes.stream().map(messages::get).toList();
+        if (!unique.isEmpty()) {
+            List<BatchItemResult> processed = async ? enqueue(unique, source) : processSync(unique, source);
+            for (int i = 0; i < indexes.size(); i++) {
+                BatchItemResult result = processed.get(i);
+                results[indexes.get(i)] = result;
+                if (STATUS_PROCESSED.equals(result.status()) || STATUS_QUEUED.equals(result.status())) {
+                    deliveryFilter.markDelivered(unique.get(i));
+                }
+            }
+        }
+
+        List<BatchItemResult> resultList = List.of(results);
+        Map<String, Long> counts = resultList.stream()
+                .collect(Collectors.groupingBy(BatchItemResult::status, LinkedHashMap::new, Collectors.counting()));
+        log.info("📦 Пачка webhook ({}): сообщений={}, режим={}, статусы={}",
+                source, messages.size(), async ? "async" : "sync", counts);
+        return resultList;
+    }
+
+    private List<BatchItemResult> enqueue(List<WhatsAppMessageDTO> messages, String source) {
+        try {
+            List<WebhookIngestion> ingestions = ingestionService.enqueueAll(messages, source);
+            return ingestions.stream()
+                    .map(ingestion -> new BatchItemResult(ingestion.getMessageId(), STATUS_QUEUED, ingestion.getId(), null, null))
+                    .toList();
+        } catch (Exception e) {
+            log.error("❌ Не удалось поставить пачку из {} сообщений в очередь: {}", messages.size(), e.getMessage(), e);
+            String error = "Ошибка постановки в очередь: " + e.getMessage();
+            return messages.stream().map(dto -> BatchItemResult.of(dto.getMessageId(), STATUS_FAILED, error)).toList();
+        }
+    }
+
+    private List<BatchItemResult> processSync(List<WhatsAppMessageDTO> messages, String source) {
+        try {
+            return transactionTemplate.execute(status -> processInTransaction(messages, source));
+        } catch (Exception e) {
+            log.warn("⚠️  Пакетная обработка {} сообщений не удалась ({}), обрабатываем по одному",
+                    messages.size(), e.getMessage());
+        }
+
+        List<BatchItemResult> results = new ArrayList<>(messages.size());
+        for (WhatsAppMessageDTO dto : messages) {
+            try {
+                WebhookProcessingService.ProcessingResult result = processingService.process(dto, source, false);
+                results.add(new BatchItemResult(dto.getMessageId(), STATUS_PROCESSED, result.messageId(), result.isUpdate(), null));
+            } catch (Exception e) {
+                log.error("❌ Ошибка при обработке сообщения {} из пачки: {}", dto.getMessageId(), e.getMessage(), e);
+                results.add(BatchItemResult.of(dto.getMessageId(), STATUS_FAILED, e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Обработка всей пачки в одной транзакции (та же семантика, что у WebhookProcessingService.process)
+     */
+    private List<BatchItemResult> processInTransaction(List<WhatsAppMessageDTO> messages, String source) {
+        boolean telegram = WebhookProcessingService.SOURCE_TELEGRAM.equals(source);
+
+        // Предыдущие сообщения продавцов (для определения обновлений): одна выборка из БД,
+        // более ранние сообщения той же пачки имеют приоритет
+        Set<String> senders = new HashSet<>();
+        Set<String> chatIds = new HashSet<>();
+        List<String> batchMessageIds = new ArrayList<>(messages.size());
+        for (WhatsAppMessageDTO dto : messages) {
+            String sender = WebhookProcessingService.senderIdentifier(dto, source);
+            if (sender != null && !sender.isEmpty() && dto.getParsedData() != null) {
+                senders.add(sender);
+                chatIds.add(dto.getChatId());
+            }
+            batchMessageIds.add(dto.getMessageId());
+        }
+        Map<String, String> previousIds = messageService.findPreviousMessageIds(senders, chatIds, batchMessageIds);
+
+        Map<String, String> originalMessageIds = new HashMap<>();
+        Map<String, String> lastInBatch = new HashMap<>();
+        for (WhatsAppMessageDTO dto : messages) {
+            String sender = WebhookProcessingService.senderIdentifier(dto, source);
+            if (sender == null || sender.isEmpty()) {
+                continue;
+            }
+            String key = WhatsAppMessageService.previousMessageKey(sender, dto.getChatId());
+            if (dto.getParsedData() != null) {
+                String original = lastInBatch.getOrDefault(key, previousIds.get(key));
+                if (original != null) {
+                    originalMessageIds.put(dto.getMessageId(), original);
+                }
+            }
+            lastInBatch.put(key, dto.getMessageId());
+        }
+
+        Map<String, WhatsAppMessage> saved = messageService.saveMessages(messages, originalMessageIds);
+
+        // Распарсенные данные всех сообщений - одним пакетным вызовом
+        List<Integer> parsedIndexes = new ArrayList<>();
+        List<ProductService.ParsedDataItem> items = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            WhatsAppMessageDTO dto = messages.get(i);
+            if (!(dto.getParsedData() instanceof Map<?, ?>)) {
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> parsedData = (Map<String, Object>) dto.getParsedData();
+            String sellerName = dto.getSenderName();
+            String sellerPhone = WebhookProcessingService.senderIdentifier(dto, source);
+            if (!telegram) {
+                sellerPhone = processingService.normalizeWhatsAppSellerPhone(dto);
+                sellerName = processingService.normalizeWhatsAppSellerName(sellerName);
+            }
+            parsedIndexes.add(i);
+            items.add(new ProductService.ParsedDataItem(parsedData, dto.getMessageId(), dto.getChatName(), sellerName, sellerPhone));
+        }
+        List<ProductService.ParsedDataResult> parsedResults = productService.processParsedDataBatch(items);
+
+        boolean[] isUpdate = new boolean[messages.size()];
+        for (int i = 0; i < parsedIndexes.size(); i++) {
+            isUpdate[parsedIndexes.get(i)] = parsedResults.get(i).isUpdate();
+        }
+
+        List<BatchItemResult> results = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            WhatsAppMessageDTO dto = messages.get(i);
+            results.add(new BatchItemResult(dto.getMessageId(), STATUS_PROCESSED,
+                    saved.get(dto.getMessageId()).getId(), isUpdate[i], null));
+        }
+        return results;
+    }
+
+    private String validate(WhatsAppMessageDTO dto) {
+        if (dto == null) {
+            return "Пустой элемент пачки";
+        }
+        Set<ConstraintViolation<WhatsAppMessageDTO>> violations = validator.validate(dto);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream().map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining("; "));
+    }
+
+    /**
+     * Статус обработки одного элемента пачки
+     * @param messageId - messageId из запроса
+     * @param status - PROCESSED, QUEUED, DUPLICATE_IN_BATCH, DUPLICATE_DELIVERY, INVALID или FAILED
+     * @param id - ID сохраненного сообщения (PROCESSED) или записи очереди (QUEUED)
+     * @param isUpdate - были ли обновлены существующие предложения (только для PROCESSED)
+     * @param error - описание ошибки (INVALID, FAILED)
+     */
+    public record BatchItemResult(String messageId, String status, Long id, Boolean isUpdate, String error) {
+        static BatchItemResult of(String messageId, String status, String error) {
+            return new BatchItemResult(messageId, status, null, null, error);
+        }
+    }
+}
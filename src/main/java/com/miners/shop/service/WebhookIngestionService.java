@@ -0,0 +1,240 @@
+package com.miners.shop.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miners.shop.dto.WhatsAppMessageDTO;
+import com.miners.shop.entity.IngestionStatus;
+import com.miners.shop.entity.WebhookIngestion;
+import com.miners.shop.repository.WebhookIngestionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Сервис очереди приема webhook-сообщений (таблица webhook_ingestion_queue)
+ * Отвечает за постановку в очередь, захват записей воркерами и переходы статусов
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookIngestionService {
+
+    private final WebhookIngestionRepository ingestionRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.webhook.ingestion.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.webhook.ingestion.retry-backoff-ms:2000}")
+    private long retryBackoffMs;
+
+    @Value("${app.webhook.ingestion.max-retry-backoff-ms:600000}")
+    private long maxRetryBackoffMs;
+
+    @Value("${app.webhook.ingestion.processing-timeout-ms:300000}")
+    private long processingTimeoutMs;
+
+    /**
+     * Сохраняет исходное сообщение в очередь
+     * @return Созданная запись очереди
+     */
+    @Transactional
+    public WebhookIngestion enqueue(WhatsAppMessageDTO messageDTO, String source) throws JsonProcessingException {
+        WebhookIngestion ingestion = new WebhookIngestion();
+        ingestion.setSource(source);
+        ingestion.setMessageId(messageDTO.getMessageId());
+        ingestion.setPayload(objectMapper.writeValueAsString(messageDTO));
+        ingestion.setStatus(IngestionStatus.PENDING);
+        ingestion.setAttempts(0);
+        WebhookIngestion saved = ingestionRepository.save(ingestion);
+        log.debug("📥 Сообщение {} ({}) поставлено в очередь, ID записи={}", messageDTO.getMessageId(), source, saved.getId());
+        return saved;
+    }
+
+    /**
+     * Сохраняет пачку исходных сообщений в очередь одним saveAll
+     * @return Созданные записи очереди в том же порядке
+     */
+    @Transactional
+    public List<WebhookIngestion> enqueueAll(List<WhatsAppMessageDTO> messages, String source) throws JsonProcessingException {
+        List<WebhookIngestion> ingestions = new ArrayList<>(messages.size());
+        for (WhatsAppMessageDTO messageDTO : messages) {
+            WebhookIngestion ingestion = new WebhookIngestion();
+            ingestion.setSource(source);
+            ingestion.setMessageId(messageDTO.getMessageId());
+            ingestion.setPayload(objectMapper.writeValueAsString(messageDTO));
+            ingestion.setStatus(IngestionStatus.PENDING);
+            ingestion.setAttempts(0);
+            ingestions.add(ingestion);
+        }
+        List<WebhookIngestion> saved = ingestionRepository.saveAll(ingestions);
+        log.debug("📥 Пачка из {} сообщений ({}) поставлена в очередь", saved.size(), source);
+        return saved;
+    }
+
+    /**
+     * Захватывает пачку записей для обработки
+     * Запись переводится в PROCESSING, счетчик попыток увеличивается сразу при захвате,
+     * поэтому падение воркера посреди обработки тоже считается попыткой.
+     * Зависшие записи, исчерпавшие попытки, переводятся в DEAD_LETTER и не захватываются.
+     * Время захвата (lockedAt) служит признаком владения: markDone/markFailed обновляют запись,
+     * только если оно не изменилось.
+     */
+    @Transactional
+    public List<WebhookIngestion> claimBatch(int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        // PostgreSQL хранит timestamp с точностью до микросекунд - lockedAt должен совпадать с сохраненным
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        LocalDateTime staleBefore = now.minus(Duration.ofMillis(processingTimeoutMs));
+        int deadLettered = ingestionRepository.deadLetterStale(staleBefore, maxAttempts,
+                "Обработка не завершилась за " + processingTimeoutMs + " мс ни в одной из " + maxAttempts + " попыток");
+        if (deadLettered > 0) {
+            log.error("❌ {} зависших записей очереди переведено в DEAD_LETTER: попытки исчерпаны", deadLettered);
+        }
+
+        List<WebhookIngestion> batch = ingestionRepository.findReadyForProcessing(now, staleBefore, maxAttempts, limit);
+        List<WebhookIngestion> claimed = new ArrayList<>(batch.size());
+        for (WebhookIngestion ingestion : batch) {
+            if (ingestion.getAttempts() >= maxAttempts) {
+                ingestion.setStatus(IngestionStatus.DEAD_LETTER);
+                ingestion.setLockedAt(null);
+                log.error("❌ Сообщение {} ({}) переведено в DEAD_LETTER: исчерпаны {} попыток",
+                        ingestion.getMessageId(), ingestion.getSource(), ingestion.getAttempts());
+                continue;
+            }
+            if (ingestion.getStatus() == IngestionStatus.PROCESSING) {
+                log.warn("⚠️  Запись очереди ID={} зависла в обработке с {}, возвращаем в работу",
+                        ingestion.getId(), ingestion.getLockedAt());
+            }
+            ingestion.setStatus(IngestionStatus.PROCESSING);
+            ingestion.setLockedAt(now);
+            ingestion.setAttempts(ingestion.getAttempts() + 1);
+            claimed.add(ingestion);
+        }
+        ingestionRepository.saveAll(batch);
+        return claimed;
+    }
+
+    /**
+     * Восстанавливает DTO из сохраненного тела запроса
+     */
+    public WhatsAppMessageDTO readPayload(WebhookIngestion ingestion) throws JsonProcessingException {
+        return objectMapper.readValue(ingestion.getPayload(), WhatsAppMessageDTO.class);
+    }
+
+    /**
+     * Отмечает захваченную запись как успешно обработанную
+     * Если запись за это время перехвачена другим воркером (истек таймаут обработки), она не изменяется.
+     * @return true, если запись обновлена
+     */
+    @Transactional
+    public boolean markDone(WebhookIngestion claimed, Long resultMessageId) {
+        int updated = ingestionRepository.markDoneIfClaimed(claimed.getId(), claimed.getLockedAt(),
+                LocalDateTime.now(), resultMessageId);
+        if (updated == 0) {
+            log.warn("⚠️  Запись очереди ID={} (messageId={}) больше не принадлежит воркеру, результат не сохранен",
+                    claimed.getId(), claimed.getMessageId());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Отмечает неудачную попытку захваченной записи: запись возвращается в очередь с экспоненциальной задержкой
+     * или переводится в DEAD_LETTER, если попытки исчерпаны
+     * Если запись за это время перехвачена другим воркером, она не изменяется.
+     * @return Новый статус записи; null - запись больше не принадлежит воркеру
+     */
+    @Transactional
+    public IngestionStatus markFailed(WebhookIngestion claimed, String error) {
+        int attempts = claimed.getAttempts();
+        IngestionStatus status;
+        LocalDateTime nextAttemptAt;
+        long backoff = 0;
+        if (attempts >= maxAttempts) {
+            status = IngestionStatus.DEAD_LETTER;
+            nextAttemptAt = claimed.getNextAttemptAt();
+        } else {
+            backoff = Math.min(retryBackoffMs * (1L << Math.min(attempts - 1, 20)), maxRetryBackoffMs);
+            status = IngestionStatus.PENDING;
+            nextAttemptAt = LocalDateTime.now().plus(Duration.ofMillis(backoff));
+        }
+
+        int updated = ingestionRepository.markFailedIfClaimed(claimed.getId(), claimed.getLockedAt(),
+                status, nextAttemptAt, error);
+        if (updated == 0) {
+            log.warn("⚠️  Запись очереди ID={} (messageId={}) больше не принадлежит воркеру, ошибка не сохранена: {}",
+                    claimed.getId(), claimed.getMessageId(), error);
+            return null;
+        }
+
+        if (status == IngestionStatus.DEAD_LETTER) {
+            log.error("❌ Сообщение {} ({}) переведено в DEAD_LETTER после {} попыток: {}",
+                    claimed.getMessageId(), claimed.getSource(), attempts, error);
+        } else {
+            log.warn("⚠️  Попытка {} из {} для сообщения {} не удалась, повтор через {} мс: {}",
+                    attempts, maxAttempts, claimed.getMessageId(), backoff, error);
+        }
+        return status;
+    }
+
+    /**
+     * Возвращает запись из DEAD_LETTER в очередь (ручной повтор)
+     * @return true, если запись найдена и поставлена в очередь
+     */
+    @Transactional
+    public boolean requeue(Long ingestionId) {
+        Optional<WebhookIngestion> ingestionOpt = ingestionRepository.findById(ingestionId);
+        if (ingestionOpt.isEmpty() || ingestionOpt.get().getStatus() != IngestionStatus.DEAD_LETTER) {
+            return false;
+        }
+        WebhookIngestion ingestion = ingestionOpt.get();
+        ingestion.setStatus(IngestionStatus.PENDING);
+        ingestion.setAttempts(0);
+        ingestion.setNextAttemptAt(LocalDateTime.now());
+        ingestionRepository.save(ingestion);
+        log.info("🔄 Запись очереди ID={} (messageId={}) возвращена из DEAD_LETTER", ingestionId, ingestion.getMessageId());
+        return true;
+    }
+
+    /**
+     * Удаляет успешно обработанные записи старше указанного срока
+     * @return Количество удаленных записей
+     */
+    @Transactional
+    public int purgeProcessed(LocalDateTime before) {
+        return ingestionRepository.deleteByStatusAndProcessedAtBefore(IngestionStatus.DONE, before);
+    }
+
+    @Transactional(readOnly = true)
+    public Page<WebhookIngestion> getDeadLetters(Pageable pageable) {
+        return ingestionRepository.findByStatusOrderByIdDesc(IngestionStatus.DEAD_LETTER, pageable);
+    }
+
+    @Transactional(readOnly = true)
+    public long countByStatus(IngestionStatus status) {
+        return ingestionRepository.countByStatus(status);
+    }
+
+    /**
+     * Задержка самой старой ожидающей записи (в миллисекундах), 0 если очередь пуста
+     */
+    @Transactional(readOnly = true)
+    public long getOldestPendingLagMs() {
+        LocalDateTime oldest = ingestionRepository.findOldestReceivedAtByStatus(IngestionStatus.PENDING);
+        return oldest != null ? Math.max(0, Duration.between(oldest, LocalDateTime.now()).toMillis()) : 0;
+    }
+}
@@ -0,0 +1,185 @@
+package com.miners.shop.service;
+
+import com.miners.shop.dto.WhatsAppMessageDTO;
+import com.miners.shop.entity.IngestionStatus;
+import com.miners.shop.entity.WebhookIngestion;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновый обработчик очереди приема webhook-сообщений
+ * Периодически забирает записи из webhook_ingestion_queue и обрабатывает их
+ * на виртуальных потоках; параллелизм ограничен семафором (app.webhook.ingestion.workers)
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookIngestionWorker {
+
+    private final WebhookIngestionService ingestionService;
+    private final WebhookProcessingService processingService;
+
+    @Value("${app.webhook.ingestion.workers:8}")
+    private int workers;
+
+    @Value("${app.webhook.ingestion.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.webhook.ingestion.retention-days:7}")
+    private int retentionDays;
+
+    private ExecutorService executor;
+    private Semaphore permits;
+
+    // Метрики обработки (с момента старта приложения)
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong deadLetteredCount = new AtomicLong();
+    private final AtomicLong lastLagMs = new AtomicLong();
+    private final AtomicLong maxLagMs = new AtomicLong();
+    private final AtomicLong totalLagMs = new AtomicLong();
+
+    @PostConstruct
+    void start() {
+        permits = new Semaphore(Math.max(1, workers));
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("webhook-ingest-", 0).factory());
+        log.info("✅ Обработчик очереди webhook запущен: воркеров={}, размер пачки={}", workers, batchSize);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("⚠️  Не все задачи очереди webhook завершились за 30 секунд, записи будут подобраны после рестарта");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Забирает очередную пачку записей, если есть свободные воркеры
+     */
+    @Scheduled(fixedDelayString = "${app.webhook.ingestion.poll-interval-ms:500}")
+    public void poll() {
+        if (executor.isShutdown()) {
+            return;
+        }
+        int free = Math.min(permits.availablePermits(), batchSize);
+        if (free <= 0) {
+            return;
+        }
+
+        List<WebhookIngestion> batch;
+        try {
+            batch = ingestionService.claimBatch(free);
+        } catch (Exception e) {
+            log.error("❌ Ошибка при захвате записей очереди webhook: {}", e.getMessage(), e);
+            return;
+        }
+
+        for (WebhookIngestion ingestion : batch) {
+            permits.acquireUninterruptibly();
+            try {
+                executor.submit(() -> {
+                    try {
+                        handle(ingestion);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (Exception e) {
+                // Executor остановлен - запись вернется в работу по таймауту обработки
+                permits.release();
+                log.warn("⚠️  Не удалось отправить запись ID={} на обработку: {}", ingestion.getId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Обрабатывает одну запись очереди
+     */
+    private void handle(WebhookIngestion ingestion) {
+        try {
+            WhatsAppMessageDTO messageDTO = ingestionService.readPayload(ingestion);
+            WebhookProcessingService.ProcessingResult result = processingService.process(messageDTO, ingestion.getSource(), true);
+            if (!ingestionService.markDone(ingestion, result.messageId())) {
+                return;
+            }
+
+            long lag = Duration.between(ingestion.getReceivedAt(), LocalDateTime.now()).toMillis();
+            processedCount.incrementAndGet();
+            lastLagMs.set(lag);
+            totalLagMs.addAndGet(lag);
+            maxLagMs.accumulateAndGet(lag, Math::max);
+            log.info("✅ Сообщение {} ({}) обработано из очереди, попытка {}, задержка {} мс",
+                    ingestion.getMessageId(), ingestion.getSource(), ingestion.getAttempts(), lag);
+        } catch (Exception e) {
+            failedAttempts.incrementAndGet();
+            String error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            try {
+                if (ingestionService.markFailed(ingestion, error) == IngestionStatus.DEAD_LETTER) {
+                    deadLetteredCount.incrementAndGet();
+                }
+            } catch (Exception markError) {
+                log.error("❌ Не удалось сохранить ошибку для записи очереди ID={}: {}",
+                        ingestion.getId(), markError.getMessage(), markError);
+            }
+        }
+    }
+
+    /**
+     * Удаляет старые успешно обработанные записи очереди (раз в час)
+     */
+    @Scheduled(fixedDelayString = "${app.webhook.ingestion.purge-interval-ms:3600000}", initialDelay = 60000)
+    public void purgeProcessed() {
+        try {
+            int deleted = ingestionService.purgeProcessed(LocalDateTime.now().minusDays(retentionDays));
+            if (deleted > 0) {
+                log.info("🧹 Удалено {} обработанных записей очереди webhook старше {} дней", deleted, retentionDays);
+            }
+        } catch (Exception e) {
+            log.error("❌ Ошибка при очистке очереди webhook: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Метрики очереди: глубина, задержка обработки, счетчики
+     */
+    public Map<String, Object> getStats() {
+        long processed = processedCount.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueDepth", ingestionService.countByStatus(IngestionStatus.PENDING));
+        stats.put("inFlight", ingestionService.countByStatus(IngestionStatus.PROCESSING));
+        stats.put("deadLetter", ingestionService.countByStatus(IngestionStatus.DEAD_LETTER));
+        stats.put("oldestPendingLagMs", ingestionService.getOldestPendingLagMs());
+        stats.put("workers", workers);
+        stats.put("busyWorkers", workers - permits.availablePermits());
+        stats.put("processedSinceStart", processed);
+        stats.put("failedAttemptsSinceStart", failedAttempts.get());
+        stats.put("deadLetteredSinceStart", deadLetteredCount.get());
+        stats.put("lastLagMs", lastLagMs.get());
+        stats.put("avgLagMs", processed > 0 ? totalLagMs.get() / processed : 0);
+        stats.put("maxLagMs", maxLagMs.get());
+        return stats;
+    }
+}
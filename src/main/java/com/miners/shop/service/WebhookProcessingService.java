@@ -0,0 +1,180 @@
+package com.miners.shop.service;
+
+import com.miners.shop.dto.WhatsAppMessageDTO;
+import com.miners.shop.entity.WhatsAppMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Обработка входящего сообщения от WhatsApp/Telegram сервиса:
+ * сохранение сообщения (со статистикой группы), разбор предложений из parsedData
+ * Используется как синхронно из WebhookController, так и воркерами очереди приема
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookProcessingService {
+
+    public static final String SOURCE_WHATSAPP = "whatsapp";
+    public static final String SOURCE_TELEGRAM = "telegram";
+
+    private final WhatsAppMessageService messageService;
+    private final ProductService productService;
+
+    /**
+     * Обрабатывает сообщение
+     * @param messageDTO - данные сообщения
+     * @param source - источник: whatsapp или telegram
+     * @param failOnParsedDataError - пробрасывать ли ошибку обработки parsedData
+     *                                (для очереди - чтобы сработал повтор; для синхронного режима ошибка только логируется)
+     * @return Результат обработки
+     */
+    public ProcessingResult process(WhatsAppMessageDTO messageDTO, String source, boolean failOnParsedDataError) {
+        boolean telegram = SOURCE_TELEGRAM.equals(source);
+        String senderIdentifier = senderIdentifier(messageDTO, source);
+
+        // Проверяем, есть ли предыдущие сообщения от этого продавца (для определения обновлений)
+        String originalMessageId = null;
+        if (senderIdentifier != null && messageDTO.getParsedData() != null) {
+            originalMessageId = messageService.findPreviousMessageIdFromSeller(
+                    senderIdentifier,
+                    messageDTO.getChatId(),
+                    messageDTO.getMessageId()
+            );
+        }
+
+        // Сохраняем сообщение с информацией об обновлении
+        // (статистика группы обновляется инкрементально внутри saveMessage)
+        WhatsAppMessage saved = messageService.saveMessage(messageDTO, originalMessageId);
+
+        logParsedDataSummary(messageDTO, source);
+
+        // Обрабатываем распарсенные данные от Ollama, если они есть
+        boolean isUpdate = false;
+        if (messageDTO.getParsedData() != null) {
+            try {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> parsedData = (Map<String, Object>) messageDTO.getParsedData();
+
+                String sellerName = messageDTO.getSenderName();
+                String sellerPhone = senderIdentifier;
+                if (!telegram) {
+                    sellerPhone = normalizeWhatsAppSellerPhone(messageDTO);
+                    sellerName = normalizeWhatsAppSellerName(sellerName);
+                }
+
+                log.info("🔄 Начало обработки распарсенных данных ({}) для сообщения: {}", source, messageDTO.getMessageId());
+                log.info("🔄 Параметры: chatName={}, sellerName={}, sellerPhone={}",
+                        messageDTO.getChatName(), sellerName, sellerPhone);
+
+                isUpdate = productService.processParsedData(
+                        parsedData,
+                        messageDTO.getMessageId(),
+                        messageDTO.getChatName(),
+                        sellerName,
+                        sellerPhone,
+                        null // location будет извлечена из parsedData
+                );
+
+                log.info("✅ Обработка распарсенных данных завершена. isUpdate={}", isUpdate);
+
+                // Если обнаружено обновление, но originalMessageId еще не установлен - устанавливаем
+                if (isUpdate && saved.getOriginalMessageId() == null && originalMessageId == null) {
+                    originalMessageId = messageService.findPreviousMessageIdFromSeller(
+                            senderIdentifier,
+                            messageDTO.getChatId(),
+                            messageDTO.getMessageId()
+                    );
+                    if (originalMessageId != null) {
+                        saved.setIsUpdate(true);
+                        saved.setOriginalMessageId(originalMessageId);
+                        messageService.updateMessage(saved);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("❌ ОШИБКА при обработке распарсенных данных сообщения {}: {}",
+                        messageDTO.getMessageId(), e.getMessage(), e);
+                if (failOnParsedDataError) {
+                    throw new IllegalStateException("Ошибка обработки parsedData: " + e.getMessage(), e);
+                }
+                // В синхронном режиме не прерываем выполнение, если ошибка в обработке товаров
+            }
+        } else {
+            log.warn("⚠️  PARSED DATA == NULL, ОБРАБОТКА ТОВАРОВ НЕ ВЫПОЛНЕНА (messageId={})", messageDTO.getMessageId());
+        }
+
+        return new ProcessingResult(saved.getId(), isUpdate);
+    }
+
+    /**
+     * Идентификатор отправителя: для Telegram используем senderId, если номер телефона не передан
+     */
+    static String senderIdentifier(WhatsAppMessageDTO messageDTO, String source) {
+        return SOURCE_TELEGRAM.equals(source) && messageDTO.getSenderPhoneNumber() == null
+                ? messageDTO.getSenderId()
+                : messageDTO.getSenderPhoneNumber();
+    }
+
+    /**
+     * ВАЛИДАЦИЯ: Проверяем, что senderPhoneNumber не является WhatsApp ID
+     * Если похож (длинная строка > 15 символов, содержит @ или _) - пытаемся извлечь номер из senderId
+     */
+    String normalizeWhatsAppSellerPhone(WhatsAppMessageDTO messageDTO) {
+        String sellerPhone = messageDTO.getSenderPhoneNumber();
+        if (sellerPhone != null && (sellerPhone.length() > 15 || sellerPhone.contains("@") || sellerPhone.contains("_"))) {
+            log.warn("⚠️  senderPhoneNumber похож на WhatsApp ID, а не на номер телефона: {}", sellerPhone);
+            if (messageDTO.getSenderId() != null) {
+                String extractedPhone = messageDTO.getSenderId().replaceAll("@.*", "").trim();
+                if (extractedPhone.length() <= 15 && !extractedPhone.contains("_") && extractedPhone.matches("^[0-9]+$")) {
+                    log.info("✅ Извлечен номер телефона из senderId: {}", extractedPhone);
+                    return extractedPhone;
+                }
+                log.warn("⚠️  Не удалось извлечь номер из senderId: {}", messageDTO.getSenderId());
+            }
+            return null; // Не используем WhatsApp ID как номер телефона
+        }
+        return sellerPhone;
+    }
+
+    /**
+     * Если senderName похож на WhatsApp ID (длинная числовая строка > 15 символов) - не используем его как имя
+     */
+    String normalizeWhatsAppSellerName(String sellerName) {
+        if (sellerName != null && sellerName.length() > 15 && sellerName.matches("^[0-9]+$")) {
+            log.warn("⚠️  senderName похож на WhatsApp ID, а не на имя: {}", sellerName);
+            return null;
+        }
+        return sellerName;
+    }
+
+    /**
+     * Краткое логирование структуры parsedData
+     */
+    private void logParsedDataSummary(WhatsAppMessageDTO messageDTO, String source) {
+        if (messageDTO.getParsedData() == null) {
+            log.warn("⚠️  parsedData == null ({}, messageId={}) - распарсенные данные от Ollama отсутствуют!",
+                    source, messageDTO.getMessageId());
+            return;
+        }
+        if (messageDTO.getParsedData() instanceof Map<?, ?> parsedDataMap) {
+            Object productsObj = parsedDataMap.get("products");
+            log.info("📋 parsedData ({}, messageId={}): ключи={}, operationType={}, location={}, products={}",
+                    source, messageDTO.getMessageId(), parsedDataMap.keySet(),
+                    parsedDataMap.get("operationType"), parsedDataMap.get("location"),
+                    productsObj instanceof List<?> products ? products.size() : "не список");
+        } else {
+            log.warn("⚠️  parsedData не является Map, тип: {}", messageDTO.getParsedData().getClass().getName());
+        }
+    }
+
+    /**
+     * Результат обработки сообщения
+     * @param messageId - ID сохраненного WhatsAppMessage
+     * @param isUpdate - были ли обновлены существующие предложения
+     */
+    public record ProcessingResult(Long messageId, boolean isUpdate) {}
+}
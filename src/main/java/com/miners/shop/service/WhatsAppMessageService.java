@@ -1,5 +1,6 @@
 package com.miners.shop.service;
 
+import com.miners.shop.dto.MessageSummaryDTO;
 import com.miners.shop.dto.WhatsAppMessageDTO;
 import com.miners.shop.entity.WhatsAppMessage;
 import com.miners.shop.repository.WhatsAppMessageRepository;
@@ -13,7 +14,12 @@ import org.springframework.transaction.annotation.Transactional;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -22,6 +28,8 @@ import java.util.Optional;
 public class WhatsAppMessageService {
     
     private final WhatsAppMessageRepository messageRepository;
+    private final TelegramGroupService groupService;
+    private final MediaStorageService mediaStorageService;
     
     private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_DATE_TIME;
     
@@ -75,6 +83,103 @@ public class WhatsAppMessageService {
             log.debug("Создание нового сообщения");
         }
         
+        applyDto(message, dto, originalMessageId);
+        
+        WhatsAppMessage saved = messageRepository.save(message);
+        log.info("Сообщение сохранено: id={}, messageId={}, isUpdate={}", 
+                saved.getId(), saved.getMessageId(), saved.getIsUpdate());
+        
+        // Инкрементально обновляем статистику группы (только для нового сообщения, в той же транзакции)
+        if (existing.isEmpty() && "group".equals(saved.getChatType())) {
+            groupService.recordGroupMessage(saved.getChatId(), saved.getChatName(), saved.getTimestamp());
+        }
+        
+        return saved;
+    }
+    
+    /**
+     * Сохраняет пачку сообщений: существующие загружаются одним запросом, все сохраняются через saveAll
+     * Статистика групп обновляется одним upsert на чат (только для новых сообщений)
+     * @param dtos - сообщения (messageId уже уникальны в пределах пачки)
+     * @param originalMessageIds - ID оригинального сообщения по messageId (для обновлений)
+     * @return Сохраненные сообщения по messageId
+     */
+    @Transactional
+    public Map<String, WhatsAppMessage> saveMessages(List<WhatsAppMessageDTO> dtos, Map<String, String> originalMessageIds) {
+        Map<String, WhatsAppMessage> byMessageId = new LinkedHashMap<>();
+        if (dtos.isEmpty()) {
+            return byMessageId;
+        }
+        
+        for (WhatsAppMessage existing : messageRepository.findByMessageIdIn(dtos.stream().map(WhatsAppMessageDTO::getMessageId).toList())) {
+            byMessageId.put(existing.getMessageId(), existing);
+        }
+        
+        List<WhatsAppMessage> toSave = new ArrayList<>(dtos.size());
+        List<WhatsAppMessage> created = new ArrayList<>();
+        for (WhatsAppMessageDTO dto : dtos) {
+            WhatsAppMessage message = byMessageId.get(dto.getMessageId());
+            if (message == null) {
+                message = new WhatsAppMessage();
+                message.setMessageId(dto.getMessageId());
+                byMessageId.put(dto.getMessageId(), message);
+                created.add(message);
+            }
+            applyDto(message, dto, originalMessageIds.get(dto.getMessageId()));
+            toSave.add(message);
+        }
+        messageRepository.saveAll(toSave);
+        
+        // Инкрементально обновляем статистику групп: один upsert на чат
+        Map<String, List<WhatsAppMessage>> newGroupMessages = new LinkedHashMap<>();
+        for (WhatsAppMessage message : created) {
+            if ("group".equals(message.getChatType())) {
+                newGroupMessages.computeIfAbsent(message.getChatId(), k -> new ArrayList<>()).add(message);
+            }
+        }
+        newGroupMessages.forEach((chatId, messages) -> {
+            WhatsAppMessage latest = messages.stream()
+                    .max(java.util.Comparator.comparing(WhatsAppMessage::getTimestamp))
+                    .orElseThrow();
+            groupService.recordGroupMessages(chatId, latest.getChatName(), latest.getTimestamp(), messages.size());
+        });
+        
+        log.info("Пачка сообщений сохранена: всего={}, новых={}", toSave.size(), created.size());
+        return byMessageId;
+    }
+    
+    /**
+     * Находит последние сообщения продавцов в чатах одним запросом (пакетный аналог findPreviousMessageIdFromSeller)
+     * @param senders - идентификаторы продавцов
+     * @param chatIds - ID чатов
+     * @param excludeMessageIds - messageId, которые не учитываются (сообщения текущей пачки)
+     * @return messageId последнего сообщения по ключу previousMessageKey(sender, chatId)
+     */
+    @Transactional(readOnly = true)
+    public Map<String, String> findPreviousMessageIds(Collection<String> senders, Collection<String> chatIds,
+                                                      Collection<String> excludeMessageIds) {
+        Map<String, String> result = new HashMap<>();
+        if (senders.isEmpty() || chatIds.isEmpty()) {
+            return result;
+        }
+        for (Object[] row : messageRepository.findLatestMessageIdsBySenderAndChat(senders, chatIds,
+                excludeMessageIds.isEmpty() ? List.of("") : excludeMessageIds)) {
+            result.put(previousMessageKey((String) row[0], (String) row[1]), (String) row[2]);
+        }
+        return result;
+    }
+    
+    /**
+     * Ключ для результатов findPreviousMessageIds
+     */
+    public static String previousMessageKey(String sender, String chatId) {
+        return sender + "|" + chatId;
+    }
+    
+    /**
+     * Переносит поля DTO в сущность сообщения
+     */
+    private void applyDto(WhatsAppMessage message, WhatsAppMessageDTO dto, String originalMessageId) {
         // Устанавливаем информацию об обновлении
         if (originalMessageId != null && !originalMessageId.isEmpty()) {
             message.setIsUpdate(true);
@@ -106,7 +211,7 @@ public class WhatsAppMessageService {
         message.setHasMedia(dto.getHasMedia() != null ? dto.getHasMedia() : false);
         message.setMediaMimetype(dto.getMediaMimetype());
         message.setMediaFilename(dto.getMediaFilename());
-        message.setMediaData(dto.getMediaData());
+        applyMedia(message, dto);
         message.setMessageType(dto.getMessageType());
         message.setIsForwarded(dto.getIsForwarded() != null ? dto.getIsForwarded() : false);
         
@@ -127,12 +232,23 @@ public class WhatsAppMessageService {
         } else {
             message.setParsedData(null);
         }
-        
-        WhatsAppMessage saved = messageRepository.save(message);
-        log.info("Сообщение сохранено: id={}, messageId={}, isUpdate={}", 
-                saved.getId(), saved.getMessageId(), saved.getIsUpdate());
-        
-        return saved;
+    }
+    
+    /**
+     * Переносит медиа из webhook в файловое хранилище; в сообщении остаются только хеш и размер
+     * Ошибка записи файла не прерывает сохранение сообщения
+     */
+    private void applyMedia(WhatsAppMessage message, WhatsAppMessageDTO dto) {
+        MediaStorageService.StoredMedia stored = null;
+        if (dto.getMediaData() != null && !dto.getMediaData().isBlank()) {
+            try {
+                stored = mediaStorageService.storeBase64(dto.getMediaData());
+            } catch (Exception e) {
+                log.error("❌ Не удалось сохранить медиафайл сообщения {}: {}", dto.getMessageId(), e.getMessage(), e);
+            }
+        }
+        message.setMediaHash(stored != null ? stored.hash() : null);
+        message.setMediaSize(stored != null ? stored.size() : null);
     }
     
     /**
@@ -161,6 +277,16 @@ public class WhatsAppMessageService {
         return messageRepository.findByChatTypeOrderByTimestampDesc(chatType, pageable);
     }
     
+    /**
+     * Страница списка сообщений без тяжелых колонок (для /private/messages и /api/messages)
+     * Полный текст сообщения загружается только на странице просмотра /private/messages/{id}
+     * @param chatType - тип чата (group/personal) или null для всех
+     */
+    @Transactional(readOnly = true)
+    public Page<MessageSummaryDTO> getMessageSummaries(String chatType, Pageable pageable) {
+        return messageRepository.findSummaries(chatType != null && !chatType.isEmpty() ? chatType : null, pageable);
+    }
+    
     /**
      * Получает последние сообщения
      */
@@ -41,12 +41,13 @@ public class SlugUtil {
     }
     
     /**
-     * Транслитерация кириллицы в латиницу
+     * Транслитерация кириллицы в латиницу (остальные символы не меняются)
+     * Используется также анализатором поискового индекса (MinerSearchIndex)
      * 
      * @param text Текст на русском языке
      * @return Транслитерированный текст
      */
-    private static String transliterate(String text) {
+    public static String transliterate(String text) {
         if (text == null || text.isEmpty()) {
             return "";
         }
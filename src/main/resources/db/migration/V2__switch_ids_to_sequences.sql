@@ -0,0 +1,30 @@
+-- Миграция: перевод первичных ключей с IDENTITY на sequence (allocationSize = 50, pooled-lo)
+-- Выполняется автоматически при старте через IdSequenceMigration; скрипт - для ручного применения
+-- Существующие ID не меняются, sequence сдвигается за MAX(id)
+
+DO $$
+DECLARE
+    t RECORD;
+    max_id BIGINT;
+BEGIN
+    FOR t IN SELECT * FROM (VALUES
+        ('offers', 'offers_seq'),
+        ('products', 'products_seq'),
+        ('sellers', 'sellers_seq'),
+        ('whatsapp_messages', 'whatsapp_messages_seq'),
+        ('miner_details', 'miner_details_seq'),
+        ('webhook_ingestion_queue', 'webhook_ingestion_queue_seq')
+    ) AS v(table_name, sequence_name)
+    LOOP
+        IF EXISTS (SELECT 1 FROM information_schema.tables WHERE table_name = t.table_name) THEN
+            EXECUTE format('CREATE SEQUENCE IF NOT EXISTS %I START WITH 1 INCREMENT BY 50', t.sequence_name);
+            EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP IDENTITY IF EXISTS', t.table_name);
+            EXECUTE format('ALTER TABLE %I ALTER COLUMN id SET DEFAULT nextval(%L)', t.table_name, t.sequence_name);
+            EXECUTE format('SELECT COALESCE(MAX(id), 0) FROM %I', t.table_name) INTO max_id;
+            IF max_id > 0 THEN
+                PERFORM setval(t.sequence_name, GREATEST(max_id, (SELECT last_value FROM pg_sequences WHERE sequencename = t.sequence_name)), true);
+            END IF;
+            RAISE NOTICE 'Таблица % переведена на sequence %', t.table_name, t.sequence_name;
+        END IF;
+    END LOOP;
+END $$;
@@ -0,0 +1,13 @@
+-- Миграция: медиа сообщений переносится из base64-колонки media_data в файловое хранилище (MediaStorageService)
+-- Колонки media_hash/media_size создаются Hibernate (ddl-auto: update), данные переносит MediaMigrationJob пачками
+-- Скрипт - для ручного применения; колонку media_data удалять только после завершения переноса
+-- (GET /private/messages/media/migration -> completed = true)
+
+ALTER TABLE whatsapp_messages ADD COLUMN IF NOT EXISTS media_hash VARCHAR(64);
+ALTER TABLE whatsapp_messages ADD COLUMN IF NOT EXISTS media_size BIGINT;
+
+-- Осталось перенести:
+-- SELECT COUNT(*) FROM whatsapp_messages WHERE media_data IS NOT NULL;
+
+-- После завершения переноса (освобождает место после VACUUM FULL):
+-- ALTER TABLE whatsapp_messages DROP COLUMN media_data;
@@ -0,0 +1,22 @@
+-- Миграция: read model статистики предложений по MinerDetail для каталога
+-- Таблица создается Hibernate (ddl-auto: update) и заполняется при старте, если пуста (MinerDetailOfferStatsService);
+-- скрипт - для ручного применения. Повторная пересборка: POST /private/products/offer-stats/rebuild
+
+CREATE TABLE IF NOT EXISTS miner_detail_offer_stats (
+    miner_detail_id BIGINT PRIMARY KEY,
+    offer_count BIGINT NOT NULL,
+    sell_count BIGINT NOT NULL,
+    buy_count BIGINT NOT NULL,
+    total_quantity BIGINT NOT NULL,
+    min_price NUMERIC(10, 2),
+    currency VARCHAR(10),
+    last_offer_updated_at TIMESTAMP,
+    min_price_valid_until TIMESTAMP,
+    refreshed_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_md_offer_stats_last_offer ON miner_detail_offer_stats (last_offer_updated_at);
+CREATE INDEX IF NOT EXISTS idx_md_offer_stats_valid_until ON miner_detail_offer_stats (min_price_valid_until);
+
+-- Пересчет по MinerDetail выбирает предложения через products.miner_detail_id
+CREATE INDEX IF NOT EXISTS idx_products_miner_detail_id ON products (miner_detail_id);
@@ -0,0 +1,8 @@
+-- Миграция: сортировка каталога "по последнему предложению" и страницы по курсору выполняются в памяти
+-- (CatalogSnapshot.page, CatalogSnapshot.LatestOfferCursor), SQL-запросов с сортировкой по last_offer_updated_at нет.
+-- Индексы по этой колонке не используются и только замедляют пересчет статистики. Скрипт - для ручного применения.
+
+DROP INDEX IF EXISTS idx_md_offer_stats_latest;
+DROP INDEX IF EXISTS idx_md_offer_stats_last_offer;
+
+ALTER TABLE miner_detail_offer_stats ALTER COLUMN last_offer_updated_at SET NOT NULL;
@@ -0,0 +1,8 @@
+-- Миграция: индексы для постраничного вывода предложений MinerDetail по ключу (updated_at, id)
+-- ProductService.findOfferSlice читает страницу "после курсора" по индексу, без OFFSET по предыдущим строкам:
+-- с фильтром по типу операции - первый индекс, без фильтра - второй (слияние по product_id всех товаров MinerDetail).
+-- Индексы создаются Hibernate (ddl-auto: update), скрипт - для ручного применения.
+
+CREATE INDEX IF NOT EXISTS idx_offers_product_type_updated ON offers (product_id, operation_type, updated_at, id);
+
+CREATE INDEX IF NOT EXISTS idx_offers_product_updated ON offers (product_id, updated_at, id);
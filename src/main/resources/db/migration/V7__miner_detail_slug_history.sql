@@ -0,0 +1,11 @@
+-- Миграция: история прежних slug MinerDetail (301 со старых ссылок на текущий адрес товара)
+-- Таблица создается Hibernate (ddl-auto: update) и заполняется при смене slug (MinerDetailService.updateMinerDetail);
+-- скрипт - для ручного применения. Загружается в память при старте (MinerDetailSlugIndex)
+
+CREATE TABLE IF NOT EXISTS miner_detail_slug_history (
+    old_slug VARCHAR(200) PRIMARY KEY,
+    miner_detail_id BIGINT NOT NULL,
+    changed_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_md_slug_history_miner_detail ON miner_detail_slug_history (miner_detail_id);
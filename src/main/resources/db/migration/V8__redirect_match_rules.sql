@@ -0,0 +1,6 @@
+-- Миграция: редиректы по префиксу и регулярному выражению, обработка строки запроса
+-- Колонки создаются Hibernate (ddl-auto: update), скрипт - для ручного применения.
+-- NULL в существующих записях означает прежнее поведение: точное совпадение полного URL (EXACT / MATCH)
+
+ALTER TABLE redirects ADD COLUMN IF NOT EXISTS match_type VARCHAR(20);
+ALTER TABLE redirects ADD COLUMN IF NOT EXISTS query_mode VARCHAR(20);
@@ -0,0 +1,18 @@
+-- Миграция: последние успешно полученные курс и сложность сети для калькулятора доходности
+-- Таблица создается Hibernate (ddl-auto: update) и заполняется фоновым обновлением (CryptoDataService);
+-- скрипт - для ручного применения. Загружается в память при старте, чтобы не ждать внешние API
+
+CREATE TABLE IF NOT EXISTS crypto_quotes (
+    crypto VARCHAR(10) PRIMARY KEY,
+    price NUMERIC(24, 8),
+    price_updated_at TIMESTAMP,
+    difficulty NUMERIC(24, 8),
+    difficulty_updated_at TIMESTAMP,
+    pool_fee NUMERIC(6, 2),
+    source VARCHAR(20),
+    updated_at TIMESTAMP NOT NULL
+);
+
+-- Время получения хранится отдельно для курса и сложности: не полученное значение сохраняется с прежним временем
+ALTER TABLE crypto_quotes ADD COLUMN IF NOT EXISTS price_updated_at TIMESTAMP;
+ALTER TABLE crypto_quotes ADD COLUMN IF NOT EXISTS difficulty_updated_at TIMESTAMP;
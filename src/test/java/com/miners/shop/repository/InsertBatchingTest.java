@@ -0,0 +1,157 @@
+package com.miners.shop.repository;
+
+import com.miners.shop.dto.WhatsAppMessageDTO;
+import com.miners.shop.entity.MinerDetail;
+import com.miners.shop.entity.Product;
+import com.miners.shop.entity.Seller;
+import com.miners.shop.entity.WhatsAppMessage;
+import com.miners.shop.service.MediaStorageService;
+import com.miners.shop.service.MinerDetailOfferStatsService;
+import com.miners.shop.service.MinerDetailService;
+import com.miners.shop.service.ProductService;
+import com.miners.shop.service.SellerService;
+import com.miners.shop.service.TelegramGroupService;
+import com.miners.shop.service.WhatsAppMessageService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Пакетная вставка в пакетных путях приема сообщений: ID из sequence блоками по 50 позволяют Hibernate
+ * объединять INSERT в JDBC-пакеты (hibernate.jdbc.batch_size=20), поэтому число подготовленных операторов
+ * растет с числом пакетов, а не с числом строк. С IDENTITY каждый INSERT выполнялся бы отдельно ради получения ID.
+ *
+ * Одиночные пути (ProductService.processParsedData, WhatsAppMessageService.saveMessage) вставляют одну строку
+ * сообщения и предложения одним нативным upsert на товар - пакетировать там нечего.
+ */
+@Import({ProductService.class, SellerService.class, MinerDetailOfferStatsService.class, WhatsAppMessageService.class})
+class InsertBatchingTest extends PostgresSliceTest {
+
+    private static final int MESSAGES = 100;
+    private static final int MODELS = 5;
+    private static final int BATCH_SIZE = 20;
+    private static final int ALLOCATION_SIZE = 50;
+
+    @MockBean
+    private MinerDetailService minerDetailService;
+    @MockBean
+    private TelegramGroupService telegramGroupService;
+    @MockBean
+    private MediaStorageService mediaStorageService;
+
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private WhatsAppMessageService whatsAppMessageService;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        when(minerDetailService.createMinerDetailForProduct(any())).thenAnswer(invocation -> {
+            MinerDetail minerDetail = new MinerDetail();
+            minerDetail.setStandardName(invocation.<Product>getArgument(0).getModel());
+            entityManager.persist(minerDetail);
+            return minerDetail;
+        });
+    }
+
+    /**
+     * Продавцы вставляются JDBC-пакетами, предложения - одной многострочной командой upsert.
+     * Остальные операторы (поиск продавцов и товаров, товары и MinerDetail новых моделей) не зависят
+     * от числа сообщений.
+     */
+    @Test
+    void parsedDataBatchInsertsSellersInJdbcBatches() {
+        List<ProductService.ParsedDataItem> items = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            items.add(parsedDataItem(i));
+        }
+
+        statistics.clear();
+        List<ProductService.ParsedDataResult> results = productService.processParsedDataBatch(items);
+        entityManager.flush();
+
+        assertThat(results).allSatisfy(result -> assertThat(result.createdOffers()).isEqualTo(1));
+        assertThat(statistics.getEntityStatistics(Seller.class.getName()).getInsertCount()).isEqualTo(MESSAGES);
+        long perModelStatements = MODELS * 4L; // поиск MinerDetail, INSERT товара и MinerDetail, их UPDATE
+        long lookups = 3; // продавцы по телефонам, товары по ID, товары по модели
+        long offerUpserts = 1;
+        assertThat(statistics.getPrepareStatementCount())
+                .isLessThanOrEqualTo(insertStatements(MESSAGES) + perModelStatements + lookups + offerUpserts);
+        assertThat(count("SELECT COUNT(*) FROM offers")).isEqualTo(MESSAGES);
+    }
+
+    @Test
+    void messageBatchIsInsertedInJdbcBatches() {
+        List<WhatsAppMessageDTO> dtos = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            dtos.add(messageDto(i));
+        }
+
+        statistics.clear();
+        whatsAppMessageService.saveMessages(dtos, Map.of());
+        entityManager.flush();
+
+        assertThat(statistics.getEntityStatistics(WhatsAppMessage.class.getName()).getInsertCount()).isEqualTo(MESSAGES);
+        long lookups = 1; // существующие сообщения по messageId
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(insertStatements(MESSAGES) + lookups);
+    }
+
+    /**
+     * Пакеты INSERT плюс обращения к sequence (одно на блок из ALLOCATION_SIZE ID)
+     */
+    private static long insertStatements(int rows) {
+        long batches = (rows + BATCH_SIZE - 1) / BATCH_SIZE;
+        long sequenceCalls = (rows + ALLOCATION_SIZE - 1) / ALLOCATION_SIZE + 1;
+        return batches + sequenceCalls;
+    }
+
+    private long count(String sql) {
+        return ((Number) entityManager.createNativeQuery(sql).getSingleResult()).longValue();
+    }
+
+    private static ProductService.ParsedDataItem parsedDataItem(int i) {
+        Map<String, Object> product = new HashMap<>();
+        product.put("model", "Antminer S" + (19 + i % MODELS) + " Pro");
+        product.put("price", 1000 + i);
+        Map<String, Object> parsedData = new HashMap<>();
+        parsedData.put("operationType", "SELL");
+        parsedData.put("products", List.of(product));
+        return new ProductService.ParsedDataItem(parsedData, "msg-" + i, "Чат", "Продавец " + i,
+                "7900000" + String.format("%04d", i));
+    }
+
+    private static WhatsAppMessageDTO messageDto(int i) {
+        WhatsAppMessageDTO dto = new WhatsAppMessageDTO();
+        dto.setMessageId("msg-" + i);
+        dto.setChatId("chat-" + i);
+        dto.setChatName("Личный чат " + i);
+        dto.setChatType("private");
+        dto.setSenderName("Продавец " + i);
+        dto.setContent("Antminer S19 Pro 110T - " + (1000 + i) + "$");
+        dto.setTimestamp("2024-01-01T10:00:00");
+        return dto;
+    }
+}
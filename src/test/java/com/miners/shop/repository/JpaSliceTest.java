@@ -0,0 +1,39 @@
+package com.miners.shop.repository;
+
+import com.miners.shop.service.CatalogSnapshotService;
+import com.miners.shop.service.CatalogVersionService;
+import com.miners.shop.service.MinerDetailSlugIndex;
+import com.miners.shop.service.MinerSearchService;
+import com.miners.shop.service.ProductModelIndex;
+import com.miners.shop.service.RedirectRuleService;
+import com.miners.shop.service.SellerIdentityCache;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Основа тестов JPA на H2 (application-test.yml)
+ * JPA-слушатели сущностей создаются Hibernate через SpringBeanContainer, поэтому сервисы,
+ * от которых они зависят, заменены заглушками
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+public abstract class JpaSliceTest {
+
+    @MockBean
+    protected SellerIdentityCache sellerIdentityCache;
+    @MockBean
+    protected ProductModelIndex productModelIndex;
+    @MockBean
+    protected MinerSearchService minerSearchService;
+    @MockBean
+    protected RedirectRuleService redirectRuleService;
+    @MockBean
+    protected CatalogSnapshotService catalogSnapshotService;
+    @MockBean
+    protected CatalogVersionService catalogVersionService;
+    @MockBean
+    protected MinerDetailSlugIndex minerDetailSlugIndex;
+}
@@ -0,0 +1,154 @@
+package com.miners.shop.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.miners.shop.dto.MessageSummaryDTO;
+import com.miners.shop.entity.WhatsAppMessage;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Список сообщений: проекция findSummaries против сущностей findAllByOrderByTimestampDesc
+ * на страницах 50 и 100 - тот же порядок, обрезанный текст и многократно меньший JSON-ответ.
+ * SQL проекции перехватывается SqlCapture и проверяется по списку выбранных колонок
+ */
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.miners.shop.repository.WhatsAppMessageRepositoryTest$SqlCapture")
+class WhatsAppMessageRepositoryTest extends JpaSliceTest {
+
+    private static final int MESSAGES = 120;
+    private static final int CONTENT_LENGTH = 4000;
+    private static final int SUMMARY_CONTENT_LENGTH = 300;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Autowired
+    private WhatsAppMessageRepository messageRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void summaryPagesMatchEntityPagesAndAreSmaller() throws Exception {
+        createMessages();
+
+        for (int size : List.of(50, 100)) {
+            Pageable pageable = PageRequest.of(0, size);
+            List<WhatsAppMessage> entities = messageRepository.findAllByOrderByTimestampDesc(pageable).getContent();
+            entityManager.clear();
+            List<MessageSummaryDTO> summaries = messageRepository.findSummaries(null, pageable).getContent();
+
+            assertThat(summaries).hasSize(size);
+            assertThat(summaries).extracting(MessageSummaryDTO::id)
+                    .containsExactlyElementsOf(entities.stream().map(WhatsAppMessage::getId).toList());
+            assertThat(summaries).allSatisfy(summary -> {
+                assertThat(summary.contentPreview()).hasSize(SUMMARY_CONTENT_LENGTH);
+                assertThat(summary.hasParsedData()).isTrue();
+            });
+
+            long entityJsonBytes = jsonMapper.writeValueAsBytes(entities).length;
+            long summaryJsonBytes = jsonMapper.writeValueAsBytes(summaries).length;
+            assertThat(summaryJsonBytes * 5).isLessThan(entityJsonBytes);
+            entityManager.clear();
+        }
+    }
+
+    /**
+     * Текст, медиа и parsedData не выбираются: content - только первые 300 символов, parsedData - только признак наличия;
+     * сущности не загружаются
+     */
+    @Test
+    void summaryQuerySelectsOnlyListColumns() {
+        createMessages();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        SqlCapture.STATEMENTS.clear();
+
+        messageRepository.findSummaries(null, PageRequest.of(0, 50));
+
+        String sql = SqlCapture.STATEMENTS.stream()
+                .filter(statement -> !statement.contains("count("))
+                .findFirst().orElseThrow();
+        assertThat(selectedColumns(sql)).containsExactly(
+                "id", "chat_name", "chat_type", "sender_name", "timestamp",
+                "substring(content,1,300)", "has_media", "is_update",
+                "case when parsed_data is not null and parsed_data<>'' then true else false end");
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    /**
+     * Выражения списка SELECT без псевдонима таблицы (запятые внутри скобок не разделяют выражения)
+     */
+    private static List<String> selectedColumns(String sql) {
+        String select = sql.substring("select ".length(), sql.indexOf(" from whatsapp_messages"))
+                .replaceAll("\\w+_\\d+\\.", "");
+        List<String> columns = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < select.length(); i++) {
+            char c = select.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                columns.add(select.substring(start, i));
+                start = i + 1;
+            }
+        }
+        columns.add(select.substring(start));
+        return columns;
+    }
+
+    /**
+     * Запоминает SQL, который Hibernate отправляет в базу
+     */
+    public static class SqlCapture implements StatementInspector {
+
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+
+    private void createMessages() {
+        LocalDateTime now = LocalDateTime.now();
+        String content = "Продам Antminer S19 ".repeat(CONTENT_LENGTH / 20);
+        for (int i = 0; i < MESSAGES; i++) {
+            WhatsAppMessage message = new WhatsAppMessage();
+            message.setMessageId("msg-" + i);
+            message.setChatId("chat-1");
+            message.setChatName("Майнеры");
+            message.setChatType("group");
+            message.setSenderId("sender-" + i % 10);
+            message.setSenderName("Продавец " + i % 10);
+            message.setContent(content);
+            message.setParsedData("{\"products\":[{\"model\":\"S19\",\"price\":1000}]," +
+                    "\"notes\":\"" + "x".repeat(2000) + "\"}");
+            message.setTimestamp(now.minusMinutes(i));
+            entityManager.persist(message);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
@@ -0,0 +1,155 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.MinerDetail;
+import com.miners.shop.entity.MinerDetailOfferStats;
+import com.miners.shop.entity.Offer;
+import com.miners.shop.entity.OperationType;
+import com.miners.shop.entity.Product;
+import com.miners.shop.entity.Seller;
+import com.miners.shop.repository.PostgresSliceTest;
+import com.miners.shop.util.ImageUrlResolver;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Страница товара: число SQL-запросов MinerDetailPageService.load фиксировано
+ * и не зависит от количества предложений и продавцов на странице
+ */
+@Import({MinerDetailPageService.class, ProductService.class, MinerDetailOfferStatsService.class})
+class MinerDetailPageServiceTest extends PostgresSliceTest {
+
+    /**
+     * MinerDetail по ID, строка статистики, страница предложений, продавцы одной пачкой (@BatchSize),
+     * товар предложений для JSON-LD, майнер компании
+     */
+    private static final int MAX_STATEMENTS = 6;
+
+    private static final int PAGE_SIZE = 20;
+
+    @MockBean
+    private SellerService sellerService;
+    @MockBean
+    private MinerDetailService minerDetailService;
+    @MockBean
+    private ImageUrlResolver imageUrlResolver;
+
+    @Autowired
+    private MinerDetailPageService pageService;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        when(catalogSnapshotService.get()).thenReturn(
+                new CatalogSnapshot(1, LocalDateTime.now(), List.of(), List.of(), List.of(), Map.of(), 0, 0, 0));
+        when(minerDetailSlugIndex.resolve(anyString())).thenAnswer(invocation ->
+                new MinerDetailSlugIndex.Resolution(Long.parseLong(invocation.getArgument(0)), null));
+    }
+
+    @Test
+    void statementCountDoesNotDependOnOfferCount() {
+        MinerDetail few = createMinerDetail("Antminer S19", 2);
+        MinerDetail many = createMinerDetail("Antminer S21", PAGE_SIZE);
+        entityManager.flush();
+        entityManager.clear();
+
+        long fewStatements = countStatements(few.getId());
+        long manyStatements = countStatements(many.getId());
+
+        assertThat(manyStatements).isEqualTo(fewStatements);
+        assertThat(manyStatements).isLessThanOrEqualTo(MAX_STATEMENTS);
+    }
+
+    @Test
+    void pageContainsOffersAndStats() {
+        MinerDetail minerDetail = createMinerDetail("Whatsminer M60", 5);
+        entityManager.flush();
+        entityManager.clear();
+
+        MinerDetailPageService.MinerDetailPage page = pageService.load(String.valueOf(minerDetail.getId()), null,
+                PageRequest.of(0, PAGE_SIZE, Sort.by(Sort.Direction.DESC, "updatedAt"))).orElseThrow();
+
+        assertThat(page.offersPage().getContent()).hasSize(5);
+        assertThat(page.offersPage().getTotalElements()).isEqualTo(5);
+        assertThat(page.minPrice()).isEqualByComparingTo("1000");
+        assertThat(page.sellOffers()).allSatisfy(offer -> assertThat(offer.getSeller().getName()).isNotBlank());
+    }
+
+    private long countStatements(Long minerDetailId) {
+        statistics.clear();
+        MinerDetailPageService.MinerDetailPage page = pageService.load(String.valueOf(minerDetailId), null,
+                PageRequest.of(0, PAGE_SIZE, Sort.by(Sort.Direction.DESC, "updatedAt"))).orElseThrow();
+        // Продавцы и товар предложений используются шаблоном - загружаем их внутри подсчета
+        page.offersPage().forEach(offer -> {
+            offer.getSeller().getName();
+            offer.getProduct().getModel();
+        });
+        long statements = statistics.getPrepareStatementCount();
+        entityManager.clear();
+        return statements;
+    }
+
+    /**
+     * MinerDetail с товаром, строкой статистики и offerCount предложениями от разных продавцов
+     */
+    private MinerDetail createMinerDetail(String name, int offerCount) {
+        MinerDetail minerDetail = new MinerDetail();
+        minerDetail.setStandardName(name);
+        entityManager.persist(minerDetail);
+
+        Product product = new Product();
+        product.setModel(name);
+        product.setMinerDetail(minerDetail);
+        entityManager.persist(product);
+
+        for (int i = 0; i < offerCount; i++) {
+            Seller seller = new Seller();
+            seller.setName(name + " продавец " + i);
+            seller.setPhone(name.hashCode() + "-" + i);
+            entityManager.persist(seller);
+
+            Offer offer = new Offer();
+            offer.setProduct(product);
+            offer.setSeller(seller);
+            offer.setOperationType(OperationType.SELL);
+            offer.setPrice(BigDecimal.valueOf(1000 + i));
+            offer.setQuantity(1);
+            entityManager.persist(offer);
+        }
+
+        MinerDetailOfferStats stats = new MinerDetailOfferStats();
+        stats.setMinerDetailId(minerDetail.getId());
+        stats.setOfferCount(offerCount);
+        stats.setSellCount(offerCount);
+        stats.setTotalQuantity(offerCount);
+        stats.setMinPrice(BigDecimal.valueOf(1000));
+        stats.setCurrency("u");
+        stats.setLastOfferUpdatedAt(LocalDateTime.now());
+        entityManager.persist(stats);
+        return minerDetail;
+    }
+}
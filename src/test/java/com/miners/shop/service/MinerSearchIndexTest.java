@@ -0,0 +1,172 @@
+package com.miners.shop.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Замер MinerSearchIndex на синтетическом каталоге: у каждого MinerDetail две модели товаров,
+ * запросы - названия документов с опечатками, обрезанным последним словом и кириллицей.
+ * Каталог на 10 тыс. документов проверяется в каждой сборке, на 100 тыс. - с профилем benchmark
+ * (mvn test -Pbenchmark). Задержки только пишутся в лог: порог зависит от машины.
+ */
+@Slf4j
+class MinerSearchIndexTest {
+
+    private static final int QUERIES = 2_000;
+    private static final int LIMIT = 50;
+
+    private static final List<String> MANUFACTURERS = List.of("Bitmain", "MicroBT", "Canaan", "Innosilicon", "Goldshell", "IceRiver");
+    private static final List<String> SERIES = List.of("Antminer S", "Antminer L", "Whatsminer M", "Avalon A", "Goldshell KD", "IceRiver KS");
+    private static final List<String> VARIANTS = List.of("", "Pro", "XP", "Hydro", "j Pro", "Plus", "++", "Pro Hyd");
+    private static final List<String> CYRILLIC_QUERIES = List.of("антмайнер с21", "ватсмайнер", "s21 hyd", "whatsminr m50s", "avalon");
+
+    /**
+     * Документ, который должны находить кириллические и сокращенные запросы
+     */
+    private static final long S21_HYDRO_ID = 0;
+    private static final String S21_HYDRO = "Antminer S21 Hydro";
+
+    private static final Map<Integer, Catalog> CATALOGS = new ConcurrentHashMap<>();
+
+    @Nested
+    class TenThousandDocuments extends CatalogTests {
+        TenThousandDocuments() {
+            super(10_000);
+        }
+    }
+
+    @Nested
+    @Tag("benchmark")
+    class HundredThousandDocuments extends CatalogTests {
+        HundredThousandDocuments() {
+            super(100_000);
+        }
+    }
+
+    abstract static class CatalogTests {
+
+        private final Catalog catalog;
+
+        CatalogTests(int documents) {
+            catalog = CATALOGS.computeIfAbsent(documents, Catalog::build);
+        }
+
+        @Test
+        void everyDocumentIsIndexed() {
+            assertThat(catalog.index().documentCount()).isEqualTo(catalog.names().size() + 1);
+            assertThat(catalog.index().productCount(1L)).isEqualTo(2);
+        }
+
+        @Test
+        void exactNameFindsDocument() {
+            for (int i = 0; i < 100; i++) {
+                long id = i + 1L;
+                assertThat(catalog.index().search(catalog.names().get(i), catalog.names().size()))
+                        .extracting(MinerSearchIndex.Hit::minerDetailId)
+                        .contains(id);
+            }
+        }
+
+        @Test
+        void cyrillicAndAbbreviatedQueriesFindS21Hydro() {
+            assertThat(catalog.index().search("с21 гидро", LIMIT))
+                    .extracting(MinerSearchIndex.Hit::minerDetailId)
+                    .contains(S21_HYDRO_ID);
+            assertThat(catalog.index().search("s21 hyd", LIMIT))
+                    .extracting(MinerSearchIndex.Hit::minerDetailId)
+                    .contains(S21_HYDRO_ID);
+        }
+
+        @Test
+        void queriesReturnHits() {
+            Random random = new Random(7);
+            List<String> names = catalog.names();
+            long[] latencies = new long[QUERIES];
+            long totalHits = 0;
+            int empty = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                String query = query(names.get(random.nextInt(names.size())), random, i);
+                long started = System.nanoTime();
+                int hits = catalog.index().search(query, LIMIT).size();
+                latencies[i] = System.nanoTime() - started;
+                totalHits += hits;
+                if (hits == 0) {
+                    empty++;
+                }
+            }
+            Arrays.sort(latencies);
+
+            log.info("⏱️ Замер поискового индекса: документов={}, термов={}, построение={} мс, запросов={}, "
+                            + "в среднем совпадений={}, p50={} мкс, p95={} мкс, p99={} мкс",
+                    catalog.index().documentCount(), catalog.index().termCount(), catalog.buildMillis(), QUERIES,
+                    (double) totalHits / QUERIES, percentileMicros(latencies, 0.50),
+                    percentileMicros(latencies, 0.95), percentileMicros(latencies, 0.99));
+
+            assertThat(empty).isZero();
+        }
+    }
+
+    /**
+     * Синтетический каталог: документы 1..documents со случайными названиями и документ S21_HYDRO_ID
+     */
+    private record Catalog(MinerSearchIndex index, List<String> names, long buildMillis) {
+
+        static Catalog build(int documents) {
+            Random random = new Random(42);
+            List<String> names = new ArrayList<>(documents);
+            long started = System.nanoTime();
+            MinerSearchIndex index = new MinerSearchIndex(0.4, 4);
+            for (int i = 0; i < documents; i++) {
+                int vendor = random.nextInt(SERIES.size());
+                String series = SERIES.get(vendor) + (19 + random.nextInt(60));
+                String name = (series + " " + VARIANTS.get(random.nextInt(VARIANTS.size()))).trim();
+                String hashrate = (50 + random.nextInt(900)) + "T";
+                long id = i + 1L;
+                index.putProduct(id * 2, id, name + " " + hashrate);
+                index.putProduct(id * 2 + 1, id, MANUFACTURERS.get(vendor) + " " + name);
+                index.putMinerDetail(id, name + " " + hashrate, MANUFACTURERS.get(vendor), series, hashrate);
+                names.add(name);
+            }
+            index.putMinerDetail(S21_HYDRO_ID, S21_HYDRO + " 335T", "Bitmain", "Antminer S21", "335T");
+            return new Catalog(index, names, (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    /**
+     * Каждый 4-й запрос - опечатка (перестановка букв), каждый 4-й - обрезанное последнее слово,
+     * каждый 10-й - из набора кириллических и ошибочных запросов
+     */
+    private static String query(String name, Random random, int i) {
+        if (i % 10 == 9) {
+            return CYRILLIC_QUERIES.get(random.nextInt(CYRILLIC_QUERIES.size()));
+        }
+        if (i % 4 == 1 && name.length() > 4) {
+            int position = 1 + random.nextInt(name.length() - 3);
+            char[] chars = name.toCharArray();
+            char swap = chars[position];
+            chars[position] = chars[position + 1];
+            chars[position + 1] = swap;
+            return new String(chars);
+        }
+        if (i % 4 == 2 && name.length() > 4) {
+            return name.substring(0, name.length() - 2);
+        }
+        return name;
+    }
+
+    private static long percentileMicros(long[] sorted, double percentile) {
+        int position = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(position, 0)] / 1000;
+    }
+}
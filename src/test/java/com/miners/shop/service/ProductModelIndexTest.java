@@ -0,0 +1,77 @@
+package com.miners.shop.service;
+
+import com.miners.shop.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Нормализация моделей: суффикс хешрейта удаляется, цифра и буква самой модели (KS3M) - нет
+ */
+class ProductModelIndexTest {
+
+    private ProductRepository productRepository;
+    private ProductModelIndex index;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        index = new ProductModelIndex(productRepository);
+        ReflectionTestUtils.setField(index, "vendorPrefixes", List.of("bitmain", "antminer", "goldshell", "iceriver"));
+        ReflectionTestUtils.setField(index, "fuzzyMode", ProductModelIndex.FUZZY_TRIGRAM);
+        ReflectionTestUtils.setField(index, "trigramThreshold", 0.8);
+        ReflectionTestUtils.setField(index, "maxEditDistance", 1);
+        ReflectionTestUtils.setField(index, "fuzzyMinLength", 4);
+    }
+
+    @Test
+    void hashrateSuffixIsRemoved() {
+        assertThat(index.normalize("Antminer S19 Pro 110T")).isEqualTo("s19pro");
+        assertThat(index.normalize("Antminer S19 Pro 104 TH/s")).isEqualTo("s19pro");
+        assertThat(index.normalize("Antminer L7 (9500M)")).isEqualTo("l7");
+        assertThat(index.normalize("s19pro")).isEqualTo("s19pro");
+    }
+
+    @Test
+    void modelDigitAndLetterAreKept() {
+        assertThat(index.normalize("Iceriver KS3M")).isEqualTo("ks3m");
+        assertThat(index.normalize("Iceriver KS5M")).isEqualTo("ks5m");
+        assertThat(index.normalize("Goldshell E-KA1M")).isEqualTo("eka1m");
+        assertThat(index.normalize("Avalon 1246")).isEqualTo("avalon1246");
+    }
+
+    @Test
+    void sameModelWithAndWithoutHashrateHasOneKey() {
+        assertThat(index.normalize("IceRiver KS3M 6T")).isEqualTo(index.normalize("Iceriver KS3M"));
+    }
+
+    @Test
+    void differentModelsAreNotMerged() {
+        load("Iceriver KS3M");
+
+        assertThat(index.resolve("Iceriver KS5M")).isEmpty();
+        assertThat(index.resolve("IceRiver KS3M 6T"))
+                .get()
+                .extracting(ProductModelIndex.Match::productId, ProductModelIndex.Match::type)
+                .containsExactly(1L, ProductModelIndex.MatchType.KEY);
+    }
+
+    /**
+     * Товары с ID 1, 2, ... в порядке перечисления моделей
+     */
+    private void load(String... models) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < models.length; i++) {
+            rows.add(new Object[]{i + 1L, models[i]});
+        }
+        when(productRepository.findAllIdAndModel()).thenReturn(rows);
+        index.reload();
+    }
+}
@@ -0,0 +1,137 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.MinerDetail;
+import com.miners.shop.entity.Offer;
+import com.miners.shop.entity.OperationType;
+import com.miners.shop.entity.Product;
+import com.miners.shop.entity.Seller;
+import com.miners.shop.repository.PostgresSliceTest;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Страницы предложений MinerDetail с несколькими товарами: слияние постраничных выборок по товарам
+ * дает тот же порядок, что и сортировка всех предложений, по курсору и по смещению
+ */
+@Import({ProductService.class, MinerDetailOfferStatsService.class})
+class ProductServiceOfferSliceTest extends PostgresSliceTest {
+
+    private static final int PRODUCTS = 3;
+    private static final int OFFERS_PER_PRODUCT = 25;
+    private static final int PAGE_SIZE = 10;
+
+    @MockBean
+    private SellerService sellerService;
+    @MockBean
+    private MinerDetailService minerDetailService;
+
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private EntityManager entityManager;
+
+    private Long minerDetailId;
+    private List<Offer> offers;
+
+    @BeforeEach
+    void setUp() {
+        minerDetailId = createMinerDetail("Antminer S21", PRODUCTS);
+        createMinerDetail("Antminer S19", 1); // чужие предложения не попадают в выборку
+        entityManager.flush();
+        entityManager.clear();
+        offers = entityManager.createQuery("SELECT o FROM Offer o WHERE o.product.minerDetail.id = :id", Offer.class)
+                .setParameter("id", minerDetailId)
+                .getResultList();
+    }
+
+    @Test
+    void cursorPagesMergeProductsInSortOrder() {
+        List<Long> expected = sorted(offers);
+        Sort sort = Sort.by(Sort.Direction.ASC, "price");
+
+        List<Long> paged = new ArrayList<>();
+        ProductService.OfferCursor cursor = null;
+        do {
+            ProductService.OfferSlice slice = productService.findOfferSlice(minerDetailId, null, null, null, sort,
+                    cursor, 0, PAGE_SIZE, false);
+            assertThat(slice.content()).hasSizeLessThanOrEqualTo(PAGE_SIZE);
+            slice.content().forEach(offer -> paged.add(offer.getId()));
+            cursor = slice.next();
+        } while (cursor != null);
+
+        assertThat(paged).containsExactlyElementsOf(expected);
+    }
+
+    /**
+     * С фильтром по цене общее количество считается запросом (не из статистики)
+     */
+    @Test
+    void offsetPageMatchesSortedOffers() {
+        List<Long> expected = sorted(offers.stream()
+                .filter(offer -> offer.getOperationType() == OperationType.BUY && offer.getPrice() != null)
+                .toList());
+
+        ProductService.OfferSlice slice = productService.findOfferSlice(minerDetailId, null, OperationType.BUY, true,
+                Sort.by(Sort.Direction.ASC, "price"), null, PAGE_SIZE, PAGE_SIZE, true);
+
+        assertThat(slice.content()).extracting(Offer::getId)
+                .containsExactlyElementsOf(expected.subList(PAGE_SIZE, Math.min(expected.size(), 2 * PAGE_SIZE)));
+        assertThat(slice.totalElements()).isEqualTo(expected.size());
+    }
+
+    /**
+     * ID предложений в порядке price ASC NULLS LAST, id ASC
+     */
+    private static List<Long> sorted(List<Offer> offers) {
+        return offers.stream()
+                .sorted(Comparator.comparing(Offer::getPrice, Comparator.nullsLast(Comparator.naturalOrder()))
+                        .thenComparing(Offer::getId))
+                .map(Offer::getId)
+                .toList();
+    }
+
+    /**
+     * MinerDetail с товарами, у каждого OFFERS_PER_PRODUCT предложений: цены повторяются между товарами,
+     * у каждого 7-го цены нет, каждое 3-е - покупка
+     */
+    private Long createMinerDetail(String name, int products) {
+        MinerDetail minerDetail = new MinerDetail();
+        minerDetail.setStandardName(name);
+        entityManager.persist(minerDetail);
+
+        for (int p = 0; p < products; p++) {
+            Product product = new Product();
+            product.setModel(name + " " + (200 + p) + "T");
+            product.setMinerDetail(minerDetail);
+            entityManager.persist(product);
+
+            for (int i = 0; i < OFFERS_PER_PRODUCT; i++) {
+                Seller seller = new Seller();
+                seller.setName("Продавец " + i);
+                seller.setPhone(name.hashCode() + "-" + p + "-" + i);
+                entityManager.persist(seller);
+
+                Offer offer = new Offer();
+                offer.setProduct(product);
+                offer.setSeller(seller);
+                offer.setOperationType(i % 3 == 0 ? OperationType.BUY : OperationType.SELL);
+                offer.setPrice(i % 7 == 6 ? null : BigDecimal.valueOf(1000 + (i * 37 + p * 11) % 20));
+                offer.setQuantity(1);
+                entityManager.persist(offer);
+            }
+        }
+        return minerDetail.getId();
+    }
+}
@@ -0,0 +1,116 @@
+package com.miners.shop.service;
+
+import com.miners.shop.entity.MinerDetail;
+import com.miners.shop.entity.Offer;
+import com.miners.shop.entity.OperationType;
+import com.miners.shop.entity.Product;
+import com.miners.shop.repository.PostgresSliceTest;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Запись предложений из сообщений: одно сообщение и пакет идут через один upsert
+ * по ключу (product_id, seller_id, operation_type)
+ */
+@Import({ProductService.class, SellerService.class, MinerDetailOfferStatsService.class})
+class ProductServiceUpsertTest extends PostgresSliceTest {
+
+    private static final String MODEL = "Antminer S21 200T";
+
+    @MockBean
+    private MinerDetailService minerDetailService;
+
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        when(sellerIdentityCache.lockFor(any())).thenReturn(new ReentrantLock());
+        when(minerDetailService.createMinerDetailForProduct(any())).thenAnswer(invocation -> {
+            MinerDetail minerDetail = new MinerDetail();
+            minerDetail.setStandardName(invocation.<Product>getArgument(0).getModel());
+            entityManager.persist(minerDetail);
+            return minerDetail;
+        });
+    }
+
+    @Test
+    void repeatedKeyInBatchUpdatesOfferCreatedEarlierInBatch() {
+        List<ProductService.ParsedDataResult> results = productService.processParsedDataBatch(List.of(
+                item("m1", "79000000001", "SELL", product(MODEL, 100, null)),
+                item("m2", "79000000001", "SELL", product(MODEL, null, 5)),
+                item("m3", "79000000002", "BUY", product(MODEL, 90, null))));
+
+        assertThat(results).containsExactly(
+                new ProductService.ParsedDataResult(false, 1, 0),
+                new ProductService.ParsedDataResult(true, 0, 1),
+                new ProductService.ParsedDataResult(false, 1, 0));
+
+        List<Offer> offers = offers();
+        assertThat(offers).hasSize(2);
+        Offer sell = offers.stream().filter(offer -> offer.getOperationType() == OperationType.SELL).findFirst().orElseThrow();
+        // Цена SELL без цены в сообщении не затирается, количество обновляется
+        assertThat(sell.getPrice()).isEqualByComparingTo("100");
+        assertThat(sell.getQuantity()).isEqualTo(5);
+        assertThat(sell.getCurrency()).isEqualTo("USD");
+        assertThat(sell.getSourceMessageId()).isEqualTo("m2");
+    }
+
+    @Test
+    void singleMessageAndBatchShareOneOffer() {
+        boolean firstIsUpdate = productService.processParsedData(parsedData("SELL", product(MODEL, 100, 2)),
+                "m1", "chat", "Продавец", "79000000003", null);
+        List<ProductService.ParsedDataResult> results = productService.processParsedDataBatch(List.of(
+                item("m2", "79000000003", "SELL", product(MODEL, 95, null))));
+
+        assertThat(firstIsUpdate).isFalse();
+        assertThat(results).containsExactly(new ProductService.ParsedDataResult(true, 0, 1));
+
+        List<Offer> offers = offers();
+        assertThat(offers).hasSize(1);
+        assertThat(offers.get(0).getPrice()).isEqualByComparingTo("95");
+        assertThat(offers.get(0).getQuantity()).isEqualTo(2);
+        assertThat(offers.get(0).getSeller().getPhone()).isEqualTo("79000000003");
+    }
+
+    private List<Offer> offers() {
+        entityManager.flush();
+        entityManager.clear();
+        return entityManager.createQuery("SELECT o FROM Offer o ORDER BY o.id", Offer.class).getResultList();
+    }
+
+    private static ProductService.ParsedDataItem item(String messageId, String phone, String operationType,
+                                                      Map<String, Object> product) {
+        return new ProductService.ParsedDataItem(parsedData(operationType, product), messageId, "chat", "Продавец", phone);
+    }
+
+    private static Map<String, Object> parsedData(String operationType, Map<String, Object> product) {
+        Map<String, Object> parsedData = new HashMap<>();
+        parsedData.put("operationType", operationType);
+        parsedData.put("products", List.of(product));
+        return parsedData;
+    }
+
+    private static Map<String, Object> product(String model, Integer price, Integer quantity) {
+        Map<String, Object> product = new HashMap<>();
+        product.put("model", model);
+        product.put("price", price);
+        product.put("quantity", quantity);
+        return product;
+    }
+}